@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal;
+
+import org.neo4j.helpers.Service;
+import org.neo4j.kernel.KernelData;
+import org.neo4j.kernel.KernelExtension;
+
+/**
+ * Holds the Cypher execution plan cache of a database, so that it's shared by
+ * all execution engines on it and can be monitored. The number of plans it
+ * keeps is set with the {@link #PLAN_CACHE_SIZE} configuration parameter.
+ */
+@Service.Implementation( KernelExtension.class )
+public final class PlanCacheExtension extends KernelExtension<PlanCache>
+{
+    static final String KEY = "cypher-plan-cache";
+
+    /**
+     * The number of execution plans to cache, default is 100. Zero turns
+     * the cache off.
+     */
+    public static final String PLAN_CACHE_SIZE = "cypher_plan_cache_size";
+
+    public PlanCacheExtension()
+    {
+        super( KEY );
+    }
+
+    @Override
+    protected PlanCache load( KernelData kernel )
+    {
+        Object size = kernel.getParam( PLAN_CACHE_SIZE );
+        return new PlanCache( size != null ? Integer.parseInt( size.toString().trim() )
+                : PlanCache.DEFAULT_SIZE() );
+    }
+
+    public PlanCache getPlanCache( KernelData kernel )
+    {
+        return getState( kernel );
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.management;
+
+import org.neo4j.jmx.Description;
+import org.neo4j.jmx.ManagementInterface;
+
+@ManagementInterface( name = ExecutionPlanCache.NAME )
+@Description( "Statistics about the cache of Cypher execution plans" )
+public interface ExecutionPlanCache
+{
+    final String NAME = "Cypher execution plan cache";
+
+    @Description( "The number of execution plans the cache may hold" )
+    int getMaxSize();
+
+    @Description( "The number of execution plans in the cache" )
+    int getSize();
+
+    @Description( "The number of queries whose execution plan was found in the cache" )
+    long getHitCount();
+
+    @Description( "The number of queries that had to be parsed and planned" )
+    long getMissCount();
+
+    @Description( "The share of queries whose execution plan was found in the cache" )
+    double getHitRatio();
+
+    @Description( "The number of execution plans evicted from the cache to make room for others" )
+    long getEvictionCount();
+
+    @Description( "The total time in milliseconds spent parsing queries that weren't in the cache" )
+    double getParseTimeMillis();
+
+    @Description( "The total time in milliseconds spent creating execution plans for parsed queries" )
+    double getPlanTimeMillis();
+
+    @Description( "Removes all execution plans from the cache" )
+    void clear();
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.management.impl;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.neo4j.cypher.internal.PlanCache;
+import org.neo4j.cypher.internal.PlanCacheExtension;
+import org.neo4j.cypher.management.ExecutionPlanCache;
+import org.neo4j.helpers.Service;
+import org.neo4j.jmx.impl.ManagementBeanProvider;
+import org.neo4j.jmx.impl.ManagementData;
+import org.neo4j.jmx.impl.Neo4jMBean;
+import org.neo4j.kernel.KernelData;
+
+@Service.Implementation( ManagementBeanProvider.class )
+public final class ExecutionPlanCacheBean extends ManagementBeanProvider
+{
+    public ExecutionPlanCacheBean()
+    {
+        super( ExecutionPlanCache.class );
+    }
+
+    @Override
+    protected Neo4jMBean createMBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        return new ExecutionPlanCacheImpl( management );
+    }
+
+    private static class ExecutionPlanCacheImpl extends Neo4jMBean implements ExecutionPlanCache
+    {
+        private final KernelData kernel;
+        private final PlanCacheExtension extension = new PlanCacheExtension();
+
+        ExecutionPlanCacheImpl( ManagementData management ) throws NotCompliantMBeanException
+        {
+            super( management );
+            this.kernel = management.getKernelData();
+        }
+
+        // the extension may be loaded after the management beans
+        private PlanCache cache()
+        {
+            PlanCache cache = extension.getPlanCache( kernel );
+            return cache != null ? cache : new PlanCache( 0 );
+        }
+
+        public int getMaxSize()
+        {
+            return cache().maxSize();
+        }
+
+        public int getSize()
+        {
+            return cache().size();
+        }
+
+        public long getHitCount()
+        {
+            return cache().hitCount();
+        }
+
+        public long getMissCount()
+        {
+            return cache().missCount();
+        }
+
+        public double getHitRatio()
+        {
+            PlanCache cache = cache();
+            long lookups = cache.hitCount() + cache.missCount();
+            return lookups == 0 ? 0 : (double) cache.hitCount() / lookups;
+        }
+
+        public long getEvictionCount()
+        {
+            return cache().evictionCount();
+        }
+
+        public double getParseTimeMillis()
+        {
+            return cache().parseTimeNanos() / 1000000.0;
+        }
+
+        public double getPlanTimeMillis()
+        {
+            return cache().planTimeNanos() / 1000000.0;
+        }
+
+        public void clear()
+        {
+            cache().clear();
+        }
+    }
+}
@@ -30,6 +30,14 @@ class CypherParser(version: String) {
   val v16 = new internal.parser.v1_6.CypherParserImpl
   val v17 = new internal.parser.v1_7.CypherParserImpl
 
+  /**
+   * The parser version the query will be parsed with.
+   */
+  def versionOf(queryText: String): String = queryText match {
+    case hasVersionDefined(v1, q1) => v1
+    case _ => version
+  }
+
   @throws(classOf[SyntaxException])
   def parse(queryText: String): Query = {
 
@@ -20,7 +20,7 @@
 package org.neo4j.cypher
 
 import internal.commands._
-import internal.{LRUCache, ExecutionPlanImpl}
+import internal.{PlanCacheExtension, NormalizedQuery, PlanCache, ExecutionPlanImpl}
 import scala.collection.JavaConverters._
 import java.lang.Error
 import java.util.{Map => JavaMap}
@@ -56,8 +56,48 @@ class ExecutionEngine(graph: GraphDatabaseService) {
   @throws(classOf[SyntaxException])
   def execute(query: String, params: JavaMap[String, Any]): ExecutionResult = execute(query, params.asScala.toMap)
 
+  /**
+   * Returns the execution plan of the query, from the plan cache if a query
+   * that normalizes to the same text has been prepared before. Literals that
+   * were turned into parameters by the normalization are passed to the plan
+   * when it's executed.
+   */
   @throws(classOf[SyntaxException])
-  def prepare(query: String): ExecutionPlan = executionPlanCache.getOrElseUpdate(query, new ExecutionPlanImpl(parser.parse(query), graph))
+  def prepare(query: String): ExecutionPlan = {
+    val normalized = NormalizedQuery(query, parser.versionOf(query) == "1.7")
+    if (normalized.literals.isEmpty) {
+      executionPlanCache.getOrElseUpdate(normalized.text, createPlan(normalized.text, query))
+    } else {
+      val plan = executionPlanCache.getOrElseUpdate(normalized.text, try {
+        createPlan(normalized.text, query)
+      } catch {
+        case e: SyntaxException => ExecutionEngine.NotParameterizable
+      })
+      if (plan eq ExecutionEngine.NotParameterizable) {
+        val text = NormalizedQuery(query, false).text
+        executionPlanCache.getOrElseUpdate(text, createPlan(text, query))
+      } else {
+        new LiteralParameters(plan, normalized.literals)
+      }
+    }
+  }
+
+  private def createPlan(text: String, query: String): ExecutionPlan = {
+    val start = System.nanoTime()
+    val parsed = try {
+      parser.parse(text)
+    } catch {
+      // report the error where it is in the query as it was written
+      case e: SyntaxException => {
+        parser.parse(query)
+        throw e
+      }
+    }
+    val parsedAt = System.nanoTime()
+    val plan = new ExecutionPlanImpl(parsed, graph)
+    executionPlanCache.created(parsedAt - start, System.nanoTime() - parsedAt)
+    plan
+  }
 
   @throws(classOf[SyntaxException])
   @deprecated(message = "You should not parse queries manually any more. Use the execute(String) instead")
@@ -78,7 +118,24 @@ class ExecutionEngine(graph: GraphDatabaseService) {
     }
   }
 
-  private val cacheSize: Int = 100
-  private val executionPlanCache = new LRUCache[String, ExecutionPlan](cacheSize) {}
+  // all engines on the same database share its plan cache
+  private val executionPlanCache: PlanCache = graph match {
+    case database: AbstractGraphDatabase => {
+      val cache = new PlanCacheExtension().getPlanCache(database.getKernelData)
+      if (cache != null) cache else new PlanCache(PlanCache.DEFAULT_SIZE)
+    }
+    case _ => new PlanCache(PlanCache.DEFAULT_SIZE)
+  }
+}
+
+object ExecutionEngine {
+  // cached for queries that can't be parsed once their literals are parameters
+  private object NotParameterizable extends ExecutionPlan {
+    def execute(params: Map[String, Any]): ExecutionResult = throw new IllegalStateException("not an execution plan")
+  }
+}
+
+private class LiteralParameters(inner: ExecutionPlan, literals: Map[String, Any]) extends ExecutionPlan {
+  def execute(params: Map[String, Any]): ExecutionResult = inner.execute(params ++ literals)
 }
 
@@ -27,9 +27,32 @@ import java.lang.String
 import internal.symbols.SymbolTable
 
 
-class PipeExecutionResult(result: Traversable[Map[String, Any]], val symbols:SymbolTable, val columns: List[String], val timeTaken:Long)
+class PipeExecutionResult(source: Traversable[Map[String, Any]], val symbols:SymbolTable, val columns: List[String], planTime:Long)
   extends ExecutionResult
   with StringExtras {
+  private var pullTime = 0L
+
+  // the rows can be produced lazily, so the time spent pulling them is counted as they are consumed
+  private val result: Stream[Map[String, Any]] = {
+    val rows = source.toIterator
+    new Iterator[Map[String, Any]] {
+      def hasNext: Boolean = timed(rows.hasNext)
+
+      def next(): Map[String, Any] = timed(rows.next())
+    }.toStream
+  }
+
+  private def timed[T](f: => T): T = {
+    val start = System.currentTimeMillis()
+    try {
+      f
+    } finally {
+      pullTime += System.currentTimeMillis() - start
+    }
+  }
+
+  def timeTaken: Long = planTime + pullTime
+
   def javaColumns: java.util.List[String] = columns.asJava
 
   def javaColumnAs[T](column: String): java.util.Iterator[T] = columnAs[T](column).map(x => makeValueJavaCompatible(x).asInstanceOf[T]).asJava
@@ -104,7 +104,7 @@ class ExecutionPlanImpl(query: Query, graph: GraphDatabaseService) extends Execu
         }
 
         if (!sorted) {
-          createSortPipe(sort, allReturnItems, context)
+          createSortPipe(sort, allReturnItems, context, slice.flatMap(rowsNeededFrom))
         }
 
         slice match {
@@ -116,12 +116,19 @@ class ExecutionPlanImpl(query: Query, graph: GraphDatabaseService) extends Execu
 
         val result = new ColumnFilterPipe(context.pipe, returnItems)
 
+        // without sorting or aggregation, rows are pulled through the pipes one at a time
+        val slots = if (result.canCreateRows) Some(new Slots(context.pipe.symbols.keys)) else None
+
         val func = (params: Map[String, Any]) => {
           val start = System.currentTimeMillis()
-          val results = result.createResults(params)
-          val timeTaken = System.currentTimeMillis() - start
+          val results = slots match {
+            case Some(s) => result.createResultsFromRows(params, s)
+            case None => result.createResults(params)
+          }
+          val planTime = System.currentTimeMillis() - start
 
-          new PipeExecutionResult(results, result.symbols, returns.columns, timeTaken)
+          // the result adds the time spent pulling the rows as they are consumed
+          new PipeExecutionResult(results, result.symbols, returns.columns, planTime)
         }
         val executionPlan = result.executionPlan()
 
@@ -130,7 +137,7 @@ class ExecutionPlanImpl(query: Query, graph: GraphDatabaseService) extends Execu
     }
   }
 
-  private def createSortPipe(sort: Option[Sort], allReturnItems: Seq[ReturnItem], context: CurrentContext) {
+  private def createSortPipe(sort: Option[Sort], allReturnItems: Seq[ReturnItem], context: CurrentContext, rowsNeeded: Option[Expression] = None) {
     sort match {
       case None =>
       case Some(s) => {
@@ -139,11 +146,21 @@ class ExecutionPlanImpl(query: Query, graph: GraphDatabaseService) extends Execu
         if (sortItems.nonEmpty) {
           context.pipe = new ExtractPipe(context.pipe, sortItems)
         }
-        context.pipe = new SortPipe(context.pipe, s.sortItems.toList)
+        context.pipe = rowsNeeded match {
+          case Some(count) => new TopPipe(context.pipe, s.sortItems.toList, count)
+          case None => new SortPipe(context.pipe, s.sortItems.toList)
+        }
       }
     }
   }
 
+  // the number of sorted rows a slice with a limit needs, skipped ones included
+  private def rowsNeededFrom(slice: Slice): Option[Expression] = slice match {
+    case Slice(_, None) => None
+    case Slice(None, Some(limit)) => Some(limit)
+    case Slice(Some(skip), Some(limit)) => Some(Add(skip, limit))
+  }
+
   private def extractReturnItems(returns: Return, aggregation: Option[Aggregation]): Seq[ReturnItem] = {
     val aggregation1 = aggregation.getOrElse(new Aggregation())
 
@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal
+
+import scala.util.matching.Regex
+
+/**
+ * The text a query's execution plan is cached under, and the literals that
+ * were taken out of the query to get there.
+ */
+case class NormalizedQuery(text: String, literals: Map[String, Any])
+
+/**
+ * Collapses the whitespace in everything before the RETURN clause, so that
+ * queries that are only laid out differently share an execution plan. The
+ * RETURN clause is kept as it is, since its text becomes the column names.
+ *
+ * With parameterize set the string and number literals on the right hand side
+ * of comparisons in the WHERE clause are also replaced by parameters, which
+ * is only safe for parsers that read a parameter everywhere such a literal
+ * can be, and that read numbers as doubles.
+ */
+object NormalizedQuery {
+  val LITERAL_PREFIX = "__literal"
+
+  private val comparisons = Set("=", "<>", "!=", "<", ">", "<=", ">=")
+  private val operatorChars = "=<>!~"
+  private val number = """-?(\d+(\.\d*)?|\d*\.\d+)""".r
+  private val quotedString = ("\"" + """([^"\p{Cntrl}\\]|\\[\\'"bfnrt]|\\u[a-fA-F0-9]{4})*""" + "\"").r
+  private val apostropheString = ("\'" + """([^'\p{Cntrl}\\]|\\[\\/bfnrt]|\\u[a-fA-F0-9]{4})*""" + "\'").r
+  private val escapedIdentity = "`(``|[^`])*`".r
+  private val regularLiteral = ("/" + """([^"\p{Cntrl}\\]|\\[\\/bfnrt]|\\u[a-fA-F0-9]{4})*?""" + "/").r
+
+  def apply(query: String, parameterize: Boolean): NormalizedQuery = {
+    val text = new StringBuilder
+    var literals = Map[String, Any]()
+    var inWhere = false
+    var afterComparison = false
+    var afterRegexOperator = false
+    var space = false
+    var i = 0
+
+    def prefix(regex: Regex): Option[String] = regex.findPrefixOf(query.substring(i))
+
+    def literal(value: Any) {
+      val name = LITERAL_PREFIX + literals.size
+      literals += name -> value
+      text.append("{").append(name).append("}")
+    }
+
+    while (i < query.length) {
+      val c = query.charAt(i)
+      if (Character.isWhitespace(c)) {
+        space = text.length > 0
+        i += 1
+      } else {
+        if (space) {
+          text.append(' ')
+          space = false
+        }
+        val replace = parameterize && inWhere && afterComparison
+        val token: Option[String] = if (c == '"' || c == '\'') {
+          prefix(if (c == '"') quotedString else apostropheString).map(string => {
+            if (replace) literal(string.substring(1, string.length - 1)) else text.append(string)
+            string
+          })
+        } else if (c == '`') {
+          prefix(escapedIdentity).map(identity => {
+            text.append(identity)
+            identity
+          })
+        } else if (c == '/' && afterRegexOperator) {
+          prefix(regularLiteral).map(regex => {
+            text.append(regex)
+            regex
+          })
+        } else if (replace && (c == '-' || c == '.' || Character.isDigit(c))) {
+          prefix(number).filter(n => !continuesAfter(query, i + n.length)).map(n => {
+            literal(n.toDouble)
+            n
+          })
+        } else if (Character.isJavaIdentifierStart(c)) {
+          var end = i + 1
+          while (end < query.length && Character.isJavaIdentifierPart(query.charAt(end))) {
+            end += 1
+          }
+          val word = query.substring(i, end)
+          if (word.equalsIgnoreCase("return")) {
+            text.append(query.substring(i))
+            end = query.length
+          } else {
+            inWhere = inWhere || word.equalsIgnoreCase("where")
+            text.append(word)
+          }
+          Some(query.substring(i, end))
+        } else if (operatorChars.indexOf(c) >= 0) {
+          var end = i + 1
+          while (end < query.length && operatorChars.indexOf(query.charAt(end)) >= 0) {
+            end += 1
+          }
+          val operator = query.substring(i, end)
+          text.append(operator)
+          Some(operator)
+        } else {
+          None
+        }
+
+        token match {
+          case Some(t) => {
+            afterComparison = comparisons.contains(t)
+            afterRegexOperator = t == "=~"
+            i += t.length
+          }
+          case None => {
+            // anything else, including unterminated strings, is kept a character at a time
+            text.append(c)
+            afterComparison = false
+            afterRegexOperator = false
+            i += 1
+          }
+        }
+      }
+    }
+
+    NormalizedQuery(text.toString(), literals)
+  }
+
+  private def continuesAfter(query: String, end: Int) =
+    end < query.length && (Character.isJavaIdentifierPart(query.charAt(end)) || query.charAt(end) == '.')
+}
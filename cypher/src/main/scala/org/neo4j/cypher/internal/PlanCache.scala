@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal
+
+import java.util.Map.Entry
+import java.util.concurrent.atomic.AtomicLong
+import org.neo4j.cypher.ExecutionPlan
+
+/**
+ * The execution plans of the most recently used queries. Safe to use from
+ * many threads; a plan that isn't cached is created outside of the lock, so
+ * two threads missing the same query at once will both create it.
+ */
+class PlanCache(val maxSize: Int) {
+  private val hits = new AtomicLong()
+  private val misses = new AtomicLong()
+  private val evictions = new AtomicLong()
+  private val parseTime = new AtomicLong()
+  private val planTime = new AtomicLong()
+
+  private val plans = new LRUCache[String, ExecutionPlan](maxSize) {
+    override def removeEldestEntry(eldest: Entry[String, ExecutionPlan]): Boolean = {
+      val evict = super.removeEldestEntry(eldest)
+      if (evict) {
+        evictions.incrementAndGet()
+      }
+      evict
+    }
+  }
+
+  def getOrElseUpdate(query: String, create: => ExecutionPlan): ExecutionPlan = {
+    val cached = plans.synchronized(plans.get(query))
+    if (cached != null) {
+      hits.incrementAndGet()
+      cached
+    } else {
+      misses.incrementAndGet()
+      val plan = create
+      if (maxSize > 0) {
+        plans.synchronized(plans.put(query, plan))
+      }
+      plan
+    }
+  }
+
+  /**
+   * Records the time it took to parse a query and to create its execution plan.
+   */
+  def created(parseNanos: Long, planNanos: Long) {
+    parseTime.addAndGet(parseNanos)
+    planTime.addAndGet(planNanos)
+  }
+
+  def size: Int = plans.synchronized(plans.size)
+
+  def clear() {
+    plans.synchronized(plans.clear())
+  }
+
+  def hitCount: Long = hits.get
+
+  def missCount: Long = misses.get
+
+  def evictionCount: Long = evictions.get
+
+  def parseTimeNanos: Long = parseTime.get
+
+  def planTimeNanos: Long = planTime.get
+}
+
+object PlanCache {
+  val DEFAULT_SIZE = 100
+}
@@ -32,6 +32,19 @@ class ColumnFilterPipe(source: Pipe, val returnItems: Seq[ReturnItem])
   def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] =
     source.createResults(params).map(_.filterKeys(returnItemNames.contains))
 
+  def canCreateRows: Boolean = RowPipe.canCreateRows(source)
+
+  /*
+  Pulls the rows from the source pipes one at a time, and turns them into maps
+  with just the returned columns. Only usable if canCreateRows is true.
+   */
+  def createResultsFromRows(params: Map[String, Any], slots: Slots): Traversable[Map[String, Any]] = {
+    val columns = returnItemNames.map(name => (name, slots(name)))
+    RowPipe.rows(source, params, slots).map(row => {
+      columns.filter(column => row.isSet(column._2)).map(column => column._1 -> row(column._2)).toMap
+    }).toStream
+  }
+
   override def executionPlan(): String = {
     source.executionPlan() + "\r\n" + "ColumnFilter([" + source.symbols.keys + "] => [" + returnItemNames.mkString(",") + "])"
   }
@@ -19,16 +19,23 @@
  */
 package org.neo4j.cypher.internal.pipes
 
-import aggregation.AggregationFunction
+import aggregation.{AggregationColumn, GroupTable}
 import collection.Seq
+import collection.mutable.ArrayBuffer
 import org.neo4j.cypher.internal.commands.{AggregationItem, ReturnItem}
 import java.lang.String
+import java.io.NotSerializableException
 import org.neo4j.cypher.internal.symbols.{Identifier, SymbolTable}
 
 // Eager aggregation means that this pipe will eagerly load the whole resulting subgraphs before starting
 // to emit aggregated results.
 // Cypher is lazy until it has to - this pipe makes stops the lazyness
-class EagerAggregationPipe(source: Pipe, val returnItems: Seq[ReturnItem], aggregations: Seq[AggregationItem]) extends PipeWithSource(source) {
+//
+// The groups are numbered by a GroupTable and aggregated into AggregationColumns. When there are more than
+// maxGroupsInMemory groups the rows of the groups that don't fit are written to disk and aggregated in
+// another pass once the groups in memory are done.
+class EagerAggregationPipe(source: Pipe, val returnItems: Seq[ReturnItem], aggregations: Seq[AggregationItem],
+                           maxGroupsInMemory: Int = EagerAggregationPipe.DEFAULT_MAX_GROUPS_IN_MEMORY) extends PipeWithSource(source) {
   val symbols: SymbolTable = createSymbols()
 
   def dependencies: Seq[Identifier] = returnItems.flatMap(_.dependencies) ++ aggregations.flatMap(_.dependencies)
@@ -40,25 +47,109 @@ class EagerAggregationPipe(source: Pipe, val returnItems: Seq[ReturnItem], aggre
     keySymbols.add(aggregatedColumns: _*)
   }
 
+  private val keyNames = returnItems.map(_.columnName).toArray
+  private val aggregationNames = aggregations.map(_.identifier.name).toArray
+  // the columns a spilled row needs to be aggregated later
+  private val spilledColumns = (keyNames ++ aggregations.flatMap(_.dependencies).map(_.name)).distinct
+
   def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = {
-    // This is the temporary storage used while the aggregation is going on
-    val result = collection.mutable.Map[NiceHasher, Seq[AggregationFunction]]()
-    val keyNames = returnItems.map(_.columnName)
-    val aggregationNames = aggregations.map(_.identifier.name)
+    val result = new ArrayBuffer[Map[String, Any]]()
+    var spilled = aggregate(source.createResults(params), result)
+    while (spilled != null) {
+      try {
+        val next = aggregate(spilled.iterator, result)
+        spilled.delete()
+        spilled = next
+      } catch {
+        case e: Throwable => {
+          spilled.delete()
+          throw e
+        }
+      }
+    }
+    result
+  }
 
-    source.createResults(params).foreach(m => {
-      val groupValues: NiceHasher = new NiceHasher(keyNames.map(m(_)))
-      val functions = result.getOrElseUpdate(groupValues, aggregations.map(_.createAggregationFunction))
-      functions.foreach(func => func(m))
+  /**
+   * Aggregates the rows of as many groups as fit in memory and adds their
+   * results to out. Returns the rows of the other groups, or null if there
+   * were none.
+   */
+  private def aggregate(rows: TraversableOnce[Map[String, Any]], out: ArrayBuffer[Map[String, Any]]): SpilledRows = {
+    val table = new GroupTable(keyNames)
+    val columns = aggregations.map(AggregationColumn(_)).toArray
+    var spilled: SpilledRows = null
+    var spillable = true
+
+    def aggregateRow(row: Map[String, Any]) {
+      val group = table.groupOf(row, true)
+      var i = 0
+      while (i < columns.length) {
+        columns(i).ensureCapacity(table.size)
+        columns(i)(group, row)
+        i += 1
+      }
+    }
+
+    rows.foreach(row => {
+      if (!spillable || table.size < maxGroupsInMemory) {
+        aggregateRow(row)
+      } else {
+        val group = table.groupOf(row, false)
+        if (group >= 0) {
+          var i = 0
+          while (i < columns.length) {
+            columns(i)(group, row)
+            i += 1
+          }
+        } else {
+          if (spilled == null) {
+            spilled = new SpilledRows()
+          }
+          try {
+            spilled.add(spilledColumns.flatMap(c => row.get(c).map(c -> _)).toMap)
+          } catch {
+            // rows that can't be written to disk are aggregated in memory instead,
+            // starting with those written so far to keep the order within the groups
+            case e: NotSerializableException => {
+              spilled.iterator.foreach(aggregateRow)
+              spilled.delete()
+              spilled = null
+              spillable = false
+              aggregateRow(row)
+            }
+          }
+        }
+      }
     })
 
-    result.map {
-      case (key, value: Seq[AggregationFunction]) => {
-        val elems = keyNames.zip(key.original) ++ aggregationNames.zip(value.map(_.result))
-        elems.toMap
+    var group = 0
+    while (group < table.size) {
+      val key = table.keyOf(group)
+      val elems = new Array[(String, Any)](keyNames.length + columns.length)
+      var i = 0
+      while (i < keyNames.length) {
+        elems(i) = keyNames(i) -> key(i)
+        i += 1
+      }
+      i = 0
+      while (i < columns.length) {
+        elems(keyNames.length + i) = aggregationNames(i) -> columns(i).result(group)
+        i += 1
       }
+      out += Map(elems: _*)
+      group += 1
     }
+
+    if (spilled != null) {
+      spilled.close()
+    }
+    spilled
   }
 
   override def executionPlan(): String = source.executionPlan() + "\r\n" + "EagerAggregation( keys: [" + returnItems.map(_.columnName).mkString(", ") + "], aggregates: [" + aggregations.mkString(", ") + "])"
-}
\ No newline at end of file
+}
+
+object EagerAggregationPipe {
+  val DEFAULT_MAX_GROUPS_IN_MEMORY = 100000
+}
@@ -27,7 +27,7 @@ import org.neo4j.cypher.internal.commands.ReturnItem
 
 //This class will extract properties and other stuff to make the maps
 //easy to work with for other pipes
-class ExtractPipe(source: Pipe, val returnItems: Seq[ReturnItem]) extends PipeWithSource(source) {
+class ExtractPipe(source: Pipe, val returnItems: Seq[ReturnItem]) extends PipeWithSource(source) with RowPipe {
   def dependencies = returnItems.flatMap(_.dependencies)
 
   type MapTransformer = Map[String, Any] => Map[String, Any]
@@ -44,6 +44,26 @@ class ExtractPipe(source: Pipe, val returnItems: Seq[ReturnItem]) extends PipeWi
     })
   }
 
+  // like above, values already in the row win over the projected ones. The upstream row is copied, since
+  // the pipe it came from may hand it to someone else as well
+  def createRows(params: Map[String, Any], slots: Slots): Iterator[SlotRow] = {
+    val columnSlots = returnItems.map(returnItem => slots(returnItem.columnName)).toArray
+    RowPipe.rows(source, params, slots).map(row => {
+      val projection = returnItems.map(returnItem => returnItem(row)).toArray
+      val projected = row.copy()
+      var i = 0
+      while (i < columnSlots.length) {
+        if (!projected.isSet(columnSlots(i))) {
+          projected.set(columnSlots(i), projection(i))
+        }
+        i += 1
+      }
+      projected
+    })
+  }
+
+  def rowSources: Seq[Pipe] = Seq(source)
+
   override def executionPlan(): String = source.executionPlan() + "\r\nExtract([" + source.symbols.keys.mkString(",") + "] => [" + returnItems.map(_.columnName).mkString(", ") + "])"
 }
 
@@ -22,12 +22,17 @@ package org.neo4j.cypher.internal.pipes
 import java.lang.String
 import org.neo4j.cypher.internal.commands.Predicate
 
-class FilterPipe(source: Pipe, predicate: Predicate) extends PipeWithSource(source) {
+class FilterPipe(source: Pipe, predicate: Predicate) extends PipeWithSource(source) with RowPipe {
   val symbols = source.symbols
 
   def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] =
     source.createResults(params).filter(predicate isMatch)
 
+  def createRows(params: Map[String, Any], slots: Slots): Iterator[SlotRow] =
+    RowPipe.rows(source, params, slots).filter(predicate isMatch)
+
+  def rowSources: Seq[Pipe] = Seq(source)
+
   override def executionPlan(): String = source.executionPlan() + "\r\n" + "Filter(" + predicate.toString + ")"
 
   def dependencies = predicate.dependencies
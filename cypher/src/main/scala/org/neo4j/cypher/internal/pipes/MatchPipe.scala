@@ -24,7 +24,7 @@ import java.lang.String
 import org.neo4j.cypher.internal.commands.{PathPattern, RelatedTo, Predicate, Pattern}
 import org.neo4j.cypher.internal.symbols._
 
-class MatchPipe(source: Pipe, patterns: Seq[Pattern], predicates: Seq[Predicate]) extends Pipe {
+class MatchPipe(source: Pipe, patterns: Seq[Pattern], predicates: Seq[Predicate]) extends RowPipe {
   val matchingContext = new MatchingContext(patterns, source.symbols, predicates)
   val symbols = source.symbols.add(identifiers: _*)
 
@@ -42,6 +42,11 @@ class MatchPipe(source: Pipe, patterns: Seq[Pattern], predicates: Seq[Predicate]
   def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] =
     source.createResults(params).flatMap(sourcePipeRow => matchingContext.getMatches(sourcePipeRow))
 
+  def createRows(params: Map[String, Any], slots: Slots): Iterator[SlotRow] =
+    RowPipe.rows(source, params, slots).flatMap(sourcePipeRow => matchingContext.getMatches(sourcePipeRow).toIterator.map(m => sourcePipeRow.copyWith(m)))
+
+  def rowSources: Seq[Pipe] = Seq(source)
+
   private def iterableOfRelationships(iterableRel: Option[String]): Option[Identifier] = iterableRel match {
     case None => None
     case Some(r) => Some(Identifier(r, new IterableType(RelationshipType())))
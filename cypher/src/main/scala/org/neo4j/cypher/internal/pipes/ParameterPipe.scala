@@ -23,8 +23,14 @@ import java.lang.String
 import org.neo4j.cypher.internal.symbols.{SymbolTable, Identifier}
 import org.neo4j.cypher.internal.commands.ParameterValue
 
-class ParameterPipe() extends Pipe {
-  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = Seq(params.map { case (k,v) => "-=PARAMETER=-"+k+"-=PARAMETER=-" -> ParameterValue(v) } )
+class ParameterPipe() extends RowPipe {
+  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = Seq(parameters(params))
+
+  def createRows(params: Map[String, Any], slots: Slots): Iterator[SlotRow] = Iterator.single(SlotRow(slots, parameters(params)))
+
+  def rowSources: Seq[Pipe] = Seq()
+
+  private def parameters(params: Map[String, Any]): Map[String, Any] = params.map { case (k,v) => "-=PARAMETER=-"+k+"-=PARAMETER=-" -> ParameterValue(v) }
   val identifiers: Seq[Identifier] = Seq()
   val symbols: SymbolTable = new SymbolTable()
   override def executionPlan(): String = "Parameters()"
@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import scala.math.signum
+import org.neo4j.cypher.internal.Comparer
+import org.neo4j.cypher.internal.commands.SortItem
+
+/**
+ * Compares rows by a list of sort items, for the pipes that sort.
+ */
+trait RowOrdering extends Comparer {
+  def sortDescription: List[SortItem]
+
+  /**
+   * Negative if a sorts before b, positive if b sorts before a and zero if
+   * they are equal on all the sort items.
+   */
+  def compareRows(a: Map[String, Any], b: Map[String, Any]): Int = compareRows(a, b, sortDescription)
+
+  private def compareRows(a: Map[String, Any], b: Map[String, Any], order: List[SortItem]): Int = order match {
+    case Nil => 0
+    case head :: tail => {
+      val key = head.returnItem.identifier.name
+      signum(compare(a(key), b(key))) match {
+        case 0 => compareRows(a, b, tail)
+        case x => if (head.ascending) x else -x
+      }
+    }
+  }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+/*
+A pipe that can also hand out its rows one at a time, as slot rows. Rows are
+pulled through the pipes on demand, so a pipe that stops asking, like a slice
+with a limit, stops the work further up the pipeline too.
+ */
+trait RowPipe extends Pipe {
+  def createRows(params: Map[String, Any], slots: Slots): Iterator[SlotRow]
+
+  def rowSources: Seq[Pipe]
+}
+
+object RowPipe {
+  // a pipeline can be pulled row by row only if every pipe in it can
+  def canCreateRows(pipe: Pipe): Boolean = pipe match {
+    case p: RowPipe => p.rowSources.forall(canCreateRows)
+    case _ => false
+  }
+
+  def rows(pipe: Pipe, params: Map[String, Any], slots: Slots): Iterator[SlotRow] =
+    pipe.asInstanceOf[RowPipe].createRows(params, slots)
+}
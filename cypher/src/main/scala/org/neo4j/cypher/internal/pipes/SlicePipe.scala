@@ -23,7 +23,7 @@ import org.neo4j.cypher.internal.commands.Expression
 import java.lang.String
 import org.neo4j.helpers.ThisShouldNotHappenError
 
-class SlicePipe(source:Pipe, skip:Option[Expression], limit:Option[Expression]) extends Pipe {
+class SlicePipe(source:Pipe, skip:Option[Expression], limit:Option[Expression]) extends RowPipe {
   val symbols = source.symbols
 
   //TODO: Make this nicer. I'm sure it's expensive and silly.
@@ -48,6 +48,30 @@ class SlicePipe(source:Pipe, skip:Option[Expression], limit:Option[Expression])
     }
   }
 
+  // pulls no more rows from the source than the slice needs
+  def createRows(params: Map[String, Any], slots: Slots): Iterator[SlotRow] = {
+    val rows = RowPipe.rows(source, params, slots).buffered
+
+    if (!rows.hasNext)
+      return Iterator.empty
+
+    val first: Map[String, Any] = rows.head
+
+    def asInt(v:Expression)=v(first).asInstanceOf[Int]
+
+    (skip, limit) match {
+      case (Some(x), None) => rows.drop(asInt(x))
+      case (None, Some(x)) => rows.take(asInt(x))
+      case (Some(startAt), Some(count)) => {
+        val start = asInt(startAt)
+        rows.slice(start, start + asInt(count))
+      }
+      case (None, None)=>throw new ThisShouldNotHappenError("Andres Taylor", "A slice pipe that doesn't slice should never exist.")
+    }
+  }
+
+  def rowSources: Seq[Pipe] = Seq(source)
+
   override def executionPlan(): String = {
 
     val info = (skip, limit) match {
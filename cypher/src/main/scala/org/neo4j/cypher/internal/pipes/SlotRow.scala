@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+/*
+Resolves identifier names to positions in a SlotRow. It is built once, when the
+execution plan is prepared, so that pipes pay for the name lookup at most once
+per row instead of copying a map for every identifier they add.
+ */
+class Slots(names: Seq[String]) {
+  val keys: Array[String] = names.distinct.toArray
+  private val index: Map[String, Int] = keys.zipWithIndex.toMap
+
+  def size: Int = keys.length
+
+  def apply(name: String): Int = index(name)
+
+  def get(name: String): Option[Int] = index.get(name)
+}
+
+/*
+A row with one slot per identifier in the query. Pipes that know their slots set
+values in place; everything else, like expressions and predicates, sees it as an
+ordinary map. Keys that have no slot, like the parameters, are looked up in the
+map the row was created with.
+ */
+class SlotRow private(val slots: Slots, values: Array[Any], params: Map[String, Any]) extends Map[String, Any] {
+  def get(key: String): Option[Any] = slots.get(key) match {
+    case Some(slot) => if (isSet(slot)) Some(values(slot)) else None
+    case None => params.get(key)
+  }
+
+  def iterator: Iterator[(String, Any)] =
+    params.iterator ++ (0 until slots.size).iterator.filter(isSet).map(slot => slots.keys(slot) -> values(slot))
+
+  def +[B1 >: Any](kv: (String, B1)): Map[String, B1] = Map[String, B1](iterator.toSeq: _*) + kv
+
+  def -(key: String): Map[String, Any] = Map[String, Any](iterator.toSeq: _*) - key
+
+  def isSet(slot: Int): Boolean = values(slot).asInstanceOf[AnyRef] ne SlotRow.Unset
+
+  def apply(slot: Int): Any = values(slot)
+
+  def set(slot: Int, value: Any) {
+    values(slot) = value
+  }
+
+  def copy(): SlotRow = new SlotRow(slots, values.clone(), params)
+
+  def copyWith(slot: Int, value: Any): SlotRow = {
+    val row = copy()
+    row.set(slot, value)
+    row
+  }
+
+  def copyWith(m: Map[String, Any]): SlotRow = {
+    val row = copy()
+    m.foreach {
+      case (key, value) => slots.get(key).foreach(row.set(_, value))
+    }
+    row
+  }
+}
+
+object SlotRow {
+  private object Unset
+
+  def apply(slots: Slots, params: Map[String, Any]): SlotRow =
+    new SlotRow(slots, Array.fill[Any](slots.size)(Unset), params)
+}
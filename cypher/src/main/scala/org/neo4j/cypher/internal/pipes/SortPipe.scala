@@ -19,36 +19,179 @@
  */
 package org.neo4j.cypher.internal.pipes
 
-import scala.math.signum
 import org.neo4j.cypher.internal.commands.SortItem
 import java.lang.String
-import org.neo4j.cypher.internal.Comparer
+import collection.mutable.ArrayBuffer
+import java.io.{File, NotSerializableException}
+import java.util.PriorityQueue
 
-class SortPipe(source: Pipe, sortDescription: List[SortItem]) extends Pipe with Comparer {
+/**
+ * Sorts the rows of its source. No more than maxRowsInMemory rows are kept
+ * on the heap while sorting; when there are more, they are sorted in runs
+ * that are written to temporary files, in tempDirectory or the default
+ * temporary directory, and merged as the result is read. Each file is
+ * deleted as soon as it has been read, and any that are left when reading
+ * the result stops. The sort is stable, like the full in-memory sort it
+ * replaces.
+ */
+class SortPipe(source: Pipe, val sortDescription: List[SortItem], maxRowsInMemory: Int = SortPipe.DEFAULT_MAX_ROWS_IN_MEMORY,
+               tempDirectory: File = null)
+  extends Pipe with RowOrdering {
   val symbols = source.symbols
 
   assertDependenciesAreMet()
 
-  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = source.createResults(params).toList.sortWith((a, b) => compareBy(a, b, sortDescription))
-
-  def compareBy(a: Map[String, Any], b: Map[String, Any], order: Seq[SortItem]): Boolean = order match {
-    case Nil => false
-    case head :: tail => {
-      val key = head.returnItem.identifier.name
-      val aVal = a(key)
-      val bVal = b(key)
-      signum(compare(aVal, bVal)) match {
-        case 1 => !head.ascending
-        case -1 => head.ascending
-        case 0 => compareBy(a, b, tail)
+  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = {
+    val runs = new SortedRuns
+    var sorted = false
+    try {
+      source.createResults(params).foreach(runs.add)
+      val result = runs.result
+      sorted = true
+      result
+    } finally {
+      if (!sorted) {
+        runs.delete()
       }
     }
   }
 
-
   override def executionPlan(): String = source.executionPlan() + "\r\nSort(" + sortDescription.mkString(",") + ")"
 
   private def assertDependenciesAreMet() {
     sortDescription.map(_.returnItem.identifier).foreach( source.symbols.assertHas )
   }
-}
\ No newline at end of file
+
+  private def sortRun(rows: ArrayBuffer[Map[String, Any]]): ArrayBuffer[Map[String, Any]] = {
+    // java.util.Arrays.sort on objects is a stable merge sort
+    val array = rows.toArray[AnyRef]
+    java.util.Arrays.sort(array, new java.util.Comparator[AnyRef] {
+      def compare(a: AnyRef, b: AnyRef) = compareRows(a.asInstanceOf[Map[String, Any]], b.asInstanceOf[Map[String, Any]])
+    })
+    val sorted = new ArrayBuffer[Map[String, Any]](array.length)
+    array.foreach(row => sorted += row.asInstanceOf[Map[String, Any]])
+    sorted
+  }
+
+  private class SortedRuns {
+    private var buffer = new ArrayBuffer[Map[String, Any]]()
+    private val runs = new ArrayBuffer[Run]()
+    private var spillable = true
+
+    def add(row: Map[String, Any]) {
+      buffer += row
+      if (spillable && buffer.size >= maxRowsInMemory) {
+        val sorted = sortRun(buffer)
+        buffer = new ArrayBuffer[Map[String, Any]]()
+        val spilled = new SpilledRows(tempDirectory)
+        var written = false
+        try {
+          sorted.foreach(spilled.add)
+          spilled.close()
+          runs += new FileRun(spilled)
+          written = true
+        } catch {
+          // rows that can't be written to disk are kept in memory from here on
+          case e: NotSerializableException => {
+            runs += new MemoryRun(sorted)
+            spillable = false
+          }
+        } finally {
+          if (!written) {
+            spilled.delete()
+          }
+        }
+      }
+    }
+
+    def delete() {
+      runs.foreach(_.delete())
+    }
+
+    def result: Traversable[Map[String, Any]] = {
+      if (runs.isEmpty) {
+        sortRun(buffer)
+      } else {
+        if (buffer.nonEmpty) {
+          runs += new MemoryRun(sortRun(buffer))
+        }
+        new MergedRuns(runs.toList)
+      }
+    }
+  }
+
+  /**
+   * Merges the sorted runs. Ties are broken by the order of the runs, which
+   * keeps the sort stable. All runs are deleted when the traversal ends,
+   * whether every row was read, the consumer stopped early or it failed, so
+   * the result can only be read once.
+   */
+  private class MergedRuns(runs: List[Run]) extends Traversable[Map[String, Any]] {
+    private var read = false
+
+    def foreach[U](f: Map[String, Any] => U) {
+      if (read) {
+        throw new IllegalStateException("The sorted rows have already been read")
+      }
+      read = true
+      try {
+        val heads = new PriorityQueue[RunHead](runs.size, new java.util.Comparator[RunHead] {
+          def compare(a: RunHead, b: RunHead) = {
+            val result = compareRows(a.row, b.row)
+            if (result != 0) result else a.index - b.index
+          }
+        })
+        runs.zipWithIndex.foreach {
+          case (run, index) => advance(new RunHead(run, index), heads)
+        }
+        while (!heads.isEmpty) {
+          val head = heads.poll()
+          f(head.row)
+          advance(head, heads)
+        }
+      } finally {
+        close()
+      }
+    }
+
+    private def advance(head: RunHead, heads: PriorityQueue[RunHead]) {
+      if (head.rows.hasNext) {
+        head.row = head.rows.next()
+        heads.add(head)
+      } else {
+        head.run.delete()
+      }
+    }
+
+    def close() {
+      runs.foreach(_.delete())
+    }
+  }
+
+  private class RunHead(val run: Run, val index: Int) {
+    val rows = run.iterator
+    var row: Map[String, Any] = null
+  }
+}
+
+object SortPipe {
+  val DEFAULT_MAX_ROWS_IN_MEMORY = 100000
+}
+
+private abstract class Run {
+  def iterator: Iterator[Map[String, Any]]
+
+  def delete() {}
+}
+
+private class MemoryRun(rows: Seq[Map[String, Any]]) extends Run {
+  def iterator = rows.iterator
+}
+
+private class FileRun(rows: SpilledRows) extends Run {
+  def iterator = rows.iterator
+
+  override def delete() {
+    rows.delete()
+  }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import java.io._
+import org.neo4j.graphdb.{GraphDatabaseService, Relationship, Node}
+
+/**
+ * Rows written to a temporary file by the pipes that would otherwise have to
+ * keep them all on the heap. Nodes and relationships are written as their
+ * ids and looked up again when the rows are read. The rows can be read any
+ * number of times once close has been called. The file is created in
+ * directory, or in the default temporary directory if it is null.
+ */
+class SpilledRows(directory: File = null) {
+  private val file = File.createTempFile("cypher-rows", ".tmp", directory)
+  // the owner deletes the file when it is done with it, this is for a JVM that stops before that
+  file.deleteOnExit()
+  private val graph = new GraphHolder
+  private var out = new RowOutputStream(new BufferedOutputStream(new FileOutputStream(file)), graph)
+  private var count = 0
+
+  /**
+   * Writes a row. If it holds a value that can't be written, e.g. a
+   * NotSerializableException, the row isn't added and no more rows can be
+   * added, but the ones added before it can still be read.
+   */
+  def add(row: Map[String, Any]) {
+    try {
+      out.writeObject(row)
+    } catch {
+      case e: IOException => {
+        close()
+        throw e
+      }
+    }
+    count += 1
+    if (count % SpilledRows.ROWS_PER_RESET == 0) {
+      out.reset()
+    }
+  }
+
+  def close() {
+    if (out != null) {
+      out.close()
+      out = null
+    }
+  }
+
+  def size = count
+
+  def iterator: Iterator[Map[String, Any]] = new Iterator[Map[String, Any]] {
+    private var left = SpilledRows.this.count
+    private var in: ObjectInputStream = null
+
+    def hasNext = left > 0
+
+    def next() = {
+      if (left <= 0) {
+        throw new NoSuchElementException
+      }
+      if (in == null) {
+        in = new RowInputStream(new BufferedInputStream(new FileInputStream(file)), graph.graph)
+      }
+      val row = in.readObject().asInstanceOf[Map[String, Any]]
+      left -= 1
+      if (left == 0) {
+        in.close()
+      }
+      row
+    }
+  }
+
+  def delete() {
+    close()
+    file.delete()
+  }
+}
+
+object SpilledRows {
+  // the stream keeps references to what it has written until it is reset
+  private val ROWS_PER_RESET = 1000
+}
+
+private case class NodeReference(id: Long)
+
+private case class RelationshipReference(id: Long)
+
+/**
+ * The database that the nodes and relationships of the written rows come
+ * from, needed to look them up again when reading.
+ */
+private class GraphHolder {
+  var graph: GraphDatabaseService = null
+}
+
+private class RowOutputStream(out: OutputStream, graph: GraphHolder) extends ObjectOutputStream(out) {
+  enableReplaceObject(true)
+
+  override def replaceObject(obj: AnyRef): AnyRef = obj match {
+    case n: Node => {
+      graph.graph = n.getGraphDatabase
+      NodeReference(n.getId)
+    }
+    case r: Relationship => {
+      graph.graph = r.getGraphDatabase
+      RelationshipReference(r.getId)
+    }
+    case x => x
+  }
+}
+
+private class RowInputStream(in: InputStream, graph: GraphDatabaseService) extends ObjectInputStream(in) {
+  enableResolveObject(true)
+
+  override def resolveObject(obj: AnyRef): AnyRef = obj match {
+    case NodeReference(id) => graph.getNodeById(id)
+    case RelationshipReference(id) => graph.getRelationshipById(id)
+    case x => x
+  }
+}
@@ -23,7 +23,7 @@ import org.neo4j.graphdb.{Relationship, Node, PropertyContainer}
 import java.lang.String
 import org.neo4j.cypher.internal.symbols.{AnyType, NodeType, RelationshipType, Identifier}
 
-abstract class StartPipe[T <: PropertyContainer](inner: Pipe, name: String, createSource: Map[String, Any] => Iterable[T]) extends Pipe {
+abstract class StartPipe[T <: PropertyContainer](inner: Pipe, name: String, createSource: Map[String, Any] => Iterable[T]) extends RowPipe {
   def this(inner: Pipe, name: String, sourceIterable: Iterable[T]) = this (inner, name, m => sourceIterable)
 
   def identifierType: AnyType
@@ -37,6 +37,15 @@ abstract class StartPipe[T <: PropertyContainer](inner: Pipe, name: String, crea
     })
   }
 
+  def createRows(params: Map[String, Any], slots: Slots): Iterator[SlotRow] = {
+    val slot = slots(name)
+    RowPipe.rows(inner, params, slots).flatMap(row => {
+      createSource(row).iterator.map(x => row.copyWith(slot, x))
+    })
+  }
+
+  def rowSources: Seq[Pipe] = Seq(inner)
+
   def visibleName: String
 
   override def executionPlan(): String = inner.executionPlan() + "\r\n" + visibleName + "(" + name + ")"
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import org.neo4j.cypher.internal.commands.{Expression, SortItem}
+import java.lang.String
+import java.util.PriorityQueue
+import collection.mutable.ArrayBuffer
+
+/**
+ * Sorts the rows of its source and keeps only the first ones, used for
+ * ORDER BY followed by LIMIT. Instead of sorting all the rows it keeps the
+ * best ones seen so far in a bounded heap, so no more than the number of
+ * rows asked for are held at any time. Ties keep the order of the source,
+ * giving the same rows as a stable sort followed by a slice.
+ */
+class TopPipe(source: Pipe, val sortDescription: List[SortItem], countExpression: Expression)
+  extends Pipe with RowOrdering {
+  val symbols = source.symbols
+
+  assertDependenciesAreMet()
+
+  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = {
+    // the head of the heap is the row that sorts last, i.e. the first to
+    // go when a better row comes along
+    val heap = new PriorityQueue[RankedRow](16, new java.util.Comparator[RankedRow] {
+      def compare(a: RankedRow, b: RankedRow) = -compareRanked(a, b)
+    })
+    var count = -1
+    var position = 0L
+
+    source.createResults(params).foreach(row => {
+      if (count == -1) {
+        count = countExpression(row).asInstanceOf[Number].intValue()
+      }
+      val ranked = new RankedRow(row, position)
+      position += 1
+      if (heap.size < count) {
+        heap.add(ranked)
+      } else if (count > 0 && compareRanked(ranked, heap.peek()) < 0) {
+        heap.poll()
+        heap.add(ranked)
+      }
+    })
+
+    val result = new ArrayBuffer[Map[String, Any]](heap.size)
+    while (!heap.isEmpty) {
+      result += heap.poll().row
+    }
+    result.reverse
+  }
+
+  private def compareRanked(a: RankedRow, b: RankedRow): Int = {
+    val result = compareRows(a.row, b.row)
+    if (result != 0) result else java.lang.Long.signum(a.position - b.position)
+  }
+
+  override def executionPlan(): String = source.executionPlan() + "\r\nTop(" + sortDescription.mkString(",") + ", " + countExpression + ")"
+
+  private def assertDependenciesAreMet() {
+    sortDescription.map(_.returnItem.identifier).foreach( source.symbols.assertHas )
+  }
+
+  private class RankedRow(val row: Map[String, Any], val position: Long)
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes.aggregation
+
+import org.neo4j.cypher.internal.commands._
+import org.neo4j.cypher.CypherTypeException
+
+/**
+ * The state of one aggregation for all the groups of a GroupTable, kept in
+ * arrays indexed by group number. COUNT, SUM and AVG keep primitive
+ * accumulators instead of one boxed function object per group, other
+ * aggregations fall back to their AggregationFunction.
+ */
+abstract class AggregationColumn {
+  /**
+   * Makes room for the groups numbered below groupCount.
+   */
+  def ensureCapacity(groupCount: Int)
+
+  /**
+   * Adds this data to the aggregated total of the group.
+   */
+  def apply(group: Int, data: Map[String, Any])
+
+  /**
+   * The aggregated result of the group.
+   */
+  def result(group: Int): Any
+
+  protected def grownSize(length: Int, groupCount: Int) = math.max(groupCount, length * 2)
+}
+
+object AggregationColumn {
+  def apply(item: AggregationItem): AggregationColumn = item match {
+    case AliasAggregationItem(inner, _) => apply(inner)
+    case CountStar(_) => new CountStarColumn
+    case ValueAggregationItem(Count(value, _), _) => new CountColumn(value)
+    case ValueAggregationItem(Sum(value, _), _) => new SumColumn(value, "SUM")
+    case ValueAggregationItem(Avg(value, _), _) => new AvgColumn(value)
+    case _ => new FunctionColumn(item)
+  }
+}
+
+class CountStarColumn extends AggregationColumn {
+  private var counts = new Array[Int](0)
+
+  def ensureCapacity(groupCount: Int) {
+    if (counts.length < groupCount) {
+      counts = java.util.Arrays.copyOf(counts, grownSize(counts.length, groupCount))
+    }
+  }
+
+  def apply(group: Int, data: Map[String, Any]) {
+    counts(group) += 1
+  }
+
+  def result(group: Int): Any = counts(group)
+}
+
+class CountColumn(value: Expression) extends AggregationColumn {
+  private var counts = new Array[Int](0)
+
+  def ensureCapacity(groupCount: Int) {
+    if (counts.length < groupCount) {
+      counts = java.util.Arrays.copyOf(counts, grownSize(counts.length, groupCount))
+    }
+  }
+
+  def apply(group: Int, data: Map[String, Any]) {
+    if (value(data) != null) {
+      counts(group) += 1
+    }
+  }
+
+  def result(group: Int): Any = counts(group)
+}
+
+/**
+ * Sums numbers the way SumFunction does, with the same result type: the sum
+ * starts out as an Int and widens to Long, Float or Double as such values
+ * are added. Each group keeps its sum in a long or a double slot depending
+ * on its current type; numbers of other types fall back to a boxed sum.
+ */
+class SumColumn(value: Expression, name: String) extends AggregationColumn with Plus {
+  import SumColumn._
+
+  private var types = new Array[Byte](0)
+  private var longs = new Array[Long](0)
+  private var doubles = new Array[Double](0)
+  private var boxed: Array[Any] = null
+
+  def ensureCapacity(groupCount: Int) {
+    if (types.length < groupCount) {
+      val size = grownSize(types.length, groupCount)
+      types = java.util.Arrays.copyOf(types, size)
+      longs = java.util.Arrays.copyOf(longs, size)
+      doubles = java.util.Arrays.copyOf(doubles, size)
+      if (boxed != null) {
+        boxed = copyOf(boxed, size)
+      }
+    }
+  }
+
+  def apply(group: Int, data: Map[String, Any]) {
+    addValue(group, value(data))
+  }
+
+  /**
+   * Returns true if the value was a number and false if it was null.
+   */
+  protected def addValue(group: Int, obj: Any): Boolean = obj match {
+    case null => false
+    case number: Number => {
+      add(group, number)
+      true
+    }
+    case _ => throw new CypherTypeException("%s(%s) can only handle numerical values, or null.".format(name, value.identifier.name))
+  }
+
+  private def add(group: Int, number: Number) {
+    val numberType = typeOf(number)
+    types(group) match {
+      case INT => numberType match {
+        case INT => longs(group) = longs(group).toInt + number.intValue()
+        case LONG => changeType(group, LONG); longs(group) = longs(group) + number.longValue()
+        case FLOAT => changeType(group, FLOAT); doubles(group) = longs(group).toInt.toFloat + number.floatValue()
+        case DOUBLE => changeType(group, DOUBLE); doubles(group) = longs(group).toInt + number.doubleValue()
+        case BOXED => addBoxed(group, number)
+      }
+      case LONG => numberType match {
+        case INT | LONG => longs(group) = longs(group) + number.longValue()
+        case FLOAT => changeType(group, FLOAT); doubles(group) = longs(group).toFloat + number.floatValue()
+        case DOUBLE => changeType(group, DOUBLE); doubles(group) = longs(group) + number.doubleValue()
+        case BOXED => addBoxed(group, number)
+      }
+      case FLOAT => numberType match {
+        case INT | LONG | FLOAT => doubles(group) = doubles(group).toFloat + number.floatValue()
+        case DOUBLE => changeType(group, DOUBLE); doubles(group) = doubles(group) + number.doubleValue()
+        case BOXED => addBoxed(group, number)
+      }
+      case DOUBLE => numberType match {
+        case BOXED => addBoxed(group, number)
+        case _ => doubles(group) = doubles(group) + number.doubleValue()
+      }
+      case BOXED => boxed(group) = plus(boxed(group), number)
+    }
+  }
+
+  private def changeType(group: Int, newType: Byte) {
+    types(group) = newType
+  }
+
+  private def addBoxed(group: Int, number: Number) {
+    if (boxed == null) {
+      boxed = new Array[Any](types.length)
+    }
+    boxed(group) = plus(result(group), number)
+    types(group) = BOXED
+  }
+
+  def result(group: Int): Any = types(group) match {
+    case INT => longs(group).toInt
+    case LONG => longs(group)
+    case FLOAT => doubles(group).toFloat
+    case DOUBLE => doubles(group)
+    case BOXED => boxed(group)
+  }
+
+  private def copyOf(array: Array[Any], size: Int): Array[Any] = {
+    val copy = new Array[Any](size)
+    System.arraycopy(array, 0, copy, 0, array.length)
+    copy
+  }
+}
+
+object SumColumn {
+  private val INT: Byte = 0
+  private val LONG: Byte = 1
+  private val FLOAT: Byte = 2
+  private val DOUBLE: Byte = 3
+  private val BOXED: Byte = 4
+
+  private def typeOf(number: Number): Byte = number match {
+    case _: java.lang.Integer | _: java.lang.Short | _: java.lang.Byte => INT
+    case _: java.lang.Long => LONG
+    case _: java.lang.Float => FLOAT
+    case _: java.lang.Double => DOUBLE
+    case _ => BOXED
+  }
+}
+
+/**
+ * Averages numbers the way AvgFunction does, by dividing a SumColumn with
+ * a count.
+ */
+class AvgColumn(value: Expression) extends SumColumn(value, "AVG") {
+  private var counts = new Array[Int](0)
+
+  override def ensureCapacity(groupCount: Int) {
+    super.ensureCapacity(groupCount)
+    if (counts.length < groupCount) {
+      counts = java.util.Arrays.copyOf(counts, grownSize(counts.length, groupCount))
+    }
+  }
+
+  override def apply(group: Int, data: Map[String, Any]) {
+    if (addValue(group, value(data))) {
+      counts(group) += 1
+    }
+  }
+
+  override def result(group: Int): Any = divide(super.result(group), counts(group))
+}
+
+/**
+ * Any other aggregation, using one AggregationFunction per group.
+ */
+class FunctionColumn(item: AggregationItem) extends AggregationColumn {
+  private var functions = new Array[AggregationFunction](0)
+
+  def ensureCapacity(groupCount: Int) {
+    if (functions.length < groupCount) {
+      val grown = new Array[AggregationFunction](grownSize(functions.length, groupCount))
+      System.arraycopy(functions, 0, grown, 0, functions.length)
+      functions = grown
+    }
+  }
+
+  def apply(group: Int, data: Map[String, Any]) {
+    if (functions(group) == null) {
+      functions(group) = item.createAggregationFunction
+    }
+    functions(group)(data)
+  }
+
+  def result(group: Int): Any = functions(group).result
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes.aggregation
+
+/**
+ * Numbers the groups of rows with equal key values 0, 1, 2... in the order
+ * they are first seen. The table is open addressed with linear probing over
+ * an array of group numbers, so finding the group of a row doesn't allocate
+ * anything; the key values are only copied when a new group is added.
+ * Arrays are compared by their contents.
+ */
+class GroupTable(keyNames: Array[String]) {
+  // group number + 1 per slot, 0 for an empty slot
+  private var slots = new Array[Int](GroupTable.INITIAL_CAPACITY * 2)
+  private var hashes = new Array[Int](GroupTable.INITIAL_CAPACITY)
+  private var keys = new Array[Array[Any]](GroupTable.INITIAL_CAPACITY)
+  private var count = 0
+
+  def size = count
+
+  def keyOf(group: Int): Array[Any] = keys(group)
+
+  /**
+   * The group of the row, which is added to the table if it isn't there
+   * already and create is true. Returns -1 for a row of a new group when
+   * create is false.
+   */
+  def groupOf(row: Map[String, Any], create: Boolean): Int = {
+    val hash = hashOf(row)
+    val mask = slots.length - 1
+    var slot = spread(hash) & mask
+    var group = slots(slot) - 1
+    while (group >= 0 && !(hashes(group) == hash && sameKey(group, row))) {
+      slot = (slot + 1) & mask
+      group = slots(slot) - 1
+    }
+    if (group >= 0) group
+    else if (create) add(row, hash, slot)
+    else -1
+  }
+
+  private def add(row: Map[String, Any], hash: Int, slot: Int): Int = {
+    val group = count
+    if (group == keys.length) {
+      hashes = java.util.Arrays.copyOf(hashes, group * 2)
+      val newKeys = new Array[Array[Any]](group * 2)
+      System.arraycopy(keys, 0, newKeys, 0, group)
+      keys = newKeys
+    }
+    val key = new Array[Any](keyNames.length)
+    var i = 0
+    while (i < key.length) {
+      key(i) = row(keyNames(i))
+      i += 1
+    }
+    keys(group) = key
+    hashes(group) = hash
+    slots(slot) = group + 1
+    count += 1
+    // keep the load factor at or below one half
+    if (count * 2 > slots.length) {
+      rehash(slots.length * 2)
+    }
+    group
+  }
+
+  private def rehash(capacity: Int) {
+    slots = new Array[Int](capacity)
+    val mask = capacity - 1
+    var group = 0
+    while (group < count) {
+      var slot = spread(hashes(group)) & mask
+      while (slots(slot) != 0) {
+        slot = (slot + 1) & mask
+      }
+      slots(slot) = group + 1
+      group += 1
+    }
+  }
+
+  private def sameKey(group: Int, row: Map[String, Any]): Boolean = {
+    val key = keys(group)
+    var i = 0
+    while (i < key.length) {
+      if (!same(key(i), row(keyNames(i)))) {
+        return false
+      }
+      i += 1
+    }
+    true
+  }
+
+  private def same(a: Any, b: Any): Boolean =
+    if (a.isInstanceOf[Array[_]] && b.isInstanceOf[Array[_]]) a.asInstanceOf[Array[_]].deep == b.asInstanceOf[Array[_]].deep
+    else a == b
+
+  private def hashOf(row: Map[String, Any]): Int = {
+    var hash = 0
+    var i = 0
+    while (i < keyNames.length) {
+      hash = 31 * hash + (row(keyNames(i)) match {
+        case null => 0
+        case x: Array[_] => x.deep.##
+        case x => x.##
+      })
+      i += 1
+    }
+    hash
+  }
+
+  private def spread(hash: Int) = {
+    val h = hash * -1640531527 // 0x9E3779B9
+    h ^ (h >>> 16)
+  }
+}
+
+object GroupTable {
+  private val INITIAL_CAPACITY = 16
+}
@@ -27,8 +27,9 @@ class DoubleOptionalPatternMatcher(bindings: Map[String, MatchingPair],
                                    predicates: Seq[Predicate],
                                    includeOptionals: Boolean,
                                    source: Map[String, Any],
-                                   doubleOptionalPaths: Seq[DoubleOptionalPath])
-  extends PatternMatcher(bindings, predicates, includeOptionals, source) {
+                                   doubleOptionalPaths: Seq[DoubleOptionalPath],
+                                   declarationIndex: Map[String, Int] = Map())
+  extends PatternMatcher(bindings, predicates, includeOptionals, source, declarationIndex) {
 
   override protected def traverseNextSpecificNode[U](remaining: Set[MatchingPair],
                                                      history: History,
@@ -26,8 +26,11 @@ import org.neo4j.graphdb.Node
  * entities corresponding to the pattern items.
  *
  * It's also used to emit the subgraph when the whole pattern has been matched (that's the toMap method)
+ *
+ * checkedKeys are the keys that were bound the last time the predicates were checked on this path, so
+ * that a predicate is only evaluated when the last of its dependencies gets bound.
  */
-class History(source:Map[String,Any], seen: Set[MatchingPair]=Set()) {
+class History(source:Map[String,Any], seen: Set[MatchingPair]=Set(), val checkedKeys: Set[String]=Set()) {
   def filter(relationships: Set[PatternRelationship]): Set[PatternRelationship] = relationships.filterNot(r => seen.exists(_.matches(r)))
 
   def filter(relationships: Seq[GraphRelationship]): Seq[GraphRelationship] = relationships.filterNot(gr => gr match {
@@ -35,9 +38,11 @@ class History(source:Map[String,Any], seen: Set[MatchingPair]=Set()) {
     case VariableLengthGraphRelationship(p) => seen.exists(h => h.matches(p))
   }).toSeq
 
-  def add(pair: MatchingPair): History = new History(source, seen ++ Seq(pair))
+  def add(pair: MatchingPair): History = new History(source, seen ++ Seq(pair), checkedKeys)
+
+  def checked: History = new History(source, seen, toMap.keySet)
 
-  def toMap: Map[String, Any] = source ++ seen.flatMap(_ match {
+  lazy val toMap: Map[String, Any] = source ++ seen.flatMap(_ match {
       case MatchingPair(pe: PatternNode, entity: Node) => Seq(pe.key -> entity)
       case MatchingPair(pe: PatternRelationship, entity: SingleGraphRelationship) => Seq(pe.key -> entity.rel)
       case MatchingPair(pe: PatternRelationship, null) => Seq(pe.key -> null)
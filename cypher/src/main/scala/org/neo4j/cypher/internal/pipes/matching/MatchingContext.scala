@@ -75,7 +75,14 @@ class MatchingContext(patterns: Seq[Pattern], boundIdentifiers: SymbolTable, pre
       case _ =>
     })
 
-    new PatternGraph(patternNodeMap.toMap, patternRelMap.toMap, boundIdentifiers)
+    // bound nodes first, then the rest in the order the pattern mentions them
+    val declarationOrder = (boundIdentifiers.keys ++ patterns.flatMap(_ match {
+      case RelatedTo(left, right, _, _, _, _, _) => Seq(left, right)
+      case VarLengthRelatedTo(_, start, end, _, _, _, _, _, _, _) => Seq(start, end)
+      case _ => Seq()
+    })).distinct.filter(patternNodeMap.contains)
+
+    new PatternGraph(patternNodeMap.toMap, patternRelMap.toMap, boundIdentifiers, declarationOrder)
   }
 }
 
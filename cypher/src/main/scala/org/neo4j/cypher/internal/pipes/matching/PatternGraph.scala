@@ -25,7 +25,11 @@ import org.neo4j.cypher.{PatternException, SyntaxException}
 
 class PatternGraph(val patternNodes: Map[String, PatternNode],
                    val patternRels: Map[String, PatternRelationship],
-                   val bindings: SymbolTable) {
+                   val bindings: SymbolTable,
+                   declarationOrder: Seq[String] = Seq()) {
+
+  // the position of each pattern node in the query, used to pick between otherwise equal choices
+  val declarationIndex: Map[String, Int] = declarationOrder.zipWithIndex.toMap
 
   val (patternGraph, optionalElements, containsLoops, doubleOptionalPaths) = validatePattern(patternNodes, patternRels, bindings)
 
@@ -19,14 +19,24 @@
  */
 package org.neo4j.cypher.internal.pipes.matching
 
-import org.neo4j.graphdb.Node
+import org.neo4j.graphdb.{Relationship, Node}
 import org.neo4j.cypher.internal.commands.{True, Predicate}
+import collection.mutable.{Map => MutableMap}
 
-class PatternMatcher(bindings: Map[String, MatchingPair], predicates: Seq[Predicate], includeOptionals: Boolean, source:Map[String,Any])
+class PatternMatcher(bindings: Map[String, MatchingPair], predicates: Seq[Predicate], includeOptionals: Boolean, source:Map[String,Any],
+                     declarationIndex: Map[String, Int] = Map())
   extends Traversable[Map[String, Any]] {
   val boundNodes = bindings.filter(_._2.patternElement.isInstanceOf[PatternNode])
   val boundRels = bindings.filter(_._2.patternElement.isInstanceOf[PatternRelationship])
 
+  // the predicates to check while matching, together with the keys they need bound
+  private val predicatesWithDependencies: Seq[(Predicate, Set[String])] =
+    predicates.filterNot(_.containsIsNull).map(predicate => (predicate, predicate.dependencies.map(_.name).toSet))
+
+  // expansions counted past this are all considered to be expensive
+  private val maxDegreeEstimate = 100
+  private val degreeEstimates = MutableMap[(String, Node), Int]()
+
   def foreach[U](f: (Map[String, Any]) => U) {
     debug("startPatternMatching")
 
@@ -46,11 +56,12 @@ class PatternMatcher(bindings: Map[String, MatchingPair], predicates: Seq[Predic
       return false
     }
 
-    val newHistory = history.add(current)
-    if (!isMatchSoFar(newHistory)) {
+    val uncheckedHistory = history.add(current)
+    if (!isMatchSoFar(uncheckedHistory)) {
       debug("failed subgraph because of predicate")
       return false
     }
+    val newHistory = uncheckedHistory.checked
 
     val notYetVisited: List[PatternRelationship] = getPatternRelationshipsNotYetVisited(current.patternNode, history)
 
@@ -65,8 +76,8 @@ class PatternMatcher(bindings: Map[String, MatchingPair], predicates: Seq[Predic
                               history: History,
                               yielder: Map[String, Any] => U): Boolean = {
 
-    val current = remaining.head
-    val leftToDoAfterThisOne = remaining.tail
+    val current = if (remaining.size == 1) remaining.head else remaining.minBy(pair => (estimatedCost(pair, history), declarationOrder(pair)))
+    val leftToDoAfterThisOne = remaining - current
 
     traverseNextSpecificNode(remaining, history, yielder, current, leftToDoAfterThisOne, false)
   }
@@ -89,14 +100,15 @@ class PatternMatcher(bindings: Map[String, MatchingPair], predicates: Seq[Predic
       } 
 
       if (isMatchSoFar(newHistory)) {
+        val checkedHistory = newHistory.checked
         val nextNode = rel.getOtherNode(gNode)
 
         val nextPair = MatchingPair(nextPNode, nextNode)
 
         remaining.find(_.patternElement.key == nextPNode.key) match {
-          case None => traverseNode(remaining ++ Set(nextPair), newHistory, yielder)
+          case None => traverseNode(remaining ++ Set(nextPair), checkedHistory, yielder)
           case Some(x) => if (x.entity == nextNode)
-            traverseNode(remaining ++ Set(nextPair), newHistory, yielder)
+            traverseNode(remaining ++ Set(nextPair), checkedHistory, yielder)
           else {
             debug("other side of relationship already found, and doesn't match")
             false
@@ -129,7 +141,11 @@ class PatternMatcher(bindings: Map[String, MatchingPair], predicates: Seq[Predic
 
     val (pNode, gNode) = currentNode.getPatternAndGraphPoint
 
-    val relationships = currentNode.getGraphRelationships(currentRel)
+    val relationships = boundRels.get(currentRel.key) match {
+      case Some(MatchingPair(_, bound: Relationship)) if !currentRel.isInstanceOf[VariableLengthPatternRelationship] =>
+        currentRel.getGraphRelationships(pNode, gNode, bound)
+      case _ => currentNode.getGraphRelationships(currentRel)
+    }
     val step1 = history.filter(relationships)
     val notVisitedRelationships: Seq[GraphRelationship] = step1.
       filter(x => alreadyPinned(currentRel, x))
@@ -155,12 +171,31 @@ class PatternMatcher(bindings: Map[String, MatchingPair], predicates: Seq[Predic
     false
   }
 
+  // only the predicates that could not be checked the last time are checked now
   private def isMatchSoFar(history: History): Boolean = {
     val m = history.toMap
-    val predicate = predicates.filter(predicate=> !predicate.containsIsNull && predicate.dependencies.map(_.name).forall(m contains)).toList
-    predicate.forall(_.isMatch(m))
+    val checked = history.checkedKeys
+    predicatesWithDependencies.forall {
+      case (predicate, dependencies) =>
+        !dependencies.forall(m contains) || (dependencies.nonEmpty && dependencies.forall(checked)) || predicate.isMatch(m)
+    }
   }
 
+  /*
+  Picks the node to continue from. Nodes with few relationships left to expand come
+  first, so that the pattern is narrowed down as early as possible. The estimates change
+  as the graph changes, ties are broken on declaration order.
+   */
+  private def estimatedCost(pair: MatchingPair, history: History): Int = pair.entity match {
+    case node: Node => getPatternRelationshipsNotYetVisited(pair.patternNode, history).map(pRel =>
+      degreeEstimates.getOrElseUpdate((pRel.key, node), pRel.estimateDegree(pair.patternNode, node, maxDegreeEstimate))).sum
+    case _ => 0
+  }
+
+  // equally cheap nodes are taken in the order they are declared, so the order of the results doesn't depend
+  // on the order the bindings come in
+  private def declarationOrder(pair: MatchingPair): Int = declarationIndex.getOrElse(pair.patternElement.key, Int.MaxValue)
+
   private def traverseNextNodeOrYield[U](remaining: Set[MatchingPair], history: History, yielder: Map[String, Any] => U): Boolean = {
     debug(history, remaining)
 
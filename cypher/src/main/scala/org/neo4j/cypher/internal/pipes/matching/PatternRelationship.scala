@@ -50,6 +50,39 @@ class PatternRelationship(key: String,
       result
   }
 
+  // the relationship the pattern is already bound to, if it can be reached from realNode the way the pattern says
+  def getGraphRelationships(node: PatternNode, realNode: Node, bound: Relationship): Seq[GraphRelationship] = {
+    val typeMatches = relType match {
+      case Some(typeName) => bound.getType.name == typeName
+      case None => true
+    }
+    val directionMatches = getDirection(node) match {
+      case Direction.OUTGOING => bound.getStartNode == realNode
+      case Direction.INCOMING => bound.getEndNode == realNode
+      case Direction.BOTH => bound.getStartNode == realNode || bound.getEndNode == realNode
+    }
+
+    if (typeMatches && directionMatches && (startNode != endNode || bound.getOtherNode(realNode) == realNode))
+      Seq(SingleGraphRelationship(bound))
+    else
+      Seq()
+  }
+
+  // the number of relationships an expansion from realNode would look at, counted up to max
+  def estimateDegree(node: PatternNode, realNode: Node, max: Int): Int = {
+    val relationships = (relType match {
+      case Some(typeName) => realNode.getRelationships(getDirection(node), DynamicRelationshipType.withName(typeName))
+      case None => realNode.getRelationships(getDirection(node))
+    }).iterator()
+
+    var count = 0
+    while (count < max && relationships.hasNext) {
+      relationships.next()
+      count += 1
+    }
+    count
+  }
+
   protected def getDirection(node: PatternNode): Direction = {
     dir match {
       case Direction.OUTGOING => if (node == startNode) Direction.OUTGOING else Direction.INCOMING
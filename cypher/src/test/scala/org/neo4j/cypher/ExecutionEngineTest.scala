@@ -1687,6 +1687,26 @@ RETURN x0.name?
     })
   }
 
+  @Test def queriesThatOnlyDifferInComparedLiteralsShouldGiveTheirOwnResults() {
+    val andres = createNode("name" -> "Andres")
+    val peter = createNode("name" -> "Peter")
+    val query = "start n=node(%d,%d) where n.name = '%s' return n"
+
+    val first = parseAndExecute(query.format(andres.getId, peter.getId, "Andres")).columnAs[Node]("n").toList
+    val second = parseAndExecute(query.format(andres.getId, peter.getId, "Peter")).columnAs[Node]("n").toList
+
+    assertEquals(List(andres), first)
+    assertEquals(List(peter), second)
+  }
+
+  @Test def syntaxErrorsShouldPointIntoTheQueryAsItWasWritten() {
+    val query = "start  n=node(0)   where n.name = 'x' returnn n"
+    val expected = intercept[SyntaxException](new CypherParser().parse(query))
+    val error = intercept[SyntaxException](engine.execute(query))
+
+    assertEquals(expected.offset, error.offset)
+  }
+
   @Test def createEngineWithSpecifiedParserVersion() {
     val db = new ImpermanentGraphDatabase(Map[String, String]("cypher_parser_version" -> "1.5").asJava)
     val engine = new ExecutionEngine(db)
@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal
+
+import org.scalatest.Assertions
+import org.junit.Test
+
+class NormalizedQueryTest extends Assertions {
+  @Test def shouldCollapseWhitespaceBeforeReturn() {
+    val normalized = NormalizedQuery("  start n=node(1)\n\twhere   n.name = 'a  b'\nreturn   n.name,  n", false)
+
+    assert(normalized.text === "start n=node(1) where n.name = 'a  b' return   n.name,  n")
+    assert(normalized.literals === Map())
+  }
+
+  @Test def shouldReplaceComparedLiteralsInWhereWithParameters() {
+    val normalized = NormalizedQuery("start n=node(1) where n.name = 'Andres' and n.age>36 and n.x <> -1.5 return n", true)
+
+    assert(normalized.text === "start n=node(1) where n.name = {__literal0} and n.age>{__literal1} and n.x <> {__literal2} return n")
+    assert(normalized.literals === Map("__literal0" -> "Andres", "__literal1" -> 36.0, "__literal2" -> -1.5))
+  }
+
+  @Test def queriesThatOnlyDifferInLiteralsNormalizeToTheSameText() {
+    val a = NormalizedQuery("start n=node(1) where n.name = \"Andres\" return n", true)
+    val b = NormalizedQuery("start n=node(1)  where n.name = 'Peter' return n", true)
+
+    assert(a.text === b.text)
+    assert(a.literals != b.literals)
+  }
+
+  @Test def shouldKeepLiteralsOutsideOfComparisons() {
+    val query = "start n=node(1) match n-[:KNOWS*1..3]->m where 1 = m.x and m.name =~ /A.*/ return m, 'x'"
+    val normalized = NormalizedQuery(query, true)
+
+    assert(normalized.text === query)
+    assert(normalized.literals === Map())
+  }
+
+  @Test def shouldNotMistakeIdentifiersForLiterals() {
+    val query = "start n=node(1) where n.x = n2.x and n.y = `1 2` return n"
+
+    assert(NormalizedQuery(query, true).text === query)
+  }
+}
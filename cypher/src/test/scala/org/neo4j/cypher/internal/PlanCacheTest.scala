@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal
+
+import org.scalatest.Assertions
+import org.junit.Test
+import org.neo4j.cypher.{ExecutionResult, ExecutionPlan}
+
+class PlanCacheTest extends Assertions {
+  @Test def shouldCountHitsAndMisses() {
+    val cache = new PlanCache(5)
+    val plan = new FakePlan
+
+    assert(cache.getOrElseUpdate("a", plan) === plan)
+    assert(cache.getOrElseUpdate("a", new FakePlan) === plan)
+    assert(cache.getOrElseUpdate("b", new FakePlan) != plan)
+
+    assert(cache.hitCount === 1)
+    assert(cache.missCount === 2)
+    assert(cache.size === 2)
+  }
+
+  @Test def shouldCountEvictions() {
+    val cache = new PlanCache(2)
+    List("a", "b", "c", "d").foreach(query => cache.getOrElseUpdate(query, new FakePlan))
+
+    assert(cache.size === 2)
+    assert(cache.evictionCount === 2)
+  }
+
+  @Test def shouldNotCacheWhenTheSizeIsZero() {
+    val cache = new PlanCache(0)
+    cache.getOrElseUpdate("a", new FakePlan)
+    cache.getOrElseUpdate("a", new FakePlan)
+
+    assert(cache.size === 0)
+    assert(cache.missCount === 2)
+  }
+
+  class FakePlan extends ExecutionPlan {
+    def execute(params: Map[String, Any]): ExecutionResult = null
+  }
+}
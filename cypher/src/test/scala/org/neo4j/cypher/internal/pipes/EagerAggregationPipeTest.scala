@@ -26,7 +26,7 @@ import scala.collection.JavaConverters._
 import org.neo4j.cypher.internal.commands._
 import org.scalatest.junit.JUnitSuite
 import org.neo4j.cypher.SyntaxException
-import org.neo4j.cypher.internal.symbols.{IntegerType, SymbolTable, Identifier, NodeType}
+import org.neo4j.cypher.internal.symbols.{NumberType, IntegerType, SymbolTable, Identifier, NodeType}
 
 class EagerAggregationPipeTest extends JUnitSuite {
   @Test def shouldReturnColumnsFromReturnItems() {
@@ -80,6 +80,49 @@ class EagerAggregationPipeTest extends JUnitSuite {
     assertEquals(List(Map("count(name)" -> 3)), aggregationPipe.createResults(Map()).toList)
   }
 
+  @Test def shouldSumAndAverageEachGroup() {
+    val source = new FakePipe(List(
+      Map("name" -> "Andres", "age" -> 36),
+      Map("name" -> "Peter", "age" -> 38L),
+      Map("name" -> "Michael", "age" -> 36),
+      Map("name" -> "Michael", "age" -> 31.5d)), nameAndAgeSymbols)
+
+    val returnItems = List(ExpressionReturnItem(Entity("name")))
+    val grouping = List(ValueAggregationItem(Sum(Entity("age"), "sum(age)")), ValueAggregationItem(Avg(Entity("age"), "avg(age)")))
+    val aggregationPipe = new EagerAggregationPipe(source, returnItems, grouping)
+
+    assertThat(aggregationPipe.createResults(Map()).toIterable.asJava, hasItems(
+      Map("name" -> "Andres", "sum(age)" -> 36, "avg(age)" -> 36.0d),
+      Map("name" -> "Peter", "sum(age)" -> 38L, "avg(age)" -> 38L),
+      Map("name" -> "Michael", "sum(age)" -> 67.5d, "avg(age)" -> 33.75d)))
+  }
+
+  @Test def shouldGiveTheSameResultWhenGroupsAreSpilledToDisk() {
+    val rows = (0 until 1000).map(i => Map("name" -> ("name" + (i % 37)), "age" -> i)).toList
+    val returnItems = List(ExpressionReturnItem(Entity("name")))
+    val grouping = List(CountStar(), ValueAggregationItem(Sum(Entity("age"), "sum(age)")))
+
+    val inMemory = new EagerAggregationPipe(new FakePipe(rows, nameAndAgeSymbols), returnItems, grouping)
+    val spilling = new EagerAggregationPipe(new FakePipe(rows, nameAndAgeSymbols), returnItems, grouping, 5)
+
+    val expected = inMemory.createResults(Map()).toSet
+    assertEquals(37, expected.size)
+    assertEquals(expected, spilling.createResults(Map()).toSet)
+  }
+
+  @Test def shouldAggregateInMemoryWhenRowsCannotBeSpilled() {
+    val rows = (0 until 100).map(i => Map("name" -> ("name" + (i % 10)), "age" -> new Object)).toList
+    val returnItems = List(ExpressionReturnItem(Entity("name")))
+    val grouping = List(ValueAggregationItem(Count(Entity("age"), "count(age)")))
+    val aggregationPipe = new EagerAggregationPipe(new FakePipe(rows, nameAndAgeSymbols), returnItems, grouping, 2)
+
+    val result = aggregationPipe.createResults(Map()).toList
+    assertEquals(10, result.size)
+    assertTrue(result.forall(_("count(age)") == 10))
+  }
+
   private def createSymbolTableFor(name:String) = new SymbolTable(Identifier(name, NodeType()))
 
+  private def nameAndAgeSymbols = new SymbolTable(Identifier("name", NodeType()), Identifier("age", NumberType()))
+
 }
\ No newline at end of file
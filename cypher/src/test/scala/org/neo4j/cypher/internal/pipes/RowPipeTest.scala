@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import org.junit.Assert._
+import org.junit.Test
+import org.scalatest.junit.JUnitSuite
+import org.neo4j.cypher.internal.commands._
+import org.neo4j.cypher.internal.symbols.{NumberType, Identifier, SymbolTable}
+
+class RowPipeTest extends JUnitSuite {
+  val returnItems = List(ExpressionReturnItem(Entity("x")))
+
+  @Test def shouldGiveTheSameResultsAsTheMapPipes() {
+    val source = new CountingRowPipe(20)
+    val filter = new FilterPipe(source, GreaterThan(Entity("x"), Literal(5)))
+    val slice = new SlicePipe(new ExtractPipe(filter, returnItems), Some(Literal(2)), Some(Literal(4)))
+    val result = new ColumnFilterPipe(slice, returnItems)
+
+    assertTrue(result.canCreateRows)
+    assertEquals(result.createResults(Map()).toList, result.createResultsFromRows(Map(), slotsFor(slice)).toList)
+  }
+
+  @Test def shouldOnlyPullTheRowsTheLimitNeeds() {
+    val source = new CountingRowPipe(1000)
+    val slice = new SlicePipe(new ExtractPipe(source, returnItems), None, Some(Literal(10)))
+    val result = new ColumnFilterPipe(slice, returnItems)
+
+    assertEquals((0 until 10).map(x => Map("x" -> x)).toList, result.createResultsFromRows(Map(), slotsFor(slice)).toList)
+    assertEquals(10, source.pulled)
+  }
+
+  @Test def shouldNotCreateRowsThroughPipesThatCannot() {
+    val source = new FakePipe(List(Map("x" -> 1)), new SymbolTable(Identifier("x", NumberType())))
+    val result = new ColumnFilterPipe(new ExtractPipe(source, returnItems), returnItems)
+
+    assertFalse(result.canCreateRows)
+  }
+
+  @Test def shouldSeeParametersThroughTheRow() {
+    val slots = new Slots(Seq("x"))
+    val row = new ParameterPipe().createRows(Map("p" -> 42), slots).next()
+
+    assertEquals(42, Parameter("p")(row))
+    assertEquals(None, row.get("x"))
+
+    row.set(slots("x"), 1)
+    assertEquals(Some(1), row.get("x"))
+  }
+
+  @Test def extractShouldNotWriteIntoTheRowsItIsGiven() {
+    val item = ExpressionReturnItem(Add(Entity("x"), Literal(1)))
+    val slots = new Slots(Seq("x", item.columnName))
+    val upstream = SlotRow(slots, Map()).copyWith(slots("x"), 1)
+
+    val extracted = new ExtractPipe(new SingleRowPipe(upstream), List(item)).createRows(Map(), slots).next()
+
+    assertEquals(Some(2), extracted.get(item.columnName))
+    assertEquals(None, upstream.get(item.columnName))
+  }
+
+  private def slotsFor(pipe: Pipe) = new Slots(pipe.symbols.keys)
+}
+
+class SingleRowPipe(row: SlotRow) extends RowPipe {
+  val symbols = new SymbolTable(Identifier("x", NumberType()))
+
+  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = List(row)
+
+  def createRows(params: Map[String, Any], slots: Slots): Iterator[SlotRow] = Iterator.single(row)
+
+  def rowSources: Seq[Pipe] = Seq()
+
+  def executionPlan(): String = "SINGLE"
+}
+
+class CountingRowPipe(count: Int) extends RowPipe {
+  var pulled = 0
+
+  val symbols = new SymbolTable(Identifier("x", NumberType()))
+
+  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = (0 until count).map(x => Map("x" -> x))
+
+  def createRows(params: Map[String, Any], slots: Slots): Iterator[SlotRow] = {
+    val slot = slots("x")
+    (0 until count).iterator.map(x => {
+      pulled += 1
+      SlotRow(slots, params).copyWith(slot, x)
+    })
+  }
+
+  def rowSources: Seq[Pipe] = Seq()
+
+  def executionPlan(): String = "COUNTING"
+}
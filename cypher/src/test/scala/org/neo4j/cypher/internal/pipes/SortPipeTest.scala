@@ -25,6 +25,8 @@ import org.scalatest.junit.JUnitSuite
 import org.neo4j.cypher.internal.commands.{Entity, ExpressionReturnItem, SortItem}
 import org.neo4j.cypher.internal.symbols.{Identifier, SymbolTable}
 import java.lang.String
+import java.io.File
+import org.neo4j.kernel.impl.util.FileUtils
 
 class SortPipeTest extends JUnitSuite{
   @Test def emptyInIsEmptyOut() {
@@ -87,6 +89,84 @@ class SortPipeTest extends JUnitSuite{
       Map("y" -> null)), sortPipe.createResults(Map()).toList)
   }
 
+  @Test def sortingMoreRowsThanFitInMemoryGivesTheSameResult() {
+    val rows = (0 until 100).map(i => Map[String, Any]("x" -> (i * 37) % 10, "y" -> i))
+    val sortItems = List(SortItem(ExpressionReturnItem(Entity("x")), true))
+
+    val inMemory = new SortPipe(new FakePipe(rows), sortItems)
+    val spilling = new SortPipe(new FakePipe(rows), sortItems, 7)
+
+    val expected = inMemory.createResults(Map()).toList
+    assertEquals(expected, spilling.createResults(Map()).toList)
+    // the runs can be read more than once
+    assertEquals(expected, spilling.createResults(Map()).toList)
+  }
+
+  @Test def spilledSortIsStable() {
+    val rows = (0 until 50).map(i => Map[String, Any]("x" -> i % 3, "y" -> i))
+    val sortPipe = new SortPipe(new FakePipe(rows), List(SortItem(ExpressionReturnItem(Entity("x")), false)), 4)
+
+    val result = sortPipe.createResults(Map()).toList
+
+    assertEquals(rows.sortWith((a, b) => a("x").asInstanceOf[Int] > b("x").asInstanceOf[Int]).toList, result)
+  }
+
+  @Test def rowsThatCantBeWrittenToDiskAreKeptInMemory() {
+    val rows = (0 until 20).map(i => Map[String, Any]("x" -> (20 - i), "y" -> new Object()))
+    val sortPipe = new SortPipe(new FakePipe(rows), List(SortItem(ExpressionReturnItem(Entity("x")), true)), 5)
+
+    assertEquals(rows.reverse.toList, sortPipe.createResults(Map()).toList)
+  }
+
+  @Test def spilledRunsAreDeletedWhenTheResultHasBeenRead() {
+    val tempDirectory = emptyTempDirectory()
+    val rows = (0 until 50).map(i => Map[String, Any]("x" -> (i * 7) % 11))
+    val sortPipe = new SortPipe(new FakePipe(rows), List(SortItem(ExpressionReturnItem(Entity("x")), true)), 5, tempDirectory)
+
+    val result = sortPipe.createResults(Map())
+    assertTrue(tempDirectory.list().nonEmpty)
+    assertEquals(50, result.toList.size)
+    assertEquals(List(), tempDirectory.list().toList)
+  }
+
+  @Test def spilledRunsAreDeletedWhenOnlyPartOfTheResultIsRead() {
+    val tempDirectory = emptyTempDirectory()
+    val rows = (0 until 50).map(i => Map[String, Any]("x" -> (i * 7) % 11))
+    val sortPipe = new SortPipe(new FakePipe(rows), List(SortItem(ExpressionReturnItem(Entity("x")), true)), 5, tempDirectory)
+
+    val result = sortPipe.createResults(Map())
+    assertEquals(3, result.take(3).size)
+    assertEquals(List(), tempDirectory.list().toList)
+  }
+
+  @Test def spilledRunsAreDeletedWhenTheSourceFails() {
+    val tempDirectory = emptyTempDirectory()
+    val rows = (0 until 50).map(i => Map[String, Any]("x" -> i))
+    val failing = new FakePipe(rows) {
+      override def createResults[U](params: Map[String, Any]) = new Traversable[Map[String, Any]] {
+        def foreach[V](f: Map[String, Any] => V) {
+          rows.foreach(f)
+          throw new RuntimeException("source failed")
+        }
+      }
+    }
+    val sortPipe = new SortPipe(failing, List(SortItem(ExpressionReturnItem(Entity("x")), true)), 5, tempDirectory)
+
+    try {
+      sortPipe.createResults(Map())
+      fail("expected the failure of the source")
+    } catch {
+      case e: RuntimeException => assertEquals("source failed", e.getMessage)
+    }
+    assertEquals(List(), tempDirectory.list().toList)
+  }
+
+  private def emptyTempDirectory(): File = {
+    val directory = new File("target/sort-pipe-test")
+    FileUtils.deleteRecursively(directory)
+    directory.mkdirs()
+    directory
+  }
 }
 
 class FakePipe(data: Seq[Map[String, Any]], val symbols: SymbolTable) extends Pipe {
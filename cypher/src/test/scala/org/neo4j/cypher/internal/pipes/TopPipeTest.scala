@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import org.junit.Test
+import org.junit.Assert._
+import org.scalatest.junit.JUnitSuite
+import org.neo4j.cypher.internal.commands.{Add, Entity, ExpressionReturnItem, Literal, SortItem}
+
+class TopPipeTest extends JUnitSuite {
+  @Test def emptyInIsEmptyOut() {
+    val topPipe = new TopPipe(new FakePipe(List()), sortBy("x", true), Literal(5))
+
+    assertEquals(List(), topPipe.createResults(Map()).toList)
+  }
+
+  @Test def keepsTheFirstRowsInOrder() {
+    val rows = (0 until 100).map(i => Map[String, Any]("x" -> (i * 37) % 100))
+    val topPipe = new TopPipe(new FakePipe(rows), sortBy("x", false), Literal(3))
+
+    assertEquals(List(Map("x" -> 99), Map("x" -> 98), Map("x" -> 97)), topPipe.createResults(Map()).toList)
+  }
+
+  @Test def givesTheSameRowsAsAStableSortForTies() {
+    val rows = (0 until 30).map(i => Map[String, Any]("x" -> i % 3, "y" -> i))
+    val topPipe = new TopPipe(new FakePipe(rows), sortBy("x", true), Add(Literal(2), Literal(4)))
+
+    val sorted = new SortPipe(new FakePipe(rows), sortBy("x", true)).createResults(Map()).toList
+
+    assertEquals(sorted.take(6), topPipe.createResults(Map()).toList)
+  }
+
+  @Test def limitLargerThanInput() {
+    val rows = List(Map[String, Any]("x" -> 2), Map[String, Any]("x" -> 1))
+    val topPipe = new TopPipe(new FakePipe(rows), sortBy("x", true), Literal(10))
+
+    assertEquals(rows.reverse, topPipe.createResults(Map()).toList)
+  }
+
+  @Test def zeroRowsWanted() {
+    val rows = List(Map[String, Any]("x" -> 2), Map[String, Any]("x" -> 1))
+    val topPipe = new TopPipe(new FakePipe(rows), sortBy("x", true), Literal(0))
+
+    assertEquals(List(), topPipe.createResults(Map()).toList)
+  }
+
+  private def sortBy(key: String, ascending: Boolean) = List(SortItem(ExpressionReturnItem(Entity(key)), ascending))
+}
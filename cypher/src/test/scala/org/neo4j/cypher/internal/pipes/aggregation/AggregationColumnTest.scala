@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes.aggregation
+
+import org.junit.Assert._
+import org.junit.Test
+import org.scalatest.junit.JUnitSuite
+import org.neo4j.cypher.internal.commands.Entity
+import org.neo4j.cypher.CypherTypeException
+
+class AggregationColumnTest extends JUnitSuite {
+  val mixes: List[List[Any]] = List(
+    List(),
+    List(1, 2, 3),
+    List(1.byteValue(), 1.shortValue()),
+    List(Int.MaxValue, 1),
+    List(1, 2L, 3),
+    List(1, 1.5f, 2L),
+    List(1L, 2.5f, 1.5d),
+    List(0.1f, 0.2f, 0.3f),
+    List(1, null, 2.0d))
+
+  @Test def sumGivesTheSameValueAndTypeAsSumFunction() {
+    mixes.foreach(values => {
+      val function = new SumFunction(Entity("x"))
+      val column = new SumColumn(Entity("x"), "SUM")
+      aggregate(values, function, column)
+    })
+  }
+
+  @Test def avgGivesTheSameValueAndTypeAsAvgFunction() {
+    mixes.filter(_.nonEmpty).foreach(values => {
+      val function = new AvgFunction(Entity("x"))
+      val column = new AvgColumn(Entity("x"))
+      aggregate(values, function, column)
+    })
+  }
+
+  @Test def groupsAreKeptApart() {
+    val column = new SumColumn(Entity("x"), "SUM")
+    column.ensureCapacity(3)
+    column(0, Map("x" -> 1))
+    column(1, Map("x" -> 2.5d))
+    column(0, Map("x" -> 2))
+
+    assertEquals(3, column.result(0))
+    assertEquals(2.5d, column.result(1))
+    assertEquals(0, column.result(2))
+  }
+
+  @Test(expected = classOf[CypherTypeException]) def sumOfNonNumberFails() {
+    val column = new SumColumn(Entity("x"), "SUM")
+    column.ensureCapacity(1)
+    column(0, Map("x" -> "a string"))
+  }
+
+  private def aggregate(values: List[Any], function: AggregationFunction, column: AggregationColumn) {
+    column.ensureCapacity(1)
+    values.foreach(value => {
+      function(Map("x" -> value))
+      column(0, Map("x" -> value))
+    })
+    val expected = function.result
+    val actual = column.result(0)
+    assertEquals(values.toString, expected, actual)
+    assertEquals(values.toString, expected.asInstanceOf[AnyRef].getClass, actual.asInstanceOf[AnyRef].getClass)
+  }
+}
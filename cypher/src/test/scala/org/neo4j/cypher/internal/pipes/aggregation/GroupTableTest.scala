@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes.aggregation
+
+import org.junit.Assert._
+import org.junit.Test
+import org.scalatest.junit.JUnitSuite
+
+class GroupTableTest extends JUnitSuite {
+  @Test def numbersGroupsInTheOrderTheyAreSeen() {
+    val table = new GroupTable(Array("a", "b"))
+
+    assertEquals(0, table.groupOf(Map("a" -> 1, "b" -> "x"), true))
+    assertEquals(1, table.groupOf(Map("a" -> 1, "b" -> "y"), true))
+    assertEquals(0, table.groupOf(Map("a" -> 1, "b" -> "x", "c" -> 3), true))
+    assertEquals(2, table.groupOf(Map("a" -> null, "b" -> "x"), true))
+    assertEquals(3, table.size)
+    assertEquals(List(1, "y"), table.keyOf(1).toList)
+  }
+
+  @Test def doesNotAddGroupsUnlessAsked() {
+    val table = new GroupTable(Array("a"))
+    table.groupOf(Map("a" -> 1), true)
+
+    assertEquals(-1, table.groupOf(Map("a" -> 2), false))
+    assertEquals(0, table.groupOf(Map("a" -> 1), false))
+    assertEquals(1, table.size)
+  }
+
+  @Test def comparesArraysByContent() {
+    val table = new GroupTable(Array("a"))
+
+    assertEquals(0, table.groupOf(Map("a" -> Array(1, 2)), true))
+    assertEquals(0, table.groupOf(Map("a" -> Array(1, 2)), true))
+    assertEquals(1, table.groupOf(Map("a" -> Array("1", "2")), true))
+    assertEquals(0, table.groupOf(Map("a" -> Array(1, 2)), false))
+  }
+
+  @Test def growsToHoldManyGroups() {
+    val table = new GroupTable(Array("a"))
+    (0 until 10000).foreach(i => assertEquals(i, table.groupOf(Map("a" -> i), true)))
+    (0 until 10000).foreach(i => assertEquals(i, table.groupOf(Map("a" -> i), false)))
+    assertEquals(10000, table.size)
+  }
+}
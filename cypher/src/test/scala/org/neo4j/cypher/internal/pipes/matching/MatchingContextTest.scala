@@ -407,6 +407,48 @@ class MatchingContextTest extends GraphDatabaseTestBase with Assertions {
     assertMatches(matchingContext.getMatches(Map("a" -> a)), 1, Map("a" -> a, "b" -> b, "r" -> r2))
   }
 
+  @Test def boundRelationshipAmongOthersOfTheSameType() {
+    val r = relate(a, b, "rel", "r")
+    relate(a, c, "rel", "r2")
+    relate(d, a, "rel", "r3")
+
+    val patterns: Seq[Pattern] = Seq(RelatedTo("a", "x", "r", "rel", Direction.OUTGOING, false))
+    val matchingContext = new MatchingContext(patterns, new SymbolTable(Identifier("a", NodeType()), Identifier("r", RelationshipType())))
+
+    assertMatches(matchingContext.getMatches(Map("a" -> a, "r" -> r)), 1, Map("a" -> a, "x" -> b, "r" -> r))
+  }
+
+  @Test def predicateOnBothEndsOfAPathWithAHubInTheMiddle() {
+    val r1 = relate(a, b, "rel", Map("age" -> 5))
+    val r2 = relate(b, c, "rel", Map("age" -> 5))
+    (1 to 10).foreach(i => relate(b, createNode(), "rel", Map("age" -> 5)))
+
+    val patterns: Seq[Pattern] = Seq(
+      RelatedTo("a", "b", "r1", "rel", Direction.OUTGOING, false),
+      RelatedTo("b", "c", "r2", "rel", Direction.OUTGOING, false))
+    val matchingContext = new MatchingContext(patterns, bind("a", "c"), Seq(Equals(Property("r1", "age"), Property("r2", "age"))))
+
+    assertMatches(matchingContext.getMatches(Map("a" -> a, "c" -> c)), 1, Map("a" -> a, "b" -> b, "c" -> c, "r1" -> r1, "r2" -> r2))
+  }
+
+  @Test def equallyCheapBoundNodesAreExpandedInDeclarationOrder() {
+    relate(a, c, "rel")
+    relate(a, d, "rel")
+    relate(b, d, "rel")
+    relate(b, c, "rel")
+
+    val patterns: Seq[Pattern] = Seq(
+      RelatedTo("a", "x", "r1", "rel", Direction.OUTGOING, true),
+      RelatedTo("b", "x", "r2", "rel", Direction.OUTGOING, true))
+    val matchingContext = new MatchingContext(patterns, bind("a", "b"))
+
+    val inOrder = matchingContext.getMatches(Map("a" -> a, "b" -> b)).map(_("x")).toList
+    val reversed = matchingContext.getMatches(Map("b" -> b, "a" -> a)).map(_("x")).toList
+
+    assert(Set(c, d) === inOrder.toSet)
+    assert(inOrder === reversed)
+  }
+
   @Test def predicateConcerningNode() {
     val a = createNode(Map("prop" -> "value"))
     relate(a, b, "rel")
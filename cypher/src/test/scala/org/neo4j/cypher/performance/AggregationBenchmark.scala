@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.performance
+
+import org.junit.{Ignore, Test}
+import org.scalatest.Assertions
+import org.neo4j.cypher.internal.commands._
+import org.neo4j.cypher.internal.pipes.{Pipe, NiceHasher, EagerAggregationPipe}
+import org.neo4j.cypher.internal.pipes.aggregation.AggregationFunction
+import org.neo4j.cypher.internal.symbols.{Identifier, SymbolTable, NumberType, StringType}
+
+/*
+Compares EagerAggregationPipe with the map of boxed aggregation functions it
+used before, for a few group counts. The last column aggregates with a small
+group limit, so that most rows go through the disk.
+ */
+@Ignore
+class AggregationBenchmark extends Assertions {
+  val rowCount = 1000000
+  val returnItems = List(ExpressionReturnItem(Entity("name")))
+  val aggregations = List(CountStar(), ValueAggregationItem(Sum(Entity("age"), "sum(age)")), ValueAggregationItem(Avg(Entity("age"), "avg(age)")))
+
+  @Test
+  def compareWithFunctionMap() {
+    println("groups\tfunction map\tpipe\tpipe, spilling")
+    List(10, 10000, 200000).foreach(groups => {
+      val rows = (0 until rowCount).map(i => Map("name" -> ("name" + (i % groups)), "age" -> i))
+      val source = new RowsPipe(rows)
+
+      // warm up, and check that they agree
+      val expected = functionMap(source).toSet
+      assert(expected === new EagerAggregationPipe(source, returnItems, aggregations).createResults(Map()).toSet)
+
+      val old = time(functionMap(source))
+      val pipe = time(new EagerAggregationPipe(source, returnItems, aggregations).createResults(Map()))
+      val spilling = time(new EagerAggregationPipe(source, returnItems, aggregations, groups / 10 + 1).createResults(Map()))
+      println(groups + "\t" + old + "\t" + pipe + "\t" + spilling)
+    })
+  }
+
+  private def time(f: => Traversable[Map[String, Any]]): Long = {
+    val start = System.currentTimeMillis()
+    f.size
+    System.currentTimeMillis() - start
+  }
+
+  private def functionMap(source: Pipe): Traversable[Map[String, Any]] = {
+    val result = collection.mutable.Map[NiceHasher, Seq[AggregationFunction]]()
+    val keyNames = returnItems.map(_.columnName)
+    val aggregationNames = aggregations.map(_.identifier.name)
+
+    source.createResults(Map()).foreach(m => {
+      val groupValues: NiceHasher = new NiceHasher(keyNames.map(m(_)))
+      val functions = result.getOrElseUpdate(groupValues, aggregations.map(_.createAggregationFunction))
+      functions.foreach(func => func(m))
+    })
+
+    result.map {
+      case (key, value: Seq[AggregationFunction]) => {
+        val elems = keyNames.zip(key.original) ++ aggregationNames.zip(value.map(_.result))
+        elems.toMap
+      }
+    }
+  }
+}
+
+private class RowsPipe(rows: Seq[Map[String, Any]]) extends Pipe {
+  val symbols = new SymbolTable(Identifier("name", StringType()), Identifier("age", NumberType()))
+
+  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = rows
+
+  def executionPlan(): String = "ROWS"
+}
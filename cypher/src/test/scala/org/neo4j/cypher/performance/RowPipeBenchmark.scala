@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.performance
+
+import org.junit.{Ignore, Test}
+import org.scalatest.Assertions
+import org.neo4j.cypher.internal.commands._
+import org.neo4j.cypher.internal.pipes._
+
+/*
+Compares pulling slot rows through a filter, extract and limit with building a
+map per row and pipe, for a few limits. The last limit lets every row through.
+ */
+@Ignore
+class RowPipeBenchmark extends Assertions {
+  val rowCount = 1000000
+  val returnItems = List(ExpressionReturnItem(Entity("x")))
+
+  @Test
+  def compareWithMapPipes() {
+    println("limit\tmaps\trows")
+    List(10, 10000, rowCount).foreach(limit => {
+      val source = new CountingRowPipe(rowCount)
+      val filter = new FilterPipe(source, Not(Equals(Modulo(Entity("x"), Literal(3)), Literal(0))))
+      val slice = new SlicePipe(new ExtractPipe(filter, returnItems), None, Some(Literal(limit)))
+      val result = new ColumnFilterPipe(slice, returnItems)
+      val slots = new Slots(slice.symbols.keys)
+
+      // warm up, and check that they agree
+      assert(result.createResults(Map()).toList === result.createResultsFromRows(Map(), slots).toList)
+
+      val maps = time(result.createResults(Map()))
+      val rows = time(result.createResultsFromRows(Map(), slots))
+      println(limit + "\t" + maps + "\t" + rows)
+    })
+  }
+
+  private def time(f: => Traversable[Map[String, Any]]): Long = {
+    val start = System.currentTimeMillis()
+    f.size
+    System.currentTimeMillis() - start
+  }
+}
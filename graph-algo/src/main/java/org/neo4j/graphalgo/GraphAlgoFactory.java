@@ -22,6 +22,7 @@ package org.neo4j.graphalgo;
 import org.neo4j.graphalgo.impl.path.AStar;
 import org.neo4j.graphalgo.impl.path.AllPaths;
 import org.neo4j.graphalgo.impl.path.AllSimplePaths;
+import org.neo4j.graphalgo.impl.path.BidirectionalDijkstra;
 import org.neo4j.graphalgo.impl.path.Dijkstra;
 import org.neo4j.graphalgo.impl.path.ShortestPath;
 import org.neo4j.graphalgo.impl.util.DoubleEvaluator;
@@ -109,6 +110,31 @@ public abstract class GraphAlgoFactory
     {
         return new ShortestPath( maxDepth, expander, maxHitCount );
     }
+
+    /**
+     * Returns an algorithm which can find all shortest paths (that is paths
+     * with as short {@link Path#length()} as possible) between two nodes, like
+     * {@link #shortestPath(RelationshipExpander, int, int)}, but which
+     * expands large levels of the search on several threads. This pays off
+     * for searches which reach many nodes, e.g. between nodes with many
+     * relationships. The threads can only see committed changes to the
+     * graph.
+     * 
+     * @see ShortestPath
+     * @param expander the {@link RelationshipExpander} to use for expanding
+     *            {@link Relationship}s for each {@link Node}.
+     * @param maxDepth the max {@link Path#length()} returned paths are allowed
+     *            to have.
+     * @param maxHitCount the maximum number of nodes where the searches from
+     * the two ends meet, whose paths are returned.
+     * @param numberOfThreads the maximum number of threads to use.
+     * @return an algorithm which finds shortest paths between two nodes.
+     */
+    public static PathFinder<Path> shortestPath( RelationshipExpander expander, int maxDepth,
+            int maxHitCount, int numberOfThreads )
+    {
+        return new ShortestPath( maxDepth, expander, maxHitCount, numberOfThreads );
+    }
     
     /**
      * Returns an algorithm which can find simple all paths of a certain length
@@ -198,4 +224,58 @@ public abstract class GraphAlgoFactory
     {
         return dijkstra( expander, new DoubleEvaluator( relationshipPropertyRepresentingCost ) );
     }
+
+    /**
+     * Returns an {@link PathFinder} which finds the cheapest path between two
+     * nodes, like {@link #dijkstra(RelationshipExpander, CostEvaluator)},
+     * but by searching from both nodes at the same time. The search from the
+     * end node follows the relationships the other way, see
+     * {@link RelationshipExpander#reversed()}. Only one path is returned,
+     * even if there are several equally cheap ones.
+     * 
+     * The returned finder keeps its search state per thread and reuses it,
+     * so it is meant to be created once and used for many searches.
+     * 
+     * @see BidirectionalDijkstra
+     * @param expander the {@link RelationshipExpander} to use for expanding
+     * {@link Relationship}s for each {@link Node}.
+     * @param costEvaluator evaluator that can return the cost represented
+     * by each relationship the algorithm traverses.
+     * @return an algorithm which finds the cheapest path between two nodes
+     * using a bidirectional Dijkstra algorithm.
+     */
+    public static PathFinder<WeightedPath> bidirectionalDijkstra(
+            RelationshipExpander expander, CostEvaluator<Double> costEvaluator )
+    {
+        return new BidirectionalDijkstra( expander, costEvaluator );
+    }
+
+    /**
+     * Returns an {@link PathFinder} which finds the cheapest path between two
+     * nodes, like {@link #aStar(RelationshipExpander, CostEvaluator, EstimateEvaluator)},
+     * but by searching from both nodes at the same time. Both searches are
+     * guided by the estimates, which must be consistent for the returned
+     * path to be the cheapest one, i.e. the estimate from a node must never
+     * be larger than the cost of a relationship from it plus the estimate
+     * from the node at the other end of it.
+     * 
+     * The returned finder keeps its search state per thread and reuses it,
+     * so it is meant to be created once and used for many searches.
+     * 
+     * @see BidirectionalDijkstra
+     * @param expander the {@link RelationshipExpander} to use for expanding
+     * {@link Relationship}s for each {@link Node}.
+     * @param lengthEvaluator evaluator that can return the cost represented
+     * by each relationship the algorithm traverses.
+     * @param estimateEvaluator evaluator that returns an (optimistic)
+     * estimation of the cost to get from one node to another.
+     * @return an algorithm which finds the cheapest path between two nodes
+     * using a bidirectional A* algorithm.
+     */
+    public static PathFinder<WeightedPath> bidirectionalAStar(
+            RelationshipExpander expander, CostEvaluator<Double> lengthEvaluator,
+            EstimateEvaluator<Double> estimateEvaluator )
+    {
+        return new BidirectionalDijkstra( expander, lengthEvaluator, estimateEvaluator );
+    }
 }
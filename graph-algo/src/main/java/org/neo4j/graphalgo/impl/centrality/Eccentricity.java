@@ -90,6 +90,21 @@ public class Eccentricity<ShortestPathCostType> extends
     @Override
     public void processShortestPaths( Node node,
         SingleSourceShortestPath<ShortestPathCostType> singleSourceShortestPath )
+    {
+        ShortestPathCostType maximumDistance = getMaximumDistance( singleSourceShortestPath );
+        if ( maximumDistance != null )
+        {
+            setCentralityForNode( node, maximumDistance );
+        }
+    }
+
+    /**
+     * @return The largest distance from the start node of the given
+     *         {@link SingleSourceShortestPath} to a node in the node set, or
+     *         null if the node set is empty.
+     */
+    ShortestPathCostType getMaximumDistance(
+        SingleSourceShortestPath<ShortestPathCostType> singleSourceShortestPath )
     {
         ShortestPathCostType maximumDistance = null;
         for ( Node targetNode : nodeSet )
@@ -102,9 +117,6 @@ public class Eccentricity<ShortestPathCostType> extends
                 maximumDistance = targetDistance;
             }
         }
-        if ( maximumDistance != null )
-        {
-            setCentralityForNode( node, maximumDistance );
-        }
+        return maximumDistance;
     }
 }
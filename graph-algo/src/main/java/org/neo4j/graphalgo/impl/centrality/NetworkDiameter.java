@@ -69,8 +69,18 @@ public class NetworkDiameter<ShortestPathCostType> extends
     public void processShortestPaths( Node node,
         SingleSourceShortestPath<ShortestPathCostType> singleSourceShortestPath )
     {
-        eccentricity.processShortestPaths( node, singleSourceShortestPath );
-        ShortestPathCostType centrality = eccentricity.getCentrality( node );
+        ShortestPathCostType centrality = eccentricity
+            .getMaximumDistance( singleSourceShortestPath );
+        if ( centrality != null )
+        {
+            eccentricity.setCentralityForNode( node, centrality );
+            updateDiameter( centrality );
+        }
+    }
+
+    // Start nodes may be processed on several threads at once
+    private synchronized void updateDiameter( ShortestPathCostType centrality )
+    {
         if ( diameter == null
             || distanceComparator.compare( centrality, diameter ) > 0 )
         {
@@ -78,6 +88,34 @@ public class NetworkDiameter<ShortestPathCostType> extends
         }
     }
 
+    @Override
+    void preparePartials( int numberOfChunks )
+    {
+        super.preparePartials( numberOfChunks );
+        eccentricity.preparePartials( numberOfChunks );
+    }
+
+    @Override
+    void startPartial()
+    {
+        super.startPartial();
+        eccentricity.startPartial();
+    }
+
+    @Override
+    void finishPartial( int chunk )
+    {
+        super.finishPartial( chunk );
+        eccentricity.finishPartial( chunk );
+    }
+
+    @Override
+    void mergePartials()
+    {
+        super.mergePartials();
+        eccentricity.mergePartials();
+    }
+
     @Override
     public ShortestPathCostType getCentrality( Node node )
     {
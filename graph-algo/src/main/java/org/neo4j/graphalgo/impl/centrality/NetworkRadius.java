@@ -67,8 +67,18 @@ public class NetworkRadius<ShortestPathCostType> extends
     public void processShortestPaths( Node node,
         SingleSourceShortestPath<ShortestPathCostType> singleSourceShortestPath )
     {
-        eccentricity.processShortestPaths( node, singleSourceShortestPath );
-        ShortestPathCostType centrality = eccentricity.getCentrality( node );
+        ShortestPathCostType centrality = eccentricity
+            .getMaximumDistance( singleSourceShortestPath );
+        if ( centrality != null )
+        {
+            eccentricity.setCentralityForNode( node, centrality );
+            updateRadius( centrality );
+        }
+    }
+
+    // Start nodes may be processed on several threads at once
+    private synchronized void updateRadius( ShortestPathCostType centrality )
+    {
         if ( radius == null
             || distanceComparator.compare( centrality, radius ) < 0 )
         {
@@ -76,6 +86,34 @@ public class NetworkRadius<ShortestPathCostType> extends
         }
     }
 
+    @Override
+    void preparePartials( int numberOfChunks )
+    {
+        super.preparePartials( numberOfChunks );
+        eccentricity.preparePartials( numberOfChunks );
+    }
+
+    @Override
+    void startPartial()
+    {
+        super.startPartial();
+        eccentricity.startPartial();
+    }
+
+    @Override
+    void finishPartial( int chunk )
+    {
+        super.finishPartial( chunk );
+        eccentricity.finishPartial( chunk );
+    }
+
+    @Override
+    void mergePartials()
+    {
+        super.mergePartials();
+        eccentricity.mergePartials();
+    }
+
     @Override
     public ShortestPathCostType getCentrality( Node node )
     {
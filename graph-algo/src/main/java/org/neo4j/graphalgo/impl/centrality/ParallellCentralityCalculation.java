@@ -19,11 +19,18 @@
  */
 package org.neo4j.graphalgo.impl.centrality;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.neo4j.graphalgo.impl.shortestpath.SingleSourceShortestPath;
+import org.neo4j.graphalgo.impl.shortestpath.SingleSourceShortestPathFactory;
 import org.neo4j.graphdb.Node;
 
 /**
@@ -33,6 +40,17 @@ import org.neo4j.graphdb.Node;
  * instead of re-running it for each centrality measure. We do it by collecting
  * a number of {@link ShortestPathBasedCentrality} and then running the
  * {@link SingleSourceShortestPath} for every node.
+ * <p>
+ * When created with a {@link SingleSourceShortestPathFactory} and more than
+ * one thread, the start nodes are split into chunks that are handed out to
+ * that many threads. Each thread has a {@link SingleSourceShortestPath} of its
+ * own, and the centrality measures collect the values of each chunk
+ * separately. Those are merged in chunk order when all threads are done, so
+ * that runs with the same nodes and number of threads add up the values in
+ * the same order, whichever thread processed which chunk. Floating point
+ * values may still differ slightly from those of a run with another number of
+ * threads. The threads read the graph outside of any transaction, so they only
+ * see committed changes.
  * @complexity The sum of the complexities of the centrality measures to
  *             compute, except that all the n*A terms implode into one single
  *             n*A term.
@@ -48,6 +66,10 @@ public class ParallellCentralityCalculation<ShortestPathCostType>
     protected Set<Node> nodeSet;
     List<ShortestPathBasedCentrality<?,ShortestPathCostType>> calculations = new LinkedList<ShortestPathBasedCentrality<?,ShortestPathCostType>>();
     protected boolean doneCalculation = false;
+    protected SingleSourceShortestPathFactory<ShortestPathCostType> singleSourceShortestPathFactory;
+    protected int numberOfThreads = 1;
+    // The start nodes are split into this many chunks per thread
+    private static final int CHUNKS_PER_THREAD = 4;
 
     /**
      * Default constructor.
@@ -66,6 +88,30 @@ public class ParallellCentralityCalculation<ShortestPathCostType>
         this.nodeSet = nodeSet;
     }
 
+    /**
+     * Constructor for running the calculation on several threads.
+     * @param singleSourceShortestPathFactory
+     *            Creates the underlying singleSourceShortestPath for each
+     *            thread.
+     * @param nodeSet
+     *            A set containing the nodes for which centrality values should
+     *            be computed.
+     * @param numberOfThreads
+     *            The number of threads to run the calculation on.
+     */
+    public ParallellCentralityCalculation(
+        SingleSourceShortestPathFactory<ShortestPathCostType> singleSourceShortestPathFactory,
+        Set<Node> nodeSet, int numberOfThreads )
+    {
+        this( singleSourceShortestPathFactory.newInstance(), nodeSet );
+        if ( numberOfThreads < 1 )
+        {
+            throw new IllegalArgumentException( "Number of threads must be at least 1, not " + numberOfThreads );
+        }
+        this.singleSourceShortestPathFactory = singleSourceShortestPathFactory;
+        this.numberOfThreads = numberOfThreads;
+    }
+
     /**
      * This adds a centrality measure to be included in the calculation.
      * @param shortestPathBasedCentrality
@@ -95,18 +141,103 @@ public class ParallellCentralityCalculation<ShortestPathCostType>
             return;
         }
         doneCalculation = true;
+        if ( singleSourceShortestPathFactory != null && numberOfThreads > 1
+            && nodeSet.size() > 1 )
+        {
+            calculateOnThreads();
+            return;
+        }
         // For all nodes...
         for ( Node startNode : nodeSet )
         {
-            // Prepare the singleSourceShortestPath
-            singleSourceShortestPath.reset();
-            singleSourceShortestPath.setStartNode( startNode );
-            // Process
-            for ( ShortestPathBasedCentrality<?,ShortestPathCostType> calculation : calculations )
+            process( startNode, singleSourceShortestPath );
+        }
+    }
+
+    private void process( Node startNode,
+        SingleSourceShortestPath<ShortestPathCostType> singleSourceShortestPath )
+    {
+        // Prepare the singleSourceShortestPath
+        singleSourceShortestPath.reset();
+        singleSourceShortestPath.setStartNode( startNode );
+        // Process
+        for ( ShortestPathBasedCentrality<?,ShortestPathCostType> calculation : calculations )
+        {
+            calculation.processShortestPaths( startNode,
+                singleSourceShortestPath );
+        }
+    }
+
+    private void calculateOnThreads()
+    {
+        final List<Node> startNodes = new ArrayList<Node>( nodeSet );
+        int workers = Math.min( numberOfThreads, startNodes.size() );
+        final int chunks = Math.min( workers * CHUNKS_PER_THREAD, startNodes.size() );
+        final AtomicInteger nextChunk = new AtomicInteger();
+        for ( ShortestPathBasedCentrality<?,ShortestPathCostType> calculation : calculations )
+        {
+            calculation.preparePartials( chunks );
+        }
+        ExecutorService executor = Executors.newFixedThreadPool( workers );
+        try
+        {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for ( int i = 0; i < workers; i++ )
+            {
+                futures.add( executor.submit( new Runnable()
+                {
+                    public void run()
+                    {
+                        SingleSourceShortestPath<ShortestPathCostType> workerShortestPath =
+                            singleSourceShortestPathFactory.newInstance();
+                        for ( int chunk = nextChunk.getAndIncrement(); chunk < chunks;
+                            chunk = nextChunk.getAndIncrement() )
+                        {
+                            for ( ShortestPathBasedCentrality<?,ShortestPathCostType> calculation : calculations )
+                            {
+                                calculation.startPartial();
+                            }
+                            try
+                            {
+                                int start = (int) ( (long) chunk * startNodes.size() / chunks );
+                                int end = (int) ( (long) ( chunk + 1 ) * startNodes.size() / chunks );
+                                for ( Node startNode : startNodes.subList( start, end ) )
+                                {
+                                    process( startNode, workerShortestPath );
+                                }
+                            }
+                            finally
+                            {
+                                for ( ShortestPathBasedCentrality<?,ShortestPathCostType> calculation : calculations )
+                                {
+                                    calculation.finishPartial( chunk );
+                                }
+                            }
+                        }
+                    }
+                } ) );
+            }
+            for ( Future<?> future : futures )
             {
-                calculation.processShortestPaths( startNode,
-                    singleSourceShortestPath );
+                future.get();
             }
         }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while calculating centralities", e );
+        }
+        catch ( ExecutionException e )
+        {
+            throw new RuntimeException( "Centrality calculation failed", e.getCause() );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        for ( ShortestPathBasedCentrality<?,ShortestPathCostType> calculation : calculations )
+        {
+            calculation.mergePartials();
+        }
     }
 }
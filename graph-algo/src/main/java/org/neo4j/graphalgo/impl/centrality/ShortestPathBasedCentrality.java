@@ -22,6 +22,7 @@ package org.neo4j.graphalgo.impl.centrality;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.neo4j.graphalgo.CostAccumulator;
 import org.neo4j.graphalgo.impl.shortestpath.SingleSourceShortestPath;
@@ -57,6 +58,13 @@ public abstract class ShortestPathBasedCentrality<CentralityType,ShortestPathCos
      * addCentralityToNode.
      */
     protected Map<Node,CentralityType> centralities = null;
+    /**
+     * While a {@link ParallellCentralityCalculation} runs on several threads,
+     * each thread collects its values here instead of in the centralities Map.
+     * They are merged into it when all threads are done.
+     */
+    private final ThreadLocal<PartialCentralities<CentralityType>> partialCentralities = new ThreadLocal<PartialCentralities<CentralityType>>();
+    private AtomicReferenceArray<PartialCentralities<CentralityType>> finishedPartialCentralities;
 
     /**
      * Default constructor.
@@ -106,13 +114,15 @@ public abstract class ShortestPathBasedCentrality<CentralityType,ShortestPathCos
      */
     protected void addCentralityToNode( Node node, CentralityType value )
     {
-        CentralityType centrality = centralities.get( node );
+        PartialCentralities<CentralityType> partial = partialCentralities.get();
+        Map<Node,CentralityType> target = partial == null ? centralities
+            : partial.added;
+        CentralityType centrality = target.get( node );
         if ( centrality == null )
         {
             centrality = zeroValue;
         }
-        centralities.put( node, centralityAccumulator.addCosts( centrality,
-            value ) );
+        target.put( node, centralityAccumulator.addCosts( centrality, value ) );
     }
 
     /**
@@ -123,7 +133,70 @@ public abstract class ShortestPathBasedCentrality<CentralityType,ShortestPathCos
      */
     protected void setCentralityForNode( Node node, CentralityType value )
     {
-        centralities.put( node, value );
+        PartialCentralities<CentralityType> partial = partialCentralities.get();
+        if ( partial == null )
+        {
+            centralities.put( node, value );
+        }
+        else
+        {
+            partial.set.put( node, value );
+        }
+    }
+
+    /**
+     * Prepares for processing shortest paths in the given number of chunks
+     * of start nodes.
+     * @param numberOfChunks
+     */
+    void preparePartials( int numberOfChunks )
+    {
+        finishedPartialCentralities = new AtomicReferenceArray<PartialCentralities<CentralityType>>(
+            numberOfChunks );
+    }
+
+    /**
+     * Makes the values added or set by the current thread go into a partial
+     * result of its own, until {@link #finishPartial(int)} is called.
+     */
+    void startPartial()
+    {
+        partialCentralities.set( new PartialCentralities<CentralityType>() );
+    }
+
+    /**
+     * Hands over the partial result of the current thread, to be merged by
+     * {@link #mergePartials()}.
+     * @param chunk
+     *            The index of the chunk of start nodes the current thread has
+     *            processed since {@link #startPartial()}.
+     */
+    void finishPartial( int chunk )
+    {
+        finishedPartialCentralities.set( chunk, partialCentralities.get() );
+        partialCentralities.remove();
+    }
+
+    /**
+     * Merges the partial results of all chunks into the centralities Map, in
+     * chunk order. Must be called when no worker is running anymore.
+     */
+    void mergePartials()
+    {
+        for ( int i = 0; i < finishedPartialCentralities.length(); i++ )
+        {
+            PartialCentralities<CentralityType> partial = finishedPartialCentralities.get( i );
+            if ( partial == null )
+            {
+                continue;
+            }
+            for ( Map.Entry<Node,CentralityType> entry : partial.added.entrySet() )
+            {
+                addCentralityToNode( entry.getKey(), entry.getValue() );
+            }
+            centralities.putAll( partial.set );
+        }
+        finishedPartialCentralities = null;
     }
 
     /**
@@ -171,4 +244,10 @@ public abstract class ShortestPathBasedCentrality<CentralityType,ShortestPathCos
      */
     public abstract void processShortestPaths( Node node,
         SingleSourceShortestPath<ShortestPathCostType> singleSourceShortestPath );
+
+    private static class PartialCentralities<CentralityType>
+    {
+        final Map<Node,CentralityType> added = new HashMap<Node,CentralityType>();
+        final Map<Node,CentralityType> set = new HashMap<Node,CentralityType>();
+    }
 }
@@ -0,0 +1,338 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.path;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.neo4j.graphalgo.CostEvaluator;
+import org.neo4j.graphalgo.EstimateEvaluator;
+import org.neo4j.graphalgo.PathFinder;
+import org.neo4j.graphalgo.WeightedPath;
+import org.neo4j.graphalgo.impl.util.IntDoubleHeap;
+import org.neo4j.graphalgo.impl.util.LongIntMap;
+import org.neo4j.graphalgo.impl.util.PathImpl;
+import org.neo4j.graphalgo.impl.util.WeightedPathImpl;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipExpander;
+
+/**
+ * Finds the cheapest path between two nodes by searching from both of them at
+ * the same time, the end node side following the relationships the other way
+ * ({@link RelationshipExpander#reversed()}) and evaluating their costs as
+ * {@link Direction#INCOMING}. The search stops when the lowest
+ * keys of the two queues together reach the cost of the cheapest path seen so
+ * far, which typically means visiting far fewer nodes than {@link Dijkstra}.
+ *
+ * Given an {@link EstimateEvaluator} it is a bidirectional A*, where both
+ * sides use the average of the estimates to the end node and from the start
+ * node so that their keys stay comparable. As for {@link AStar} the estimates
+ * must never be larger than the real cost, and here they must also be
+ * consistent (satisfy the triangle inequality) for the path to be the
+ * cheapest one.
+ *
+ * Nodes are kept in {@link IntDoubleHeap}s keyed by a slot number from a
+ * {@link LongIntMap} of node ids, so nothing is boxed. The search state is
+ * kept per thread and reused by later searches from that thread, which makes
+ * an instance of this class safe to share between threads.
+ *
+ * Only one path is found, even if there are several equally cheap ones.
+ */
+public class BidirectionalDijkstra implements PathFinder<WeightedPath>
+{
+    private final RelationshipExpander expander;
+    private final RelationshipExpander reversedExpander;
+    private final CostEvaluator<Double> costEvaluator;
+    private final EstimateEvaluator<Double> estimateEvaluator;
+    private final ThreadLocal<SearchState> searchState = new ThreadLocal<SearchState>()
+    {
+        @Override
+        protected SearchState initialValue()
+        {
+            return new SearchState();
+        }
+    };
+
+    public BidirectionalDijkstra( RelationshipExpander expander,
+            CostEvaluator<Double> costEvaluator )
+    {
+        this( expander, costEvaluator, null );
+    }
+
+    /**
+     * @param estimateEvaluator may be {@code null}, which makes this a
+     *            bidirectional Dijkstra.
+     */
+    public BidirectionalDijkstra( RelationshipExpander expander,
+            CostEvaluator<Double> costEvaluator,
+            EstimateEvaluator<Double> estimateEvaluator )
+    {
+        this.expander = expander;
+        this.reversedExpander = expander.reversed();
+        this.costEvaluator = costEvaluator;
+        this.estimateEvaluator = estimateEvaluator;
+    }
+
+    public WeightedPath findSinglePath( Node start, Node end )
+    {
+        if ( start.equals( end ) )
+        {
+            return new WeightedPathImpl( 0, PathImpl.singular( start ) );
+        }
+        SearchState state = searchState.get();
+        try
+        {
+            return state.search( start, end );
+        }
+        finally
+        {
+            state.reset();
+        }
+    }
+
+    public Iterable<WeightedPath> findAllPaths( Node start, Node end )
+    {
+        WeightedPath path = findSinglePath( start, end );
+        return path != null ? Arrays.asList( path )
+                : Collections.<WeightedPath>emptyList();
+    }
+
+    private class SearchState
+    {
+        private final Side forward = new Side( expander, Direction.OUTGOING );
+        private final Side backward = new Side( reversedExpander, Direction.INCOMING );
+        private Node start;
+        private Node end;
+        // cost of the cheapest path seen so far, and where its sides meet
+        private double bestCost;
+        private int bestForwardSlot;
+        private int bestBackwardSlot;
+
+        WeightedPath search( Node start, Node end )
+        {
+            this.start = start;
+            this.end = end;
+            bestCost = Double.POSITIVE_INFINITY;
+            forward.reach( start, 0, null, -1, potential( start ) );
+            backward.reach( end, 0, null, -1, -potential( end ) );
+            while ( !forward.queue.isEmpty() && !backward.queue.isEmpty() )
+            {
+                double lowestForwardKey = forward.queue.getPriority( forward.queue.peek() );
+                double lowestBackwardKey = backward.queue.getPriority( backward.queue.peek() );
+                if ( lowestForwardKey + lowestBackwardKey >= bestCost )
+                {
+                    break;
+                }
+                if ( forward.queue.size() <= backward.queue.size() )
+                {
+                    expand( forward, backward, 1 );
+                }
+                else
+                {
+                    expand( backward, forward, -1 );
+                }
+            }
+            return bestCost == Double.POSITIVE_INFINITY ? null : toPath();
+        }
+
+        private void expand( Side side, Side other, int potentialSign )
+        {
+            int slot = side.queue.poll();
+            side.settled[slot] = true;
+            Node node = side.nodes[slot];
+            double distance = side.distances[slot];
+            for ( Relationship relationship : side.expander.expand( node ) )
+            {
+                Node otherNode = relationship.getOtherNode( node );
+                double newDistance = distance
+                        + costEvaluator.getCost( relationship, side.costDirection );
+                int otherSlot = side.slots.get( otherNode.getId() );
+                if ( otherSlot == -1 )
+                {
+                    otherSlot = side.reach( otherNode, newDistance, relationship,
+                            slot, potentialSign * potential( otherNode ) );
+                }
+                else if ( side.settled[otherSlot]
+                          || newDistance >= side.distances[otherSlot] )
+                {
+                    continue;
+                }
+                else
+                {
+                    side.update( otherSlot, newDistance, relationship, slot );
+                }
+
+                int meetingSlot = other.slots.get( otherNode.getId() );
+                if ( meetingSlot != -1 )
+                {
+                    double cost = newDistance + other.distances[meetingSlot];
+                    if ( cost < bestCost )
+                    {
+                        bestCost = cost;
+                        bestForwardSlot = side == forward ? otherSlot : meetingSlot;
+                        bestBackwardSlot = side == forward ? meetingSlot : otherSlot;
+                    }
+                }
+            }
+        }
+
+        /**
+         * The average potential of the node, see the class comment. It is
+         * added to the distance for the forward queue and subtracted from it
+         * for the backward queue.
+         */
+        private double potential( Node node )
+        {
+            if ( estimateEvaluator == null )
+            {
+                return 0;
+            }
+            return ( estimateEvaluator.getCost( node, end )
+                     - estimateEvaluator.getCost( node, start ) ) / 2;
+        }
+
+        private WeightedPath toPath()
+        {
+            Relationship[] backwardRelationships =
+                    new Relationship[backward.pathLength( bestBackwardSlot )];
+            int i = 0;
+            for ( int slot = bestBackwardSlot; backward.parentSlots[slot] != -1;
+                    slot = backward.parentSlots[slot] )
+            {
+                backwardRelationships[i++] = backward.parents[slot];
+            }
+            Relationship[] forwardRelationships =
+                    new Relationship[forward.pathLength( bestForwardSlot )];
+            i = forwardRelationships.length;
+            for ( int slot = bestForwardSlot; forward.parentSlots[slot] != -1;
+                    slot = forward.parentSlots[slot] )
+            {
+                forwardRelationships[--i] = forward.parents[slot];
+            }
+
+            PathImpl.Builder builder = new PathImpl.Builder( start );
+            for ( Relationship relationship : forwardRelationships )
+            {
+                builder = builder.push( relationship );
+            }
+            for ( Relationship relationship : backwardRelationships )
+            {
+                builder = builder.push( relationship );
+            }
+            return new WeightedPathImpl( bestCost, builder.build() );
+        }
+
+        void reset()
+        {
+            forward.reset();
+            backward.reset();
+            start = null;
+            end = null;
+        }
+    }
+
+    /**
+     * The state of one of the two searches. Each reached node gets a slot,
+     * which indexes the arrays below and is the element in the queue.
+     */
+    private static class Side
+    {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private final RelationshipExpander expander;
+        // the direction the costs of the relationships are evaluated in,
+        // incoming for the side searching from the end node
+        private final Direction costDirection;
+        private final LongIntMap slots = new LongIntMap( INITIAL_CAPACITY );
+        private final IntDoubleHeap queue = new IntDoubleHeap( INITIAL_CAPACITY );
+        private Node[] nodes = new Node[INITIAL_CAPACITY];
+        private double[] distances = new double[INITIAL_CAPACITY];
+        // potential of each node, kept so that updating its key is cheap
+        private double[] potentials = new double[INITIAL_CAPACITY];
+        private Relationship[] parents = new Relationship[INITIAL_CAPACITY];
+        private int[] parentSlots = new int[INITIAL_CAPACITY];
+        private boolean[] settled = new boolean[INITIAL_CAPACITY];
+        private int count;
+
+        Side( RelationshipExpander expander, Direction costDirection )
+        {
+            this.expander = expander;
+            this.costDirection = costDirection;
+        }
+
+        int reach( Node node, double distance, Relationship parent,
+                int parentSlot, double potential )
+        {
+            if ( count == nodes.length )
+            {
+                grow();
+            }
+            int slot = count++;
+            slots.put( node.getId(), slot );
+            nodes[slot] = node;
+            potentials[slot] = potential;
+            settled[slot] = false;
+            update( slot, distance, parent, parentSlot );
+            return slot;
+        }
+
+        void update( int slot, double distance, Relationship parent, int parentSlot )
+        {
+            distances[slot] = distance;
+            parents[slot] = parent;
+            parentSlots[slot] = parentSlot;
+            queue.insertOrUpdate( slot, distance + potentials[slot] );
+        }
+
+        int pathLength( int slot )
+        {
+            int length = 0;
+            for ( ; parentSlots[slot] != -1; slot = parentSlots[slot] )
+            {
+                length++;
+            }
+            return length;
+        }
+
+        private void grow()
+        {
+            int capacity = nodes.length * 2;
+            nodes = Arrays.copyOf( nodes, capacity );
+            distances = Arrays.copyOf( distances, capacity );
+            potentials = Arrays.copyOf( potentials, capacity );
+            parents = Arrays.copyOf( parents, capacity );
+            parentSlots = Arrays.copyOf( parentSlots, capacity );
+            settled = Arrays.copyOf( settled, capacity );
+            queue.ensureCapacity( capacity );
+        }
+
+        void reset()
+        {
+            slots.clear();
+            queue.clear();
+            // don't hold on to nodes and relationships between searches
+            Arrays.fill( nodes, 0, count, null );
+            Arrays.fill( parents, 0, count, null );
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.path;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.neo4j.graphalgo.impl.util.ConcurrentLongIntMap;
+import org.neo4j.graphalgo.impl.util.PathImpl;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipExpander;
+
+/**
+ * The search {@link ShortestPath} does when given more than one thread. It
+ * goes one whole level at the time instead of one relationship at the time,
+ * always on the side with the fewest nodes in its next level. The nodes of a
+ * level are split into chunks which are expanded by several threads, if
+ * there are at least {@link #MIN_PARALLEL_LEVEL_SIZE} of them.
+ *
+ * Each side keeps the ids of the nodes it has reached in a
+ * {@link ConcurrentLongIntMap}, mapping them to a slot. The threads only
+ * note which relationships lead to nodes that are new on this level, and
+ * these notes are then merged chunk by chunk on the calling thread. So the
+ * next level, the relationships leading to each node and thereby the hits
+ * and the order of the returned paths, are the same regardless of how the
+ * chunks were spread over the threads.
+ *
+ * The first level which reaches nodes reached by the other side gives all
+ * the shortest paths: any path through a hit has the same length, since
+ * there was no hit on the level before.
+ *
+ * The chunks are expanded by daemon threads from a pool shared by all
+ * searches, which starts threads as needed and lets them go when they have
+ * been idle for a while. A search never has more than its number of threads
+ * working for it at the same time.
+ *
+ * One instance per search.
+ */
+class ParallelShortestPathSearch
+{
+    /**
+     * Levels with fewer nodes than this are expanded on the calling thread
+     * only, since handing them out would cost more than it saves.
+     */
+    static final int MIN_PARALLEL_LEVEL_SIZE = 1000;
+
+    private static final int CHUNK_SIZE = 128;
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool( new ThreadFactory()
+    {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        public Thread newThread( Runnable runnable )
+        {
+            Thread thread = new Thread( runnable, "Shortest path expander " + threadCount.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        }
+    } );
+
+    private final ShortestPath finder;
+    private final int maxDepth;
+    private final int maxHitCount;
+    private final int numberOfThreads;
+
+    ParallelShortestPathSearch( ShortestPath finder, int maxDepth, int maxHitCount,
+            int numberOfThreads )
+    {
+        this.finder = finder;
+        this.maxDepth = maxDepth;
+        this.maxHitCount = maxHitCount;
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    Iterable<Path> findPaths( Node start, Node end, RelationshipExpander expander )
+    {
+        Side startSide = new Side( start, expander );
+        Side endSide = new Side( end, expander.reversed() );
+        for ( int depth = 0; depth < maxDepth; depth++ )
+        {
+            Side side = startSide.frontier.size() <= endSide.frontier.size() ?
+                    startSide : endSide;
+            Side otherSide = side == startSide ? endSide : startSide;
+            side.expandLevel();
+            if ( side.frontier.isEmpty() )
+            {
+                break;
+            }
+            List<Node> hits = side.hitsIn( otherSide );
+            if ( !hits.isEmpty() )
+            {
+                return toPaths( hits, startSide, endSide );
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private List<Path> toPaths( List<Node> hits, Side startSide, Side endSide )
+    {
+        List<Path> paths = new ArrayList<Path>();
+        for ( Node hit : hits )
+        {
+            List<LinkedList<Relationship>> endPaths = endSide.pathsTo( hit );
+            for ( LinkedList<Relationship> startPath : startSide.pathsTo( hit ) )
+            {
+                PathImpl.Builder startBuilder = toBuilder( startSide.startNode, startPath );
+                for ( LinkedList<Relationship> endPath : endPaths )
+                {
+                    paths.add( startBuilder.build( toBuilder( endSide.startNode, endPath ) ) );
+                }
+            }
+        }
+        return paths;
+    }
+
+    private static PathImpl.Builder toBuilder( Node startNode, LinkedList<Relationship> rels )
+    {
+        PathImpl.Builder builder = new PathImpl.Builder( startNode );
+        for ( Relationship rel : rels )
+        {
+            builder = builder.push( rel );
+        }
+        return builder;
+    }
+
+    /**
+     * The relationships found from one chunk of a level, leading to nodes
+     * which are new on the next level.
+     */
+    private static class Discoveries
+    {
+        private int[] slots = new int[CHUNK_SIZE];
+        private Node[] nodes = new Node[CHUNK_SIZE];
+        private long[] relationshipIds = new long[CHUNK_SIZE];
+        private int size;
+
+        void add( int slot, Node node, long relationshipId )
+        {
+            if ( size == slots.length )
+            {
+                slots = Arrays.copyOf( slots, size * 2 );
+                nodes = Arrays.copyOf( nodes, size * 2 );
+                relationshipIds = Arrays.copyOf( relationshipIds, size * 2 );
+            }
+            slots[size] = slot;
+            nodes[size] = node;
+            relationshipIds[size] = relationshipId;
+            size++;
+        }
+    }
+
+    private class Side
+    {
+        private final Node startNode;
+        private final RelationshipExpander expander;
+        private final ConcurrentLongIntMap slots = new ConcurrentLongIntMap( numberOfThreads );
+        private final AtomicInteger slotCount = new AtomicInteger();
+        // relationships leading to the node in each slot
+        private long[][] parents = new long[16][];
+        private int[] parentCounts = new int[16];
+        private List<Node> frontier = new ArrayList<Node>();
+
+        Side( Node startNode, RelationshipExpander expander )
+        {
+            this.startNode = startNode;
+            this.expander = expander;
+            slots.getOrPutNext( startNode.getId(), slotCount );
+            frontier.add( startNode );
+        }
+
+        void expandLevel()
+        {
+            final List<Node> nodes = new ArrayList<Node>(
+                    finder.filterNextLevelNodes( frontier ) );
+            final int levelStart = slotCount.get();
+            final int chunkCount = (nodes.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            final Discoveries[] discoveries = new Discoveries[chunkCount];
+            if ( numberOfThreads > 1 && nodes.size() >= MIN_PARALLEL_LEVEL_SIZE )
+            {
+                final AtomicInteger nextChunk = new AtomicInteger();
+                List<Future<?>> futures = new ArrayList<Future<?>>();
+                for ( int i = 0; i < Math.min( numberOfThreads, chunkCount ); i++ )
+                {
+                    futures.add( EXECUTOR.submit( new Runnable()
+                    {
+                        public void run()
+                        {
+                            for ( int chunk = nextChunk.getAndIncrement(); chunk < chunkCount;
+                                    chunk = nextChunk.getAndIncrement() )
+                            {
+                                discoveries[chunk] = expandChunk( nodes, chunk, levelStart );
+                            }
+                        }
+                    } ) );
+                }
+                awaitAll( futures );
+            }
+            else
+            {
+                for ( int chunk = 0; chunk < chunkCount; chunk++ )
+                {
+                    discoveries[chunk] = expandChunk( nodes, chunk, levelStart );
+                }
+            }
+            merge( discoveries );
+        }
+
+        private Discoveries expandChunk( List<Node> nodes, int chunk, int levelStart )
+        {
+            Discoveries discoveries = new Discoveries();
+            for ( int i = chunk * CHUNK_SIZE, end = Math.min( i + CHUNK_SIZE, nodes.size() );
+                    i < end; i++ )
+            {
+                Node node = nodes.get( i );
+                for ( Relationship rel : expander.expand( node ) )
+                {
+                    Node otherNode = rel.getOtherNode( node );
+                    long id = otherNode.getId();
+                    int slot = slots.get( id );
+                    if ( slot == -1 )
+                    {
+                        slot = slots.getOrPutNext( id, slotCount );
+                    }
+                    // slots from before this level belong to nodes reached
+                    // on an earlier level
+                    if ( slot >= levelStart )
+                    {
+                        discoveries.add( slot, otherNode, rel.getId() );
+                    }
+                }
+            }
+            return discoveries;
+        }
+
+        private void merge( Discoveries[] discoveries )
+        {
+            ensureCapacity( slotCount.get() );
+            List<Node> nextFrontier = new ArrayList<Node>();
+            for ( Discoveries chunk : discoveries )
+            {
+                for ( int i = 0; i < chunk.size; i++ )
+                {
+                    int slot = chunk.slots[i];
+                    if ( parents[slot] == null )
+                    {
+                        parents[slot] = new long[1];
+                        nextFrontier.add( chunk.nodes[i] );
+                    }
+                    else if ( parentCounts[slot] == parents[slot].length )
+                    {
+                        parents[slot] = Arrays.copyOf( parents[slot], parentCounts[slot] * 2 );
+                    }
+                    parents[slot][parentCounts[slot]++] = chunk.relationshipIds[i];
+                }
+            }
+            frontier = nextFrontier;
+        }
+
+        private void ensureCapacity( int capacity )
+        {
+            if ( capacity > parents.length )
+            {
+                int newCapacity = Math.max( capacity, parents.length * 2 );
+                parents = Arrays.copyOf( parents, newCapacity );
+                parentCounts = Arrays.copyOf( parentCounts, newCapacity );
+            }
+        }
+
+        /**
+         * @return The nodes of the last level which the other side has
+         *         reached as well, in the order of the level.
+         */
+        List<Node> hitsIn( Side otherSide )
+        {
+            List<Node> hits = new ArrayList<Node>();
+            for ( Node node : frontier )
+            {
+                if ( otherSide.slots.get( node.getId() ) != -1 )
+                {
+                    hits.add( node );
+                    if ( hits.size() >= maxHitCount )
+                    {
+                        break;
+                    }
+                }
+            }
+            return hits;
+        }
+
+        /**
+         * @return All the shortest paths from the start node of this side to
+         *         the node, each as the relationships from the start node.
+         */
+        List<LinkedList<Relationship>> pathsTo( Node node )
+        {
+            List<LinkedList<Relationship>> result = new ArrayList<LinkedList<Relationship>>();
+            int slot = slots.get( node.getId() );
+            if ( slot == 0 )
+            {
+                result.add( new LinkedList<Relationship>() );
+                return result;
+            }
+            GraphDatabaseService graphDb = node.getGraphDatabase();
+            for ( int i = 0; i < parentCounts[slot]; i++ )
+            {
+                Relationship rel = graphDb.getRelationshipById( parents[slot][i] );
+                for ( LinkedList<Relationship> path : pathsTo( rel.getOtherNode( node ) ) )
+                {
+                    path.addLast( rel );
+                    result.add( path );
+                }
+            }
+            return result;
+        }
+    }
+
+    private static void awaitAll( Collection<Future<?>> futures )
+    {
+        try
+        {
+            for ( Future<?> future : futures )
+            {
+                future.get();
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while expanding shortest path level", e );
+        }
+        catch ( ExecutionException e )
+        {
+            throw new RuntimeException( "Shortest path level expansion failed", e.getCause() );
+        }
+    }
+}
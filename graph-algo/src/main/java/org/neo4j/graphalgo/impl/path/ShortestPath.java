@@ -52,6 +52,11 @@ import org.neo4j.helpers.collection.PrefetchingIterator;
  * Relationships are traversed in the specified directions from the start node,
  * but in the reverse direction ( {@link Direction#reverse()} ) from the
  * end node. This doesn't affect {@link Direction#BOTH}.
+ * 
+ * Given more than one thread it instead goes one whole level at the time,
+ * expanding the nodes of large levels on several threads, see
+ * {@link ParallelShortestPathSearch}. The threads can only see committed
+ * changes to the graph.
  */
 public class ShortestPath implements PathFinder<Path>
 {
@@ -59,6 +64,7 @@ public class ShortestPath implements PathFinder<Path>
     private final int maxResultCount;
     private final RelationshipExpander relExpander;
     private final HitDecider hitDecider;
+    private final int numberOfThreads;
     
     /**
      * Constructs a new shortest path algorithm.
@@ -104,6 +110,34 @@ public class ShortestPath implements PathFinder<Path>
         this.relExpander = relExpander;
         this.maxResultCount = maxResultCount;
         this.hitDecider = findPathsOnMaxDepthOnly ? new DepthHitDecider( maxDepth ) : YES_HIT_DECIDER;
+        this.numberOfThreads = 1;
+    }
+    
+    /**
+     * Constructs a new shortest path algorithm which expands large levels
+     * of the search on several threads.
+     * @param maxDepth the maximum depth for the traversal. Returned paths
+     * will never have a greater {@link Path#length()} than {@code maxDepth}.
+     * @param relExpander the {@link RelationshipExpander} to use for deciding
+     * which relationships to expand for each {@link Node}. It will be used
+     * from several threads at the same time.
+     * @param maxResultCount the maximum number of hits to return. If this number
+     * of hits are encountered the traversal will stop.
+     * @param numberOfThreads the maximum number of threads to use for
+     * expanding a level.
+     */
+    public ShortestPath( int maxDepth, RelationshipExpander relExpander, int maxResultCount,
+            int numberOfThreads )
+    {
+        if ( numberOfThreads < 1 )
+        {
+            throw new IllegalArgumentException( "Number of threads must be at least 1, not " + numberOfThreads );
+        }
+        this.maxDepth = maxDepth;
+        this.relExpander = relExpander;
+        this.maxResultCount = maxResultCount;
+        this.hitDecider = YES_HIT_DECIDER;
+        this.numberOfThreads = numberOfThreads;
     }
     
     public Iterable<Path> findAllPaths( Node start, Node end )
@@ -123,6 +157,12 @@ public class ShortestPath implements PathFinder<Path>
         {
             return Arrays.asList( PathImpl.singular( start ) );
         }
+        if ( numberOfThreads > 1 )
+        {
+            return new ParallelShortestPathSearch( this, maxDepth,
+                    stopAsap ? 1 : maxResultCount, numberOfThreads ).findPaths(
+                    start, end, relExpander );
+        }
 
         Hits hits = new Hits();
         Collection<Long> sharedVisitedRels = new HashSet<Long>();
@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.projection;
+
+import java.util.Arrays;
+
+import org.neo4j.graphalgo.CostEvaluator;
+import org.neo4j.graphalgo.impl.util.LongIntMap;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+/**
+ * A read only copy of a set of nodes and the relationships between them. The
+ * nodes are numbered 0 to {@link #getNodeCount()}-1, and the relationships
+ * each node can be left through are stored in compressed sparse row form:
+ * those of node i are at the indexes {@link #firstRelationship(int)} up to
+ * {@link #firstRelationship(int) firstRelationship(i+1)} in the target, weight
+ * and relationship id arrays. A relationship that can be followed both ways is
+ * stored once for each of its nodes.
+ * <p>
+ * Changes made to the graph after the projection has been created are not
+ * seen by it.
+ */
+public class GraphProjection
+{
+    private final GraphDatabaseService graphDb;
+    private final Direction direction;
+    final long[] nodeIds;
+    private final LongIntMap nodeIndexes;
+    // CSR arrays, see the class comment
+    final int[] offsets;
+    final int[] targets;
+    final double[] weights;
+    final long[] relationshipIds;
+
+    private GraphProjection( GraphDatabaseService graphDb, Direction direction,
+        long[] nodeIds, LongIntMap nodeIndexes, int[] offsets, int[] targets,
+        double[] weights, long[] relationshipIds )
+    {
+        this.graphDb = graphDb;
+        this.direction = direction;
+        this.nodeIds = nodeIds;
+        this.nodeIndexes = nodeIndexes;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.relationshipIds = relationshipIds;
+    }
+
+    /**
+     * Creates a projection of the given nodes and the relationships between
+     * them.
+     * @param nodes
+     *            The nodes to include. Relationships to nodes not in here are
+     *            left out.
+     * @param costEvaluator
+     *            Gives the weight of each relationship, in the direction it is
+     *            followed. Null gives all relationships the weight 1.
+     * @param direction
+     *            The direction relationships can be followed in.
+     * @param relationshipTypes
+     *            The types of relationships to include. None means all types.
+     */
+    public static GraphProjection project( Iterable<Node> nodes,
+        CostEvaluator<Double> costEvaluator, Direction direction,
+        RelationshipType... relationshipTypes )
+    {
+        GraphDatabaseService graphDb = null;
+        LongIntMap nodeIndexes = new LongIntMap();
+        long[] nodeIds = new long[16];
+        int nodeCount = 0;
+        for ( Node node : nodes )
+        {
+            if ( nodeIndexes.get( node.getId() ) != -1 )
+            {
+                continue;
+            }
+            if ( graphDb == null )
+            {
+                graphDb = node.getGraphDatabase();
+            }
+            if ( nodeCount == nodeIds.length )
+            {
+                nodeIds = Arrays.copyOf( nodeIds, nodeCount * 2 );
+            }
+            nodeIndexes.put( node.getId(), nodeCount );
+            nodeIds[nodeCount++] = node.getId();
+        }
+        nodeIds = Arrays.copyOf( nodeIds, nodeCount );
+
+        int[] offsets = new int[nodeCount + 1];
+        int[] targets = new int[16];
+        double[] weights = new double[16];
+        long[] relationshipIds = new long[16];
+        int count = 0;
+        for ( int i = 0; i < nodeCount; i++ )
+        {
+            offsets[i] = count;
+            Node node = graphDb.getNodeById( nodeIds[i] );
+            Iterable<Relationship> relationships = relationshipTypes.length == 0 ? node
+                .getRelationships( direction )
+                : node.getRelationships( direction, relationshipTypes );
+            for ( Relationship relationship : relationships )
+            {
+                Node otherNode = relationship.getOtherNode( node );
+                int target = nodeIndexes.get( otherNode.getId() );
+                if ( target == -1 )
+                {
+                    continue;
+                }
+                if ( count == targets.length )
+                {
+                    targets = Arrays.copyOf( targets, count * 2 );
+                    weights = Arrays.copyOf( weights, count * 2 );
+                    relationshipIds = Arrays.copyOf( relationshipIds, count * 2 );
+                }
+                Direction followed = relationship.getStartNode().equals( node ) ? Direction.OUTGOING
+                    : Direction.INCOMING;
+                targets[count] = target;
+                weights[count] = costEvaluator == null ? 1.0 : costEvaluator
+                    .getCost( relationship, followed );
+                relationshipIds[count] = relationship.getId();
+                count++;
+            }
+        }
+        offsets[nodeCount] = count;
+        return new GraphProjection( graphDb, direction, nodeIds, nodeIndexes,
+            offsets, Arrays.copyOf( targets, count ), Arrays.copyOf( weights,
+                count ), Arrays.copyOf( relationshipIds, count ) );
+    }
+
+    public int getNodeCount()
+    {
+        return nodeIds.length;
+    }
+
+    /**
+     * @return The number of relationships from node to node, counting the
+     *         ones that can be followed both ways twice.
+     */
+    public int getRelationshipCount()
+    {
+        return targets.length;
+    }
+
+    /**
+     * @return The direction relationships were followed in when the
+     *         projection was created.
+     */
+    public Direction getDirection()
+    {
+        return direction;
+    }
+
+    /**
+     * @return The index of the node, or -1 if it is not in the projection.
+     */
+    public int indexOf( Node node )
+    {
+        return nodeIndexes.get( node.getId() );
+    }
+
+    public long getNodeId( int index )
+    {
+        return nodeIds[index];
+    }
+
+    public Node getNode( int index )
+    {
+        return graphDb.getNodeById( nodeIds[index] );
+    }
+
+    /**
+     * @return The index of the first relationship node can be left through.
+     *         Those of node are the ones before firstRelationship(node + 1).
+     */
+    public int firstRelationship( int node )
+    {
+        return offsets[node];
+    }
+
+    public int getDegree( int node )
+    {
+        return offsets[node + 1] - offsets[node];
+    }
+
+    /**
+     * @return The index of the node the relationship leads to.
+     */
+    public int getTarget( int relationship )
+    {
+        return targets[relationship];
+    }
+
+    public double getWeight( int relationship )
+    {
+        return weights[relationship];
+    }
+
+    public long getRelationshipId( int relationship )
+    {
+        return relationshipIds[relationship];
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.projection;
+
+import java.util.Arrays;
+
+import org.neo4j.graphdb.Direction;
+
+/**
+ * Centrality measures on a {@link GraphProjection}, as primitive counterparts
+ * of the ones in {@link org.neo4j.graphalgo.impl.centrality}. Every method
+ * returns one value per node, indexed like the nodes of the projection.
+ */
+public class ProjectedCentrality
+{
+    private ProjectedCentrality()
+    {
+    }
+
+    /**
+     * Betweenness centrality, computed with Brandes' algorithm. As in
+     * {@link org.neo4j.graphalgo.impl.centrality.BetweennessCentrality}, paths
+     * are only counted once when relationships can be followed both ways.
+     */
+    public static double[] betweenness( GraphProjection graph )
+    {
+        int n = graph.getNodeCount();
+        double[] centralities = new double[n];
+        double[] dependencies = new double[n];
+        double globalFactor = graph.getDirection() == Direction.BOTH ? 0.5 : 1.0;
+        ProjectedShortestPaths paths = new ProjectedShortestPaths( graph );
+        for ( int startNode = 0; startNode < n; startNode++ )
+        {
+            paths.calculate( startNode );
+            // Go through the nodes furthest away first, so that the
+            // dependencies of the nodes after each one are known
+            for ( int i = paths.getReachedCount() - 1; i >= 0; i-- )
+            {
+                int node = paths.getReached( i );
+                double dependency = 0;
+                for ( int r = graph.offsets[node], end = graph.offsets[node + 1]; r < end; r++ )
+                {
+                    if ( paths.isOnShortestPath( r ) )
+                    {
+                        int next = graph.targets[r];
+                        dependency += (1 + dependencies[next])
+                            / paths.getNumberOfPaths( next );
+                    }
+                }
+                dependency *= paths.getNumberOfPaths( node );
+                dependencies[node] = dependency;
+                if ( node != startNode )
+                {
+                    centralities[node] += dependency * globalFactor;
+                }
+            }
+        }
+        return centralities;
+    }
+
+    /**
+     * Closeness centrality, one divided by the sum of the distances to all
+     * reachable nodes. Nodes that reach no other node get 0.
+     */
+    public static double[] closeness( GraphProjection graph )
+    {
+        int n = graph.getNodeCount();
+        double[] centralities = new double[n];
+        ProjectedShortestPaths paths = new ProjectedShortestPaths( graph );
+        for ( int startNode = 0; startNode < n; startNode++ )
+        {
+            paths.calculate( startNode );
+            double sum = 0;
+            for ( int i = 0; i < paths.getReachedCount(); i++ )
+            {
+                sum += paths.getDistance( paths.getReached( i ) );
+            }
+            if ( sum != 0 )
+            {
+                centralities[startNode] = 1.0 / sum;
+            }
+        }
+        return centralities;
+    }
+
+    /**
+     * Eccentricity, the largest distance to any reachable node.
+     */
+    public static double[] eccentricity( GraphProjection graph )
+    {
+        int n = graph.getNodeCount();
+        double[] eccentricities = new double[n];
+        ProjectedShortestPaths paths = new ProjectedShortestPaths( graph );
+        for ( int startNode = 0; startNode < n; startNode++ )
+        {
+            paths.calculate( startNode );
+            // reached in order of increasing distance
+            eccentricities[startNode] = paths.getDistance( paths
+                .getReached( paths.getReachedCount() - 1 ) );
+        }
+        return eccentricities;
+    }
+
+    /**
+     * Eigenvector centrality computed with the power method, like
+     * {@link org.neo4j.graphalgo.impl.centrality.EigenvectorCentralityPower}.
+     * Starts from the same value for every node instead of random ones, so
+     * the result does not change between runs.
+     * @param precision
+     *            Iteration stops when no value changes by more than this
+     *            factor.
+     * @param maxIterations
+     *            Iteration stops after this many iterations regardless.
+     * @return The normalized eigenvector.
+     */
+    public static double[] eigenvectorPower( GraphProjection graph,
+        double precision, int maxIterations )
+    {
+        int n = graph.getNodeCount();
+        double[] values = new double[n];
+        double[] newValues = new double[n];
+        Arrays.fill( values, 1.0 / Math.sqrt( n ) );
+        for ( int iteration = 0; iteration < maxIterations; iteration++ )
+        {
+            Arrays.fill( newValues, 0 );
+            // "matrix multiplication"
+            for ( int node = 0; node < n; node++ )
+            {
+                double value = values[node];
+                for ( int r = graph.offsets[node], end = graph.offsets[node + 1]; r < end; r++ )
+                {
+                    newValues[graph.targets[r]] += value * graph.weights[r];
+                }
+            }
+            normalize( newValues );
+            boolean done = timeToStop( values, newValues, precision );
+            double[] swap = values;
+            values = newValues;
+            newValues = swap;
+            if ( done )
+            {
+                break;
+            }
+        }
+        // If the first value is negative (possibly the whole vector), negate
+        // the whole vector
+        if ( n > 0 && values[0] < 0 )
+        {
+            for ( int i = 0; i < n; i++ )
+            {
+                values[i] = -values[i];
+            }
+        }
+        return values;
+    }
+
+    private static void normalize( double[] vector )
+    {
+        double sum = 0;
+        for ( double d : vector )
+        {
+            sum += d * d;
+        }
+        sum = Math.sqrt( sum );
+        if ( sum > 0.0 )
+        {
+            for ( int i = 0; i < vector.length; i++ )
+            {
+                vector[i] /= sum;
+            }
+        }
+    }
+
+    private static boolean timeToStop( double[] oldValues, double[] newValues,
+        double precision )
+    {
+        for ( int i = 0; i < oldValues.length; i++ )
+        {
+            if ( oldValues[i] == 0.0 )
+            {
+                if ( Math.abs( newValues[i] ) > precision )
+                {
+                    return false;
+                }
+                continue;
+            }
+            double factor = Math.abs( newValues[i] / oldValues[i] );
+            if ( factor - precision > 1.0 || factor + precision < 1.0 )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
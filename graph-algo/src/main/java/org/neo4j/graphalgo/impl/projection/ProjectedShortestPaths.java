@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.projection;
+
+import java.util.Arrays;
+
+import org.neo4j.graphalgo.impl.util.IntDoubleHeap;
+
+/**
+ * Dijkstra's algorithm on a {@link GraphProjection}, as a primitive
+ * counterpart of
+ * {@link org.neo4j.graphalgo.impl.shortestpath.SingleSourceShortestPathDijkstra}.
+ * Besides the distances it counts the number of shortest paths to each node,
+ * records which relationships are on them, and remembers the order in which
+ * the nodes were reached, which is what betweenness centrality needs. All state is allocated once, so an instance
+ * should be reused for every start node. It is not thread safe; use one per
+ * thread.
+ */
+public class ProjectedShortestPaths
+{
+    private final GraphProjection graph;
+    private final IntDoubleHeap queue;
+    private final double[] distances;
+    private final double[] pathCounts;
+    private final int[] settled;
+    private int settledCount;
+    // A relationship is on a shortest path if its stamp is the one its
+    // target got when last reached at a lower distance
+    private final int[] nodeStamps;
+    private final int[] relationshipStamps;
+    private int stamp;
+
+    public ProjectedShortestPaths( GraphProjection graph )
+    {
+        this.graph = graph;
+        int nodeCount = graph.getNodeCount();
+        queue = new IntDoubleHeap( nodeCount );
+        distances = new double[nodeCount];
+        pathCounts = new double[nodeCount];
+        settled = new int[nodeCount];
+        nodeStamps = new int[nodeCount];
+        relationshipStamps = new int[graph.getRelationshipCount()];
+    }
+
+    /**
+     * Finds the shortest paths from the start node to every node it can
+     * reach. Relationship weights must not be negative.
+     * @param startNode
+     *            The index of the start node in the projection.
+     */
+    public void calculate( int startNode )
+    {
+        Arrays.fill( distances, Double.POSITIVE_INFINITY );
+        Arrays.fill( pathCounts, 0 );
+        Arrays.fill( relationshipStamps, 0 );
+        queue.clear();
+        settledCount = 0;
+        stamp = 0;
+        int[] offsets = graph.offsets;
+        int[] targets = graph.targets;
+        double[] weights = graph.weights;
+
+        distances[startNode] = 0;
+        pathCounts[startNode] = 1;
+        queue.insertOrUpdate( startNode, 0 );
+        while ( !queue.isEmpty() )
+        {
+            int node = queue.poll();
+            settled[settledCount++] = node;
+            double distance = distances[node];
+            for ( int i = offsets[node], end = offsets[node + 1]; i < end; i++ )
+            {
+                int target = targets[i];
+                double alternative = distance + weights[i];
+                if ( alternative < distances[target] )
+                {
+                    distances[target] = alternative;
+                    pathCounts[target] = pathCounts[node];
+                    nodeStamps[target] = ++stamp;
+                    relationshipStamps[i] = stamp;
+                    queue.insertOrUpdate( target, alternative );
+                }
+                else if ( alternative == distances[target] && queue.contains( target ) )
+                {
+                    pathCounts[target] += pathCounts[node];
+                    relationshipStamps[i] = nodeStamps[target];
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The distance from the last start node, or
+     *         {@link Double#POSITIVE_INFINITY} if the node can't be reached.
+     */
+    public double getDistance( int node )
+    {
+        return distances[node];
+    }
+
+    /**
+     * @return The number of shortest paths from the last start node.
+     */
+    public double getNumberOfPaths( int node )
+    {
+        return pathCounts[node];
+    }
+
+    /**
+     * @return Whether the relationship, an index into the relationships of
+     *         the projection, is the last one on a shortest path from the last
+     *         start node to its target. Decided while calculating the paths,
+     *         so it agrees with {@link #getNumberOfPaths(int)} even where
+     *         comparing distances again would not, as for relationships of
+     *         weight zero back to an already reached node.
+     */
+    public boolean isOnShortestPath( int relationship )
+    {
+        int relationshipStamp = relationshipStamps[relationship];
+        return relationshipStamp != 0
+               && relationshipStamp == nodeStamps[graph.targets[relationship]];
+    }
+
+    /**
+     * @return The number of nodes reached from the last start node, itself
+     *         included.
+     */
+    public int getReachedCount()
+    {
+        return settledCount;
+    }
+
+    /**
+     * @return The i:th node reached from the last start node, in order of
+     *         increasing distance.
+     */
+    public int getReached( int i )
+    {
+        return settled[i];
+    }
+
+    /**
+     * The Floyd-Warshall algorithm on a {@link GraphProjection}, as a
+     * primitive counterpart of
+     * {@link org.neo4j.graphalgo.impl.shortestpath.FloydWarshall}.
+     * @return The costs of the shortest paths between all pairs of nodes,
+     *         indexed [from][to]. {@link Double#POSITIVE_INFINITY} where there
+     *         is no path.
+     */
+    public static double[][] allPairs( GraphProjection graph )
+    {
+        int n = graph.getNodeCount();
+        double[][] costs = new double[n][n];
+        for ( int i = 0; i < n; i++ )
+        {
+            Arrays.fill( costs[i], Double.POSITIVE_INFINITY );
+            costs[i][i] = 0;
+            for ( int r = graph.offsets[i], end = graph.offsets[i + 1]; r < end; r++ )
+            {
+                int target = graph.targets[r];
+                costs[i][target] = Math.min( costs[i][target], graph.weights[r] );
+            }
+        }
+        for ( int v = 0; v < n; v++ )
+        {
+            double[] fromV = costs[v];
+            for ( int i = 0; i < n; i++ )
+            {
+                double[] fromI = costs[i];
+                double toV = fromI[v];
+                if ( toV == Double.POSITIVE_INFINITY )
+                {
+                    continue;
+                }
+                for ( int j = 0; j < n; j++ )
+                {
+                    double alternative = toV + fromV[j];
+                    if ( alternative < fromI[j] )
+                    {
+                        fromI[j] = alternative;
+                    }
+                }
+            }
+        }
+        return costs;
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A map from non-negative longs to ints, like {@link LongIntMap}, which can
+ * be used from several threads at the same time. The keys are spread over a
+ * number of segments, each an open addressing table guarded by its own lock,
+ * so threads only wait for each other when they add keys to the same
+ * segment. Lookups take no lock at all: a value is written before its key,
+ * and a table which has grown is only published once it is complete.
+ */
+public class ConcurrentLongIntMap
+{
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    /**
+     * @param concurrencyLevel
+     *            The number of threads expected to use this map at the same
+     *            time.
+     */
+    public ConcurrentLongIntMap( int concurrencyLevel )
+    {
+        int segmentBits = 0;
+        // a few segments per thread, to make collisions between them rare
+        while ( (1 << segmentBits) < concurrencyLevel * 4 )
+        {
+            segmentBits++;
+        }
+        segments = new Segment[1 << segmentBits];
+        for ( int i = 0; i < segments.length; i++ )
+        {
+            segments[i] = new Segment();
+        }
+        segmentShift = 64 - segmentBits;
+    }
+
+    /**
+     * @return The value for the key, or -1 if there is none.
+     */
+    public int get( long key )
+    {
+        Segment segment = segmentFor( key );
+        Table table;
+        int value;
+        do
+        {
+            table = segment.table;
+            value = table.get( key );
+        }
+        // a key added while the segment grew is only in the new table
+        while ( value == -1 && table != segment.table );
+        return value;
+    }
+
+    /**
+     * Gets the value for the key, or gives it the next value of
+     * {@code nextValue} if it has none. {@code nextValue} is only advanced
+     * when the key is given a value, so the values handed out from it have no
+     * gaps even when several threads race to add the same key.
+     *
+     * @return The value the key already had or was given.
+     */
+    public int getOrPutNext( long key, AtomicInteger nextValue )
+    {
+        Segment segment = segmentFor( key );
+        synchronized ( segment )
+        {
+            int value = segment.table.get( key );
+            if ( value == -1 )
+            {
+                value = nextValue.getAndIncrement();
+                segment.put( key, value );
+            }
+            return value;
+        }
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for ( Segment segment : segments )
+        {
+            synchronized ( segment )
+            {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    private Segment segmentFor( long key )
+    {
+        if ( segmentShift == 64 )
+        {
+            return segments[0];
+        }
+        // the high bits, while the tables themselves hash on the low bits
+        return segments[(int) ((key * 0xC2B2AE3D27D4EB4FL) >>> segmentShift)];
+    }
+
+    private static class Segment
+    {
+        // replaced, never changed in place, when it grows
+        private volatile Table table = new Table( 32 );
+        // guarded by the segment
+        private int size;
+
+        void put( long key, int value )
+        {
+            if ( (size + 1) * 2 > table.capacity() )
+            {
+                Table grown = new Table( table.capacity() * 2 );
+                table.copyTo( grown );
+                table = grown;
+            }
+            table.put( key, value );
+            size++;
+        }
+    }
+
+    private static class Table
+    {
+        // key + 1 for each slot, 0 for a free slot
+        private final AtomicLongArray keys;
+        private final AtomicIntegerArray values;
+
+        Table( int capacity )
+        {
+            keys = new AtomicLongArray( capacity );
+            values = new AtomicIntegerArray( capacity );
+        }
+
+        int capacity()
+        {
+            return keys.length();
+        }
+
+        int get( long key )
+        {
+            int mask = keys.length() - 1;
+            for ( int slot = hash( key ) & mask;; slot = (slot + 1) & mask )
+            {
+                long existing = keys.get( slot );
+                if ( existing == key + 1 )
+                {
+                    return values.get( slot );
+                }
+                if ( existing == 0 )
+                {
+                    return -1;
+                }
+            }
+        }
+
+        /**
+         * Adds a key which isn't in the table. The value is written first, so
+         * a reader which finds the key finds its value as well.
+         */
+        void put( long key, int value )
+        {
+            int mask = keys.length() - 1;
+            int slot = hash( key ) & mask;
+            while ( keys.get( slot ) != 0 )
+            {
+                slot = (slot + 1) & mask;
+            }
+            values.set( slot, value );
+            keys.set( slot, key + 1 );
+        }
+
+        void copyTo( Table other )
+        {
+            for ( int slot = 0; slot < keys.length(); slot++ )
+            {
+                long key = keys.get( slot );
+                if ( key != 0 )
+                {
+                    other.put( key - 1, values.get( slot ) );
+                }
+            }
+        }
+
+        private static int hash( long key )
+        {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.util;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of the ints 0 to capacity-1, each with a double priority.
+ * Since the elements are known in advance, the position of each element is
+ * kept in an array, which makes it possible to lower the priority of an
+ * element already in the heap without searching for it. Nothing is allocated
+ * after construction, other than by {@link #ensureCapacity(int)}, so an
+ * instance can be {@link #clear() cleared} and reused for another search.
+ */
+public class IntDoubleHeap
+{
+    private int[] heap;
+    private double[] priorities;
+    // position of each element in the heap, -1 if not in it
+    private int[] positions;
+    private int size;
+
+    /**
+     * @param capacity
+     *            The elements in this heap will be 0 to capacity-1.
+     */
+    public IntDoubleHeap( int capacity )
+    {
+        heap = new int[capacity];
+        priorities = new double[capacity];
+        positions = new int[capacity];
+        Arrays.fill( positions, -1 );
+    }
+
+    /**
+     * Makes room for the elements 0 to capacity-1, keeping the elements
+     * already in the heap.
+     */
+    public void ensureCapacity( int capacity )
+    {
+        int oldCapacity = positions.length;
+        if ( capacity <= oldCapacity )
+        {
+            return;
+        }
+        int newCapacity = Math.max( capacity, oldCapacity * 2 );
+        heap = Arrays.copyOf( heap, newCapacity );
+        priorities = Arrays.copyOf( priorities, newCapacity );
+        positions = Arrays.copyOf( positions, newCapacity );
+        Arrays.fill( positions, oldCapacity, newCapacity, -1 );
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean contains( int element )
+    {
+        return positions[element] != -1;
+    }
+
+    /**
+     * @return The priority the element was last given, only meaningful while
+     *         it is in the heap.
+     */
+    public double getPriority( int element )
+    {
+        return priorities[element];
+    }
+
+    /**
+     * Inserts the element, or changes its priority if it is in the heap
+     * already.
+     */
+    public void insertOrUpdate( int element, double priority )
+    {
+        int position = positions[element];
+        if ( position == -1 )
+        {
+            position = size++;
+            heap[position] = element;
+            positions[element] = position;
+            priorities[element] = priority;
+            siftUp( position );
+            return;
+        }
+        double old = priorities[element];
+        priorities[element] = priority;
+        if ( priority < old )
+        {
+            siftUp( position );
+        }
+        else
+        {
+            siftDown( position );
+        }
+    }
+
+    /**
+     * @return The element with the lowest priority, without removing it.
+     */
+    public int peek()
+    {
+        return heap[0];
+    }
+
+    /**
+     * Removes and returns the element with the lowest priority.
+     */
+    public int poll()
+    {
+        int first = heap[0];
+        positions[first] = -1;
+        size--;
+        if ( size > 0 )
+        {
+            int last = heap[size];
+            heap[0] = last;
+            positions[last] = 0;
+            siftDown( 0 );
+        }
+        return first;
+    }
+
+    /**
+     * Removes all elements, in time proportional to the number of elements in
+     * the heap.
+     */
+    public void clear()
+    {
+        for ( int i = 0; i < size; i++ )
+        {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp( int position )
+    {
+        int element = heap[position];
+        double priority = priorities[element];
+        while ( position > 0 )
+        {
+            int parentPosition = (position - 1) >>> 1;
+            int parent = heap[parentPosition];
+            if ( priorities[parent] <= priority )
+            {
+                break;
+            }
+            heap[position] = parent;
+            positions[parent] = position;
+            position = parentPosition;
+        }
+        heap[position] = element;
+        positions[element] = position;
+    }
+
+    private void siftDown( int position )
+    {
+        int element = heap[position];
+        double priority = priorities[element];
+        int half = size >>> 1;
+        while ( position < half )
+        {
+            int childPosition = 2 * position + 1;
+            int child = heap[childPosition];
+            int rightPosition = childPosition + 1;
+            if ( rightPosition < size
+                && priorities[heap[rightPosition]] < priorities[child] )
+            {
+                childPosition = rightPosition;
+                child = heap[childPosition];
+            }
+            if ( priority <= priorities[child] )
+            {
+                break;
+            }
+            heap[position] = child;
+            positions[child] = position;
+            position = childPosition;
+        }
+        heap[position] = element;
+        positions[element] = position;
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.util;
+
+import java.util.Arrays;
+
+/**
+ * A map from non-negative longs, like node and relationship ids, to ints,
+ * using open addressing so that neither keys nor values are boxed. Clearing
+ * it takes time proportional to the number of entries, not its capacity, so
+ * that it can be reused for searches of very different sizes.
+ */
+public class LongIntMap
+{
+    private static final long FREE = -1;
+
+    private long[] keys;
+    private int[] values;
+    // the slots in use, so that clear() doesn't have to visit all of them
+    private int[] usedSlots;
+    private int size;
+
+    public LongIntMap()
+    {
+        this( 16 );
+    }
+
+    public LongIntMap( int expectedSize )
+    {
+        int capacity = 32;
+        while ( capacity < expectedSize * 2 )
+        {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new int[capacity];
+        usedSlots = new int[capacity / 2];
+        Arrays.fill( keys, FREE );
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return The value for the key, or -1 if there is none.
+     */
+    public int get( long key )
+    {
+        int mask = keys.length - 1;
+        for ( int slot = hash( key ) & mask;; slot = (slot + 1) & mask )
+        {
+            long existing = keys[slot];
+            if ( existing == key )
+            {
+                return values[slot];
+            }
+            if ( existing == FREE )
+            {
+                return -1;
+            }
+        }
+    }
+
+    public void put( long key, int value )
+    {
+        if ( (size + 1) * 2 > keys.length )
+        {
+            grow();
+        }
+        int mask = keys.length - 1;
+        int slot = hash( key ) & mask;
+        while ( keys[slot] != FREE && keys[slot] != key )
+        {
+            slot = (slot + 1) & mask;
+        }
+        if ( keys[slot] == FREE )
+        {
+            keys[slot] = key;
+            usedSlots[size++] = slot;
+        }
+        values[slot] = value;
+    }
+
+    public void clear()
+    {
+        for ( int i = 0; i < size; i++ )
+        {
+            keys[usedSlots[i]] = FREE;
+        }
+        size = 0;
+    }
+
+    private void grow()
+    {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        int[] oldUsedSlots = usedSlots;
+        int oldSize = size;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        usedSlots = new int[oldKeys.length];
+        Arrays.fill( keys, FREE );
+        size = 0;
+        for ( int i = 0; i < oldSize; i++ )
+        {
+            int slot = oldUsedSlots[i];
+            put( oldKeys[slot], oldValues[slot] );
+        }
+    }
+
+    private static int hash( long key )
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -19,20 +19,28 @@
  */
 package org.neo4j.graphalgo.centrality;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 import org.neo4j.graphalgo.CostEvaluator;
 import org.neo4j.graphalgo.impl.centrality.BetweennessCentrality;
 import org.neo4j.graphalgo.impl.centrality.ClosenessCentrality;
 import org.neo4j.graphalgo.impl.centrality.CostDivider;
+import org.neo4j.graphalgo.impl.centrality.NetworkDiameter;
 import org.neo4j.graphalgo.impl.centrality.ParallellCentralityCalculation;
 import org.neo4j.graphalgo.impl.centrality.ShortestPathBasedCentrality;
 import org.neo4j.graphalgo.impl.centrality.StressCentrality;
 import org.neo4j.graphalgo.impl.shortestpath.SingleSourceShortestPath;
 import org.neo4j.graphalgo.impl.shortestpath.SingleSourceShortestPathDijkstra;
+import org.neo4j.graphalgo.impl.shortestpath.SingleSourceShortestPathFactory;
 import org.neo4j.graphalgo.impl.util.DoubleAdder;
+import org.neo4j.graphalgo.impl.util.DoubleComparator;
 import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 
 import common.Neo4jAlgoTestCase;
@@ -110,4 +118,112 @@ public class ParallellCentralityCalculationTest extends Neo4jAlgoTestCase
         assertCentrality( closenessCentrality, "d", 1.0 / 7 );
         assertCentrality( closenessCentrality, "e", 1.0 / 7 );
     }
+
+    @Test
+    public void testSameResultsOnSeveralThreads()
+    {
+        SingleSourceShortestPathFactory<Double> factory = makeGrid( 6 );
+
+        List<ShortestPathBasedCentrality<Double,Double>> sequential = calculate(
+            new ParallellCentralityCalculation<Double>( factory, graph.getAllNodes(), 1 ) );
+        List<ShortestPathBasedCentrality<Double,Double>> parallel = calculate(
+            new ParallellCentralityCalculation<Double>( factory, graph.getAllNodes(), 4 ) );
+
+        for ( int i = 0; i < 3; i++ )
+        {
+            for ( Node node : graph.getAllNodes() )
+            {
+                assertEquals( sequential.get( i ).getCentrality( node ),
+                    parallel.get( i ).getCentrality( node ), 0.000001 );
+            }
+        }
+        assertEquals( 10.0, parallel.get( 3 ).getCentrality( null ), 0.0 );
+    }
+
+    @Test
+    public void testSameResultsEveryRunWithTheSameNumberOfThreads()
+    {
+        SingleSourceShortestPathFactory<Double> factory = makeGrid( 8 );
+
+        List<ShortestPathBasedCentrality<Double,Double>> first = calculate(
+            new ParallellCentralityCalculation<Double>( factory, graph.getAllNodes(), 3 ) );
+        for ( int run = 0; run < 3; run++ )
+        {
+            List<ShortestPathBasedCentrality<Double,Double>> again = calculate(
+                new ParallellCentralityCalculation<Double>( factory, graph.getAllNodes(), 3 ) );
+            for ( int i = 0; i < 3; i++ )
+            {
+                for ( Node node : graph.getAllNodes() )
+                {
+                    assertEquals( first.get( i ).getCentrality( node ),
+                        again.get( i ).getCentrality( node ), 0.000001 );
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes a grid, so that there are several shortest paths between most
+     * nodes.
+     */
+    private SingleSourceShortestPathFactory<Double> makeGrid( int size )
+    {
+        for ( int x = 0; x < size; x++ )
+        {
+            for ( int y = 0; y < size; y++ )
+            {
+                graph.makeNode( x + "-" + y );
+            }
+        }
+        for ( int x = 0; x < size; x++ )
+        {
+            for ( int y = 0; y < size; y++ )
+            {
+                if ( x + 1 < size ) graph.makeEdge( x + "-" + y, (x + 1) + "-" + y );
+                if ( y + 1 < size ) graph.makeEdge( x + "-" + y, x + "-" + (y + 1) );
+            }
+        }
+        // The other threads only see what has been committed
+        restartTx();
+        return new SingleSourceShortestPathFactory<Double>()
+        {
+            public SingleSourceShortestPath<Double> newInstance()
+            {
+                return getSingleSourceShortestPath();
+            }
+        };
+    }
+
+    private List<ShortestPathBasedCentrality<Double,Double>> calculate(
+        ParallellCentralityCalculation<Double> pcc )
+    {
+        SingleSourceShortestPath<Double> singleSourceShortestPath = getSingleSourceShortestPath();
+        List<ShortestPathBasedCentrality<Double,Double>> calculations = new ArrayList<ShortestPathBasedCentrality<Double,Double>>();
+        calculations.add( new BetweennessCentrality<Double>(
+            singleSourceShortestPath, graph.getAllNodes() ) );
+        calculations.add( new StressCentrality<Double>(
+            singleSourceShortestPath, graph.getAllNodes() ) );
+        calculations.add( new ClosenessCentrality<Double>(
+            singleSourceShortestPath, new DoubleAdder(), 0.0, graph
+                .getAllNodes(), new CostDivider<Double>()
+            {
+                public Double divideByCost( Double d, Double c )
+                {
+                    return d / c;
+                }
+
+                public Double divideCost( Double c, Double d )
+                {
+                    return c / d;
+                }
+            } ) );
+        calculations.add( new NetworkDiameter<Double>( singleSourceShortestPath,
+            0.0, graph.getAllNodes(), new DoubleComparator() ) );
+        for ( ShortestPathBasedCentrality<Double,Double> calculation : calculations )
+        {
+            pcc.addCalculation( calculation );
+        }
+        pcc.calculate();
+        return calculations;
+    }
 }
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipExpander;
+import org.neo4j.helpers.collection.IteratorUtil;
+import org.neo4j.kernel.Traversal;
+
+import common.Neo4jAlgoTestCase;
+
+public class TestParallelShortestPathSearch extends Neo4jAlgoTestCase
+{
+    @Test
+    public void levelOfTheMinimumSizeIsExpandedOnSeveralThreads()
+    {
+        Set<String> threads = findPathsThroughLevelOf( ParallelShortestPathSearch.MIN_PARALLEL_LEVEL_SIZE );
+        assertTrue( threads.toString(), expandedInThePool( threads ) );
+    }
+
+    @Test
+    public void smallerLevelIsExpandedOnTheCallingThread()
+    {
+        Set<String> threads = findPathsThroughLevelOf( ParallelShortestPathSearch.MIN_PARALLEL_LEVEL_SIZE - 1 );
+        assertEquals( Collections.singleton( Thread.currentThread().getName() ), threads );
+    }
+
+    /**
+     * Finds the paths from s to t in (s)-->(a0..an)-->(b0..bn)-->(t), where
+     * the level of a nodes is expanded after those next to s and t.
+     *
+     * @return The names of the threads which expanded nodes.
+     */
+    private Set<String> findPathsThroughLevelOf( int size )
+    {
+        for ( int i = 0; i < size; i++ )
+        {
+            graph.makeEdge( "s", "a" + i );
+            graph.makeEdge( "a" + i, "b" + i );
+            graph.makeEdge( "b" + i, "t" );
+        }
+        // the threads can only see what's committed
+        restartTx();
+
+        final Set<String> threads = Collections.synchronizedSet( new HashSet<String>() );
+        RelationshipExpander expander = new RecordingExpander(
+                Traversal.expanderForTypes( MyRelTypes.R1, Direction.OUTGOING ), threads );
+        Node s = graph.getNode( "s" );
+        Node t = graph.getNode( "t" );
+        Iterable<Path> paths = new ShortestPath( 5, expander, Integer.MAX_VALUE, 4 ).findAllPaths( s, t );
+        assertEquals( size, IteratorUtil.count( paths ) );
+        return threads;
+    }
+
+    private static boolean expandedInThePool( Set<String> threads )
+    {
+        for ( String thread : threads )
+        {
+            if ( thread.startsWith( "Shortest path expander" ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class RecordingExpander implements RelationshipExpander
+    {
+        private final RelationshipExpander expander;
+        private final Set<String> threads;
+
+        RecordingExpander( RelationshipExpander expander, Set<String> threads )
+        {
+            this.expander = expander;
+            this.threads = threads;
+        }
+
+        public Iterable<Relationship> expand( Node node )
+        {
+            threads.add( Thread.currentThread().getName() );
+            return expander.expand( node );
+        }
+
+        public RelationshipExpander reversed()
+        {
+            return new RecordingExpander( expander.reversed(), threads );
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TestConcurrentLongIntMap
+{
+    @Test
+    public void racingThreadsGetTheSameValuesWithoutGaps() throws Exception
+    {
+        final int keys = 10000;
+        final ConcurrentLongIntMap map = new ConcurrentLongIntMap( 4 );
+        final AtomicInteger nextValue = new AtomicInteger();
+        final int[][] seen = new int[4][keys];
+        Thread[] threads = new Thread[seen.length];
+        for ( int t = 0; t < threads.length; t++ )
+        {
+            final int thread = t;
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for ( int key = 0; key < keys; key++ )
+                    {
+                        seen[thread][key] = map.getOrPutNext( key * 31L, nextValue );
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        assertEquals( keys, map.size() );
+        assertEquals( keys, nextValue.get() );
+        boolean[] used = new boolean[keys];
+        for ( int key = 0; key < keys; key++ )
+        {
+            int value = map.get( key * 31L );
+            for ( int[] values : seen )
+            {
+                assertEquals( value, values[key] );
+            }
+            assertTrue( !used[value] );
+            used[value] = true;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.neo4j.graphalgo.CommonEvaluators;
+import org.neo4j.graphalgo.CostEvaluator;
+import org.neo4j.graphalgo.GraphAlgoFactory;
+import org.neo4j.graphalgo.PathFinder;
+import org.neo4j.graphalgo.WeightedPath;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipExpander;
+import org.neo4j.kernel.Traversal;
+
+import common.Neo4jAlgoTestCase;
+
+public class TestBidirectionalDijkstra extends Neo4jAlgoTestCase
+{
+    @Test
+    public void testSmallGraph()
+    {
+        /* Layout:
+         *
+         * (start)--[1]->(a)--[9]-->(x)<--[1]--(d)
+         *                |         ^           ^
+         *               [1]      [7][3]       [1]
+         *                v        | /          |
+         *               (b)--[1]-->(c)--------+
+         */
+        graph.makeEdge( "start", "a", "cost", 1d );
+        graph.makeEdge( "a", "x", "cost", 9d );
+        graph.makeEdge( "a", "b", "cost", 1d );
+        graph.makeEdge( "b", "x", "cost", 7d );
+        graph.makeEdge( "b", "c", "cost", 1d );
+        graph.makeEdge( "c", "x", "cost", 3d );
+        graph.makeEdge( "c", "d", "cost", 1d );
+        graph.makeEdge( "d", "x", "cost", 1d );
+
+        PathFinder<WeightedPath> finder = GraphAlgoFactory.bidirectionalDijkstra(
+                Traversal.expanderForTypes( MyRelTypes.R1, Direction.OUTGOING ),
+                CommonEvaluators.doubleCostEvaluator( "cost" ) );
+        WeightedPath path = finder.findSinglePath( graph.getNode( "start" ),
+                graph.getNode( "x" ) );
+        assertPathDef( path, "start", "a", "b", "c", "d", "x" );
+        assertEquals( 5d, path.weight(), 0 );
+
+        assertNull( finder.findSinglePath( graph.getNode( "x" ), graph.getNode( "start" ) ) );
+    }
+
+    @Test
+    public void testEndSideEvaluatesCostsAsIncoming()
+    {
+        /* Layout, each relationship costing 1 outgoing and 2 incoming:
+         *
+         *        +->(b1)--+
+         *        |        v
+         * (start)+->(b2)  (c)-->(d)-->(x)
+         *        |
+         *        +->(b3)
+         *
+         * The start side has more nodes queued after the first step, so the
+         * end side reaches (d), (c) and (b1) by itself.
+         */
+        for ( String name : new String[] { "b1", "b2", "b3" } )
+        {
+            graph.makeEdge( "start", name, "out", 1d, "in", 2d );
+        }
+        graph.makeEdge( "b1", "c", "out", 1d, "in", 2d );
+        graph.makeEdge( "c", "d", "out", 1d, "in", 2d );
+        graph.makeEdge( "d", "x", "out", 1d, "in", 2d );
+
+        PathFinder<WeightedPath> finder = GraphAlgoFactory.bidirectionalDijkstra(
+                Traversal.expanderForTypes( MyRelTypes.R1, Direction.OUTGOING ),
+                new CostEvaluator<Double>()
+                {
+                    public Double getCost( Relationship relationship, Direction direction )
+                    {
+                        return (Double) relationship.getProperty(
+                                direction == Direction.INCOMING ? "in" : "out" );
+                    }
+                } );
+        WeightedPath path = finder.findSinglePath( graph.getNode( "start" ),
+                graph.getNode( "x" ) );
+        assertPathDef( path, "start", "b1", "c", "d", "x" );
+        assertEquals( 7d, path.weight(), 0 );
+    }
+
+    @Test
+    public void testPathToSelf()
+    {
+        Node node = graph.makeNode( "A" );
+        graph.makeEdge( "A", "B", "cost", 1d );
+        WeightedPath path = newFinder( Direction.BOTH ).findSinglePath( node, node );
+        assertNotNull( path );
+        assertEquals( 0, path.length() );
+        assertEquals( 0d, path.weight(), 0 );
+    }
+
+    @Test
+    public void testSameWeightAsDijkstraOnRandomGraph()
+    {
+        Random random = new Random( 7 );
+        int nodeCount = 60;
+        for ( int i = 0; i < nodeCount; i++ )
+        {
+            graph.makeNode( "" + i );
+        }
+        for ( int i = 0; i < 200; i++ )
+        {
+            graph.makeEdge( "" + random.nextInt( nodeCount ), "" + random.nextInt( nodeCount ),
+                    "cost", (double) (1 + random.nextInt( 10 )) );
+        }
+
+        for ( Direction direction : Direction.values() )
+        {
+            PathFinder<WeightedPath> dijkstra = GraphAlgoFactory.dijkstra(
+                    Traversal.expanderForTypes( MyRelTypes.R1, direction ), "cost" );
+            // the same finder is used for all searches, to see that its reused
+            // state doesn't leak between them
+            PathFinder<WeightedPath> finder = newFinder( direction );
+            for ( int i = 0; i < 100; i++ )
+            {
+                Node start = graph.getNode( "" + random.nextInt( nodeCount ) );
+                Node end = graph.getNode( "" + random.nextInt( nodeCount ) );
+                WeightedPath expected = dijkstra.findSinglePath( start, end );
+                WeightedPath actual = finder.findSinglePath( start, end );
+                if ( expected == null )
+                {
+                    assertNull( actual );
+                    continue;
+                }
+                assertEquals( expected.weight(), actual.weight(), 0.0001 );
+                assertEquals( start, actual.startNode() );
+                assertEquals( end, actual.endNode() );
+                assertEquals( actual.weight(), sumOfCosts( actual ), 0.0001 );
+            }
+        }
+    }
+
+    @Test
+    public void testCheapestPathWithEstimatesOnGrid()
+    {
+        Random random = new Random( 11 );
+        int size = 8;
+        for ( int x = 0; x < size; x++ )
+        {
+            for ( int y = 0; y < size; y++ )
+            {
+                graph.makeNode( x + "," + y, "x", (double) x, "y", (double) y );
+            }
+        }
+        // the cost is never below the distance, so the estimate is consistent
+        for ( int x = 0; x < size; x++ )
+        {
+            for ( int y = 0; y < size; y++ )
+            {
+                if ( x + 1 < size )
+                {
+                    graph.makeEdge( x + "," + y, (x + 1) + "," + y, "length",
+                            1 + random.nextInt( 4 ) / 2d );
+                }
+                if ( y + 1 < size )
+                {
+                    graph.makeEdge( x + "," + y, x + "," + (y + 1), "length",
+                            1 + random.nextInt( 4 ) / 2d );
+                }
+            }
+        }
+
+        RelationshipExpander expander = Traversal.expanderForAllTypes();
+        // not compared with aStar(), which doesn't always find the cheapest
+        // path when a node is reached again at a lower cost
+        PathFinder<WeightedPath> dijkstra = GraphAlgoFactory.dijkstra( expander, "length" );
+        PathFinder<WeightedPath> finder = GraphAlgoFactory.bidirectionalAStar( expander,
+                CommonEvaluators.doubleCostEvaluator( "length" ),
+                TestAStar.ESTIMATE_EVALUATOR );
+        for ( int i = 0; i < 50; i++ )
+        {
+            Node start = graph.getNode( random.nextInt( size ) + "," + random.nextInt( size ) );
+            Node end = graph.getNode( random.nextInt( size ) + "," + random.nextInt( size ) );
+            WeightedPath actual = finder.findSinglePath( start, end );
+            assertEquals( dijkstra.findSinglePath( start, end ).weight(), actual.weight(), 0.0001 );
+            assertEquals( actual.weight(), sumOfCosts( actual ), 0.0001 );
+        }
+    }
+
+    private PathFinder<WeightedPath> newFinder( Direction direction )
+    {
+        return GraphAlgoFactory.bidirectionalDijkstra(
+                Traversal.expanderForTypes( MyRelTypes.R1, direction ),
+                CommonEvaluators.doubleCostEvaluator( "cost" ) );
+    }
+
+    private double sumOfCosts( WeightedPath path )
+    {
+        double sum = 0;
+        for ( Relationship relationship : path.relationships() )
+        {
+            Object cost = relationship.getProperty( "cost", null );
+            sum += (Double) (cost != null ? cost : relationship.getProperty( "length" ));
+        }
+        return sum;
+    }
+}
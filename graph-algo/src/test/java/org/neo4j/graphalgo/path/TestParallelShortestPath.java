@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.path;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.neo4j.graphalgo.GraphAlgoFactory;
+import org.neo4j.graphalgo.PathFinder;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.RelationshipExpander;
+import org.neo4j.helpers.collection.IteratorUtil;
+import org.neo4j.kernel.Traversal;
+
+/**
+ * Runs the {@link TestShortestPath} tests with a {@link PathFinder} which
+ * expands large levels on several threads.
+ */
+public class TestParallelShortestPath extends TestShortestPath
+{
+    @Override
+    protected PathFinder<Path> instantiatePathFinder( RelationshipExpander expander, int maxDepth )
+    {
+        return GraphAlgoFactory.shortestPath( expander, maxDepth, Integer.MAX_VALUE, 4 );
+    }
+
+    @Test
+    public void testSamePathsAsOneThreadBetweenHubs()
+    {
+        /* Layout:
+         *
+         *     /-(a0)-------(b0)-\
+         *  (s)--(a1)  ...  (b1)--(t)
+         *     \-(a1499) ...(b1499)
+         *
+         * where a0..a1499 are connected to the b nodes with the same number
+         * modulo 7, which makes the levels large enough to be expanded in
+         * parallel.
+         */
+        int count = 1500;
+        for ( int i = 0; i < count; i++ )
+        {
+            graph.makeEdge( "s", "a" + i );
+            graph.makeEdge( "b" + i, "t" );
+            if ( i % 7 == 0 )
+            {
+                graph.makeEdge( "a" + i, "b" + i );
+            }
+        }
+        // the threads can only see what's committed
+        restartTx();
+
+        Node s = graph.getNode( "s" );
+        Node t = graph.getNode( "t" );
+        for ( Direction direction : new Direction[] { Direction.OUTGOING, Direction.BOTH } )
+        {
+            RelationshipExpander expander = Traversal.expanderForTypes( MyRelTypes.R1, direction );
+            List<Path> expected = asList(
+                    GraphAlgoFactory.shortestPath( expander, 5 ).findAllPaths( s, t ) );
+            PathFinder<Path> finder = instantiatePathFinder( expander, 5 );
+            List<Path> actual = asList( finder.findAllPaths( s, t ) );
+            assertEquals( (count + 6) / 7, actual.size() );
+            assertEquals( new HashSet<Path>( expected ), new HashSet<Path>( actual ) );
+            // the same paths in the same order, however the work was spread
+            assertEquals( actual, asList( finder.findAllPaths( s, t ) ) );
+            assertEquals( 3, finder.findSinglePath( s, t ).length() );
+        }
+
+        PathFinder<Path> limited = GraphAlgoFactory.shortestPath(
+                Traversal.expanderForTypes( MyRelTypes.R1, Direction.BOTH ), 5, 10, 4 );
+        Set<Node> connectingNodes = new HashSet<Node>();
+        List<Path> paths = new ArrayList<Path>();
+        for ( Path path : limited.findAllPaths( s, t ) )
+        {
+            paths.add( path );
+            connectingNodes.add( asList( path.nodes() ).get( 2 ) );
+        }
+        assertEquals( 10, paths.size() );
+        assertEquals( 10, connectingNodes.size() );
+    }
+
+    private static <T> List<T> asList( Iterable<T> iterable )
+    {
+        return IteratorUtil.addToCollection( iterable, new ArrayList<T>() );
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.path;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.neo4j.graphalgo.CommonEvaluators;
+import org.neo4j.graphalgo.CostEvaluator;
+import org.neo4j.graphalgo.EstimateEvaluator;
+import org.neo4j.graphalgo.GraphAlgoFactory;
+import org.neo4j.graphalgo.PathFinder;
+import org.neo4j.graphalgo.WeightedPath;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipExpander;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.Traversal;
+import org.neo4j.test.ImpermanentGraphDatabase;
+
+/**
+ * Time per query of the weighted path finders in {@link GraphAlgoFactory}:
+ * {@link GraphAlgoFactory#dijkstra(RelationshipExpander, CostEvaluator)
+ * dijkstra()} and {@link GraphAlgoFactory#aStar(RelationshipExpander,
+ * CostEvaluator, EstimateEvaluator) aStar()} compared to their bidirectional
+ * counterparts, on two kinds of graphs:
+ *
+ * - a grid, where each node has x and y coordinates and each relationship a
+ * length of at least the distance between its nodes, so that the euclidean
+ * distance is a consistent estimate.
+ * - a scale-free graph grown by preferential attachment, where there is no
+ * useful estimate and the A* finders are given the (consistent) estimate 0.
+ *
+ * Each finder is warmed up and then given the same random pairs of nodes.
+ * Besides the times, the total weight of the found paths is printed, which
+ * should be the same for all finders (aStar() has been seen to return more
+ * expensive paths though).
+ *
+ * Usage: WeightedPathFinderBenchmark [grid side] [scale-free nodes] [queries]
+ */
+public class WeightedPathFinderBenchmark
+{
+    private static final RelationshipType ROAD = DynamicRelationshipType.withName( "ROAD" );
+    private static final CostEvaluator<Double> LENGTH =
+            CommonEvaluators.doubleCostEvaluator( "length" );
+    private static final EstimateEvaluator<Double> DISTANCE = new EstimateEvaluator<Double>()
+    {
+        public Double getCost( Node node, Node goal )
+        {
+            double dx = (Double) node.getProperty( "x" ) - (Double) goal.getProperty( "x" );
+            double dy = (Double) node.getProperty( "y" ) - (Double) goal.getProperty( "y" );
+            return Math.sqrt( dx * dx + dy * dy );
+        }
+    };
+    private static final EstimateEvaluator<Double> ZERO = new EstimateEvaluator<Double>()
+    {
+        public Double getCost( Node node, Node goal )
+        {
+            return 0d;
+        }
+    };
+
+    public static void main( String[] args )
+    {
+        int side = args.length > 0 ? Integer.parseInt( args[0] ) : 100;
+        int scaleFreeNodes = args.length > 1 ? Integer.parseInt( args[1] ) : 10000;
+        int queries = args.length > 2 ? Integer.parseInt( args[2] ) : 200;
+
+        GraphDatabaseService graphDb = new ImpermanentGraphDatabase();
+        try
+        {
+            System.out.println( "graph\tfinder\tms/query\ttotal weight" );
+            Node[] grid = createGrid( graphDb, side );
+            run( "grid", grid, queries, DISTANCE );
+            Node[] scaleFree = createScaleFree( graphDb, scaleFreeNodes, 3 );
+            run( "scale-free", scaleFree, queries, ZERO );
+        }
+        finally
+        {
+            graphDb.shutdown();
+        }
+    }
+
+    private static void run( String graphName, Node[] nodes, int queries,
+            EstimateEvaluator<Double> estimate )
+    {
+        RelationshipExpander expander = Traversal.expanderForTypes( ROAD );
+        Random random = new Random( 0 );
+        List<Node[]> pairs = new ArrayList<Node[]>();
+        for ( int i = 0; i < queries; i++ )
+        {
+            pairs.add( new Node[] { nodes[random.nextInt( nodes.length )],
+                    nodes[random.nextInt( nodes.length )] } );
+        }
+        time( graphName, "dijkstra", GraphAlgoFactory.dijkstra( expander, LENGTH ), pairs );
+        time( graphName, "aStar", GraphAlgoFactory.aStar( expander, LENGTH, estimate ), pairs );
+        time( graphName, "bidirectionalDijkstra",
+                GraphAlgoFactory.bidirectionalDijkstra( expander, LENGTH ), pairs );
+        time( graphName, "bidirectionalAStar",
+                GraphAlgoFactory.bidirectionalAStar( expander, LENGTH, estimate ), pairs );
+    }
+
+    private static void time( String graphName, String finderName,
+            PathFinder<WeightedPath> finder, List<Node[]> pairs )
+    {
+        // warm up, on the first few pairs
+        for ( int i = 0; i < Math.min( 20, pairs.size() ); i++ )
+        {
+            findPath( finder, pairs.get( i ) );
+        }
+        double totalWeight = 0;
+        long time = System.nanoTime();
+        for ( Node[] pair : pairs )
+        {
+            totalWeight += findPath( finder, pair );
+        }
+        time = System.nanoTime() - time;
+        System.out.println( graphName + "\t" + finderName + "\t" +
+                String.format( "%.3f", time / 1000000d / pairs.size() ) + "\t" +
+                String.format( "%.1f", totalWeight ) );
+    }
+
+    private static double findPath( PathFinder<WeightedPath> finder, Node[] pair )
+    {
+        // aStar() can't find the path from a node to itself
+        if ( pair[0].equals( pair[1] ) )
+        {
+            return 0;
+        }
+        WeightedPath path = finder.findSinglePath( pair[0], pair[1] );
+        return path != null ? path.weight() : 0;
+    }
+
+    private static Node[] createGrid( GraphDatabaseService graphDb, int side )
+    {
+        Random random = new Random( 1 );
+        Node[] nodes = new Node[side * side];
+        Transaction tx = graphDb.beginTx();
+        try
+        {
+            for ( int x = 0; x < side; x++ )
+            {
+                for ( int y = 0; y < side; y++ )
+                {
+                    Node node = graphDb.createNode();
+                    node.setProperty( "x", (double) x );
+                    node.setProperty( "y", (double) y );
+                    nodes[x * side + y] = node;
+                    if ( x > 0 )
+                    {
+                        connect( nodes[(x - 1) * side + y], node, 1 + random.nextDouble() );
+                    }
+                    if ( y > 0 )
+                    {
+                        connect( nodes[x * side + y - 1], node, 1 + random.nextDouble() );
+                    }
+                }
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        return nodes;
+    }
+
+    /**
+     * Each new node connects to {@code degree} existing nodes, chosen with a
+     * probability proportional to their degree.
+     */
+    private static Node[] createScaleFree( GraphDatabaseService graphDb, int count, int degree )
+    {
+        Random random = new Random( 2 );
+        Node[] nodes = new Node[count];
+        // each node once per relationship end, to pick nodes by degree
+        int[] ends = new int[2 * count * degree];
+        int endCount = 0;
+        Transaction tx = graphDb.beginTx();
+        try
+        {
+            for ( int i = 0; i < count; i++ )
+            {
+                nodes[i] = graphDb.createNode();
+                if ( i == 0 )
+                {
+                    continue;
+                }
+                int newEnds = endCount;
+                for ( int j = 0; j < Math.min( i, degree ); j++ )
+                {
+                    int other = endCount == 0 ? 0 : ends[random.nextInt( endCount )];
+                    connect( nodes[i], nodes[other], 1 + random.nextInt( 10 ) );
+                    ends[newEnds++] = i;
+                    ends[newEnds++] = other;
+                }
+                endCount = newEnds;
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        return nodes;
+    }
+
+    private static void connect( Node node, Node other, double length )
+    {
+        node.createRelationshipTo( other, ROAD ).setProperty( "length", length );
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.projection;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.neo4j.graphalgo.CommonEvaluators;
+import org.neo4j.graphalgo.CostEvaluator;
+import org.neo4j.graphalgo.impl.centrality.EigenvectorCentralityPower;
+import org.neo4j.graphalgo.impl.projection.GraphProjection;
+import org.neo4j.graphalgo.impl.projection.ProjectedCentrality;
+import org.neo4j.graphalgo.impl.projection.ProjectedShortestPaths;
+import org.neo4j.graphalgo.impl.shortestpath.FloydWarshall;
+import org.neo4j.graphalgo.impl.shortestpath.SingleSourceShortestPathDijkstra;
+import org.neo4j.graphalgo.impl.util.DoubleAdder;
+import org.neo4j.graphalgo.impl.util.DoubleComparator;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+
+import common.Neo4jAlgoTestCase;
+
+public class GraphProjectionTest extends Neo4jAlgoTestCase
+{
+    private final CostEvaluator<Double> length = CommonEvaluators.doubleCostEvaluator( "length" );
+
+    @Test
+    public void testProjectsOnlyRelationshipsBetweenTheGivenNodes()
+    {
+        graph.makeEdgeChain( "a,b,c" );
+        graph.makeEdge( "c", "d" );
+        Set<Node> nodes = new HashSet<Node>( graph.getAllNodes() );
+        nodes.remove( graph.getNode( "d" ) );
+        GraphProjection projection = GraphProjection.project( nodes, null, Direction.OUTGOING );
+        assertEquals( 3, projection.getNodeCount() );
+        assertEquals( 2, projection.getRelationshipCount() );
+        int a = projection.indexOf( graph.getNode( "a" ) );
+        int b = projection.indexOf( graph.getNode( "b" ) );
+        int c = projection.indexOf( graph.getNode( "c" ) );
+        assertEquals( 1, projection.getDegree( a ) );
+        assertEquals( b, projection.getTarget( projection.firstRelationship( a ) ) );
+        assertEquals( 0, projection.getDegree( c ) );
+        assertEquals( -1, projection.indexOf( graph.getNode( "d" ) ) );
+        assertEquals( graph.getNode( "b" ), projection.getNode( b ) );
+    }
+
+    @Test
+    public void testSameDistancesAsDijkstraAndFloydWarshall()
+    {
+        graph.makeEdge( "a", "b", "length", 1.0 );
+        graph.makeEdge( "b", "c", "length", 2.0 );
+        graph.makeEdge( "a", "c", "length", 4.0 );
+        graph.makeEdge( "c", "d", "length", 1.5 );
+        graph.makeEdge( "d", "a", "length", 1.0 );
+        graph.makeEdge( "e", "a", "length", 3.0 );
+        for ( Direction direction : Direction.values() )
+        {
+            GraphProjection projection = GraphProjection.project( graph.getAllNodes(), length,
+                direction );
+            ProjectedShortestPaths paths = new ProjectedShortestPaths( projection );
+            double[][] allPairs = ProjectedShortestPaths.allPairs( projection );
+            SingleSourceShortestPathDijkstra<Double> dijkstra = new SingleSourceShortestPathDijkstra<Double>(
+                0.0, null, length, new DoubleAdder(), new DoubleComparator(), direction,
+                MyRelTypes.R1 );
+            FloydWarshall<Double> floydWarshall = new FloydWarshall<Double>( 0.0,
+                Double.POSITIVE_INFINITY, direction, length, new DoubleAdder(),
+                new DoubleComparator(), graph.getAllNodes(), graph.getAllEdges() );
+            for ( Node start : graph.getAllNodes() )
+            {
+                int from = projection.indexOf( start );
+                paths.calculate( from );
+                dijkstra.reset();
+                dijkstra.setStartNode( start );
+                for ( Node end : graph.getAllNodes() )
+                {
+                    int to = projection.indexOf( end );
+                    Double expected = dijkstra.getCost( end );
+                    assertEquals( expected == null ? Double.POSITIVE_INFINITY : expected,
+                        paths.getDistance( to ), 0.0 );
+                    assertEquals( floydWarshall.getCost( start, end ), allPairs[from][to], 0.0 );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBetweennessOfChain()
+    {
+        graph.makeEdgeChain( "a,b,c,d,e" );
+        assertBetweenness( "a", 0.0, "b", 3.0, "c", 4.0, "d", 3.0, "e", 0.0 );
+    }
+
+    @Test
+    public void testBetweennessOfBox()
+    {
+        graph.makeEdgeChain( "a,b,c,d,a" );
+        assertBetweenness( "a", 0.5, "b", 0.5, "c", 0.5, "d", 0.5 );
+    }
+
+    @Test
+    public void testBetweennessOfPlusShape()
+    {
+        graph.makeEdgeChain( "a,b,c" );
+        graph.makeEdgeChain( "d,b,e" );
+        assertBetweenness( "a", 0.0, "b", 6.0, "c", 0.0, "d", 0.0, "e", 0.0 );
+    }
+
+    @Test
+    public void testBetweennessWithWeightsOfZero()
+    {
+        graph.makeEdgeChain( "a,b,c", "length", 0.0 );
+        graph.makeEdge( "c", "d", "length", 1.0 );
+        assertBetweenness( length, "a", 0.0, "b", 2.0, "c", 2.0, "d", 0.0 );
+    }
+
+    @Test
+    public void testClosenessAndEccentricity()
+    {
+        graph.makeEdgeChain( "a,b,c" );
+        graph.makeEdgeChain( "d,b,e" );
+        GraphProjection projection = GraphProjection.project( graph.getAllNodes(), null,
+            Direction.BOTH );
+        double[] closeness = ProjectedCentrality.closeness( projection );
+        double[] eccentricity = ProjectedCentrality.eccentricity( projection );
+        assertEquals( 1.0 / 7, closeness[projection.indexOf( graph.getNode( "a" ) )], 0.0 );
+        assertEquals( 1.0 / 4, closeness[projection.indexOf( graph.getNode( "b" ) )], 0.0 );
+        assertEquals( 2.0, eccentricity[projection.indexOf( graph.getNode( "a" ) )], 0.0 );
+        assertEquals( 1.0, eccentricity[projection.indexOf( graph.getNode( "b" ) )], 0.0 );
+    }
+
+    @Test
+    public void testSameEigenvectorAsPowerMethod()
+    {
+        graph.makeEdgeChain( "a,b,c,d" );
+        graph.makeEdges( "b,a,c,a" );
+        EigenvectorCentralityPower power = new EigenvectorCentralityPower( Direction.OUTGOING,
+            CommonEvaluators.doubleCostEvaluator( "length", 1.0 ), graph.getAllNodes(),
+            graph.getAllEdges(), 0.0001 );
+        GraphProjection projection = GraphProjection.project( graph.getAllNodes(), null,
+            Direction.OUTGOING );
+        double[] values = ProjectedCentrality.eigenvectorPower( projection, 0.0001, 1000 );
+        for ( Node node : graph.getAllNodes() )
+        {
+            assertEquals( power.getCentrality( node ), values[projection.indexOf( node )], 0.01 );
+        }
+    }
+
+    private void assertBetweenness( Object... nodesAndValues )
+    {
+        assertBetweenness( null, nodesAndValues );
+    }
+
+    private void assertBetweenness( CostEvaluator<Double> costEvaluator, Object... nodesAndValues )
+    {
+        GraphProjection projection = GraphProjection.project( graph.getAllNodes(), costEvaluator,
+            Direction.BOTH );
+        double[] betweenness = ProjectedCentrality.betweenness( projection );
+        for ( int i = 0; i < nodesAndValues.length; i += 2 )
+        {
+            int node = projection.indexOf( graph.getNode( (String) nodesAndValues[i] ) );
+            assertEquals( (Double) nodesAndValues[i + 1], betweenness[node], 0.0000001 );
+        }
+    }
+}
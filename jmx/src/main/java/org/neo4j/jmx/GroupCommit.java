@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.jmx;
+
+@ManagementInterface( name = GroupCommit.NAME )
+@Description( "Statistics about transactions sharing forces of the logical log (group commit)" )
+public interface GroupCommit
+{
+    final String NAME = "Group commit";
+
+    @Description( "Whether group commit is enabled for the logical log" )
+    boolean isGroupCommitEnabled();
+
+    @Description( "The number of forces of the logical log done on behalf of committing transactions" )
+    long getForceCount();
+
+    @Description( "The number of committed transactions made durable by those forces" )
+    long getCommittedCount();
+
+    @Description( "The average number of transactions made durable by one force" )
+    double getAverageBatchSize();
+
+    @Description( "The largest number of transactions made durable by one force" )
+    long getMaxBatchSize();
+
+    @Description( "The average time in milliseconds it takes to force the logical log" )
+    double getAverageForceTimeMillis();
+
+    @Description( "The longest time in milliseconds it has taken to force the logical log" )
+    double getMaxForceTimeMillis();
+}
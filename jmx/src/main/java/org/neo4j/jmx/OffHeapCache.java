@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.jmx;
+
+@ManagementInterface( name = OffHeapCache.NAME )
+@Description( "Statistics about the off-heap node and relationship caches, zero unless cache_type is offheap" )
+public interface OffHeapCache
+{
+    final String NAME = "Off-heap cache";
+
+    @Description( "Whether the off-heap caches are used for nodes and relationships" )
+    boolean isOffHeapCacheEnabled();
+
+    @Description( "The number of node lookups served by the node cache" )
+    long getNodeHitCount();
+
+    @Description( "The number of node lookups not found in the node cache" )
+    long getNodeMissCount();
+
+    @Description( "The number of nodes evicted from the node cache to make room for others" )
+    long getNodeEvictionCount();
+
+    @Description( "The number of nodes in the node cache" )
+    long getNodeCount();
+
+    @Description( "The number of bytes of off-heap memory taken by the node cache" )
+    long getNodeMemoryUsed();
+
+    @Description( "The number of bytes of off-heap memory the node cache may use" )
+    long getNodeMaxMemory();
+
+    @Description( "The number of relationship lookups served by the relationship cache" )
+    long getRelationshipHitCount();
+
+    @Description( "The number of relationship lookups not found in the relationship cache" )
+    long getRelationshipMissCount();
+
+    @Description( "The number of relationships evicted from the relationship cache to make room for others" )
+    long getRelationshipEvictionCount();
+
+    @Description( "The number of relationships in the relationship cache" )
+    long getRelationshipCount();
+
+    @Description( "The number of bytes of off-heap memory taken by the relationship cache" )
+    long getRelationshipMemoryUsed();
+
+    @Description( "The number of bytes of off-heap memory the relationship cache may use" )
+    long getRelationshipMaxMemory();
+}
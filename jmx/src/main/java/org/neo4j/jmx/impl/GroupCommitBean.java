@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.jmx.impl;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.neo4j.helpers.Service;
+import org.neo4j.jmx.GroupCommit;
+import org.neo4j.kernel.impl.transaction.xaframework.GroupCommitStats;
+import org.neo4j.kernel.impl.transaction.xaframework.XaLogicalLog;
+
+@Service.Implementation( ManagementBeanProvider.class )
+public final class GroupCommitBean extends ManagementBeanProvider
+{
+    public GroupCommitBean()
+    {
+        super( GroupCommit.class );
+    }
+
+    @Override
+    protected Neo4jMBean createMBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        return new GroupCommitImpl( management );
+    }
+
+    private static class GroupCommitImpl extends Neo4jMBean implements GroupCommit
+    {
+        GroupCommitImpl( ManagementData management ) throws NotCompliantMBeanException
+        {
+            super( management );
+            this.log = KernelBean.getNeoDataSource( management.getKernelData() ).getXaContainer().getLogicalLog();
+        }
+
+        private final XaLogicalLog log;
+
+        private GroupCommitStats stats()
+        {
+            GroupCommitStats stats = log.getGroupCommitStats();
+            return stats != null ? stats : new GroupCommitStats( 0, 0, 0, 0, 0 );
+        }
+
+        public boolean isGroupCommitEnabled()
+        {
+            return log.getGroupCommitStats() != null;
+        }
+
+        public long getForceCount()
+        {
+            return stats().getForceCount();
+        }
+
+        public long getCommittedCount()
+        {
+            return stats().getCommittedCount();
+        }
+
+        public double getAverageBatchSize()
+        {
+            return stats().getAverageBatchSize();
+        }
+
+        public long getMaxBatchSize()
+        {
+            return stats().getMaxBatchSize();
+        }
+
+        public double getAverageForceTimeMillis()
+        {
+            return stats().getAverageForceTimeMillis();
+        }
+
+        public double getMaxForceTimeMillis()
+        {
+            return stats().getMaxForceTimeMillis();
+        }
+    }
+}
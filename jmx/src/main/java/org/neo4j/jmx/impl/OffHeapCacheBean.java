@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.jmx.impl;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.neo4j.helpers.Service;
+import org.neo4j.jmx.OffHeapCache;
+import org.neo4j.kernel.impl.cache.Cache;
+import org.neo4j.kernel.impl.core.NodeManager;
+
+@Service.Implementation( ManagementBeanProvider.class )
+public final class OffHeapCacheBean extends ManagementBeanProvider
+{
+    public OffHeapCacheBean()
+    {
+        super( OffHeapCache.class );
+    }
+
+    @Override
+    protected Neo4jMBean createMBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        return new OffHeapCacheImpl( management );
+    }
+
+    private static class OffHeapCacheImpl extends Neo4jMBean implements OffHeapCache
+    {
+        OffHeapCacheImpl( ManagementData management ) throws NotCompliantMBeanException
+        {
+            super( management );
+            NodeManager nodeManager = management.getKernelData().getConfig().getGraphDbModule().getNodeManager();
+            org.neo4j.kernel.impl.cache.OffHeapCache<?> nodes = null;
+            org.neo4j.kernel.impl.cache.OffHeapCache<?> relationships = null;
+            for ( Cache<?, ?> cache : nodeManager.caches() )
+            {
+                if ( cache instanceof org.neo4j.kernel.impl.cache.OffHeapCache )
+                {
+                    if ( nodes == null )
+                    {
+                        nodes = (org.neo4j.kernel.impl.cache.OffHeapCache<?>) cache;
+                    }
+                    else
+                    {
+                        relationships = (org.neo4j.kernel.impl.cache.OffHeapCache<?>) cache;
+                    }
+                }
+            }
+            this.nodeCache = nodes;
+            this.relCache = relationships;
+        }
+
+        // caches() lists the node cache first, both are null for other cache types
+        private final org.neo4j.kernel.impl.cache.OffHeapCache<?> nodeCache;
+        private final org.neo4j.kernel.impl.cache.OffHeapCache<?> relCache;
+
+        public boolean isOffHeapCacheEnabled()
+        {
+            return nodeCache != null;
+        }
+
+        public long getNodeHitCount()
+        {
+            return nodeCache != null ? nodeCache.hitCount() : 0;
+        }
+
+        public long getNodeMissCount()
+        {
+            return nodeCache != null ? nodeCache.missCount() : 0;
+        }
+
+        public long getNodeEvictionCount()
+        {
+            return nodeCache != null ? nodeCache.evictionCount() : 0;
+        }
+
+        public long getNodeCount()
+        {
+            return nodeCache != null ? nodeCache.size() : 0;
+        }
+
+        public long getNodeMemoryUsed()
+        {
+            return nodeCache != null ? nodeCache.memoryUsed() : 0;
+        }
+
+        public long getNodeMaxMemory()
+        {
+            return nodeCache != null ? nodeCache.maxMemory() : 0;
+        }
+
+        public long getRelationshipHitCount()
+        {
+            return relCache != null ? relCache.hitCount() : 0;
+        }
+
+        public long getRelationshipMissCount()
+        {
+            return relCache != null ? relCache.missCount() : 0;
+        }
+
+        public long getRelationshipEvictionCount()
+        {
+            return relCache != null ? relCache.evictionCount() : 0;
+        }
+
+        public long getRelationshipCount()
+        {
+            return relCache != null ? relCache.size() : 0;
+        }
+
+        public long getRelationshipMemoryUsed()
+        {
+            return relCache != null ? relCache.memoryUsed() : 0;
+        }
+
+        public long getRelationshipMaxMemory()
+        {
+            return relCache != null ? relCache.maxMemory() : 0;
+        }
+    }
+}
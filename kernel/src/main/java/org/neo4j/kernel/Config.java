@@ -132,17 +132,63 @@ public class Config implements DiagnosticsProvider
     /** Relative path for where the Neo4j logical log is located */
     @Documented
     public static final String LOGICAL_LOG = "logical_log";
+    /**
+     * Boolean (one of true,false) defining whether transactions committing
+     * concurrently should share forces of the logical log. A committed
+     * transaction is still durable when its commit returns. Defaults to false.
+     */
+    @Documented
+    public static final String GROUP_COMMIT = "group_commit";
+    /**
+     * The number of milliseconds the thread forcing the logical log on behalf
+     * of a group of committing transactions waits for more transactions to
+     * join the group before forcing. Only used when group_commit is enabled.
+     * Defaults to 0.
+     */
+    @Documented
+    public static final String GROUP_COMMIT_WINDOW = "group_commit_window";
+    /**
+     * Boolean (one of true,false) defining whether the relationship chains of
+     * the store should be grouped by type and direction on startup, if they
+     * aren't already, so that the relationships of one type and direction of
+     * a node can be read without reading all its relationships. The store
+     * must have been shut down cleanly. Once grouped, a store stays grouped
+     * until it is written to by the batch inserter. Defaults to false.
+     */
+    @Documented
+    public static final String GROUP_RELATIONSHIP_CHAINS = "group_relationship_chains";
+    /**
+     * The number of relationships a node must have for the start of each of
+     * its relationship groups to be kept in memory, in a store with grouped
+     * relationship chains. Defaults to 50.
+     */
+    @Documented
+    public static final String DENSE_NODE_THRESHOLD = "dense_node_threshold";
     /** Relative path for where the Neo4j storage information file is located */
     @Documented
     public static final String NEO_STORE = "neo_store";
 
     /**
      * The type of cache to use for nodes and relationships, one of [weak, soft,
-     * none]
+     * none, strong, offheap]
      */
     @Documented
     public static final String CACHE_TYPE = "cache_type";
 
+    /**
+     * The amount of memory outside of the java heap to use for caching nodes
+     * when the offheap cache type is used, e.g. "64M"
+     */
+    @Documented
+    public static final String OFF_HEAP_NODE_CACHE_MEMORY = "offheap_node_cache_memory";
+
+    /**
+     * The amount of memory outside of the java heap to use for caching
+     * relationships when the offheap cache type is used, e.g. "128M"
+     */
+    @Documented
+    public static final String OFF_HEAP_RELATIONSHIP_CACHE_MEMORY = "offheap_relationship_cache_memory";
+
     /**
      * The name of the Transaction Manager service to use as defined in the TM
      * service provider constructor, defaults to native.
@@ -19,15 +19,29 @@
  */
 package org.neo4j.kernel;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import org.neo4j.graphdb.traversal.TraversalBranch;
+import org.neo4j.kernel.impl.util.LongBitmapSet;
+import org.neo4j.kernel.impl.util.LongHashSet;
 
+/**
+ * Keeps the visited ids in a {@link LongHashSet} to begin with. Ids are
+ * store ids, so a traversal which visits a large part of the graph visits a
+ * large part of the id space as well. Once the visited ids are that dense
+ * they are moved over to a {@link LongBitmapSet}, which then takes a bit per
+ * id instead of a slot in the hash table.
+ */
 class GloballyUnique extends AbstractUniquenessFilter
 {
-    private final Set<Long> visited = new HashSet<Long>();
-    
+    // how often to see if the visited ids are dense enough for a bitmap
+    private static final int DENSITY_CHECK_INTERVAL = 1 << 12;
+    // a hash set slot takes 128 bits or more
+    private static final int MAX_IDS_PER_VISITED_FOR_BITMAP = 128;
+
+    private LongHashSet visited = new LongHashSet();
+    private LongBitmapSet visitedBitmap;
+    private long lowestId = Long.MAX_VALUE;
+    private long highestId;
+
     GloballyUnique( PrimitiveTypeFetcher type )
     {
         super( type );
@@ -35,6 +49,32 @@ class GloballyUnique extends AbstractUniquenessFilter
 
     public boolean check( TraversalBranch branch )
     {
-        return visited.add( type.getId( branch ) );
+        long id = type.getId( branch );
+        if ( visitedBitmap != null )
+        {
+            return visitedBitmap.add( id );
+        }
+        if ( !visited.add( id ) )
+        {
+            return false;
+        }
+        lowestId = Math.min( lowestId, id );
+        highestId = Math.max( highestId, id );
+        if ( visited.size() % DENSITY_CHECK_INTERVAL == 0
+             && (highestId - lowestId) / visited.size() < MAX_IDS_PER_VISITED_FOR_BITMAP )
+        {
+            switchToBitmap();
+        }
+        return true;
+    }
+
+    private void switchToBitmap()
+    {
+        visitedBitmap = new LongBitmapSet();
+        for ( long visitedId : visited.toArray() )
+        {
+            visitedBitmap.add( visitedId );
+        }
+        visited = null;
     }
 }
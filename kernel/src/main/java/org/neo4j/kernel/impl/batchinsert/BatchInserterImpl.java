@@ -120,6 +120,8 @@ public class BatchInserterImpl implements BatchInserter
             throw new IllegalStateException( storeDir + " store is not cleanly shutdown." );
         }
         neoStore.makeStoreOk();
+        // relationships are linked in first in the chains of their nodes here
+        neoStore.ungroupRelationshipChains();
         NameData[] indexes = getPropertyIndexStore().getNames( 10000 );
         indexHolder = new PropertyIndexHolder( indexes );
         NameData[] types = getRelationshipTypeStore().getNames( Integer.MAX_VALUE );
@@ -814,6 +816,23 @@ public class BatchInserterImpl implements BatchInserter
         return id;
     }
 
+    NeoStore getNeoStore()
+    {
+        return neoStore;
+    }
+
+    synchronized int getOrCreatePropertyKeyId( String key )
+    {
+        int keyId = indexHolder.getKeyId( key );
+        return keyId != -1 ? keyId : createNewPropertyIndex( key );
+    }
+
+    synchronized int getOrCreateRelationshipTypeId( String name )
+    {
+        int typeId = typeHolder.getTypeId( name );
+        return typeId != -1 ? typeId : createNewRelationshipType( name );
+    }
+
     private NodeStore getNodeStore()
     {
         return neoStore.getNodeStore();
@@ -0,0 +1,656 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.batchinsert;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.neo4j.helpers.Exceptions.launderedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
+import org.neo4j.kernel.impl.nioneo.store.NodeStore;
+import org.neo4j.kernel.impl.nioneo.store.PrimitiveRecord;
+import org.neo4j.kernel.impl.nioneo.store.PropertyBlock;
+import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
+import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
+import org.neo4j.kernel.impl.nioneo.store.PropertyType;
+import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
+
+/**
+ * Imports nodes and relationships into the store of a
+ * {@link BatchInserterImpl} using several threads. Each import runs as a
+ * pipeline of stages:
+ * <ol>
+ * <li>the input is read, and so parsed if the iterator parses it, on the
+ * calling thread and cut into batches</li>
+ * <li>a number of encoder threads encode the property values into
+ * {@link PropertyBlock}s and dynamic records</li>
+ * <li>one thread assigns ids to the entities and property records, in input
+ * order</li>
+ * <li>one thread writes the records to the store files</li>
+ * </ol>
+ * The stages are connected with bounded queues and only a limited number of
+ * batches may be in the pipeline at once, so a slow stage holds back the
+ * ones before it instead of letting batches pile up in memory.
+ * <p>
+ * Nodes get ids in input order from the high id of the node store, so the
+ * n:th node of an import gets the id returned from
+ * {@link #importNodes(Iterator)} plus n. Relationships are written without
+ * being linked into the relationship chains of their nodes, and are linked
+ * in bulk passes over the relationship store once all of them are written.
+ * The linking needs two longs of heap per node in the store.
+ * <p>
+ * The batch inserter must not be used by other threads during an import.
+ * Like with the batch inserter itself, a store where an import failed should
+ * be thrown away.
+ */
+public class ParallelBatchImporter
+{
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final PropertyBlock[] NO_PROPERTIES = new PropertyBlock[0];
+
+    private final BatchInserterImpl inserter;
+    private final NodeStore nodeStore;
+    private final RelationshipStore relationshipStore;
+    private final PropertyStore propertyStore;
+    private final int encoders;
+    private final int batchSize;
+
+    /**
+     * Creates an importer with an encoder thread per processor not used by
+     * the other stages.
+     */
+    public ParallelBatchImporter( BatchInserterImpl inserter )
+    {
+        this( inserter, Math.max( 1, Runtime.getRuntime().availableProcessors() - 3 ), DEFAULT_BATCH_SIZE );
+    }
+
+    public ParallelBatchImporter( BatchInserterImpl inserter, int encoders, int batchSize )
+    {
+        if ( encoders < 1 || batchSize < 1 )
+        {
+            throw new IllegalArgumentException( "encoders=" + encoders + ", batchSize=" + batchSize );
+        }
+        this.inserter = inserter;
+        this.nodeStore = inserter.getNeoStore().getNodeStore();
+        this.relationshipStore = inserter.getNeoStore().getRelationshipStore();
+        this.propertyStore = inserter.getNeoStore().getPropertyStore();
+        this.encoders = encoders;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Creates a node for each property map of the input, which may be
+     * {@code null} for a node without properties.
+     *
+     * @return the id of the first node, the others follow in input order.
+     */
+    public long importNodes( Iterator<Map<String,Object>> nodes )
+    {
+        NodeImport nodeImport = new NodeImport( nodeStore.getHighId() );
+        nodeImport.run( nodes );
+        return nodeImport.firstId;
+    }
+
+    /**
+     * Creates the relationships of the input, between nodes that already
+     * exist, and links them into the relationship chains of their nodes.
+     *
+     * @return the id of the first relationship, the others follow in input
+     *         order.
+     */
+    public long importRelationships( Iterator<InputRelationship> relationships )
+    {
+        RelationshipImport relationshipImport = new RelationshipImport(
+                relationshipStore.getHighId(), nodeStore.getHighId() );
+        relationshipImport.run( relationships );
+        linkRelationships( relationshipImport.firstId, relationshipImport.nextId );
+        return relationshipImport.firstId;
+    }
+
+    private static class Batch<T> implements Comparable<Batch<T>>
+    {
+        final long sequence;
+        final List<T> input;
+        PropertyBlock[][] properties;
+        int[] types;
+        PrimitiveRecord[] records;
+        List<PropertyRecord> propertyRecords;
+
+        Batch( long sequence, List<T> input )
+        {
+            this.sequence = sequence;
+            this.input = input;
+        }
+
+        public int compareTo( Batch<T> other )
+        {
+            return sequence < other.sequence ? -1 : ( sequence == other.sequence ? 0 : 1 );
+        }
+    }
+
+    /**
+     * The property keys and relationship types an encoder has seen, so that
+     * it only has to synchronize with the other encoders for new ones.
+     */
+    private class Tokens
+    {
+        private final Map<String,Integer> propertyKeys = new HashMap<String,Integer>();
+        private final Map<String,Integer> relationshipTypes = new HashMap<String,Integer>();
+
+        int propertyKey( String key )
+        {
+            Integer id = propertyKeys.get( key );
+            if ( id == null )
+            {
+                id = inserter.getOrCreatePropertyKeyId( key );
+                propertyKeys.put( key, id );
+            }
+            return id;
+        }
+
+        int relationshipType( String name )
+        {
+            Integer id = relationshipTypes.get( name );
+            if ( id == null )
+            {
+                id = inserter.getOrCreateRelationshipTypeId( name );
+                relationshipTypes.put( name, id );
+            }
+            return id;
+        }
+
+        PropertyBlock[] encode( Map<String,Object> properties )
+        {
+            if ( properties == null || properties.isEmpty() )
+            {
+                return NO_PROPERTIES;
+            }
+            PropertyBlock[] blocks = new PropertyBlock[properties.size()];
+            int i = 0;
+            for ( Entry<String,Object> property : properties.entrySet() )
+            {
+                PropertyBlock block = new PropertyBlock();
+                propertyStore.encodeValue( block, propertyKey( property.getKey() ), property.getValue() );
+                blocks[i++] = block;
+            }
+            return blocks;
+        }
+    }
+
+    /**
+     * Thrown in a stage when another stage has failed.
+     */
+    private static class Aborted extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private abstract class Import<T>
+    {
+        private final BlockingQueue<Batch<T>> encodeQueue = new ArrayBlockingQueue<Batch<T>>( encoders * 2 );
+        private final BlockingQueue<Batch<T>> idQueue = new ArrayBlockingQueue<Batch<T>>( encoders * 2 );
+        private final BlockingQueue<Batch<T>> writeQueue = new ArrayBlockingQueue<Batch<T>>( encoders * 2 );
+        private final Batch<T> end = new Batch<T>( -1, null );
+        // batches read but not yet written, bounds the batches waiting to get their ids in order
+        private final Semaphore inFlight = new Semaphore( encoders * 4 );
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        abstract void encode( Batch<T> batch, Tokens tokens );
+
+        abstract void assignIds( Batch<T> batch );
+
+        abstract void write( PrimitiveRecord record );
+
+        void run( Iterator<T> input )
+        {
+            List<Thread> threads = new ArrayList<Thread>();
+            for ( int i = 0; i < encoders; i++ )
+            {
+                threads.add( new Stage( "encoder " + i )
+                {
+                    @Override
+                    void process() throws InterruptedException
+                    {
+                        encodeBatches();
+                    }
+                } );
+            }
+            threads.add( new Stage( "id assigner" )
+            {
+                @Override
+                void process() throws InterruptedException
+                {
+                    assignIdsInOrder();
+                }
+            } );
+            threads.add( new Stage( "writer" )
+            {
+                @Override
+                void process() throws InterruptedException
+                {
+                    writeBatches();
+                }
+            } );
+            for ( Thread thread : threads )
+            {
+                thread.start();
+            }
+            try
+            {
+                readBatches( input );
+            }
+            catch ( Throwable cause )
+            {
+                failed( cause );
+            }
+            for ( Thread thread : threads )
+            {
+                join( thread );
+            }
+            if ( failure.get() != null )
+            {
+                throw launderedException( failure.get() );
+            }
+        }
+
+        private void readBatches( Iterator<T> input ) throws InterruptedException
+        {
+            long sequence = 0;
+            while ( input.hasNext() )
+            {
+                List<T> items = new ArrayList<T>( batchSize );
+                while ( items.size() < batchSize && input.hasNext() )
+                {
+                    items.add( input.next() );
+                }
+                while ( !inFlight.tryAcquire( 100, MILLISECONDS ) )
+                {
+                    checkFailure();
+                }
+                put( encodeQueue, new Batch<T>( sequence++, items ) );
+            }
+            for ( int i = 0; i < encoders; i++ )
+            {
+                put( encodeQueue, end );
+            }
+        }
+
+        private void encodeBatches() throws InterruptedException
+        {
+            Tokens tokens = new Tokens();
+            for ( Batch<T> batch = take( encodeQueue ); batch != end; batch = take( encodeQueue ) )
+            {
+                encode( batch, tokens );
+                put( idQueue, batch );
+            }
+            put( idQueue, end );
+        }
+
+        private void assignIdsInOrder() throws InterruptedException
+        {
+            // the encoders finish batches out of order
+            PriorityQueue<Batch<T>> waiting = new PriorityQueue<Batch<T>>();
+            long next = 0;
+            int ends = 0;
+            while ( ends < encoders )
+            {
+                Batch<T> batch = take( idQueue );
+                if ( batch == end )
+                {
+                    ends++;
+                    continue;
+                }
+                waiting.add( batch );
+                while ( !waiting.isEmpty() && waiting.peek().sequence == next )
+                {
+                    Batch<T> ready = waiting.poll();
+                    assignIds( ready );
+                    put( writeQueue, ready );
+                    next++;
+                }
+            }
+            put( writeQueue, end );
+        }
+
+        private void writeBatches() throws InterruptedException
+        {
+            for ( Batch<T> batch = take( writeQueue ); batch != end; batch = take( writeQueue ) )
+            {
+                for ( PrimitiveRecord record : batch.records )
+                {
+                    write( record );
+                }
+                for ( PropertyRecord record : batch.propertyRecords )
+                {
+                    propertyStore.updateRecord( record );
+                }
+                inFlight.release();
+            }
+        }
+
+        /**
+         * Groups the blocks into property records, the same way
+         * {@link BatchInserterImpl} does, and returns the id of the first.
+         */
+        long createPropertyRecords( PropertyBlock[] blocks, List<PropertyRecord> records )
+        {
+            if ( blocks.length == 0 )
+            {
+                return Record.NO_NEXT_PROPERTY.intValue();
+            }
+            PropertyRecord first = newPropertyRecord();
+            records.add( first );
+            PropertyRecord current = first;
+            for ( PropertyBlock block : blocks )
+            {
+                if ( current.size() + block.getSize() > PropertyType.getPayloadSize() )
+                {
+                    PropertyRecord next = newPropertyRecord();
+                    current.setNextProp( next.getId() );
+                    next.setPrevProp( current.getId() );
+                    records.add( next );
+                    current = next;
+                }
+                current.addPropertyBlock( block );
+            }
+            return first.getId();
+        }
+
+        private PropertyRecord newPropertyRecord()
+        {
+            PropertyRecord record = new PropertyRecord( propertyStore.nextId() );
+            record.setInUse( true );
+            record.setCreated();
+            return record;
+        }
+
+        private <E> void put( BlockingQueue<E> queue, E item ) throws InterruptedException
+        {
+            while ( !queue.offer( item, 100, MILLISECONDS ) )
+            {
+                checkFailure();
+            }
+        }
+
+        private <E> E take( BlockingQueue<E> queue ) throws InterruptedException
+        {
+            E item;
+            while ( ( item = queue.poll( 100, MILLISECONDS ) ) == null )
+            {
+                checkFailure();
+            }
+            return item;
+        }
+
+        private void checkFailure()
+        {
+            if ( failure.get() != null )
+            {
+                throw new Aborted();
+            }
+        }
+
+        private void failed( Throwable cause )
+        {
+            if ( !( cause instanceof Aborted ) )
+            {
+                failure.compareAndSet( null, cause );
+            }
+        }
+
+        private void join( Thread thread )
+        {
+            while ( thread.isAlive() )
+            {
+                try
+                {
+                    thread.join();
+                }
+                catch ( InterruptedException e )
+                {
+                    failed( e );
+                }
+            }
+        }
+
+        private abstract class Stage extends Thread
+        {
+            Stage( String name )
+            {
+                super( "Batch import " + name );
+            }
+
+            abstract void process() throws InterruptedException;
+
+            @Override
+            public final void run()
+            {
+                try
+                {
+                    process();
+                }
+                catch ( Throwable cause )
+                {
+                    failed( cause );
+                }
+            }
+        }
+    }
+
+    private class NodeImport extends Import<Map<String,Object>>
+    {
+        final long firstId;
+        private long nextId;
+
+        NodeImport( long firstId )
+        {
+            this.firstId = firstId;
+            this.nextId = firstId;
+        }
+
+        @Override
+        void encode( Batch<Map<String,Object>> batch, Tokens tokens )
+        {
+            batch.properties = new PropertyBlock[batch.input.size()][];
+            for ( int i = 0; i < batch.properties.length; i++ )
+            {
+                batch.properties[i] = tokens.encode( batch.input.get( i ) );
+            }
+        }
+
+        @Override
+        void assignIds( Batch<Map<String,Object>> batch )
+        {
+            batch.records = new PrimitiveRecord[batch.input.size()];
+            batch.propertyRecords = new ArrayList<PropertyRecord>();
+            for ( int i = 0; i < batch.records.length; i++ )
+            {
+                NodeRecord record = new NodeRecord( nextId++, Record.NO_NEXT_RELATIONSHIP.intValue(),
+                        createPropertyRecords( batch.properties[i], batch.propertyRecords ) );
+                record.setInUse( true );
+                record.setCreated();
+                batch.records[i] = record;
+            }
+            nodeStore.setHighId( nextId );
+        }
+
+        @Override
+        void write( PrimitiveRecord record )
+        {
+            nodeStore.updateRecord( (NodeRecord) record );
+        }
+    }
+
+    private class RelationshipImport extends Import<InputRelationship>
+    {
+        final long firstId;
+        private long nextId;
+        private final long nodeHighId;
+
+        RelationshipImport( long firstId, long nodeHighId )
+        {
+            this.firstId = firstId;
+            this.nextId = firstId;
+            this.nodeHighId = nodeHighId;
+        }
+
+        @Override
+        void encode( Batch<InputRelationship> batch, Tokens tokens )
+        {
+            batch.properties = new PropertyBlock[batch.input.size()][];
+            batch.types = new int[batch.input.size()];
+            for ( int i = 0; i < batch.properties.length; i++ )
+            {
+                InputRelationship relationship = batch.input.get( i );
+                batch.types[i] = tokens.relationshipType( relationship.getType().name() );
+                batch.properties[i] = tokens.encode( relationship.getProperties() );
+            }
+        }
+
+        @Override
+        void assignIds( Batch<InputRelationship> batch )
+        {
+            batch.records = new PrimitiveRecord[batch.input.size()];
+            batch.propertyRecords = new ArrayList<PropertyRecord>();
+            for ( int i = 0; i < batch.records.length; i++ )
+            {
+                InputRelationship relationship = batch.input.get( i );
+                checkNode( relationship.getStartNode() );
+                checkNode( relationship.getEndNode() );
+                RelationshipRecord record = new RelationshipRecord( nextId++, relationship.getStartNode(),
+                        relationship.getEndNode(), batch.types[i] );
+                record.setInUse( true );
+                record.setCreated();
+                record.setNextProp( createPropertyRecords( batch.properties[i], batch.propertyRecords ) );
+                batch.records[i] = record;
+            }
+            relationshipStore.setHighId( nextId );
+        }
+
+        private void checkNode( long node )
+        {
+            // ids below the high id may belong to nodes never created or deleted
+            if ( node < 0 || node >= nodeHighId || nodeStore.loadLightNode( node ) == null )
+            {
+                throw new IllegalArgumentException( "Node[" + node + "] doesn't exist" );
+            }
+        }
+
+        @Override
+        void write( PrimitiveRecord record )
+        {
+            relationshipStore.updateRecord( (RelationshipRecord) record );
+        }
+    }
+
+    /**
+     * Links the relationships with ids from firstId up to endId into the
+     * relationship chains of their nodes. The new relationships go first in
+     * each chain, in id order, followed by those the node already had. The
+     * next pointers are set going down the ids and the previous pointers going
+     * up, so that each pass reads and writes the relationship store in order.
+     */
+    private void linkRelationships( long firstId, long endId )
+    {
+        if ( firstId == endId )
+        {
+            return;
+        }
+        long nodeHighId = nodeStore.getHighId();
+        if ( nodeHighId > Integer.MAX_VALUE )
+        {
+            throw new IllegalStateException( "Too many nodes to link relationships in memory: " + nodeHighId );
+        }
+        int nodeCount = (int) nodeHighId;
+        long[] first = new long[nodeCount];
+        long[] previous = new long[nodeCount];
+
+        for ( int node = 0; node < nodeCount; node++ )
+        {
+            NodeRecord record = nodeStore.loadLightNode( node );
+            first[node] = record != null ? record.getNextRel() : Record.NO_NEXT_RELATIONSHIP.intValue();
+        }
+        for ( long id = endId - 1; id >= firstId; id-- )
+        {
+            RelationshipRecord record = relationshipStore.getRecord( id );
+            int start = (int) record.getFirstNode();
+            int end = (int) record.getSecondNode();
+            record.setFirstNextRel( first[start] );
+            record.setSecondNextRel( first[end] );
+            first[start] = id;
+            first[end] = id;
+            relationshipStore.updateRecord( record );
+        }
+
+        Arrays.fill( previous, Record.NO_PREV_RELATIONSHIP.intValue() );
+        for ( long id = firstId; id < endId; id++ )
+        {
+            RelationshipRecord record = relationshipStore.getRecord( id );
+            int start = (int) record.getFirstNode();
+            int end = (int) record.getSecondNode();
+            record.setFirstPrevRel( previous[start] );
+            record.setSecondPrevRel( previous[end] );
+            previous[start] = id;
+            previous[end] = id;
+            relationshipStore.updateRecord( record );
+        }
+
+        for ( int node = 0; node < nodeCount; node++ )
+        {
+            if ( previous[node] == Record.NO_PREV_RELATIONSHIP.intValue() )
+            {
+                continue;
+            }
+            NodeRecord record = nodeStore.getRecord( node );
+            long oldFirst = record.getNextRel();
+            record.setNextRel( first[node] );
+            nodeStore.updateRecord( record );
+            if ( oldFirst != Record.NO_NEXT_RELATIONSHIP.intValue() )
+            {
+                // the relationships the node already had now come after the last new one
+                RelationshipRecord old = relationshipStore.getRecord( oldFirst );
+                if ( old.getFirstNode() == node )
+                {
+                    old.setFirstPrevRel( previous[node] );
+                }
+                if ( old.getSecondNode() == node )
+                {
+                    old.setSecondPrevRel( previous[node] );
+                }
+                relationshipStore.updateRecord( old );
+            }
+        }
+    }
+}
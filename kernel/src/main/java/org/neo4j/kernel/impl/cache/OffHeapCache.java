@@ -0,0 +1,704 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache which keeps its elements serialized in direct (off-heap) memory so
+ * that a large cache doesn't add to the work of the garbage collector. Every
+ * {@link #get(Long)} hands out a new copy of the element, which means that
+ * changes made to a returned element aren't seen by the cache until it is
+ * {@link #put(Long, Object)} again.
+ * <p>
+ * The memory is given as a fixed number of bytes, split up in segments that
+ * each have their own monitor. A segment hands out pages to slab classes of
+ * power of two slot sizes and when a slab class runs out of slots it evicts
+ * using the clock algorithm, i.e. elements that have been read since the
+ * clock hand last passed them get a second chance. Elements that don't fit in
+ * a page aren't cached.
+ * <p>
+ * Since a copy is loaded outside of the cache there is a window where a
+ * loader could put state that was read before a concurrent
+ * {@link #remove(Long)} of the same key. To close it each segment keeps
+ * version stamps for stripes of keys that a remove bumps, and each thread
+ * remembers the stamps it saw for its most recent misses in
+ * {@link #get(Long)}. A put of such a key is ignored if the stamp of its
+ * stripe has changed since the miss. Keys that weren't among the
+ * {@link #TRACKED_MISSES} most recent misses of the putting thread are put
+ * unconditionally.
+ */
+public class OffHeapCache<V> implements Cache<Long,V>
+{
+    /**
+     * Converts elements to and from the bytes kept by the cache.
+     */
+    public interface Serializer<V>
+    {
+        /**
+         * Writes {@code value} to {@code target}. A
+         * {@link BufferOverflowException} makes the cache try again with a
+         * larger buffer and an {@link IllegalArgumentException} means that the
+         * value can't be cached.
+         */
+        void write( V value, ByteBuffer target );
+
+        V read( long key, ByteBuffer source );
+    }
+
+    static final int MIN_SLOT_SIZE = 32;
+    static final int MIN_PAGE_SIZE = 4 * 1024;
+    static final int MAX_PAGE_SIZE = 1024 * 1024;
+    // enough pages per segment for the slab classes to share between them
+    private static final int TARGET_PAGES_PER_SEGMENT = 64;
+    private static final int MAX_SEGMENT_COUNT = 16;
+    private static final int STAMP_COUNT = 64; // per segment, power of two
+    private static final int LENGTH_SIZE = 4;
+    // per thread, enough for the nested loads of one element
+    static final int TRACKED_MISSES = 16;
+    private static final long EMPTY = -1;
+
+    private final String name;
+    private final Serializer<V> serializer;
+    private final long maxMemory;
+    private final int pageSize;
+    private final Segment[] segments;
+    private final HitCounter counter = HitCounter.create();
+    private final AtomicLong evictions = new AtomicLong();
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>()
+    {
+        @Override
+        protected Scratch initialValue()
+        {
+            return new Scratch();
+        }
+    };
+
+    public OffHeapCache( String name, long maxMemory, Serializer<V> serializer )
+    {
+        if ( maxMemory < MIN_SLOT_SIZE )
+        {
+            throw new IllegalArgumentException( "Too little memory for " + name + ": " + maxMemory );
+        }
+        this.name = name;
+        this.serializer = serializer;
+        long preferredPageSize = Long.highestOneBit( maxMemory / (MAX_SEGMENT_COUNT * TARGET_PAGES_PER_SEGMENT) );
+        this.pageSize = (int) Math.min( Long.highestOneBit( maxMemory ),
+                Math.max( MIN_PAGE_SIZE, Math.min( MAX_PAGE_SIZE, preferredPageSize ) ) );
+        long pages = maxMemory / pageSize;
+        int segmentCount = (int) Math.min( MAX_SEGMENT_COUNT, pages );
+        this.segments = new Segment[segmentCount];
+        for ( int i = 0; i < segments.length; i++ )
+        {
+            segments[i] = new Segment( (int) (pages / segmentCount), pageSize, evictions );
+        }
+        this.maxMemory = (pages / segmentCount) * segmentCount * pageSize;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public V get( Long key )
+    {
+        Scratch local = scratch.get();
+        int length = segmentFor( key ).read( key, local );
+        if ( length < 0 )
+        {
+            return counter.count( null );
+        }
+        return counter.count( serializer.read( key, ByteBuffer.wrap( local.bytes, 0, length ) ) );
+    }
+
+    public void put( Long key, V value )
+    {
+        Scratch local = scratch.get();
+        int length = serialize( value, local );
+        int miss = local.missFor( key );
+        segmentFor( key ).write( key, local.bytes, length, miss >= 0, miss >= 0 ? local.missStamps[miss] : 0 );
+        if ( miss >= 0 )
+        {
+            local.missKeys[miss] = EMPTY;
+        }
+    }
+
+    public void putAll( Map<Long,V> map )
+    {
+        for ( Map.Entry<Long,V> entry : map.entrySet() )
+        {
+            put( entry.getKey(), entry.getValue() );
+        }
+    }
+
+    /**
+     * Removes the element for {@code key}. Always returns {@code null} since
+     * materializing the removed element would only be wasted work for the
+     * callers of this cache.
+     */
+    public V remove( Long key )
+    {
+        segmentFor( key ).remove( key );
+        return null;
+    }
+
+    public void clear()
+    {
+        for ( Segment segment : segments )
+        {
+            segment.clear();
+        }
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for ( Segment segment : segments )
+        {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public void elementCleaned( V value )
+    {
+    }
+
+    public int maxSize()
+    {
+        return Integer.MAX_VALUE;
+    }
+
+    public void resize( int newSize )
+    {
+        // the size of this cache is given in bytes, not in elements
+    }
+
+    public boolean isAdaptive()
+    {
+        return false;
+    }
+
+    public void setAdaptiveStatus( boolean status )
+    {
+    }
+
+    public long hitCount()
+    {
+        return counter.getHitsCount();
+    }
+
+    public long missCount()
+    {
+        return counter.getMissCount();
+    }
+
+    public long evictionCount()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of bytes of off-heap memory currently allocated.
+     */
+    public long memoryUsed()
+    {
+        long pages = 0;
+        for ( Segment segment : segments )
+        {
+            pages += segment.pagesUsed();
+        }
+        return pages * pageSize;
+    }
+
+    public long maxMemory()
+    {
+        return maxMemory;
+    }
+
+    private Segment segmentFor( long key )
+    {
+        return segments[(int) ((hash( key ) >>> 32) % segments.length)];
+    }
+
+    private static long hash( long key )
+    {
+        return key * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * @return the number of bytes written to the scratch buffer, or -1 if
+     * the value can't be cached.
+     */
+    private int serialize( V value, Scratch local )
+    {
+        while ( true )
+        {
+            ByteBuffer target = ByteBuffer.wrap( local.bytes );
+            try
+            {
+                serializer.write( value, target );
+                return target.position() + LENGTH_SIZE <= pageSize ? target.position() : -1;
+            }
+            catch ( BufferOverflowException e )
+            {
+                if ( local.bytes.length >= pageSize )
+                {
+                    return -1;
+                }
+                local.bytes = new byte[local.bytes.length * 2];
+            }
+            catch ( IllegalArgumentException e )
+            {
+                return -1;
+            }
+        }
+    }
+
+    private static class Scratch
+    {
+        byte[] bytes = new byte[256];
+        // the most recent misses of this thread, overwritten round robin
+        final long[] missKeys = new long[TRACKED_MISSES];
+        final int[] missStamps = new int[TRACKED_MISSES];
+        int nextMiss;
+
+        Scratch()
+        {
+            Arrays.fill( missKeys, EMPTY );
+        }
+
+        void missed( long key, int stamp )
+        {
+            int index = missFor( key );
+            if ( index < 0 )
+            {
+                index = nextMiss;
+                nextMiss = (nextMiss + 1) % TRACKED_MISSES;
+            }
+            missKeys[index] = key;
+            missStamps[index] = stamp;
+        }
+
+        /**
+         * @return the index of the tracked miss of {@code key}, or -1 if
+         *         there is none.
+         */
+        int missFor( long key )
+        {
+            for ( int i = 0; i < TRACKED_MISSES; i++ )
+            {
+                if ( missKeys[i] == key )
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static final class Segment
+    {
+        private final int maxPages;
+        private final int pageSize;
+        private final AtomicLong evictions;
+        private int pagesUsed;
+        private SlabClass[] classes;
+        private LongLongMap index;
+        private final int[] stamps = new int[STAMP_COUNT];
+
+        Segment( int maxPages, int pageSize, AtomicLong evictions )
+        {
+            this.maxPages = maxPages;
+            this.pageSize = pageSize;
+            this.evictions = evictions;
+            reset();
+        }
+
+        private void reset()
+        {
+            pagesUsed = 0;
+            classes = new SlabClass[Integer.numberOfTrailingZeros( pageSize / MIN_SLOT_SIZE ) + 1];
+            for ( int i = 0; i < classes.length; i++ )
+            {
+                classes[i] = new SlabClass( MIN_SLOT_SIZE << i, pageSize );
+            }
+            index = new LongLongMap();
+        }
+
+        private int stampIndex( long key )
+        {
+            return (int) hash( key ) & (STAMP_COUNT - 1);
+        }
+
+        synchronized int read( long key, Scratch local )
+        {
+            long ref = index.get( key );
+            if ( ref == EMPTY )
+            {
+                local.missed( key, stamps[stampIndex( key )] );
+                return -1;
+            }
+            SlabClass slab = classes[(int) (ref >>> 32)];
+            int slot = (int) ref;
+            slab.referenced[slot] = true;
+            ByteBuffer page = slab.pageFor( slot );
+            int offset = slab.offsetFor( slot );
+            int length = page.getInt( offset );
+            if ( local.bytes.length < length )
+            {
+                local.bytes = new byte[Math.max( length, local.bytes.length * 2 )];
+            }
+            page.position( offset + LENGTH_SIZE );
+            page.get( local.bytes, 0, length );
+            return length;
+        }
+
+        synchronized void write( long key, byte[] bytes, int length, boolean afterMiss, int missStamp )
+        {
+            if ( afterMiss && stamps[stampIndex( key )] != missStamp )
+            {
+                // removed while the value was loaded, so it may be stale
+                return;
+            }
+            free( key );
+            if ( length < 0 )
+            {
+                return;
+            }
+            int slotSize = Integer.highestOneBit( Math.max( MIN_SLOT_SIZE, length + LENGTH_SIZE ) - 1 ) << 1;
+            int slabIndex = Integer.numberOfTrailingZeros( slotSize / MIN_SLOT_SIZE );
+            SlabClass slab = classes[slabIndex];
+            int slot = allocate( slab );
+            if ( slot < 0 )
+            {
+                return;
+            }
+            ByteBuffer page = slab.pageFor( slot );
+            int offset = slab.offsetFor( slot );
+            page.putInt( offset, length );
+            page.position( offset + LENGTH_SIZE );
+            page.put( bytes, 0, length );
+            slab.keys[slot] = key;
+            slab.referenced[slot] = true;
+            index.put( key, ((long) slabIndex << 32) | slot );
+        }
+
+        synchronized void remove( long key )
+        {
+            stamps[stampIndex( key )]++;
+            free( key );
+        }
+
+        synchronized void clear()
+        {
+            for ( int i = 0; i < stamps.length; i++ )
+            {
+                stamps[i]++;
+            }
+            reset();
+        }
+
+        synchronized int size()
+        {
+            return index.size();
+        }
+
+        synchronized int pagesUsed()
+        {
+            return pagesUsed;
+        }
+
+        private void free( long key )
+        {
+            long ref = index.remove( key );
+            if ( ref != EMPTY )
+            {
+                classes[(int) (ref >>> 32)].release( (int) ref );
+            }
+        }
+
+        private int allocate( SlabClass slab )
+        {
+            if ( slab.freeCount == 0 )
+            {
+                if ( pagesUsed < maxPages )
+                {
+                    slab.addPage( ByteBuffer.allocateDirect( pageSize ) );
+                    pagesUsed++;
+                }
+                else if ( slab.slotCount > 0 )
+                {
+                    return evict( slab );
+                }
+                else if ( !stealPage( slab ) )
+                {
+                    return -1;
+                }
+            }
+            return slab.free[--slab.freeCount];
+        }
+
+        private int evict( SlabClass slab )
+        {
+            while ( true )
+            {
+                int slot = slab.hand;
+                slab.hand = (slab.hand + 1) % slab.slotCount;
+                if ( slab.referenced[slot] )
+                {
+                    slab.referenced[slot] = false;
+                    continue;
+                }
+                index.remove( slab.keys[slot] );
+                slab.keys[slot] = EMPTY;
+                evictions.incrementAndGet();
+                return slot;
+            }
+        }
+
+        /**
+         * Moves the last page of the slab class with the most pages over to
+         * {@code slab}, since slots of a size that hasn't been used before
+         * otherwise couldn't be had once all memory is handed out.
+         */
+        private boolean stealPage( SlabClass slab )
+        {
+            SlabClass victim = null;
+            for ( SlabClass candidate : classes )
+            {
+                if ( victim == null || candidate.pages.size() > victim.pages.size() )
+                {
+                    victim = candidate;
+                }
+            }
+            if ( victim == null || victim.pages.isEmpty() )
+            {
+                return false;
+            }
+            int firstSlot = victim.slotCount - victim.slotsPerPage;
+            for ( int slot = firstSlot; slot < victim.slotCount; slot++ )
+            {
+                if ( victim.keys[slot] != EMPTY )
+                {
+                    index.remove( victim.keys[slot] );
+                    evictions.incrementAndGet();
+                }
+            }
+            slab.addPage( victim.removeLastPage() );
+            return true;
+        }
+    }
+
+    private static final class SlabClass
+    {
+        final int slotSize;
+        final int slotsPerPage;
+        final List<ByteBuffer> pages = new ArrayList<ByteBuffer>();
+        long[] keys = new long[0];
+        boolean[] referenced = new boolean[0];
+        int slotCount;
+        int[] free = new int[0];
+        int freeCount;
+        int hand;
+
+        SlabClass( int slotSize, int pageSize )
+        {
+            this.slotSize = slotSize;
+            this.slotsPerPage = pageSize / slotSize;
+        }
+
+        ByteBuffer pageFor( int slot )
+        {
+            return pages.get( slot / slotsPerPage );
+        }
+
+        int offsetFor( int slot )
+        {
+            return (slot % slotsPerPage) * slotSize;
+        }
+
+        void addPage( ByteBuffer page )
+        {
+            pages.add( page );
+            int newCount = slotCount + slotsPerPage;
+            long[] newKeys = new long[newCount];
+            System.arraycopy( keys, 0, newKeys, 0, slotCount );
+            boolean[] newReferenced = new boolean[newCount];
+            System.arraycopy( referenced, 0, newReferenced, 0, slotCount );
+            int[] newFree = new int[newCount];
+            System.arraycopy( free, 0, newFree, 0, freeCount );
+            // push in reverse so that the lowest slots are used first
+            for ( int slot = newCount - 1; slot >= slotCount; slot-- )
+            {
+                newKeys[slot] = EMPTY;
+                newFree[freeCount++] = slot;
+            }
+            keys = newKeys;
+            referenced = newReferenced;
+            free = newFree;
+            slotCount = newCount;
+        }
+
+        ByteBuffer removeLastPage()
+        {
+            slotCount -= slotsPerPage;
+            int kept = 0;
+            for ( int i = 0; i < freeCount; i++ )
+            {
+                if ( free[i] < slotCount )
+                {
+                    free[kept++] = free[i];
+                }
+            }
+            freeCount = kept;
+            if ( hand >= slotCount )
+            {
+                hand = 0;
+            }
+            return pages.remove( pages.size() - 1 );
+        }
+
+        void release( int slot )
+        {
+            keys[slot] = EMPTY;
+            referenced[slot] = false;
+            free[freeCount++] = slot;
+        }
+    }
+
+    /**
+     * Open addressing hash map from non negative long keys to long values,
+     * so that the index doesn't need any objects per element.
+     */
+    private static final class LongLongMap
+    {
+        private long[] keys;
+        private long[] values;
+        private int mask;
+        private int size;
+
+        LongLongMap()
+        {
+            allocate( 16 );
+        }
+
+        private void allocate( int capacity )
+        {
+            keys = new long[capacity];
+            values = new long[capacity];
+            Arrays.fill( keys, EMPTY );
+            mask = capacity - 1;
+        }
+
+        private int home( long key )
+        {
+            return (int) (hash( key ) >>> 32) & mask;
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        long get( long key )
+        {
+            for ( int i = home( key );; i = (i + 1) & mask )
+            {
+                if ( keys[i] == key )
+                {
+                    return values[i];
+                }
+                if ( keys[i] == EMPTY )
+                {
+                    return EMPTY;
+                }
+            }
+        }
+
+        void put( long key, long value )
+        {
+            if ( (size + 1) * 4 > keys.length * 3 )
+            {
+                rehash();
+            }
+            int i = home( key );
+            while ( keys[i] != EMPTY && keys[i] != key )
+            {
+                i = (i + 1) & mask;
+            }
+            if ( keys[i] == EMPTY )
+            {
+                size++;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        long remove( long key )
+        {
+            int i = home( key );
+            while ( keys[i] != key )
+            {
+                if ( keys[i] == EMPTY )
+                {
+                    return EMPTY;
+                }
+                i = (i + 1) & mask;
+            }
+            long value = values[i];
+            // shift back the following entries of the probe sequence
+            int gap = i;
+            for ( int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask )
+            {
+                if ( ((j - home( keys[j] )) & mask) >= ((j - gap) & mask) )
+                {
+                    keys[gap] = keys[j];
+                    values[gap] = values[j];
+                    gap = j;
+                }
+            }
+            keys[gap] = EMPTY;
+            size--;
+            return value;
+        }
+
+        private void rehash()
+        {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            allocate( oldKeys.length * 2 );
+            size = 0;
+            for ( int i = 0; i < oldKeys.length; i++ )
+            {
+                if ( oldKeys[i] != EMPTY )
+                {
+                    put( oldKeys[i], oldValues[i] );
+                }
+            }
+        }
+    }
+}
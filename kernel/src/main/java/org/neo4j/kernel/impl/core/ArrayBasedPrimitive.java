@@ -65,6 +65,11 @@ abstract class ArrayBasedPrimitive extends Primitive
         this.properties = toPropertyArray( properties );
     }
 
+    void setProperties( PropertyData[] properties )
+    {
+        this.properties = properties;
+    }
+
     @Override
     protected PropertyData[] allProperties()
     {
@@ -19,6 +19,7 @@
  */
 package org.neo4j.kernel.impl.core;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -29,6 +30,7 @@ import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.helpers.collection.PrefetchingIterator;
+import org.neo4j.kernel.impl.util.CombinedRelIdIterator;
 import org.neo4j.kernel.impl.util.RelIdArray;
 import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
 import org.neo4j.kernel.impl.util.RelIdIterator;
@@ -42,6 +44,9 @@ class IntArrayIterator extends PrefetchingIterator<Relationship> implements Iter
     private final NodeManager nodeManager;
     private final RelationshipType types[];
     private final List<RelIdIterator> rels;
+    // The relationship groups loaded by type, or null if the whole
+    // relationship chain is loaded
+    private final Map<String,NodeImpl.TypedRelIdArray> groups;
     
     // This is just for optimization
     private boolean isFullyLoaded;
@@ -49,8 +54,24 @@ class IntArrayIterator extends PrefetchingIterator<Relationship> implements Iter
     IntArrayIterator( List<RelIdIterator> rels, NodeImpl fromNode,
         DirectionWrapper direction, NodeManager nodeManager, RelationshipType[] types,
         boolean isFullyLoaded )
+    {
+        this( rels, fromNode, direction, nodeManager, types, isFullyLoaded, null );
+    }
+
+    IntArrayIterator( List<RelIdIterator> rels, NodeImpl fromNode,
+        DirectionWrapper direction, NodeManager nodeManager, RelationshipType[] types,
+        Map<String,NodeImpl.TypedRelIdArray> groups )
+    {
+        this( rels, fromNode, direction, nodeManager, types,
+            !fromNode.hasMoreRelationshipsOfTypeToLoad( groups.values(), direction ), groups );
+    }
+
+    private IntArrayIterator( List<RelIdIterator> rels, NodeImpl fromNode,
+        DirectionWrapper direction, NodeManager nodeManager, RelationshipType[] types,
+        boolean isFullyLoaded, Map<String,NodeImpl.TypedRelIdArray> groups )
     {
         this.rels = rels;
+        this.groups = groups;
         this.isFullyLoaded = isFullyLoaded;
         this.typeIterator = rels.iterator();
         this.currentTypeIterator = typeIterator.hasNext() ? typeIterator.next() : RelIdArray.EMPTY.iterator( direction );
@@ -88,14 +109,37 @@ class IntArrayIterator extends PrefetchingIterator<Relationship> implements Iter
                 {
                     currentTypeIterator = typeIterator.next();
                 }
-                else if ( fromNode.getMoreRelationships( nodeManager ) ||
-                        // This is here to guard for that someone else might have loaded
-                        // stuff in this relationship chain (and exhausted it) while I
-                        // iterated over my batch of relationships. It will only happen
-                        // for nodes which have more than <grab size> relationships and
-                        // isn't fully loaded when starting iterating.
-                        !isFullyLoaded )
+                // Checking isFullyLoaded, rather than only whether more could be loaded,
+                // is here to guard for that someone else might have loaded
+                // stuff in this relationship chain (and exhausted it) while I
+                // iterated over my batch of relationships. It will only happen
+                // for nodes which have more than <grab size> relationships and
+                // isn't fully loaded when starting iterating.
+                else if ( !isFullyLoaded && groups != null )
+                {
+                    List<RelIdIterator> newRels = new ArrayList<RelIdIterator>( rels.size() );
+                    for ( RelIdIterator itr : rels )
+                    {
+                        NodeImpl.TypedRelIdArray group = groups.get( itr.getType() );
+                        if ( group != null )
+                        {
+                            itr = itr.updateSource( fromNode.getMoreRelationshipsOfType(
+                                    nodeManager, group, direction ) );
+                            itr.doAnotherRound();
+                        }
+                        newRels.add( itr );
+                    }
+                    
+                    rels.clear();
+                    rels.addAll( newRels );
+                    
+                    typeIterator = rels.iterator();
+                    currentTypeIterator = typeIterator.hasNext() ? typeIterator.next() : RelIdArray.EMPTY.iterator( direction );
+                    isFullyLoaded = !fromNode.hasMoreRelationshipsOfTypeToLoad( groups.values(), direction );
+                }
+                else if ( !isFullyLoaded )
                 {
+                    fromNode.getMoreRelationships( nodeManager );
                     Map<String,RelIdIterator> newRels = new HashMap<String,RelIdIterator>();
                     for ( RelIdIterator itr : rels )
                     {
@@ -121,8 +165,10 @@ class IntArrayIterator extends PrefetchingIterator<Relationship> implements Iter
                             if ( itr == null )
                             {
                                 Collection<Long> remove = nodeManager.getCowRelationshipRemoveMap( fromNode, type );
+                                // not a filtered copy, later rounds update the source
+                                // with the node's own ids
                                 itr = remove == null ? ids.iterator( direction ) :
-                                        RelIdArray.from( ids, null, remove ).iterator( direction );
+                                        new CombinedRelIdIterator( type, direction, ids, null, remove );
                                 newRels.put( type, itr );
                             }
                             else
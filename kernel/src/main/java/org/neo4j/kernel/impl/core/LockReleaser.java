@@ -434,16 +434,32 @@ public class LockReleaser
         {
             return;
         }
+        // changes made to a copy handed out by the cache would be lost,
+        // so let the next read load the committed state instead
+        boolean invalidate = param == Status.STATUS_COMMITTED
+                && nodeManager.getCacheType().copiesEntities();
         ArrayMap<Long,CowNodeElement> cowNodeElements = element.nodes;
         Set<Entry<Long,CowNodeElement>> nodeEntrySet =
             cowNodeElements.entrySet();
         for ( Entry<Long,CowNodeElement> entry : nodeEntrySet )
         {
+            if ( invalidate )
+            {
+                nodeManager.removeNodeFromCache( entry.getKey() );
+                continue;
+            }
             NodeImpl node = nodeManager.getNodeIfCached( entry.getKey() );
             if ( node != null )
             {
                 CowNodeElement nodeElement = entry.getValue();
-                if ( param == Status.STATUS_COMMITTED )
+                if ( param == Status.STATUS_COMMITTED && nodeElement.relationshipAddMap != null &&
+                        node.hasMoreRelationshipsToLoad() && nodeManager.isRelationshipChainGrouped() )
+                {
+                    // with grouped chains the new relationships can have been
+                    // linked into the part that isn't loaded yet
+                    nodeManager.removeNodeFromCache( entry.getKey() );
+                }
+                else if ( param == Status.STATUS_COMMITTED )
                 {
                     node.commitRelationshipMaps( nodeElement.relationshipAddMap,
                         nodeElement.relationshipRemoveMap, nodeElement.firstRel );
@@ -462,6 +478,11 @@ public class LockReleaser
             cowRelElements.entrySet();
         for ( Entry<Long,CowRelElement> entry : relEntrySet )
         {
+            if ( invalidate )
+            {
+                nodeManager.removeRelationshipFromCache( entry.getKey() );
+                continue;
+            }
             RelationshipImpl rel = nodeManager.getRelIfCached( entry.getKey() );
             if ( rel != null )
             {
@@ -525,6 +546,16 @@ public class LockReleaser
         return element != null ? element.getPropertyAddMap( false ) : null;
     }
 
+    /**
+     * @return whether or not the current transaction has made any changes
+     * to nodes, relationships or graph properties.
+     */
+    boolean hasModifications()
+    {
+        Transaction tx = getTransaction();
+        return tx != null && cowMap.get( tx ) != null;
+    }
+
     public PrimitiveElement getPrimitiveElement( boolean create )
     {
         return getPrimitiveElement( getTransaction(), create );
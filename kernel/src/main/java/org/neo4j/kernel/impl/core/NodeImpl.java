@@ -21,6 +21,7 @@ package org.neo4j.kernel.impl.core;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -60,6 +61,11 @@ class NodeImpl extends ArrayBasedPrimitive
     private long relChainPosition = Record.NO_NEXT_RELATIONSHIP.intValue();
     private final long id;
 
+    // Relationships loaded per type and direction group while the node isn't
+    // fully loaded, only used for grouped relationship chains. Entries are
+    // only loaded into, and the map only replaced, under synchronization.
+    private volatile Map<String,TypedRelIdArray> typedRelationships;
+
     NodeImpl( long id, long firstRel, long firstProp )
     {
         this( id, firstRel, firstProp, false );
@@ -177,24 +183,231 @@ class NodeImpl extends ArrayBasedPrimitive
         boolean hasModifications = nodeManager.getLockReleaser().hasRelationshipModifications( this );
         for ( RelationshipType type : types )
         {
-            String typeName = type.name();
-            RelIdArray src = getRelIdArray( typeName );
-            Collection<Long> remove = null;
-            RelIdArray add = null;
-            RelIdIterator iterator = null;
-            if ( hasModifications )
+            relTypeList.add( typeIterator( nodeManager, type.name(),
+                    getRelIdArray( type.name() ), direction, hasModifications ) );
+        }
+        return relTypeList;
+    }
+
+    /**
+     * Like {@link #getAllRelationshipsOfType(NodeManager, DirectionWrapper, RelationshipType...)}
+     * but only loads the groups of the grouped relationship chain that the
+     * given types and direction need, instead of the whole chain. The groups
+     * are loaded in batches, the loaded ones are put in {@code groups}.
+     */
+    private List<RelIdIterator> getRelationshipGroupsOfType( NodeManager nodeManager,
+        DirectionWrapper direction, Map<String,TypedRelIdArray> groups, RelationshipType... types )
+    {
+        List<RelIdIterator> relTypeList = new LinkedList<RelIdIterator>();
+        boolean hasModifications = nodeManager.getLockReleaser().hasRelationshipModifications( this );
+        for ( RelationshipType type : types )
+        {
+            TypedRelIdArray loaded = loadRelationshipsOfType( nodeManager, type, direction );
+            if ( loaded != null )
             {
-                remove = nodeManager.getCowRelationshipRemoveMap( this, typeName );
-                add = nodeManager.getCowRelationshipAddMap( this, typeName );
-                iterator = new CombinedRelIdIterator( typeName, direction, src, add, remove );
+                groups.put( type.name(), loaded );
             }
-            else
+            relTypeList.add( typeIterator( nodeManager, type.name(),
+                    loaded != null ? loaded.ids : null, direction, hasModifications ) );
+        }
+        return relTypeList;
+    }
+
+    private RelIdIterator typeIterator( NodeManager nodeManager, String typeName,
+            RelIdArray src, DirectionWrapper direction, boolean hasModifications )
+    {
+        if ( hasModifications )
+        {
+            Collection<Long> remove = nodeManager.getCowRelationshipRemoveMap( this, typeName );
+            RelIdArray add = nodeManager.getCowRelationshipAddMap( this, typeName );
+            return new CombinedRelIdIterator( typeName, direction, src, add, remove );
+        }
+        return src != null ? src.iterator( direction ) : empty( typeName ).iterator( direction );
+    }
+
+    private boolean loadsRelationshipsByType( NodeManager nodeManager )
+    {
+        return ( relationships == null || hasMoreRelationshipsToLoad() ) &&
+                nodeManager.isRelationshipChainGrouped();
+    }
+
+    private IntArrayIterator getRelationshipsOfType( NodeManager nodeManager,
+            DirectionWrapper direction, RelationshipType... types )
+    {
+        if ( loadsRelationshipsByType( nodeManager ) )
+        {
+            Map<String,TypedRelIdArray> groups = new HashMap<String,TypedRelIdArray>();
+            List<RelIdIterator> rels = getRelationshipGroupsOfType( nodeManager, direction, groups, types );
+            return new IntArrayIterator( rels, this, direction, nodeManager, types, groups );
+        }
+        return new IntArrayIterator( getAllRelationshipsOfType( nodeManager, direction, types ),
+            this, direction, nodeManager, types, !hasMoreRelationshipsToLoad() );
+    }
+
+    /**
+     * Starts loading the groups of the given type that the direction needs,
+     * loading the first batch of each group not already started.
+     *
+     * @return the relationships of the type loaded so far, or {@code null}
+     * if there's no such relationship type.
+     */
+    private TypedRelIdArray loadRelationshipsOfType( NodeManager nodeManager, RelationshipType type,
+            DirectionWrapper direction )
+    {
+        String typeName = type.name();
+        int groups = groupsOf( direction );
+        Map<String,TypedRelIdArray> typed = typedRelationships;
+        TypedRelIdArray loaded = typed != null ? typed.get( typeName ) : null;
+        if ( loaded != null && ( loaded.groups & groups ) == groups )
+        {
+            return loaded;
+        }
+        Integer typeId = nodeManager.getRelationshipTypeIdIfExists( type );
+        if ( typeId == null )
+        {
+            return null;
+        }
+
+        Map<Long,RelationshipImpl> relsMap = new HashMap<Long,RelationshipImpl>();
+        synchronized ( this )
+        {
+            // a committed change to this node's relationships drops the
+            // loaded groups, loading under the same lock keeps what was read
+            // from the store from being mixed with a stale map
+            typed = typedRelationships;
+            loaded = typed != null ? typed.get( typeName ) : null;
+            if ( loaded == null )
             {
-                iterator = src != null ? src.iterator( direction ) : empty( typeName ).iterator( direction );
+                loaded = new TypedRelIdArray( typeName, typeId );
+                Map<String,TypedRelIdArray> newTyped = typed == null ?
+                        new HashMap<String,TypedRelIdArray>() : new HashMap<String,TypedRelIdArray>( typed );
+                newTyped.put( typeName, loaded );
+                typedRelationships = newTyped;
+            }
+            int newGroups = groups & ~loaded.groups;
+            if ( newGroups != 0 )
+            {
+                for ( DirectionWrapper group : DirectionWrapper.values() )
+                {
+                    if ( ( newGroups & 1 << group.ordinal() ) != 0 )
+                    {
+                        loaded.positions[group.ordinal()] =
+                            nodeManager.getRelationshipChainPosition( this, typeId, group );
+                    }
+                }
+                loaded.groups |= newGroups;
+                loadMoreRelationshipsOfType( nodeManager, loaded, newGroups, relsMap );
             }
-            relTypeList.add( iterator );
         }
-        return relTypeList;
+        nodeManager.putAllInRelCache( relsMap );
+        return loaded;
+    }
+
+    /**
+     * Loads the next batch of each of the groups that the direction needs
+     * and that have more to load, like {@link #getMoreRelationships(NodeManager)}
+     * does for the whole chain.
+     *
+     * @return the relationships of the type loaded so far.
+     */
+    RelIdArray getMoreRelationshipsOfType( NodeManager nodeManager, TypedRelIdArray loaded,
+            DirectionWrapper direction )
+    {
+        Map<Long,RelationshipImpl> relsMap = new HashMap<Long,RelationshipImpl>();
+        RelIdArray ids;
+        synchronized ( this )
+        {
+            loadMoreRelationshipsOfType( nodeManager, loaded, groupsOf( direction ), relsMap );
+            ids = loaded.ids;
+        }
+        nodeManager.putAllInRelCache( relsMap );
+        return ids;
+    }
+
+    boolean hasMoreRelationshipsOfTypeToLoad( Collection<TypedRelIdArray> loaded, DirectionWrapper direction )
+    {
+        int groups = groupsOf( direction );
+        synchronized ( this )
+        {
+            for ( TypedRelIdArray typed : loaded )
+            {
+                if ( typed.hasMore( groups ) )
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void loadMoreRelationshipsOfType( NodeManager nodeManager, TypedRelIdArray loaded, int groups,
+            Map<Long,RelationshipImpl> relsMap )
+    { // precondition: must be called under synchronization
+        for ( DirectionWrapper group : DirectionWrapper.values() )
+        {
+            long position = loaded.positions[group.ordinal()];
+            if ( ( groups & 1 << group.ordinal() ) != 0 && position != Record.NO_NEXT_RELATIONSHIP.intValue() )
+            {
+                Triplet<RelIdArray,Map<Long,RelationshipImpl>,Long> rels =
+                    nodeManager.getMoreRelationshipsOfType( this, loaded.type, loaded.typeId, group, position );
+                loaded.ids = loaded.ids.addAll( rels.first() );
+                relsMap.putAll( rels.second() );
+                loaded.positions[group.ordinal()] = rels.third();
+            }
+        }
+        if ( !loaded.hasMore( loaded.groups ) )
+        {
+            // Done loading the started groups - Compact
+            loaded.ids = loaded.ids.compact();
+        }
+    }
+
+    private static int groupsOf( DirectionWrapper direction )
+    {
+        int loops = 1 << DirectionWrapper.BOTH.ordinal();
+        switch ( direction )
+        {
+        case OUTGOING: return loops | 1 << DirectionWrapper.OUTGOING.ordinal();
+        case INCOMING: return loops | 1 << DirectionWrapper.INCOMING.ordinal();
+        default: return loops | 1 << DirectionWrapper.OUTGOING.ordinal() |
+                1 << DirectionWrapper.INCOMING.ordinal();
+        }
+    }
+
+    /**
+     * The relationship ids of one type loaded so far, together with which of
+     * its direction groups (outgoing, incoming, loops) have been started and
+     * the position of the next batch of each group. Only changed under
+     * synchronization on the node.
+     */
+    static class TypedRelIdArray
+    {
+        private final String type;
+        private final int typeId;
+        private final long[] positions = new long[DirectionWrapper.values().length];
+        private volatile RelIdArray ids;
+        private volatile int groups;
+
+        TypedRelIdArray( String type, int typeId )
+        {
+            this.type = type;
+            this.typeId = typeId;
+            this.ids = new RelIdArray( type );
+            Arrays.fill( positions, Record.NO_NEXT_RELATIONSHIP.intValue() );
+        }
+
+        boolean hasMore( int groups )
+        {
+            for ( DirectionWrapper group : DirectionWrapper.values() )
+            {
+                if ( ( groups & 1 << group.ordinal() ) != 0 &&
+                        positions[group.ordinal()] != Record.NO_NEXT_RELATIONSHIP.intValue() )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
 
     public Iterable<Relationship> getRelationships( NodeManager nodeManager )
@@ -212,33 +425,25 @@ class NodeImpl extends ArrayBasedPrimitive
 
     public Iterable<Relationship> getRelationships( NodeManager nodeManager, RelationshipType type )
     {
-        RelationshipType types[] = new RelationshipType[] { type };
-        return new IntArrayIterator( getAllRelationshipsOfType( nodeManager, DirectionWrapper.BOTH, types ),
-            this, DirectionWrapper.BOTH, nodeManager, types, !hasMoreRelationshipsToLoad() );
+        return getRelationshipsOfType( nodeManager, DirectionWrapper.BOTH, type );
     }
 
     public Iterable<Relationship> getRelationships( NodeManager nodeManager,
             RelationshipType... types )
     {
-        return new IntArrayIterator( getAllRelationshipsOfType( nodeManager, DirectionWrapper.BOTH, types ),
-            this, DirectionWrapper.BOTH, nodeManager, types, !hasMoreRelationshipsToLoad() );
+        return getRelationshipsOfType( nodeManager, DirectionWrapper.BOTH, types );
     }
 
     public Iterable<Relationship> getRelationships( NodeManager nodeManager,
             Direction direction, RelationshipType... types )
     {
-        DirectionWrapper dir = RelIdArray.wrap( direction );
-        return new IntArrayIterator( getAllRelationshipsOfType( nodeManager, dir, types ),
-            this, dir, nodeManager, types, !hasMoreRelationshipsToLoad() );
+        return getRelationshipsOfType( nodeManager, RelIdArray.wrap( direction ), types );
     }
 
     public Relationship getSingleRelationship( NodeManager nodeManager, RelationshipType type,
         Direction dir )
     {
-        DirectionWrapper direction = RelIdArray.wrap( dir );
-        RelationshipType types[] = new RelationshipType[] { type };
-        Iterator<Relationship> rels = new IntArrayIterator( getAllRelationshipsOfType( nodeManager,
-                direction, types ), this, direction, nodeManager, types, !hasMoreRelationshipsToLoad() );
+        Iterator<Relationship> rels = getRelationshipsOfType( nodeManager, RelIdArray.wrap( dir ), type );
         if ( !rels.hasNext() )
         {
             return null;
@@ -255,10 +460,7 @@ class NodeImpl extends ArrayBasedPrimitive
     public Iterable<Relationship> getRelationships( NodeManager nodeManager, RelationshipType type,
         Direction dir )
     {
-        RelationshipType types[] = new RelationshipType[] { type };
-        DirectionWrapper direction = RelIdArray.wrap( dir );
-        return new IntArrayIterator( getAllRelationshipsOfType( nodeManager, direction, types ),
-            this, direction, nodeManager, types, !hasMoreRelationshipsToLoad() );
+        return getRelationshipsOfType( nodeManager, RelIdArray.wrap( dir ), type );
     }
 
     public void delete( NodeManager nodeManager, Node proxy )
@@ -405,6 +607,31 @@ class NodeImpl extends ArrayBasedPrimitive
         // nodeManager.putAllInRelCache( pair.other() );
     }
 
+    @Override
+    void loadForCache( NodeManager nodeManager )
+    {
+        super.loadForCache( nodeManager );
+        ensureRelationshipMapNotNull( nodeManager );
+    }
+
+    /**
+     * @return the relationship ids loaded so far, or {@code null} if none
+     * have been loaded yet.
+     */
+    RelIdArray[] getLoadedRelationships()
+    {
+        return relationships;
+    }
+
+    void setLoadedRelationships( RelIdArray[] relationships, long relChainPosition )
+    {
+        synchronized ( this )
+        {
+            this.relationships = relationships;
+            setRelChainPosition( relChainPosition );
+        }
+    }
+
     boolean hasMoreRelationshipsToLoad()
     {
         return getRelChainPosition() != Record.NO_NEXT_RELATIONSHIP.intValue();
@@ -587,6 +814,14 @@ class NodeImpl extends ArrayBasedPrimitive
         ArrayMap<String,RelIdArray> cowRelationshipAddMap,
         ArrayMap<String,Collection<Long>> cowRelationshipRemoveMap, long firstRel )
     {
+        if ( cowRelationshipAddMap != null || cowRelationshipRemoveMap != null )
+        {
+            synchronized ( this )
+            {
+                // reloaded by type the next time they're asked for
+                typedRelationships = null;
+            }
+        }
         if ( relationships == null )
         {
             // we will load full in some other tx
@@ -606,7 +841,7 @@ class NodeImpl extends ArrayBasedPrimitive
                         remove = cowRelationshipRemoveMap.get( type );
                     }
                     RelIdArray src = getRelIdArray( type );
-                    putRelIdArray( RelIdArray.from( src, add, remove ) );
+                    putRelIdArray( forCache( RelIdArray.from( src, add, remove ) ) );
                 }
             }
             if ( cowRelationshipRemoveMap != null )
@@ -622,13 +857,19 @@ class NodeImpl extends ArrayBasedPrimitive
                     if ( src != null )
                     {
                         Collection<Long> remove = cowRelationshipRemoveMap.get( type );
-                        putRelIdArray( RelIdArray.from( src, null, remove ) );
+                        putRelIdArray( forCache( RelIdArray.from( src, null, remove ) ) );
                     }
                 }
             }
         }
     }
 
+    private RelIdArray forCache( RelIdArray ids )
+    {
+        // only fully loaded arrays are compacted, the others are still added to
+        return hasMoreRelationshipsToLoad() ? ids : ids.compact();
+    }
+
     long getRelChainPosition()
     {
         return relChainPosition;
@@ -641,11 +882,12 @@ class NodeImpl extends ArrayBasedPrimitive
         RelIdArray[] array = relationships;
         if ( !hasMoreRelationshipsToLoad() && array != null )
         {
-            // Done loading - Shrink arrays
+            // Done loading - Compact arrays
             for ( int i = 0; i < array.length; i++ )
             {
-                array[i] = array[i].shrink();
+                array[i] = array[i].compact();
             }
+            typedRelationships = null;
         }
     }
 
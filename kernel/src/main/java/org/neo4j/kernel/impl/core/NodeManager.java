@@ -42,15 +42,19 @@ import org.neo4j.graphdb.event.TransactionData;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.helpers.Pair;
 import org.neo4j.helpers.Triplet;
+import org.neo4j.helpers.collection.IteratorWrapper;
 import org.neo4j.helpers.collection.PrefetchingIterator;
+import org.neo4j.kernel.Config;
 import org.neo4j.kernel.PropertyTracker;
 import org.neo4j.kernel.impl.cache.AdaptiveCacheManager;
 import org.neo4j.kernel.impl.cache.Cache;
 import org.neo4j.kernel.impl.cache.LruCache;
 import org.neo4j.kernel.impl.cache.NoCache;
+import org.neo4j.kernel.impl.cache.OffHeapCache;
 import org.neo4j.kernel.impl.cache.SoftLruCache;
 import org.neo4j.kernel.impl.cache.StrongReferenceCache;
 import org.neo4j.kernel.impl.cache.WeakLruCache;
+import org.neo4j.kernel.impl.nioneo.store.CommonAbstractStore;
 import org.neo4j.kernel.impl.nioneo.store.NameData;
 import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyData;
@@ -104,7 +108,8 @@ public class NodeManager
             AdaptiveCacheManager cacheManager, LockManager lockManager,
             LockReleaser lockReleaser, TransactionManager transactionManager,
             PersistenceManager persistenceManager, EntityIdGenerator idGenerator,
-            RelationshipTypeCreator relTypeCreator, CacheType cacheType )
+            RelationshipTypeCreator relTypeCreator, CacheType cacheType,
+            Map<Object,Object> config )
     {
         this.graphDbService = graphDb;
         this.cacheManager = cacheManager;
@@ -121,8 +126,8 @@ public class NodeManager
             persistenceManager, idGenerator, relTypeCreator );
 
         this.cacheType = cacheType;
-        this.nodeCache = cacheType.node( cacheManager );
-        this.relCache = cacheType.relationship( cacheManager );
+        this.nodeCache = cacheType.node( cacheManager, config );
+        this.relCache = cacheType.relationship( cacheManager, config );
         for ( int i = 0; i < loadLocks.length; i++ )
         {
             loadLocks[i] = new ReentrantLock();
@@ -418,7 +423,10 @@ public class NodeManager
             NodeRecord record = persistenceManager.loadLightNode( nodeId );
             if ( record == null ) return null;
             node = new NodeImpl( nodeId, record.getCommittedNextRel(), record.getCommittedNextProp() );
-            nodeCache.put( nodeId, node );
+            if ( prepareForCache( node ) )
+            {
+                nodeCache.put( nodeId, node );
+            }
             return new NodeProxy( nodeId, this );
         }
         finally
@@ -439,6 +447,19 @@ public class NodeManager
 
     public Iterator<Node> getAllNodes()
     {
+        if ( !persistenceManager.hasTransactionState() )
+        {
+            // nothing but committed nodes to see, so read them straight off
+            // the store instead of going through the cache one id at a time
+            return new IteratorWrapper<Node, NodeRecord>( persistenceManager.scanNodes() )
+            {
+                @Override
+                protected Node underlyingObjectToObject( NodeRecord record )
+                {
+                    return new NodeProxy( record.getId(), NodeManager.this );
+                }
+            };
+        }
         final long highId = getHighestPossibleIdInUse( Node.class );
         return new PrefetchingIterator<Node>()
         {
@@ -485,7 +506,10 @@ public class NodeManager
             NodeRecord record = persistenceManager.loadLightNode( nodeId );
             if ( record == null ) return null;
             node = new NodeImpl( nodeId, record.getCommittedNextRel(), record.getCommittedNextProp() );
-            nodeCache.put( nodeId, node );
+            if ( prepareForCache( node ) )
+            {
+                nodeCache.put( nodeId, node );
+            }
             return node;
         }
         finally
@@ -547,7 +571,10 @@ public class NodeManager
             final long startNodeId = data.getFirstNode();
             final long endNodeId = data.getSecondNode();
             relationship = newRelationshipImpl( relId, startNodeId, endNodeId, type, typeId, false );
-            relCache.put( relId, relationship );
+            if ( prepareForCache( relationship ) )
+            {
+                relCache.put( relId, relationship );
+            }
             return new RelationshipProxy( relId, this );
         }
         finally
@@ -568,6 +595,18 @@ public class NodeManager
 
     public Iterator<Relationship> getAllRelationships()
     {
+        if ( !persistenceManager.hasTransactionState() )
+        {
+            return new IteratorWrapper<Relationship, RelationshipRecord>(
+                    persistenceManager.scanRelationships() )
+            {
+                @Override
+                protected Relationship underlyingObjectToObject( RelationshipRecord record )
+                {
+                    return new RelationshipProxy( record.getId(), NodeManager.this );
+                }
+            };
+        }
         final long highId = getHighestPossibleIdInUse( Relationship.class );
         return new PrefetchingIterator<Relationship>()
         {
@@ -630,7 +669,10 @@ public class NodeManager
             }
             relationship = newRelationshipImpl( relId, data.getFirstNode(), data.getSecondNode(),
                     type, typeId, false );
-            relCache.put( relId, relationship );
+            if ( prepareForCache( relationship ) )
+            {
+                relCache.put( relId, relationship );
+            }
             return relationship;
         }
         finally
@@ -639,6 +681,29 @@ public class NodeManager
         }
     }
 
+    /**
+     * Gets a newly loaded entity ready to be put in the cache. For a cache
+     * keeping copies of its entities that means loading it fully, see
+     * {@link Primitive#loadForCache(NodeManager)}. Such a copy is also left
+     * out of the cache if the current transaction has modifications of its
+     * own, since those could be part of what gets loaded.
+     *
+     * @return whether or not the entity should be put in the cache.
+     */
+    private boolean prepareForCache( Primitive primitive )
+    {
+        if ( !cacheType.copiesEntities() )
+        {
+            return true;
+        }
+        if ( lockReleaser.hasModifications() )
+        {
+            return false;
+        }
+        primitive.loadForCache( this );
+        return true;
+    }
+
     public void removeNodeFromCache( long nodeId )
     {
         nodeCache.remove( nodeId );
@@ -659,6 +724,11 @@ public class NodeManager
         return persistenceManager.getRelationshipChainPosition( node.getId() );
     }
 
+    boolean isRelationshipChainGrouped()
+    {
+        return persistenceManager.isRelationshipChainGrouped();
+    }
+
     Triplet<ArrayMap<String,RelIdArray>,Map<Long,RelationshipImpl>,Long> getMoreRelationships( NodeImpl node )
     {
         long nodeId = node.getId();
@@ -684,6 +754,40 @@ public class NodeManager
         return Triplet.of( newRelationshipMap, relsMap, rels.other() );
     }
 
+    /**
+     * @return the position of the first relationship in the group of the
+     * given type and direction for a node, from where
+     * {@link #getMoreRelationshipsOfType(NodeImpl, String, int, DirectionWrapper, long)}
+     * loads it. Only meaningful when {@link #isRelationshipChainGrouped()}.
+     */
+    long getRelationshipChainPosition( NodeImpl node, int typeId, DirectionWrapper direction )
+    {
+        return persistenceManager.getRelationshipChainPosition( node.getId(), typeId, direction );
+    }
+
+    /**
+     * Loads the next batch of relationships of the given type and direction
+     * for a node, following the grouped chain from the given position, the
+     * same way {@link #getMoreRelationships(NodeImpl)} loads the next batch
+     * of the whole chain.
+     */
+    Triplet<RelIdArray,Map<Long,RelationshipImpl>,Long> getMoreRelationshipsOfType( NodeImpl node,
+            String typeName, int typeId, DirectionWrapper direction, long position )
+    {
+        Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> rels =
+            persistenceManager.getMoreRelationships( node.getId(), position, typeId, direction );
+        ArrayMap<String,RelIdArray> newRelationshipMap = new ArrayMap<String,RelIdArray>();
+        Map<Long,RelationshipImpl> relsMap = new HashMap<Long,RelationshipImpl>();
+        Iterable<RelationshipRecord> records = rels.first().get( direction );
+        if ( records != null )
+        {
+            receiveRelationships( records, newRelationshipMap, relsMap, direction,
+                    direction == DirectionWrapper.BOTH );
+        }
+        RelIdArray ids = newRelationshipMap.get( typeName );
+        return Triplet.of( ids != null ? ids : new RelIdArray( typeName ), relsMap, rels.other() );
+    }
+
     private void receiveRelationships(
             Iterable<RelationshipRecord> rels, ArrayMap<String, RelIdArray> newRelationshipMap,
             Map<Long, RelationshipImpl> relsMap, DirectionWrapper dir, boolean hasLoops )
@@ -691,7 +795,9 @@ public class NodeManager
         for ( RelationshipRecord rel : rels )
         {
             long relId = rel.getId();
-            RelationshipImpl relImpl = relCache.get( relId );
+            // a copying cache would deserialize the whole relationship just
+            // to get its type, which is already in the record
+            RelationshipImpl relImpl = cacheType.copiesEntities() ? null : relCache.get( relId );
             RelationshipType type = null;
             if ( relImpl == null )
             {
@@ -718,6 +824,11 @@ public class NodeManager
 
     void putAllInRelCache( Map<Long,RelationshipImpl> map )
     {
+        if ( cacheType.copiesEntities() )
+        {
+            // these are light and a copying cache should only hold fully loaded ones
+            return;
+        }
          relCache.putAll( map );
     }
 
@@ -960,6 +1071,15 @@ public class NodeManager
         return relTypeHolder.getIdFor( type );
     }
 
+    /**
+     * @return the id of {@code type}, or {@code null} if no such type
+     * has been created yet.
+     */
+    Integer getRelationshipTypeIdIfExists( RelationshipType type )
+    {
+        return relTypeHolder.getIdFor( type.name() );
+    }
+
     void addRawRelationshipTypes( NameData[] relTypes )
     {
         relTypeHolder.addRawRelationshipTypes( relTypes );
@@ -1211,13 +1331,15 @@ public class NodeManager
         weak( false, "weak reference cache" )
         {
             @Override
-            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager,
+                    Map<Object,Object> config )
             {
                 return new WeakLruCache<Long,NodeImpl>( NODE_CACHE_NAME );
             }
 
             @Override
-            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager,
+                    Map<Object,Object> config )
             {
                 return new WeakLruCache<Long,RelationshipImpl>( RELATIONSHIP_CACHE_NAME );
             }
@@ -1225,13 +1347,15 @@ public class NodeManager
         soft( false, "soft reference cache" )
         {
             @Override
-            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager,
+                    Map<Object,Object> config )
             {
                 return new SoftLruCache<Long,NodeImpl>( NODE_CACHE_NAME );
             }
 
             @Override
-            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager,
+                    Map<Object,Object> config )
             {
                 return new SoftLruCache<Long,RelationshipImpl>( RELATIONSHIP_CACHE_NAME );
             }
@@ -1239,13 +1363,15 @@ public class NodeManager
         old( true, "lru cache" )
         {
             @Override
-            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager,
+                    Map<Object,Object> config )
             {
                 return new LruCache<Long,NodeImpl>( NODE_CACHE_NAME, 1500, cacheManager );
             }
 
             @Override
-            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager,
+                    Map<Object,Object> config )
             {
                 return new LruCache<Long,RelationshipImpl>(
                         RELATIONSHIP_CACHE_NAME, 3500, cacheManager );
@@ -1254,13 +1380,15 @@ public class NodeManager
         none( false, "no cache" )
         {
             @Override
-            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager,
+                    Map<Object,Object> config )
             {
                 return new NoCache<Long, NodeImpl>( NODE_CACHE_NAME );
             }
 
             @Override
-            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager,
+                    Map<Object,Object> config )
             {
                 return new NoCache<Long, RelationshipImpl>( RELATIONSHIP_CACHE_NAME );
             }
@@ -1268,20 +1396,51 @@ public class NodeManager
         strong( false, "strong reference cache" )
         {
             @Override
-            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager,
+                    Map<Object,Object> config )
             {
                 return new StrongReferenceCache<Long,NodeImpl>( NODE_CACHE_NAME );
             }
 
             @Override
-            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager,
+                    Map<Object,Object> config )
             {
                 return new StrongReferenceCache<Long,RelationshipImpl>( RELATIONSHIP_CACHE_NAME );
             }
+        },
+        offheap( false, "off-heap cache" )
+        {
+            @Override
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager,
+                    Map<Object,Object> config )
+            {
+                return new OffHeapCache<NodeImpl>( NODE_CACHE_NAME, memory( config,
+                        Config.OFF_HEAP_NODE_CACHE_MEMORY, DEFAULT_OFF_HEAP_NODE_CACHE_MEMORY ),
+                        OffHeapSerializers.NODE );
+            }
+
+            @Override
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager,
+                    Map<Object,Object> config )
+            {
+                return new OffHeapCache<RelationshipImpl>( RELATIONSHIP_CACHE_NAME, memory( config,
+                        Config.OFF_HEAP_RELATIONSHIP_CACHE_MEMORY,
+                        DEFAULT_OFF_HEAP_RELATIONSHIP_CACHE_MEMORY ),
+                        OffHeapSerializers.RELATIONSHIP );
+            }
+
+            @Override
+            boolean copiesEntities()
+            {
+                return true;
+            }
         };
 
         private static final String NODE_CACHE_NAME = "NodeCache";
         private static final String RELATIONSHIP_CACHE_NAME = "RelationshipCache";
+        private static final long DEFAULT_OFF_HEAP_NODE_CACHE_MEMORY = 64 * 1024 * 1024;
+        private static final long DEFAULT_OFF_HEAP_RELATIONSHIP_CACHE_MEMORY = 128 * 1024 * 1024;
 
         final boolean needsCacheManagerRegistration;
         private final String description;
@@ -1292,9 +1451,40 @@ public class NodeManager
             this.description = description;
         }
 
-        abstract Cache<Long,NodeImpl> node( AdaptiveCacheManager cacheManager );
+        abstract Cache<Long,NodeImpl> node( AdaptiveCacheManager cacheManager,
+                Map<Object,Object> config );
 
-        abstract Cache<Long,RelationshipImpl> relationship( AdaptiveCacheManager cacheManager );
+        abstract Cache<Long,RelationshipImpl> relationship( AdaptiveCacheManager cacheManager,
+                Map<Object,Object> config );
+
+        /**
+         * @return {@code true} if the caches hand out copies of the entities
+         * put in them rather than the instances themselves. Changes made to
+         * a cached entity are lost then, so committed transactions invalidate
+         * such entries instead of updating them.
+         */
+        boolean copiesEntities()
+        {
+            return false;
+        }
+
+        private static long memory( Map<Object,Object> config, String key, long defaultValue )
+        {
+            String mem = config != null ? (String) config.get( key ) : null;
+            if ( mem == null )
+            {
+                return defaultValue;
+            }
+            try
+            {
+                return CommonAbstractStore.parseMemorySize( mem );
+            }
+            catch ( NumberFormatException e )
+            {
+                throw new IllegalArgumentException( "Invalid memory size '" + config.get( key )
+                        + "' for " + key, e );
+            }
+        }
 
         public String getDescription()
         {
@@ -0,0 +1,441 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import java.nio.ByteBuffer;
+
+import org.neo4j.kernel.impl.cache.OffHeapCache;
+import org.neo4j.kernel.impl.nioneo.store.PropertyData;
+import org.neo4j.kernel.impl.nioneo.store.PropertyDatas;
+import org.neo4j.kernel.impl.util.RelIdArray;
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+import org.neo4j.kernel.impl.util.RelIdArrayWithLoops;
+import org.neo4j.kernel.impl.util.RelIdIterator;
+
+/**
+ * Writes {@link NodeImpl} and {@link RelationshipImpl} to the bytes kept by
+ * an {@link OffHeapCache}, including the loaded properties and relationship
+ * ids, and reads them back as new instances.
+ */
+class OffHeapSerializers
+{
+    private static final int NOT_LOADED = -1;
+
+    private static final byte NULL = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte BYTE = 2;
+    private static final byte SHORT = 3;
+    private static final byte CHAR = 4;
+    private static final byte INT = 5;
+    private static final byte LONG = 6;
+    private static final byte FLOAT = 7;
+    private static final byte DOUBLE = 8;
+    private static final byte STRING = 9;
+    private static final byte BOOLEAN_ARRAY = 10;
+    private static final byte BYTE_ARRAY = 11;
+    private static final byte SHORT_ARRAY = 12;
+    private static final byte CHAR_ARRAY = 13;
+    private static final byte INT_ARRAY = 14;
+    private static final byte LONG_ARRAY = 15;
+    private static final byte FLOAT_ARRAY = 16;
+    private static final byte DOUBLE_ARRAY = 17;
+    private static final byte STRING_ARRAY = 18;
+
+    private static final DirectionWrapper[] LOOP_DIRECTIONS = { DirectionWrapper.OUTGOING,
+            DirectionWrapper.INCOMING, DirectionWrapper.BOTH };
+    private static final DirectionWrapper[] DIRECTIONS = { DirectionWrapper.OUTGOING,
+            DirectionWrapper.INCOMING };
+
+    private OffHeapSerializers()
+    {
+    }
+
+    static final OffHeapCache.Serializer<NodeImpl> NODE = new OffHeapCache.Serializer<NodeImpl>()
+    {
+        public void write( NodeImpl node, ByteBuffer target )
+        {
+            writeProperties( node.allProperties(), target );
+            synchronized ( node )
+            {
+                RelIdArray[] relationships = node.getLoadedRelationships();
+                if ( relationships == null )
+                {
+                    target.putInt( NOT_LOADED );
+                    return;
+                }
+                target.putInt( relationships.length );
+                target.putLong( node.getRelChainPosition() );
+                for ( RelIdArray ids : relationships )
+                {
+                    writeString( ids.getType(), target );
+                    boolean loops = ids.hasLoops();
+                    target.put( (byte) (loops ? 1 : 0) );
+                    for ( DirectionWrapper direction : loops ? LOOP_DIRECTIONS : DIRECTIONS )
+                    {
+                        int countPosition = target.position();
+                        target.putInt( 0 );
+                        int count = 0;
+                        for ( RelIdIterator iterator = ids.iteratorForAddedDirection( direction );
+                                iterator.hasNext(); count++ )
+                        {
+                            target.putLong( iterator.next() );
+                        }
+                        target.putInt( countPosition, count );
+                    }
+                }
+            }
+        }
+
+        public NodeImpl read( long id, ByteBuffer source )
+        {
+            NodeImpl node = new NodeImpl( id, -1, -1 );
+            node.setProperties( readProperties( source ) );
+            int typeCount = source.getInt();
+            if ( typeCount != NOT_LOADED )
+            {
+                long relChainPosition = source.getLong();
+                RelIdArray[] relationships = new RelIdArray[typeCount];
+                for ( int i = 0; i < typeCount; i++ )
+                {
+                    String type = readString( source );
+                    boolean loops = source.get() != 0;
+                    RelIdArray ids = loops ? new RelIdArrayWithLoops( type ) : new RelIdArray( type );
+                    for ( DirectionWrapper direction : loops ? LOOP_DIRECTIONS : DIRECTIONS )
+                    {
+                        for ( int count = source.getInt(); count > 0; count-- )
+                        {
+                            ids.add( source.getLong(), direction );
+                        }
+                    }
+                    relationships[i] = ids;
+                }
+                node.setLoadedRelationships( relationships, relChainPosition );
+            }
+            return node;
+        }
+    };
+
+    static final OffHeapCache.Serializer<RelationshipImpl> RELATIONSHIP =
+            new OffHeapCache.Serializer<RelationshipImpl>()
+    {
+        public void write( RelationshipImpl relationship, ByteBuffer target )
+        {
+            target.putLong( relationship.getStartNodeId() );
+            target.putLong( relationship.getEndNodeId() );
+            target.putInt( relationship.getTypeId() );
+            writeProperties( relationship.allProperties(), target );
+        }
+
+        public RelationshipImpl read( long id, ByteBuffer source )
+        {
+            long startNodeId = source.getLong();
+            long endNodeId = source.getLong();
+            int typeId = source.getInt();
+            RelationshipImpl relationship = new LowRelationshipImpl( id, startNodeId, endNodeId,
+                    typeId, false );
+            relationship.setProperties( readProperties( source ) );
+            return relationship;
+        }
+    };
+
+    private static void writeProperties( PropertyData[] properties, ByteBuffer target )
+    {
+        if ( properties == null )
+        {
+            target.putInt( NOT_LOADED );
+            return;
+        }
+        target.putInt( properties.length );
+        for ( PropertyData property : properties )
+        {
+            target.putInt( property.getIndex() );
+            target.putLong( property.getId() );
+            writeValue( property.getValue(), target );
+        }
+    }
+
+    private static PropertyData[] readProperties( ByteBuffer source )
+    {
+        int count = source.getInt();
+        if ( count == NOT_LOADED )
+        {
+            return null;
+        }
+        PropertyData[] properties = new PropertyData[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            properties[i] = readProperty( source.getInt(), source.getLong(), source );
+        }
+        return properties;
+    }
+
+    private static void writeValue( Object value, ByteBuffer target )
+    {
+        if ( value == null )
+        {
+            // a string or array that hasn't been loaded
+            target.put( NULL );
+        }
+        else if ( value instanceof Boolean )
+        {
+            target.put( BOOLEAN ).put( (byte) (((Boolean) value).booleanValue() ? 1 : 0) );
+        }
+        else if ( value instanceof Byte )
+        {
+            target.put( BYTE ).put( ((Byte) value).byteValue() );
+        }
+        else if ( value instanceof Short )
+        {
+            target.put( SHORT ).putShort( ((Short) value).shortValue() );
+        }
+        else if ( value instanceof Character )
+        {
+            target.put( CHAR ).putChar( ((Character) value).charValue() );
+        }
+        else if ( value instanceof Integer )
+        {
+            target.put( INT ).putInt( ((Integer) value).intValue() );
+        }
+        else if ( value instanceof Long )
+        {
+            target.put( LONG ).putLong( ((Long) value).longValue() );
+        }
+        else if ( value instanceof Float )
+        {
+            target.put( FLOAT ).putFloat( ((Float) value).floatValue() );
+        }
+        else if ( value instanceof Double )
+        {
+            target.put( DOUBLE ).putDouble( ((Double) value).doubleValue() );
+        }
+        else if ( value instanceof String )
+        {
+            target.put( STRING );
+            writeString( (String) value, target );
+        }
+        else if ( value instanceof boolean[] )
+        {
+            boolean[] array = (boolean[]) value;
+            target.put( BOOLEAN_ARRAY ).putInt( array.length );
+            for ( boolean item : array )
+            {
+                target.put( (byte) (item ? 1 : 0) );
+            }
+        }
+        else if ( value instanceof byte[] )
+        {
+            byte[] array = (byte[]) value;
+            target.put( BYTE_ARRAY ).putInt( array.length ).put( array );
+        }
+        else if ( value instanceof short[] )
+        {
+            short[] array = (short[]) value;
+            target.put( SHORT_ARRAY ).putInt( array.length );
+            for ( short item : array )
+            {
+                target.putShort( item );
+            }
+        }
+        else if ( value instanceof char[] )
+        {
+            char[] array = (char[]) value;
+            target.put( CHAR_ARRAY ).putInt( array.length );
+            for ( char item : array )
+            {
+                target.putChar( item );
+            }
+        }
+        else if ( value instanceof int[] )
+        {
+            int[] array = (int[]) value;
+            target.put( INT_ARRAY ).putInt( array.length );
+            for ( int item : array )
+            {
+                target.putInt( item );
+            }
+        }
+        else if ( value instanceof long[] )
+        {
+            long[] array = (long[]) value;
+            target.put( LONG_ARRAY ).putInt( array.length );
+            for ( long item : array )
+            {
+                target.putLong( item );
+            }
+        }
+        else if ( value instanceof float[] )
+        {
+            float[] array = (float[]) value;
+            target.put( FLOAT_ARRAY ).putInt( array.length );
+            for ( float item : array )
+            {
+                target.putFloat( item );
+            }
+        }
+        else if ( value instanceof double[] )
+        {
+            double[] array = (double[]) value;
+            target.put( DOUBLE_ARRAY ).putInt( array.length );
+            for ( double item : array )
+            {
+                target.putDouble( item );
+            }
+        }
+        else if ( value instanceof String[] )
+        {
+            String[] array = (String[]) value;
+            target.put( STRING_ARRAY ).putInt( array.length );
+            for ( String item : array )
+            {
+                writeString( item, target );
+            }
+        }
+        else
+        {
+            throw new IllegalArgumentException( "Unknown property type " + value.getClass() );
+        }
+    }
+
+    private static PropertyData readProperty( int index, long id, ByteBuffer source )
+    {
+        byte type = source.get();
+        switch ( type )
+        {
+        case NULL:
+            return PropertyDatas.forStringOrArray( index, id, null );
+        case BOOLEAN:
+            return PropertyDatas.forBoolean( index, id, source.get() != 0 );
+        case BYTE:
+            return PropertyDatas.forByte( index, id, source.get() );
+        case SHORT:
+            return PropertyDatas.forShort( index, id, source.getShort() );
+        case CHAR:
+            return PropertyDatas.forChar( index, id, source.getChar() );
+        case INT:
+            return PropertyDatas.forInt( index, id, source.getInt() );
+        case LONG:
+            return PropertyDatas.forLong( index, id, source.getLong() );
+        case FLOAT:
+            return PropertyDatas.forFloat( index, id, source.getFloat() );
+        case DOUBLE:
+            return PropertyDatas.forDouble( index, id, source.getDouble() );
+        default:
+            return PropertyDatas.forStringOrArray( index, id, readObject( type, source ) );
+        }
+    }
+
+    private static Object readObject( byte type, ByteBuffer source )
+    {
+        if ( type == STRING )
+        {
+            return readString( source );
+        }
+        int length = source.getInt();
+        switch ( type )
+        {
+        case BOOLEAN_ARRAY:
+        {
+            boolean[] array = new boolean[length];
+            for ( int i = 0; i < length; i++ )
+            {
+                array[i] = source.get() != 0;
+            }
+            return array;
+        }
+        case BYTE_ARRAY:
+        {
+            byte[] array = new byte[length];
+            source.get( array );
+            return array;
+        }
+        case SHORT_ARRAY:
+        {
+            short[] array = new short[length];
+            source.asShortBuffer().get( array );
+            source.position( source.position() + length * 2 );
+            return array;
+        }
+        case CHAR_ARRAY:
+        {
+            char[] array = new char[length];
+            source.asCharBuffer().get( array );
+            source.position( source.position() + length * 2 );
+            return array;
+        }
+        case INT_ARRAY:
+        {
+            int[] array = new int[length];
+            source.asIntBuffer().get( array );
+            source.position( source.position() + length * 4 );
+            return array;
+        }
+        case LONG_ARRAY:
+        {
+            long[] array = new long[length];
+            source.asLongBuffer().get( array );
+            source.position( source.position() + length * 8 );
+            return array;
+        }
+        case FLOAT_ARRAY:
+        {
+            float[] array = new float[length];
+            source.asFloatBuffer().get( array );
+            source.position( source.position() + length * 4 );
+            return array;
+        }
+        case DOUBLE_ARRAY:
+        {
+            double[] array = new double[length];
+            source.asDoubleBuffer().get( array );
+            source.position( source.position() + length * 8 );
+            return array;
+        }
+        case STRING_ARRAY:
+        {
+            String[] array = new String[length];
+            for ( int i = 0; i < length; i++ )
+            {
+                array[i] = readString( source );
+            }
+            return array;
+        }
+        default:
+            throw new IllegalStateException( "Unknown property type " + type );
+        }
+    }
+
+    private static void writeString( String value, ByteBuffer target )
+    {
+        int length = value.length();
+        target.putInt( length );
+        for ( int i = 0; i < length; i++ )
+        {
+            target.putChar( value.charAt( i ) );
+        }
+    }
+
+    private static String readString( ByteBuffer source )
+    {
+        char[] chars = new char[source.getInt()];
+        source.asCharBuffer().get( chars );
+        source.position( source.position() + chars.length * 2 );
+        return new String( chars );
+    }
+}
@@ -561,6 +561,20 @@ abstract class Primitive
         return value;
     }
 
+    /**
+     * Loads everything about this entity that a cache keeping copies of it
+     * should hold, since anything loaded into a copy handed out by such a
+     * cache is lost with the copy.
+     */
+    void loadForCache( NodeManager nodeManager )
+    {
+        ensureFullProperties( nodeManager );
+        for ( PropertyData property : allProperties() )
+        {
+            getPropertyValue( nodeManager, property );
+        }
+    }
+
     private void ensureFullProperties( NodeManager nodeManager )
     {
         // double checked locking
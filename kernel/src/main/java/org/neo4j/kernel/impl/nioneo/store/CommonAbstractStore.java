@@ -459,25 +459,9 @@ public abstract class CommonAbstractStore
             String mem = (String) config.get( realName + ".mapped_memory" );
             if ( mem != null )
             {
-                long multiplier = 1;
-                if ( mem.endsWith( "M" ) )
-                {
-                    multiplier = 1024 * 1024;
-                    mem = mem.substring( 0, mem.length() - 1 );
-                }
-                else if ( mem.endsWith( "k" ) )
-                {
-                    multiplier = 1024;
-                    mem = mem.substring( 0, mem.length() - 1 );
-                }
-                else if ( mem.endsWith( "G" ) )
-                {
-                    multiplier = 1024*1024*1024;
-                    mem = mem.substring( 0, mem.length() - 1 );
-                }
                 try
                 {
-                    return Integer.parseInt( mem ) * multiplier;
+                    return parseMemorySize( mem );
                 }
                 catch ( NumberFormatException e )
                 {
@@ -489,6 +473,42 @@ public abstract class CommonAbstractStore
         return 0;
     }
 
+    /**
+     * Parses a memory size given as a number of bytes, optionally followed
+     * by one of the units k, M or G (in either case) for kilo-, mega- or
+     * gigabytes.
+     *
+     * @param mem the memory size to parse
+     * @return the memory size in bytes
+     * @throws NumberFormatException if <code>mem</code> isn't a valid
+     *             memory size
+     */
+    public static long parseMemorySize( String mem )
+    {
+        mem = mem.trim();
+        long multiplier = 1;
+        if ( mem.length() > 0 )
+        {
+            switch ( Character.toLowerCase( mem.charAt( mem.length() - 1 ) ) )
+            {
+            case 'k':
+                multiplier = 1024;
+                break;
+            case 'm':
+                multiplier = 1024 * 1024;
+                break;
+            case 'g':
+                multiplier = 1024 * 1024 * 1024;
+                break;
+            }
+        }
+        if ( multiplier != 1 )
+        {
+            mem = mem.substring( 0, mem.length() - 1 ).trim();
+        }
+        return Long.parseLong( mem ) * multiplier;
+    }
+
     /**
      * If store is not ok a call to this method will rebuild the {@link
      * IdGenerator} used by this store and if successful mark it as
@@ -570,6 +590,22 @@ public abstract class CommonAbstractStore
         windowPool.release( window );
     }
 
+    /**
+     * Reads consecutive records, starting at <CODE>position</CODE>, into
+     * <CODE>target</CODE> for a sequential scan, bypassing the row windows.
+     *
+     * @param position
+     *            The first record to read
+     * @param target
+     *            The buffer to read into
+     * @return The number of records read
+     * @see PersistenceWindowPool#read(long, ByteBuffer)
+     */
+    protected int readRecords( long position, ByteBuffer target )
+    {
+        return windowPool.read( position, target );
+    }
+
     public void flushAll()
     {
         windowPool.flushAll();
@@ -27,7 +27,6 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.LinkedList;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -53,6 +52,12 @@ import java.util.concurrent.atomic.AtomicLong;
  * Passing a non free id will corrupt the id generator and {@link #nextId}
  * method will eventually return that id.
  * <p>
+ * New ids, single ones from {@link #nextId()} as well as the contiguous ranges
+ * from {@link #nextIdBatch(int)}, are taken from the high id without locking.
+ * Only reusing and freeing defragged ids synchronizes, and {@link #nextId()}
+ * only goes there when there are defragged ids to reuse. Defragged ids are
+ * kept in primitive buffers and written to the file in batches.
+ * <p>
  * The {@link #close()} method must always be invoked when done using an
  * generator (for this time). Failure to do will render the generator as
  * "sticky" and unusable next time you try to initialize a generator using the
@@ -85,13 +90,14 @@ public class IdGeneratorImpl implements IdGenerator
     private long defraggedIdCount = -1;
 
     private final String fileName;
-    private FileChannel fileChannel = null;
+    private volatile FileChannel fileChannel = null;
     // in memory defragged ids read from file (and from freeId)
-    private final LinkedList<Long> defragedIdList =
-        new LinkedList<Long>();
+    private final IdBuffer defragedIdList = new IdBuffer();
     // in memory newly free defragged ids that havn't been flushed to disk yet
-    private final LinkedList<Long> releasedIdList =
-        new LinkedList<Long>();
+    private final IdBuffer releasedIdList = new IdBuffer();
+    // true if nextId may be able to reuse an id, so that it can skip
+    // synchronizing when there are none
+    private volatile boolean haveReusableIds;
 
     private final long max;
     private final boolean aggressiveReuse;
@@ -145,22 +151,34 @@ public class IdGeneratorImpl implements IdGenerator
      *             If the capacity is exceeded
      * @throws IllegalStateException if this id generator has been closed
      */
-    public synchronized long nextId()
+    public long nextId()
     {
         assertStillOpen();
-        long nextDefragId = nextIdFromDefragList();
-        if ( nextDefragId != -1 ) return nextDefragId;
+        if ( haveReusableIds )
+        {
+            synchronized ( this )
+            {
+                long nextDefragId = nextIdFromDefragList();
+                if ( nextDefragId != -1 ) return nextDefragId;
+            }
+        }
 
-        long id = nextFreeId.get();
-        if ( id == INTEGER_MINUS_ONE )
+        while ( true )
         {
-            // Skip the integer -1 (0xFFFFFFFF) because it represents
-            // special values, f.ex. the end of a relationships/property chain.
-            id = nextFreeId.incrementAndGet();
+            long id = nextFreeId.get();
+            if ( id == INTEGER_MINUS_ONE )
+            {
+                // Skip the integer -1 (0xFFFFFFFF) because it represents
+                // special values, f.ex. the end of a relationships/property chain.
+                nextFreeId.compareAndSet( id, id + 1 );
+                continue;
+            }
+            assertIdWithinCapacity( id );
+            if ( nextFreeId.compareAndSet( id, id + 1 ) )
+            {
+                return id;
+            }
         }
-        assertIdWithinCapacity( id );
-        nextFreeId.incrementAndGet();
-        return id;
     }
 
     private void assertIdWithinCapacity( long id )
@@ -173,29 +191,33 @@ public class IdGeneratorImpl implements IdGenerator
 
     private long nextIdFromDefragList()
     {
-        if ( aggressiveReuse )
+        if ( aggressiveReuse && releasedIdList.size() > 0 )
         {
-            Long id = releasedIdList.poll();
-            if ( id != null )
-            {
-                defraggedIdCount--;
-                return id.longValue();
-            }
+            long id = releasedIdList.poll();
+            defraggedIdCount--;
+            updateHaveReusableIds();
+            return id;
         }
 
         if ( defragedIdList.size() > 0 )
         {
-            long id = defragedIdList.removeFirst();
+            long id = defragedIdList.poll();
             if ( haveMore && defragedIdList.size() == 0 )
             {
                 readIdBatch();
             }
             defraggedIdCount--;
+            updateHaveReusableIds();
             return id;
         }
         return -1;
     }
 
+    private void updateHaveReusableIds()
+    {
+        haveReusableIds = defragedIdList.size() > 0 || ( aggressiveReuse && releasedIdList.size() > 0 );
+    }
+
     private void assertStillOpen()
     {
         if ( fileChannel == null )
@@ -204,21 +226,37 @@ public class IdGeneratorImpl implements IdGenerator
         }
     }
 
-    public synchronized IdRange nextIdBatch( int size )
+    /**
+     * Returns {@code size} ids, the defragged ids that exist (up to {@code size})
+     * and the rest as a contiguous range of new ids. The range is taken from
+     * the high id in one go, so a bulk create can hand out the ids in it
+     * without calling back into the id generator.
+     *
+     * @param size the number of ids to return
+     * @return defragged ids and a range of new ids, together {@code size} ids
+     * @throws UnderlyingStorageException if the capacity is exceeded
+     */
+    public IdRange nextIdBatch( int size )
     {
         assertStillOpen();
 
         // Get from defrag list
         int count = 0;
         long[] defragIds = new long[size];
-        while ( count < size )
+        if ( haveReusableIds )
         {
-            long id = nextIdFromDefragList();
-            if ( id == -1 )
+            synchronized ( this )
             {
-                break;
+                while ( count < size )
+                {
+                    long id = nextIdFromDefragList();
+                    if ( id == -1 )
+                    {
+                        break;
+                    }
+                    defragIds[count++] = id;
+                }
             }
-            defragIds[count++] = id;
         }
 
         // Shrink the array to actual size
@@ -227,11 +265,27 @@ public class IdGeneratorImpl implements IdGenerator
         System.arraycopy( tmpArray, 0, defragIds, 0, count );
 
         int sizeLeftForRange = size-count;
-        long start = nextFreeId.get();
-        long newHighId = start + sizeLeftForRange;
-        assertIdWithinCapacity( newHighId );
-        nextFreeId.set( newHighId );
-        return new IdRange( defragIds, start, sizeLeftForRange );
+        while ( true )
+        {
+            long highId = nextFreeId.get();
+            long start = highId;
+            if ( start <= INTEGER_MINUS_ONE && start + sizeLeftForRange > INTEGER_MINUS_ONE )
+            {
+                // A range can't contain the integer -1, so start after it
+                start = INTEGER_MINUS_ONE + 1;
+            }
+            long newHighId = start + sizeLeftForRange;
+            assertIdWithinCapacity( newHighId );
+            if ( nextFreeId.compareAndSet( highId, newHighId ) )
+            {
+                // the ids skipped over get reused instead
+                for ( long id = highId; id < start; id++ )
+                {
+                    freeId( id );
+                }
+                return new IdRange( defragIds, start, sizeLeftForRange );
+            }
+        }
     }
 
     /**
@@ -294,6 +348,7 @@ public class IdGeneratorImpl implements IdGenerator
         {
             writeIdBatch( ByteBuffer.allocate( grabSize*8 ) );
         }
+        updateHaveReusableIds();
     }
 
     /**
@@ -325,7 +380,7 @@ public class IdGeneratorImpl implements IdGenerator
         {
             while ( defragedIdList.size() > 0 )
             {
-                releasedIdList.add( defragedIdList.removeFirst() );
+                releasedIdList.add( defragedIdList.poll() );
             }
             writeIdBatch( writeBuffer );
         }
@@ -465,6 +520,7 @@ public class IdGeneratorImpl implements IdGenerator
             readBlocksTo = fileChannel.size();
             defraggedIdCount = (int) (readBlocksTo - HEADER_SIZE) / 8;
             readIdBatch();
+            updateHaveReusableIds();
         }
         catch ( IOException e )
         {
@@ -531,7 +587,7 @@ public class IdGeneratorImpl implements IdGenerator
             writeBuffer.clear();
             while ( releasedIdList.size() > 0 )
             {
-                long id = releasedIdList.removeFirst();
+                long id = releasedIdList.poll();
                 if ( id == INTEGER_MINUS_ONE )
                 {
                     continue;
@@ -571,10 +627,9 @@ public class IdGeneratorImpl implements IdGenerator
         {
             readIdBatch();
         }
-        java.util.Iterator<Long> itr = defragedIdList.iterator();
-        while ( itr.hasNext() )
+        while ( defragedIdList.size() > 0 )
         {
-            System.out.print( " " + itr.next() );
+            System.out.print( " " + defragedIdList.poll() );
         }
         System.out.println( "\nNext free id: " + nextFreeId );
         close( true );
@@ -590,11 +645,12 @@ public class IdGeneratorImpl implements IdGenerator
         return defraggedIdCount;
     }
     
-    public void clearFreeIds()
+    public synchronized void clearFreeIds()
     {
         releasedIdList.clear();
         defragedIdList.clear();
         defraggedIdCount = -1;
+        updateHaveReusableIds();
         try
         {
             truncateFile( fileChannel, HEADER_SIZE );
@@ -617,4 +673,49 @@ public class IdGeneratorImpl implements IdGenerator
             throw new UnderlyingStorageException( "Unable to delete id generator " + fileName );
         }
     }
+
+    /**
+     * A first-in first-out buffer of ids, growing as needed.
+     */
+    private static class IdBuffer
+    {
+        private long[] ids = new long[16];
+        private int head;
+        private int size;
+
+        void add( long id )
+        {
+            if ( size == ids.length )
+            {
+                long[] newIds = new long[ids.length * 2];
+                int firstPart = Math.min( size, ids.length - head );
+                System.arraycopy( ids, head, newIds, 0, firstPart );
+                System.arraycopy( ids, 0, newIds, firstPart, size - firstPart );
+                ids = newIds;
+                head = 0;
+            }
+            ids[( head + size ) % ids.length] = id;
+            size++;
+        }
+
+        // caller must make sure that size() > 0
+        long poll()
+        {
+            long id = ids[head];
+            head = ( head + 1 ) % ids.length;
+            size--;
+            return id;
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        void clear()
+        {
+            head = 0;
+            size = 0;
+        }
+    }
 }
@@ -49,6 +49,7 @@ abstract class LockableWindow implements PersistenceWindow
         new LinkedList<LockElement>();
     private int lockCount = 0;
     private int marked = 0;
+    private boolean closedForUse = false;
 
     LockableWindow( FileChannel fileChannel )
     {
@@ -87,6 +88,50 @@ abstract class LockableWindow implements PersistenceWindow
         return marked > 0;
     }
 
+    /**
+     * Marks this window as about to be locked, unless it has been taken out
+     * of use by {@link #closeIfFree(boolean)}. Used by lookups that don't
+     * synchronize on the pool, so they can't mark a window that's being
+     * swapped out from under them.
+     *
+     * @return {@code true} if the window was marked, {@code false} if it has
+     *         been taken out of use and the caller must look elsewhere.
+     */
+    synchronized boolean markIfInUse()
+    {
+        if ( closedForUse )
+        {
+            return false;
+        }
+        this.marked++;
+        return true;
+    }
+
+    /**
+     * Takes this window out of use if no thread holds, waits for or has
+     * marked it, writing out its contents before any other thread can see
+     * it as free.
+     *
+     * @return {@code true} if the window was taken out of use.
+     */
+    synchronized boolean closeIfFree( boolean readOnly )
+    {
+        if ( closedForUse )
+        {
+            return true;
+        }
+        if ( lockCount > 0 || marked > 0 || waitingThreadList.size() > 0 )
+        {
+            return false;
+        }
+        closedForUse = true;
+        if ( !readOnly )
+        {
+            writeOut();
+        }
+        return true;
+    }
+
     private static class LockElement
     {
         private final Thread thread;
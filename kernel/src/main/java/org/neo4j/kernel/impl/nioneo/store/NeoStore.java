@@ -30,6 +30,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 
+import org.neo4j.kernel.Config;
 import org.neo4j.kernel.IdGeneratorFactory;
 import org.neo4j.kernel.IdType;
 import org.neo4j.kernel.impl.core.LastCommittedTxIdSetter;
@@ -65,6 +66,7 @@ public class NeoStore extends AbstractStore
     private PropertyStore propStore;
     private RelationshipStore relStore;
     private RelationshipTypeStore relTypeStore;
+    private RelationshipGroupIndex relGroups;
     private final LastCommittedTxIdSetter lastCommittedTxIdSetter;
     private final IdGeneratorFactory idGeneratorFactory;
     private final TxHook txHook;
@@ -199,6 +201,27 @@ public class NeoStore extends AbstractStore
         propStore = new PropertyStore( getStorageFileName() + ".propertystore.db", getConfig() );
         relStore = new RelationshipStore( getStorageFileName() + ".relationshipstore.db", getConfig() );
         nodeStore = new NodeStore( getStorageFileName() + ".nodestore.db", getConfig() );
+        if ( getFileSystem().fileExists( getRelationshipGroupFileName() ) )
+        {
+            openRelationshipGroups();
+        }
+    }
+
+    private void openRelationshipGroups()
+    {
+        int denseNodeThreshold = RelationshipGroupIndex.DEFAULT_DENSE_NODE_THRESHOLD;
+        String threshold = (String) getConfig().get( Config.DENSE_NODE_THRESHOLD );
+        if ( threshold != null )
+        {
+            denseNodeThreshold = Integer.parseInt( threshold );
+        }
+        relGroups = new RelationshipGroupIndex( getRelationshipGroupFileName(), getFileSystem(),
+                nodeStore, relStore, denseNodeThreshold, isReadOnly() && !isBackupSlave() );
+    }
+
+    private String getRelationshipGroupFileName()
+    {
+        return getStorageFileName() + RelationshipGroupIndex.FILE_NAME_SUFFIX;
     }
 
     private void tryToUpgradeStores()
@@ -248,6 +271,11 @@ public class NeoStore extends AbstractStore
     protected void closeStorage()
     {
         if ( lastCommittedTxIdSetter != null ) lastCommittedTxIdSetter.close();
+        if ( relGroups != null )
+        {
+            relGroups.close();
+            relGroups = null;
+        }
         if ( relTypeStore != null )
         {
             relTypeStore.close();
@@ -602,6 +630,49 @@ public class NeoStore extends AbstractStore
         return relStore;
     }
 
+    /**
+     * Returns the start of each relationship group of nodes, if the
+     * relationship chains of this store are grouped by type and direction.
+     *
+     * @return The relationship group index, or <code>null</code> if the
+     *         relationship chains aren't grouped
+     */
+    public RelationshipGroupIndex getRelationshipGroups()
+    {
+        return relGroups;
+    }
+
+    /**
+     * Makes this a store with grouped relationship chains. All chains must
+     * have been grouped before calling this, see
+     * {@link org.neo4j.kernel.impl.storemigration.RelationshipChainGrouper}.
+     *
+     * @return The relationship group index of this store
+     */
+    public RelationshipGroupIndex enableRelationshipGroups()
+    {
+        if ( relGroups == null )
+        {
+            RelationshipGroupIndex.createFile( getRelationshipGroupFileName(), getFileSystem() );
+            openRelationshipGroups();
+        }
+        return relGroups;
+    }
+
+    /**
+     * Makes this a store with ungrouped relationship chains, for writers that
+     * don't keep them grouped.
+     */
+    public void ungroupRelationshipChains()
+    {
+        if ( relGroups != null )
+        {
+            relGroups.close();
+            relGroups = null;
+        }
+        getFileSystem().deleteFile( getRelationshipGroupFileName() );
+    }
+
     /**
      * Returns the relationship type store.
      *
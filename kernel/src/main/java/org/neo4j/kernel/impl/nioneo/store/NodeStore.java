@@ -30,7 +30,8 @@ import org.neo4j.kernel.impl.util.StringLogger;
 /**
  * Implementation of the node store.
  */
-public class NodeStore extends AbstractStore implements Store, RecordStore<NodeRecord>
+public class NodeStore extends AbstractStore implements Store, RecordStore<NodeRecord>,
+        ScannableStore<NodeRecord>
 {
     public static final String TYPE_DESCRIPTOR = "NodeStore";
 
@@ -94,7 +95,7 @@ public class NodeStore extends AbstractStore implements Store, RecordStore<NodeR
         PersistenceWindow window = acquireWindow( id, OperationType.READ );
         try
         {
-            return getRecord( id, window, RecordLoad.NORMAL );
+            return getRecord( id, window.getOffsettedBuffer( id ), RecordLoad.NORMAL );
         }
         finally
         {
@@ -117,7 +118,7 @@ public class NodeStore extends AbstractStore implements Store, RecordStore<NodeR
 
         try
         {
-            return getRecord( id, window, RecordLoad.FORCE );
+            return getRecord( id, window.getOffsettedBuffer( id ), RecordLoad.FORCE );
         }
         finally
         {
@@ -190,7 +191,7 @@ public class NodeStore extends AbstractStore implements Store, RecordStore<NodeR
 
         try
         {
-            return getRecord( id, window, RecordLoad.CHECK );
+            return getRecord( id, window.getOffsettedBuffer( id ), RecordLoad.CHECK );
         }
         finally
         {
@@ -198,11 +199,8 @@ public class NodeStore extends AbstractStore implements Store, RecordStore<NodeR
         }
     }
 
-    private NodeRecord getRecord( long id, PersistenceWindow window,
-        RecordLoad load  )
+    private NodeRecord getRecord( long id, Buffer buffer, RecordLoad load )
     {
-        Buffer buffer = window.getOffsettedBuffer( id );
-
         // [    ,   x] in use bit
         // [    ,xxx ] higher bits for rel id
         // [xxxx,    ] higher bits for prop id
@@ -260,6 +258,39 @@ public class NodeStore extends AbstractStore implements Store, RecordStore<NodeR
         }
     }
 
+    /**
+     * Scans all nodes in use, reading the store sequentially many records at
+     * a time rather than one window acquisition per record.
+     *
+     * @return the nodes in use, in id order.
+     * @see RecordScan
+     */
+    public RecordScan<NodeRecord> scan()
+    {
+        return scan( 0, getHighestPossibleIdInUse() + 1 );
+    }
+
+    /**
+     * Scans the nodes in use with ids from <code>startId</code>, inclusive,
+     * to <code>endId</code>, exclusive.
+     *
+     * @param startId the first id to scan.
+     * @param endId the id to stop the scan at.
+     * @return the nodes in use in the given range, in id order.
+     * @see RecordScan
+     */
+    public RecordScan<NodeRecord> scan( long startId, long endId )
+    {
+        return new RecordScan<NodeRecord>( this, startId, endId )
+        {
+            @Override
+            protected NodeRecord readRecord( long id, Buffer buffer )
+            {
+                return getRecord( id, buffer, RecordLoad.CHECK );
+            }
+        };
+    }
+
     @Override
     public List<WindowPoolStats> getAllWindowPoolStats()
     {
@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.neo4j.helpers.Exceptions.launderedException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.neo4j.kernel.AbstractGraphDatabase;
+
+/**
+ * Splits the ids of a {@link ScannableStore} into contiguous partitions which
+ * can be scanned concurrently, each with a {@link RecordScan} of its own.
+ * Partitions are aligned to what a scan reads at a time, so no two of them
+ * read the same part of the store.
+ * <p>
+ * The id range is decided, from
+ * {@link ScannableStore#getHighestPossibleIdInUse()}, when the scan is
+ * created. Records created after that, with higher ids, aren't seen. It is
+ * safe to scan a store of a running database: each partition sees records as
+ * they are committed when it gets to them, i.e. read committed, without taking
+ * any locks other than the window locks of the store.
+ * <p>
+ * Either hand out the partitions with {@link #partition(int)} or let
+ * {@link #run(ExecutorService, Processor)} process all of them on an executor
+ * and collect the results. Use more partitions than threads if the work per
+ * record varies, so that threads which finish early can pick up more.
+ */
+public class ParallelRecordScan<R extends AbstractBaseRecord>
+{
+    private final ScannableStore<R> store;
+    private final long highId;
+    private final long partitionSize;
+    private final int partitionCount;
+
+    /**
+     * Processes the records of one partition.
+     *
+     * @param <R> the type of records.
+     * @param <T> the type of result of a partition.
+     */
+    public interface Processor<R, T>
+    {
+        T process( Iterator<R> records ) throws Exception;
+    }
+
+    /**
+     * Creates a scan with about four partitions per available processor.
+     *
+     * @param store the store to scan.
+     */
+    public ParallelRecordScan( ScannableStore<R> store )
+    {
+        this( store, Runtime.getRuntime().availableProcessors() * 4 );
+    }
+
+    /**
+     * @param store the store to scan.
+     * @param maxPartitions the max number of partitions to split it into.
+     *            There are fewer if the store is too small to fill them.
+     */
+    public ParallelRecordScan( ScannableStore<R> store, int maxPartitions )
+    {
+        if ( maxPartitions < 1 )
+        {
+            throw new IllegalArgumentException( "Need at least one partition, not " + maxPartitions );
+        }
+        this.store = store;
+        this.highId = store.getHighestPossibleIdInUse() + 1;
+        int recordsPerRead = RecordScan.recordsPerBuffer( store.getRecordSize() );
+        long reads = (highId + recordsPerRead - 1) / recordsPerRead;
+        long readsPerPartition = Math.max( 1, (reads + maxPartitions - 1) / maxPartitions );
+        this.partitionSize = readsPerPartition * recordsPerRead;
+        this.partitionCount = (int) ((highId + partitionSize - 1) / partitionSize);
+    }
+
+    /**
+     * @return a scan over all nodes of <code>graphdb</code>.
+     */
+    public static ParallelRecordScan<NodeRecord> nodes( AbstractGraphDatabase graphdb )
+    {
+        return new ParallelRecordScan<NodeRecord>(
+                StoreAccess.getNeoStoreFrom( graphdb ).getNodeStore() );
+    }
+
+    /**
+     * @return a scan over all relationships of <code>graphdb</code>.
+     */
+    public static ParallelRecordScan<RelationshipRecord> relationships( AbstractGraphDatabase graphdb )
+    {
+        return new ParallelRecordScan<RelationshipRecord>(
+                StoreAccess.getNeoStoreFrom( graphdb ).getRelationshipStore() );
+    }
+
+    /**
+     * @return the number of partitions, zero if the store is empty.
+     */
+    public int getPartitionCount()
+    {
+        return partitionCount;
+    }
+
+    /**
+     * @param index the partition, from zero up to
+     *            {@link #getPartitionCount()}, exclusive.
+     * @return the first id of the partition.
+     */
+    public long getStartId( int index )
+    {
+        checkIndex( index );
+        return index * partitionSize;
+    }
+
+    /**
+     * @param index the partition, from zero up to
+     *            {@link #getPartitionCount()}, exclusive.
+     * @return the id after the last id of the partition.
+     */
+    public long getEndId( int index )
+    {
+        checkIndex( index );
+        return Math.min( highId, (index + 1) * partitionSize );
+    }
+
+    /**
+     * @param index the partition, from zero up to
+     *            {@link #getPartitionCount()}, exclusive.
+     * @return a scan over the records in use in the partition.
+     */
+    public RecordScan<R> partition( int index )
+    {
+        return store.scan( getStartId( index ), getEndId( index ) );
+    }
+
+    /**
+     * Processes every partition on <code>executor</code> and waits for all
+     * of them to complete. If any of them fails, the ones not yet started are
+     * cancelled and the failure is rethrown.
+     *
+     * @param executor the executor to run the partitions on.
+     * @param processor processes the records of each partition.
+     * @return the result of each partition, in partition order.
+     */
+    public <T> List<T> run( ExecutorService executor, final Processor<R, T> processor )
+    {
+        List<Future<T>> futures = new ArrayList<Future<T>>( partitionCount );
+        for ( int i = 0; i < partitionCount; i++ )
+        {
+            final int index = i;
+            futures.add( executor.submit( new Callable<T>()
+            {
+                @Override
+                public T call() throws Exception
+                {
+                    return processor.process( partition( index ) );
+                }
+            } ) );
+        }
+        List<T> results = new ArrayList<T>( partitionCount );
+        try
+        {
+            for ( Future<T> future : futures )
+            {
+                results.add( future.get() );
+            }
+        }
+        catch ( ExecutionException e )
+        {
+            cancel( futures );
+            throw launderedException( e.getCause() );
+        }
+        catch ( InterruptedException e )
+        {
+            cancel( futures );
+            Thread.currentThread().interrupt();
+            throw launderedException( e );
+        }
+        return results;
+    }
+
+    private static void cancel( List<? extends Future<?>> futures )
+    {
+        for ( Future<?> future : futures )
+        {
+            future.cancel( false );
+        }
+    }
+
+    private void checkIndex( int index )
+    {
+        if ( index < 0 || index >= partitionCount )
+        {
+            throw new IndexOutOfBoundsException( "Partition " + index + " of " + partitionCount );
+        }
+    }
+}
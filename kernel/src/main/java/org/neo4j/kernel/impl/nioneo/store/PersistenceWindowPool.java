@@ -21,6 +21,7 @@ package org.neo4j.kernel.impl.nioneo.store;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayList;
@@ -28,6 +29,12 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,30 +45,73 @@ import java.util.logging.Logger;
  * make the most efficient use of those windows by allocating them in such a way
  * that the most frequently used records/blocks (be it for read or write
  * operations) are encapsulated by a memory mapped persistence window.
+ * <p>
+ * Looking up the window for a brick never takes a pool wide lock. The brick
+ * array is published through a volatile field and a window is claimed with
+ * {@link LockableWindow#markIfInUse()}, which only synchronizes on the window
+ * itself. Swapping windows in and out (refresh, expand, free) is guarded by a
+ * separate lock which readers never wait for. A refresh is run on a
+ * background thread shared by all pools when a reader notices that it is
+ * due, and an expansion of the brick array is run by whichever reader first
+ * needs it; the other readers carry on with the current mapping, or a row
+ * window if their brick isn't there yet. Row windows, used when no brick window covers a
+ * position, are kept in lock striped maps keyed on position.
+ * <p>
+ * The hit and miss counts, both the ones deciding which bricks get windows
+ * and the ones reported in the statistics, are updated without
+ * synchronization and may lose concurrent updates. They are approximate,
+ * which is fine for choosing the most used bricks and keeps the read path
+ * free of contended writes.
  */
 public class PersistenceWindowPool
 {
     private static final int MAX_BRICK_COUNT = 100000;
+    private static final int ROW_STRIPE_COUNT = 32;
 
     private final String storeName;
     // == recordSize
     private final int blockSize;
     private FileChannel fileChannel;
-    private final Map<Integer,PersistenceRow> activeRowWindows =
-        new HashMap<Integer,PersistenceRow>();
+    private final RowStripe[] rowStripes = new RowStripe[ROW_STRIPE_COUNT];
     private long availableMem = 0;
     private long memUsed = 0;
     private int brickCount = 0;
     private int brickSize = 0;
-    private BrickElement brickArray[] = new BrickElement[0];
-    private int brickMiss = 0;
+    private volatile BrickElement brickArray[] = new BrickElement[0];
+    private final AtomicInteger brickMiss = new AtomicInteger();
+    private final ReentrantLock swapLock = new ReentrantLock();
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+    private final Runnable refresh = new Runnable()
+    {
+        public void run()
+        {
+            try
+            {
+                refreshBricks();
+            }
+            finally
+            {
+                refreshScheduled.set( false );
+            }
+        }
+    };
+
+    private static final ExecutorService REFRESHER = Executors.newSingleThreadExecutor( new ThreadFactory()
+    {
+        public Thread newThread( Runnable runnable )
+        {
+            Thread thread = new Thread( runnable, "Persistence window pool refresher" );
+            thread.setDaemon( true );
+            return thread;
+        }
+    } );
 
     private static Logger log = Logger.getLogger( PersistenceWindowPool.class
         .getName() );
     private static final int REFRESH_BRICK_COUNT = 50000;
     private final FileChannel.MapMode mapMode;
 
-    private int hit = 0;
+    // statistics only, approximate since updated without synchronization
     private int miss = 0;
     private int switches = 0;
     private int ooe = 0;
@@ -94,6 +144,10 @@ public class PersistenceWindowPool
         this.useMemoryMapped = useMemoryMappedBuffers;
         this.readOnly = readOnly;
         this.mapMode = readOnly ? MapMode.READ_ONLY : MapMode.READ_WRITE;
+        for ( int i = 0; i < rowStripes.length; i++ )
+        {
+            rowStripes[i] = new RowStripe();
+        }
         setupBricks();
         dumpStatus();
     }
@@ -114,63 +168,60 @@ public class PersistenceWindowPool
     {
         LockableWindow window = null;
         boolean readPos = false;
-//        synchronized ( activeRowWindows )
-//        {
-            if ( brickMiss >= REFRESH_BRICK_COUNT )
+        if ( brickMiss.get() >= REFRESH_BRICK_COUNT && refreshScheduled.compareAndSet( false, true ) )
+        {
+            REFRESHER.execute( refresh );
+        }
+        if ( brickSize > 0 )
+        {
+            int brickIndex = (int) (position * blockSize / brickSize);
+            BrickElement[] bricks = brickArray;
+            if ( brickIndex >= bricks.length )
             {
-//                brickMiss = 0;
-                refreshBricks();
+                tryExpandBricks( brickIndex + 1 );
+                bricks = brickArray;
             }
-            if ( brickSize > 0 )
+            // the brick may still be missing if another thread was swapping
+            // windows, then a row is used this time
+            if ( brickIndex < bricks.length )
             {
-                int brickIndex = (int) (position * blockSize / brickSize);
-                if ( brickIndex < brickArray.length )
+                BrickElement brick = bricks[brickIndex];
+                window = brick.getWindow();
+                if ( window != null && !window.markIfInUse() )
                 {
-                    synchronized ( this )
-                    {
-                        window = brickArray[brickIndex].getWindow();
-                        if ( window != null )
-                        {
-                            window.mark();
-                        }
-                    }
-                    // assert window == null || window.encapsulates( position );
-                    brickArray[brickIndex].setHit();
+                    // swapped out after we read it, fall back to a row
+                    window = null;
                 }
-                else
+                else if ( window != null )
                 {
-                    expandBricks( brickIndex + 1 );
-                    window = brickArray[brickIndex].getWindow();
+                    brick.countHit();
                 }
+                // assert window == null || window.encapsulates( position );
+                brick.setHit();
             }
-            if ( window == null )
+        }
+        if ( window == null )
+        {
+            miss++;
+            brickMiss.incrementAndGet();
+            RowStripe stripe = rowStripe( position );
+            synchronized ( stripe )
             {
-                synchronized ( this )
+                PersistenceRow dpw = stripe.rows.get( position );
+                if ( dpw == null )
                 {
-                    miss++;
-                    brickMiss++;
-
-                    PersistenceRow dpw = activeRowWindows.get( (int) position );
-
-                    if ( dpw == null )
-                    {
-                        dpw = new PersistenceRow( position, blockSize,
-                            fileChannel );
-                    }
-                    if ( operationType == OperationType.READ )
-                    {
-                        readPos = true;
-                    }
-                    window = dpw;
-                    activeRowWindows.put( (int) position, dpw );
-                    window.mark();
+                    dpw = new PersistenceRow( position, blockSize,
+                        fileChannel );
+                    stripe.rows.put( position, dpw );
                 }
+                if ( operationType == OperationType.READ )
+                {
+                    readPos = true;
+                }
+                window = dpw;
+                window.mark();
             }
-            else
-            {
-                hit++;
-            }
-//        }
+        }
         window.lock();
         if ( readPos )
         {
@@ -180,9 +231,16 @@ public class PersistenceWindowPool
         return window;
     }
 
+    private RowStripe rowStripe( long position )
+    {
+        int hash = (int) (position ^ (position >>> 32));
+        hash ^= (hash >>> 16);
+        return rowStripes[hash & (ROW_STRIPE_COUNT - 1)];
+    }
+
     void dumpStatistics()
     {
-        log.finest( storeName + " hit=" + hit + " miss=" + miss + " switches="
+        log.finest( storeName + " hit=" + hits() + " miss=" + miss + " switches="
             + switches + " ooe=" + ooe );
     }
 
@@ -201,12 +259,12 @@ public class PersistenceWindowPool
         {
             PersistenceRow dpw = (PersistenceRow) window;
             dpw.writeOut();
-            synchronized ( this )
+            RowStripe stripe = rowStripe( dpw.position() );
+            synchronized ( stripe )
             {
                 if ( dpw.getWaitingThreadsCount() == 0 && !dpw.isMarked() )
                 {
-                    int key = (int) dpw.position();
-                    activeRowWindows.remove( key );
+                    stripe.rows.remove( dpw.position() );
                 }
             }
             dpw.unLock();
@@ -217,11 +275,93 @@ public class PersistenceWindowPool
         }
     }
 
-    synchronized void close()
+    /**
+     * Copies whole records, starting at record <CODE>position</CODE>, into
+     * <CODE>target</CODE> for sequential scans. Never reads past the brick
+     * that <CODE>position</CODE> falls in. If that brick has a window the
+     * records are copied out of it, under its lock, so writes that haven't
+     * been flushed yet are seen. Otherwise they are read straight from the
+     * file channel in one go, without creating any row windows.
+     *
+     * @param position
+     *            The first record to read
+     * @param target
+     *            The buffer to read into, from position zero up to its
+     *            capacity
+     * @return The number of records read into <CODE>target</CODE>, which is
+     *         flipped and ready to be read from
+     */
+    public int read( long position, ByteBuffer target )
+    {
+        int records = target.capacity() / blockSize;
+        BrickElement brick = null;
+        if ( brickSize > 0 )
+        {
+            int recordsPerBrick = brickSize / blockSize;
+            int brickIndex = (int) (position / recordsPerBrick);
+            long brickEnd = (long) (brickIndex + 1) * recordsPerBrick;
+            records = (int) Math.min( records, brickEnd - position );
+            BrickElement[] bricks = brickArray;
+            if ( brickIndex < bricks.length )
+            {
+                brick = bricks[brickIndex];
+            }
+        }
+        target.clear();
+        LockableWindow window = brick != null ? brick.getWindow() : null;
+        if ( window != null && window.markIfInUse() )
+        {
+            window.lock();
+            try
+            {
+                records = (int) Math.min( records, window.position() + window.size() - position );
+                ByteBuffer source = window.getBuffer().getBuffer().duplicate();
+                int offset = (int) (position - window.position()) * blockSize;
+                source.limit( offset + records * blockSize );
+                source.position( offset );
+                target.put( source );
+            }
+            finally
+            {
+                window.unLock();
+            }
+            brick.countHit();
+        }
+        else
+        {
+            try
+            {
+                // never ask for more than the file has, some channels don't
+                // return -1 at the end of it
+                long recordsInFile = fileChannel.size() / blockSize - position;
+                records = (int) Math.max( 0, Math.min( records, recordsInFile ) );
+                target.limit( records * blockSize );
+                long filePosition = position * blockSize;
+                while ( target.hasRemaining() )
+                {
+                    int read = fileChannel.read( target, filePosition + target.position() );
+                    if ( read <= 0 )
+                    {
+                        break;
+                    }
+                }
+            }
+            catch ( IOException e )
+            {
+                throw new UnderlyingStorageException( "Unable to read records from " +
+                    position + " in " + storeName, e );
+            }
+        }
+        target.flip();
+        return target.remaining() / blockSize;
+    }
+
+    void close()
     {
-        flushAll();
-//        synchronized ( activeRowWindows )
-//        {
+        swapLock.lock();
+        try
+        {
+            flushAll();
             for ( BrickElement element : brickArray )
             {
                 if ( element.getWindow() != null )
@@ -231,9 +371,18 @@ public class PersistenceWindowPool
                 }
             }
             fileChannel = null;
-            activeRowWindows.clear();
-//        }
-        // activeRowWindows = null;
+            for ( RowStripe stripe : rowStripes )
+            {
+                synchronized ( stripe )
+                {
+                    stripe.rows.clear();
+                }
+            }
+        }
+        finally
+        {
+            swapLock.unlock();
+        }
         dumpStatistics();
     }
 
@@ -241,17 +390,14 @@ public class PersistenceWindowPool
     {
         if ( readOnly ) return;
 
-        //        synchronized ( activeRowWindows )
-//        {
-            for ( BrickElement element : brickArray )
+        for ( BrickElement element : brickArray )
+        {
+            PersistenceWindow window = element.getWindow();
+            if ( window != null )
             {
-                PersistenceWindow window = element.getWindow();
-                if ( window != null )
-                {
-                    window.force();
-                }
+                window.force();
             }
-//        }
+        }
         try
         {
             fileChannel.force( false );
@@ -263,11 +409,21 @@ public class PersistenceWindowPool
         }
     }
 
+    private static class RowStripe
+    {
+        private final Map<Long,PersistenceRow> rows =
+            new HashMap<Long,PersistenceRow>();
+    }
+
     private static class BrickElement
     {
         private final int index;
+        // hitCount and totalHits are approximate, see the class comment
         private int hitCount;
-        private LockableWindow window = null;
+        private int totalHits;
+        // stable copy of hitCount to sort on while other threads keep hitting
+        private int hitSnapshot;
+        private volatile LockableWindow window = null;
 
         BrickElement( int index )
         {
@@ -289,6 +445,11 @@ public class PersistenceWindowPool
             return index;
         }
 
+        void countHit()
+        {
+            totalHits++;
+        }
+
         void setHit()
         {
             hitCount += 10;
@@ -300,7 +461,17 @@ public class PersistenceWindowPool
 
         int getHit()
         {
-            return hitCount;
+            return hitSnapshot;
+        }
+
+        void snapshotHit()
+        {
+            hitSnapshot = hitCount;
+        }
+
+        int getTotalHits()
+        {
+            return totalHits;
         }
 
         void refresh()
@@ -313,6 +484,7 @@ public class PersistenceWindowPool
             {
                 hitCount /= 1.15;
             }
+            snapshotHit();
         }
 
         @Override
@@ -413,19 +585,23 @@ public class PersistenceWindowPool
         }
     }
 
-    private synchronized void freeWindows( int nr )
+    /**
+     * Must be called with {@link #swapLock} held.
+     */
+    private void freeWindows( int nr )
     {
         if ( brickSize <= 0 )
         {
             // memory mapped turned off
             return;
         }
+        BrickElement[] bricks = brickArray;
         ArrayList<BrickElement> mappedBricks = new ArrayList<BrickElement>();
-        for ( int i = 0; i < brickCount; i++ )
+        for ( BrickElement be : bricks )
         {
-            BrickElement be = brickArray[i];
             if ( be.getWindow() != null )
             {
+                be.snapshotHit();
                 mappedBricks.add( be );
             }
         }
@@ -434,32 +610,47 @@ public class PersistenceWindowPool
         {
             BrickElement mappedBrick = mappedBricks.get( i );
             LockableWindow window = mappedBrick.getWindow();
-            if ( window.getWaitingThreadsCount() == 0 && !window.isMarked() )
+            if ( window.closeIfFree( readOnly ) )
             {
-                if ( !readOnly ) window.writeOut();
                 mappedBrick.setWindow( null );
                 memUsed -= brickSize;
             }
         }
     }
 
-    private synchronized void refreshBricks()
+    private void refreshBricks()
     {
-        if ( brickMiss < REFRESH_BRICK_COUNT )
+        swapLock.lock();
+        try
+        {
+            if ( fileChannel != null )
+            {
+                doRefreshBricks();
+            }
+        }
+        finally
+        {
+            swapLock.unlock();
+        }
+    }
+
+    private void doRefreshBricks()
+    {
+        if ( brickMiss.get() < REFRESH_BRICK_COUNT )
         {
             return;
         }
-        brickMiss = 0;
+        brickMiss.set( 0 );
         if ( brickSize <= 0 )
         {
             // memory mapped turned off
             return;
         }
+        BrickElement[] bricks = brickArray;
         ArrayList<BrickElement> nonMappedBricks = new ArrayList<BrickElement>();
         ArrayList<BrickElement> mappedBricks = new ArrayList<BrickElement>();
-        for ( int i = 0; i < brickCount; i++ )
+        for ( BrickElement be : bricks )
         {
-            BrickElement be = brickArray[i];
             if ( be.getWindow() != null )
             {
                 mappedBricks.add( be );
@@ -512,9 +703,8 @@ public class PersistenceWindowPool
                 break;
             }
             LockableWindow window = mappedBrick.getWindow();
-            if ( window.getWaitingThreadsCount() == 0 && !window.isMarked() )
+            if ( window.closeIfFree( readOnly ) )
             {
-                if ( !readOnly ) window.writeOut();
                 mappedBrick.setWindow( null );
                 memUsed -= brickSize;
                 try
@@ -538,41 +728,59 @@ public class PersistenceWindowPool
         }
     }
 
-    private synchronized void expandBricks( int newBrickCount )
+    /**
+     * Expands the brick array to <CODE>newBrickCount</CODE> bricks, unless
+     * another thread is swapping windows, in which case this returns right
+     * away without waiting for it.
+     */
+    private void tryExpandBricks( int newBrickCount )
     {
-        if ( newBrickCount > brickCount )
+        if ( !swapLock.tryLock() )
         {
-            BrickElement tmpArray[] = new BrickElement[newBrickCount];
-            System.arraycopy( brickArray, 0, tmpArray, 0, brickArray.length );
-            if ( memUsed + brickSize >= availableMem )
-            {
-                freeWindows( 1 );
-            }
-            for ( int i = brickArray.length; i < tmpArray.length; i++ )
+            return;
+        }
+        try
+        {
+            BrickElement[] bricks = brickArray;
+            if ( newBrickCount > bricks.length )
             {
-                BrickElement be = new BrickElement( i );
-                tmpArray[i] = be;
-                if ( memUsed + brickSize <= availableMem )
+                BrickElement tmpArray[] = new BrickElement[newBrickCount];
+                System.arraycopy( bricks, 0, tmpArray, 0, bricks.length );
+                if ( memUsed + brickSize >= availableMem )
                 {
-                    try
-                    {
-                        be.setWindow( allocateNewWindow( i ) );
-                        memUsed += brickSize;
-                    }
-                    catch ( MappedMemException e )
-                    {
-                        ooe++;
-                        logWarn( "Unable to memory map" );
-                    }
-                    catch ( OutOfMemoryError e )
+                    freeWindows( 1 );
+                }
+                for ( int i = bricks.length; i < tmpArray.length; i++ )
+                {
+                    BrickElement be = new BrickElement( i );
+                    tmpArray[i] = be;
+                    if ( memUsed + brickSize <= availableMem )
                     {
-                        ooe++;
-                        logWarn( "Unable to allocate direct buffer" );
+                        try
+                        {
+                            be.setWindow( allocateNewWindow( i ) );
+                            memUsed += brickSize;
+                        }
+                        catch ( MappedMemException e )
+                        {
+                            ooe++;
+                            logWarn( "Unable to memory map" );
+                        }
+                        catch ( OutOfMemoryError e )
+                        {
+                            ooe++;
+                            logWarn( "Unable to allocate direct buffer" );
+                        }
                     }
                 }
+                brickCount = tmpArray.length;
+                // publish last, readers only ever see fully populated arrays
+                brickArray = tmpArray;
             }
-            brickArray = tmpArray;
-            brickCount = tmpArray.length;
+        }
+        finally
+        {
+            swapLock.unlock();
         }
     }
 
@@ -641,9 +849,19 @@ public class PersistenceWindowPool
         log.log( Level.WARNING, "[" + storeName + "] " + logMessage, cause );
     }
 
+    private int hits()
+    {
+        int hits = 0;
+        for ( BrickElement element : brickArray )
+        {
+            hits += element.getTotalHits();
+        }
+        return hits;
+    }
+
     WindowPoolStats getStats()
     {
         return new WindowPoolStats( storeName, availableMem, memUsed, brickCount,
-                brickSize, hit, miss, ooe );
+                brickSize, hits(), miss, ooe );
     }
 }
\ No newline at end of file
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.nio.ByteBuffer;
+
+import org.neo4j.helpers.collection.PrefetchingIterator;
+
+/**
+ * Iterates over the records in use in a range of ids of an
+ * {@link AbstractStore}, reading many records at a time into a buffer of its
+ * own (see {@link CommonAbstractStore#readRecords(long, ByteBuffer)}) instead
+ * of acquiring and releasing a window per record. Records not in use are
+ * skipped by looking at their in use bit only.
+ * <p>
+ * The records returned are light, i.e. only what's in the record itself, and
+ * reflect what is committed to the store at the time each batch of records is
+ * read. They are not cached anywhere.
+ */
+public abstract class RecordScan<R extends AbstractBaseRecord> extends PrefetchingIterator<R>
+{
+    /**
+     * The size in bytes of the buffer each scan reads records into.
+     */
+    public static final int BUFFER_SIZE = 256 * 1024;
+
+    private final AbstractStore store;
+    private final int recordSize;
+    private final long endId;
+    private final ByteBuffer byteBuffer;
+    private final Buffer buffer;
+    private long batchStartId;
+    private int batchSize;
+    private int nextInBatch;
+
+    /**
+     * @param store the store to read records from.
+     * @param startId the first id to scan, inclusive.
+     * @param endId the last id to scan, exclusive.
+     */
+    protected RecordScan( AbstractStore store, long startId, long endId )
+    {
+        this.store = store;
+        this.recordSize = store.getRecordSize();
+        this.endId = endId;
+        this.byteBuffer = ByteBuffer.allocate( recordsPerBuffer( recordSize ) * recordSize );
+        this.buffer = new Buffer( null, byteBuffer );
+        this.batchStartId = startId;
+    }
+
+    /**
+     * @param recordSize the record size of a store.
+     * @return the number of records of that size each read of a scan gets.
+     */
+    public static int recordsPerBuffer( int recordSize )
+    {
+        return Math.max( 1, BUFFER_SIZE / recordSize );
+    }
+
+    @Override
+    protected R fetchNextOrNull()
+    {
+        while ( true )
+        {
+            while ( nextInBatch < batchSize )
+            {
+                int offset = nextInBatch * recordSize;
+                long id = batchStartId + nextInBatch++;
+                if ( (byteBuffer.get( offset ) & 0x1) == Record.IN_USE.intValue() )
+                {
+                    byteBuffer.position( offset );
+                    return readRecord( id, buffer );
+                }
+            }
+            batchStartId += batchSize;
+            if ( batchStartId >= endId )
+            {
+                return null;
+            }
+            batchSize = (int) Math.min( store.readRecords( batchStartId, byteBuffer ),
+                    endId - batchStartId );
+            nextInBatch = 0;
+            if ( batchSize == 0 )
+            {
+                // end of file
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Reads the record with the given id, which is in use, from
+     * <code>buffer</code>, positioned at the start of the record.
+     *
+     * @param id the id of the record.
+     * @param buffer the buffer to read the record from.
+     * @return the record.
+     */
+    protected abstract R readRecord( long id, Buffer buffer );
+}
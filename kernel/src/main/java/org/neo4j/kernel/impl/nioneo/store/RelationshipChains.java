@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+
+/**
+ * Helpers for following and linking the relationship chain of one of the
+ * nodes of a {@link RelationshipRecord}. A relationship is in the chains of
+ * both its nodes, with a prev/next pair of pointers for each, except for a
+ * loop which is in the chain of its only node once, with both pairs set to
+ * the same values.
+ * <p>
+ * With {@link RelationshipGroupIndex grouped chains} the relationships of a
+ * chain are ordered so that the ones with the same type and direction, as
+ * seen from the node, are next to each other. That pair is what
+ * {@link #keyOf(RelationshipRecord, long)} identifies.
+ */
+public final class RelationshipChains
+{
+    private RelationshipChains()
+    {
+    }
+
+    /**
+     * @return the key of the group in a grouped chain with relationships of
+     *         <code>type</code> in <code>direction</code>, where
+     *         {@link DirectionWrapper#BOTH} means loops.
+     */
+    public static int keyOf( int type, DirectionWrapper direction )
+    {
+        return type * 3 + direction.ordinal();
+    }
+
+    /**
+     * @return the key of the group <code>record</code> belongs to in the
+     *         chain of <code>nodeId</code>.
+     */
+    public static int keyOf( RelationshipRecord record, long nodeId )
+    {
+        return keyOf( record.getType(), directionOf( record, nodeId ) );
+    }
+
+    /**
+     * @return the direction of <code>record</code> as seen from
+     *         <code>nodeId</code>, {@link DirectionWrapper#BOTH} for loops.
+     */
+    public static DirectionWrapper directionOf( RelationshipRecord record, long nodeId )
+    {
+        if ( record.getFirstNode() == record.getSecondNode() )
+        {
+            return DirectionWrapper.BOTH;
+        }
+        if ( record.getFirstNode() == nodeId )
+        {
+            return DirectionWrapper.OUTGOING;
+        }
+        if ( record.getSecondNode() == nodeId )
+        {
+            return DirectionWrapper.INCOMING;
+        }
+        throw notInChain( record, nodeId );
+    }
+
+    public static boolean isInChainOf( RelationshipRecord record, long nodeId )
+    {
+        return record.getFirstNode() == nodeId || record.getSecondNode() == nodeId;
+    }
+
+    public static long prevOf( RelationshipRecord record, long nodeId )
+    {
+        if ( record.getFirstNode() == nodeId )
+        {
+            return record.getFirstPrevRel();
+        }
+        if ( record.getSecondNode() == nodeId )
+        {
+            return record.getSecondPrevRel();
+        }
+        throw notInChain( record, nodeId );
+    }
+
+    public static long nextOf( RelationshipRecord record, long nodeId )
+    {
+        if ( record.getFirstNode() == nodeId )
+        {
+            return record.getFirstNextRel();
+        }
+        if ( record.getSecondNode() == nodeId )
+        {
+            return record.getSecondNextRel();
+        }
+        throw notInChain( record, nodeId );
+    }
+
+    public static void setPrev( RelationshipRecord record, long nodeId, long prev )
+    {
+        boolean changed = false;
+        if ( record.getFirstNode() == nodeId )
+        {
+            record.setFirstPrevRel( prev );
+            changed = true;
+        }
+        if ( record.getSecondNode() == nodeId )
+        {
+            record.setSecondPrevRel( prev );
+            changed = true;
+        }
+        if ( !changed )
+        {
+            throw notInChain( record, nodeId );
+        }
+    }
+
+    public static void setNext( RelationshipRecord record, long nodeId, long next )
+    {
+        boolean changed = false;
+        if ( record.getFirstNode() == nodeId )
+        {
+            record.setFirstNextRel( next );
+            changed = true;
+        }
+        if ( record.getSecondNode() == nodeId )
+        {
+            record.setSecondNextRel( next );
+            changed = true;
+        }
+        if ( !changed )
+        {
+            throw notInChain( record, nodeId );
+        }
+    }
+
+    private static InvalidRecordException notInChain( RelationshipRecord record, long nodeId )
+    {
+        return new InvalidRecordException( "Node[" + nodeId + "] is neither firstNode[" +
+                record.getFirstNode() + "] nor secondNode[" + record.getSecondNode() +
+                "] for Relationship[" + record.getId() + "]" );
+    }
+}
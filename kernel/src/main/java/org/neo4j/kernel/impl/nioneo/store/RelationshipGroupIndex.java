@@ -0,0 +1,628 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.neo4j.kernel.impl.nioneo.store.RelationshipChains.isInChainOf;
+import static org.neo4j.kernel.impl.nioneo.store.RelationshipChains.keyOf;
+import static org.neo4j.kernel.impl.nioneo.store.RelationshipChains.nextOf;
+import static org.neo4j.kernel.impl.nioneo.store.RelationshipChains.prevOf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+
+/**
+ * Keeps track of where each group starts in grouped relationship chains, for
+ * nodes with many relationships. A store has grouped chains if, and only if,
+ * it has a relationship group file (see {@link #FILE_NAME_SUFFIX}), created
+ * when its chains are grouped by
+ * {@link org.neo4j.kernel.impl.storemigration.RelationshipChainGrouper}.
+ * After that all relationships are linked into the chains of their nodes
+ * next to the ones with the same type and direction, see
+ * {@link RelationshipChains}, so that the relationships of one type and
+ * direction can be read by starting at the first one of that group and
+ * stopping at the first one that isn't.
+ * <p>
+ * The first relationship of each group, the head, is kept per node. It is
+ * derived from what the relationship records say, not logged, and updated
+ * from the records of each transaction as it is applied. That means it
+ * follows transactions applied during recovery and on HA slaves too, but if
+ * the database isn't shut down cleanly the file is considered stale and is
+ * thrown away. Nodes are added lazily, the first time the heads of a node
+ * are asked for, by reading its whole chain once. Nodes with fewer
+ * relationships than the dense node threshold are read every time instead of
+ * taking up memory.
+ */
+public class RelationshipGroupIndex
+{
+    /**
+     * Appended to the name of the neostore file to get the name of the
+     * relationship group file.
+     */
+    public static final String FILE_NAME_SUFFIX = ".relationshipgroups";
+
+    public static final int DEFAULT_DENSE_NODE_THRESHOLD = 50;
+
+    private static final long FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 9;
+    private static final long[] NO_GROUPS = new long[0];
+    // how long awaitHead waits for a chain to stop changing before failing
+    private static final long AWAIT_HEAD_TIMEOUT = 10000;
+    // how long awaitHead waits before reading the chain again, if no
+    // transaction has been applied in the meantime
+    private static final long AWAIT_HEAD_RETRY_INTERVAL = 10;
+
+    private final String fileName;
+    private final FileSystemAbstraction fileSystem;
+    private final NodeStore nodeStore;
+    private final RelationshipStore relStore;
+    private final int denseNodeThreshold;
+    private final boolean readOnly;
+
+    // node id -> pairs of group key and head, in chain order
+    private final ConcurrentMap<Long,long[]> groups = new ConcurrentHashMap<Long,long[]>();
+    // node id -> { number of threads reading its chain, number of updates }
+    private final Map<Long,int[]> reading = new HashMap<Long,int[]>();
+    // number of transactions applied, guarded by the monitor of this index
+    private long updateCount;
+    private volatile boolean closed;
+
+    RelationshipGroupIndex( String fileName, FileSystemAbstraction fileSystem, NodeStore nodeStore,
+            RelationshipStore relStore, int denseNodeThreshold, boolean readOnly )
+    {
+        this.fileName = fileName;
+        this.fileSystem = fileSystem;
+        this.nodeStore = nodeStore;
+        this.relStore = relStore;
+        this.denseNodeThreshold = denseNodeThreshold;
+        this.readOnly = readOnly;
+        load();
+    }
+
+    /**
+     * Creates an empty relationship group file, which makes the store one
+     * with grouped relationship chains.
+     */
+    static void createFile( String fileName, FileSystemAbstraction fileSystem )
+    {
+        try
+        {
+            FileChannel channel = fileSystem.create( fileName );
+            try
+            {
+                writeHeader( channel, true );
+            }
+            finally
+            {
+                channel.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new UnderlyingStorageException( "Unable to create " + fileName, e );
+        }
+    }
+
+    /**
+     * @return the key and head pairs of the groups of <code>nodeId</code>
+     *         that have relationships, in chain order, or <code>null</code>
+     *         if its chain couldn't be read because a transaction is being
+     *         applied to it.
+     */
+    public long[] getGroups( long nodeId )
+    {
+        long[] nodeGroups = groups.get( nodeId );
+        return nodeGroups != null ? nodeGroups : readGroups( nodeId );
+    }
+
+    /**
+     * @return the first relationship in the chain of <code>nodeId</code>
+     *         with <code>type</code> and <code>direction</code>,
+     *         {@link Record#NO_NEXT_RELATIONSHIP} if it has no such
+     *         relationships, or <code>null</code> if that couldn't be
+     *         decided because its chain is being changed.
+     */
+    public Long getHead( long nodeId, int type, DirectionWrapper direction )
+    {
+        int key = keyOf( type, direction );
+        for ( int attempt = 0; attempt < 2; attempt++ )
+        {
+            long[] nodeGroups = getGroups( nodeId );
+            if ( nodeGroups == null )
+            {
+                return null;
+            }
+            long head = headIn( nodeGroups, key );
+            if ( head == Record.NO_NEXT_RELATIONSHIP.intValue() || isHead( head, nodeId, key ) )
+            {
+                return head;
+            }
+            // shouldn't happen, but don't trust what's known about this node
+            groups.remove( nodeId, nodeGroups );
+        }
+        return null;
+    }
+
+    /**
+     * @return the head of the group with <code>key</code> in
+     *         <code>nodeGroups</code>, or {@link Record#NO_NEXT_RELATIONSHIP}
+     *         if there's no such group.
+     */
+    public static long headIn( long[] nodeGroups, int key )
+    {
+        for ( int i = 0; i < nodeGroups.length; i += 2 )
+        {
+            if ( nodeGroups[i] == key )
+            {
+                return nodeGroups[i + 1];
+            }
+        }
+        return Record.NO_NEXT_RELATIONSHIP.intValue();
+    }
+
+    /**
+     * Like {@link #getHead(long, int, DirectionWrapper)}, but waits for
+     * transactions being applied to the chain of the node to be done.
+     *
+     * @throws UnderlyingStorageException if the chain didn't stop changing
+     *             within {@link #AWAIT_HEAD_TIMEOUT} milliseconds, or this
+     *             index was closed while waiting.
+     */
+    public long awaitHead( long nodeId, int type, DirectionWrapper direction )
+    {
+        long deadline = System.currentTimeMillis() + AWAIT_HEAD_TIMEOUT;
+        while ( true )
+        {
+            long updatesBefore;
+            synchronized ( this )
+            {
+                updatesBefore = updateCount;
+            }
+            Long head = getHead( nodeId, type, direction );
+            if ( head != null )
+            {
+                return head;
+            }
+            awaitUpdate( nodeId, updatesBefore, deadline );
+        }
+    }
+
+    /*
+     * Waits for a transaction to be applied after updatesBefore of them,
+     * or for the retry interval, whichever comes first.
+     */
+    private synchronized void awaitUpdate( long nodeId, long updatesBefore, long deadline )
+    {
+        if ( closed )
+        {
+            throw new UnderlyingStorageException( "Relationship group index " + fileName + " closed" );
+        }
+        long timeLeft = deadline - System.currentTimeMillis();
+        if ( timeLeft <= 0 )
+        {
+            throw new UnderlyingStorageException( "Relationship chain of node " + nodeId +
+                    " still changing after " + AWAIT_HEAD_TIMEOUT + "ms" );
+        }
+        if ( updateCount == updatesBefore )
+        {
+            try
+            {
+                wait( Math.min( timeLeft, AWAIT_HEAD_RETRY_INTERVAL ) );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new UnderlyingStorageException( "Interrupted while waiting for the relationship chain of node "
+                        + nodeId, e );
+            }
+        }
+    }
+
+    /**
+     * @return the number of nodes whose groups are kept in memory.
+     */
+    public int getNodeCount()
+    {
+        return groups.size();
+    }
+
+    /**
+     * Sets the groups of a node whose chain has just been grouped.
+     */
+    public void setGroups( long nodeId, long[] nodeGroups )
+    {
+        groups.put( nodeId, nodeGroups );
+    }
+
+    /**
+     * Brings the heads of the nodes of the given relationships up to date
+     * after a transaction has been applied to the store.
+     *
+     * @param deleted relationships deleted by the transaction, with their
+     *            nodes and types.
+     * @param changed relationships created or changed by the transaction.
+     */
+    public synchronized void update( Iterable<RelationshipRecord> deleted,
+            Iterable<RelationshipRecord> changed )
+    {
+        for ( RelationshipRecord record : deleted )
+        {
+            removeDeleted( record, record.getFirstNode() );
+            if ( record.getSecondNode() != record.getFirstNode() )
+            {
+                removeDeleted( record, record.getSecondNode() );
+            }
+        }
+        for ( RelationshipRecord record : changed )
+        {
+            updateChanged( record, record.getFirstNode() );
+            if ( record.getSecondNode() != record.getFirstNode() )
+            {
+                updateChanged( record, record.getSecondNode() );
+            }
+        }
+        updateCount++;
+        notifyAll();
+    }
+
+    private void removeDeleted( RelationshipRecord record, long nodeId )
+    {
+        touched( nodeId );
+        long[] nodeGroups = groups.get( nodeId );
+        if ( nodeGroups == null )
+        {
+            return;
+        }
+        int key = keyOf( record, nodeId );
+        if ( headIn( nodeGroups, key ) == record.getId() )
+        {
+            setOrRemove( nodeId, without( nodeGroups, key ) );
+        }
+    }
+
+    private void updateChanged( RelationshipRecord record, long nodeId )
+    {
+        touched( nodeId );
+        long[] nodeGroups = groups.get( nodeId );
+        if ( nodeGroups == null )
+        {
+            return;
+        }
+        int key = keyOf( record, nodeId );
+        long prev = prevOf( record, nodeId );
+        boolean head;
+        if ( prev == Record.NO_PREV_RELATIONSHIP.intValue() )
+        {
+            head = true;
+        }
+        else
+        {
+            RelationshipRecord prevRecord = relStore.getLightRel( prev );
+            if ( prevRecord == null || !isInChainOf( prevRecord, nodeId ) )
+            {
+                groups.remove( nodeId );
+                return;
+            }
+            head = keyOf( prevRecord, nodeId ) != key;
+        }
+        long knownHead = headIn( nodeGroups, key );
+        if ( head && knownHead != record.getId() )
+        {
+            groups.put( nodeId, with( without( nodeGroups, key ), key, record.getId() ) );
+        }
+        else if ( !head && knownHead == record.getId() )
+        {
+            // something was linked in before it, find out what next time
+            groups.remove( nodeId );
+        }
+    }
+
+    private void setOrRemove( long nodeId, long[] nodeGroups )
+    {
+        if ( nodeGroups.length == 0 )
+        {
+            groups.remove( nodeId );
+        }
+        else
+        {
+            groups.put( nodeId, nodeGroups );
+        }
+    }
+
+    private void touched( long nodeId )
+    {
+        int[] readers = reading.get( nodeId );
+        if ( readers != null )
+        {
+            readers[1]++;
+        }
+    }
+
+    private static long[] with( long[] nodeGroups, int key, long head )
+    {
+        long[] result = Arrays.copyOf( nodeGroups, nodeGroups.length + 2 );
+        result[nodeGroups.length] = key;
+        result[nodeGroups.length + 1] = head;
+        return result;
+    }
+
+    private static long[] without( long[] nodeGroups, int key )
+    {
+        for ( int i = 0; i < nodeGroups.length; i += 2 )
+        {
+            if ( nodeGroups[i] == key )
+            {
+                long[] result = new long[nodeGroups.length - 2];
+                System.arraycopy( nodeGroups, 0, result, 0, i );
+                System.arraycopy( nodeGroups, i + 2, result, i, result.length - i );
+                return result;
+            }
+        }
+        return nodeGroups;
+    }
+
+    private boolean isHead( long relId, long nodeId, int key )
+    {
+        RelationshipRecord record = relStore.getLightRel( relId );
+        if ( record == null || !isInChainOf( record, nodeId ) || keyOf( record, nodeId ) != key )
+        {
+            return false;
+        }
+        long prev = prevOf( record, nodeId );
+        if ( prev == Record.NO_PREV_RELATIONSHIP.intValue() )
+        {
+            return true;
+        }
+        RelationshipRecord prevRecord = relStore.getLightRel( prev );
+        return prevRecord != null && isInChainOf( prevRecord, nodeId ) &&
+                keyOf( prevRecord, nodeId ) != key;
+    }
+
+    /**
+     * Reads the whole chain of a node to find the heads of its groups, and
+     * keeps them if it has at least the dense node threshold relationships
+     * and no transaction touched the node while reading.
+     */
+    private long[] readGroups( long nodeId )
+    {
+        int updatesBefore;
+        synchronized ( this )
+        {
+            int[] readers = reading.get( nodeId );
+            if ( readers == null )
+            {
+                readers = new int[2];
+                reading.put( nodeId, readers );
+            }
+            readers[0]++;
+            updatesBefore = readers[1];
+        }
+        long[] nodeGroups = null;
+        int[] length = new int[1];
+        try
+        {
+            nodeGroups = readChain( nodeId, length );
+        }
+        finally
+        {
+            synchronized ( this )
+            {
+                int[] readers = reading.get( nodeId );
+                if ( --readers[0] == 0 )
+                {
+                    reading.remove( nodeId );
+                }
+                if ( nodeGroups != null && readers[1] == updatesBefore &&
+                        length[0] >= denseNodeThreshold && nodeGroups.length > 0 )
+                {
+                    groups.put( nodeId, nodeGroups );
+                }
+            }
+        }
+        return nodeGroups;
+    }
+
+    /**
+     * @return the groups of <code>nodeId</code> as seen when following its
+     *         chain, or <code>null</code> if the chain was changed while
+     *         following it.
+     */
+    private long[] readChain( long nodeId, int[] length )
+    {
+        NodeRecord node = nodeStore.loadLightNode( nodeId );
+        if ( node == null )
+        {
+            return NO_GROUPS;
+        }
+        long[] nodeGroups = NO_GROUPS;
+        long maxLength = relStore.getHighId();
+        int lastKey = -1;
+        long position = node.getNextRel();
+        while ( position != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipRecord record = relStore.getLightRel( position );
+            if ( record == null || !isInChainOf( record, nodeId ) || ++length[0] > maxLength )
+            {
+                return null;
+            }
+            int key = keyOf( record, nodeId );
+            if ( key != lastKey )
+            {
+                if ( headIn( nodeGroups, key ) != Record.NO_NEXT_RELATIONSHIP.intValue() )
+                {
+                    // not grouped, a transaction is being applied
+                    return null;
+                }
+                nodeGroups = with( nodeGroups, key, position );
+                lastKey = key;
+            }
+            position = nextOf( record, nodeId );
+        }
+        return nodeGroups;
+    }
+
+    private void load()
+    {
+        try
+        {
+            FileChannel channel = fileSystem.open( fileName, readOnly ? "r" : "rw" );
+            try
+            {
+                ByteBuffer file = readFully( channel );
+                if ( file.remaining() >= HEADER_SIZE && file.getLong() == FORMAT_VERSION && file.get() == 1 )
+                {
+                    loadGroups( file );
+                }
+                if ( readOnly )
+                {
+                    return;
+                }
+                // until closed cleanly what's in the file may be out of date
+                channel.truncate( 0 );
+                writeHeader( channel, false );
+                channel.force( false );
+            }
+            finally
+            {
+                channel.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new UnderlyingStorageException( "Unable to load " + fileName, e );
+        }
+    }
+
+    private static ByteBuffer readFully( FileChannel channel ) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate( (int) channel.size() );
+        while ( buffer.hasRemaining() )
+        {
+            if ( channel.read( buffer, buffer.position() ) <= 0 )
+            {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private void loadGroups( ByteBuffer file )
+    {
+        while ( file.remaining() >= 12 )
+        {
+            long nodeId = file.getLong();
+            int count = file.getInt();
+            if ( file.remaining() < count * 16 )
+            {
+                return;
+            }
+            long[] nodeGroups = new long[count * 2];
+            for ( int i = 0; i < nodeGroups.length; i++ )
+            {
+                nodeGroups[i] = file.getLong();
+            }
+            groups.put( nodeId, nodeGroups );
+        }
+    }
+
+    private static void writeHeader( FileChannel channel, boolean clean ) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+        header.putLong( FORMAT_VERSION ).put( (byte) (clean ? 1 : 0) ).flip();
+        channel.write( header, 0 );
+    }
+
+    /**
+     * Writes the groups known to the file, and marks it as up to date.
+     * Threads waiting in {@link #awaitHead(long, int, DirectionWrapper)}
+     * fail instead of waiting for transactions that won't be applied.
+     */
+    void close()
+    {
+        synchronized ( this )
+        {
+            closed = true;
+            notifyAll();
+        }
+        if ( readOnly )
+        {
+            return;
+        }
+        try
+        {
+            FileChannel channel = fileSystem.open( fileName, "rw" );
+            try
+            {
+                channel.truncate( 0 );
+                ByteBuffer buffer = ByteBuffer.allocate( 64 * 1024 );
+                long position = HEADER_SIZE;
+                for ( Map.Entry<Long,long[]> entry : groups.entrySet() )
+                {
+                    long[] nodeGroups = entry.getValue();
+                    if ( buffer.remaining() < 12 + nodeGroups.length * 8 )
+                    {
+                        position += flush( channel, buffer, position );
+                        if ( buffer.remaining() < 12 + nodeGroups.length * 8 )
+                        {
+                            buffer = ByteBuffer.allocate( 12 + nodeGroups.length * 8 );
+                        }
+                    }
+                    buffer.putLong( entry.getKey() ).putInt( nodeGroups.length / 2 );
+                    for ( long value : nodeGroups )
+                    {
+                        buffer.putLong( value );
+                    }
+                }
+                flush( channel, buffer, position );
+                channel.force( false );
+                writeHeader( channel, true );
+                channel.force( false );
+            }
+            finally
+            {
+                channel.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new UnderlyingStorageException( "Unable to write " + fileName, e );
+        }
+    }
+
+    private static int flush( FileChannel channel, ByteBuffer buffer, long position ) throws IOException
+    {
+        buffer.flip();
+        int bytes = buffer.remaining();
+        while ( buffer.hasRemaining() )
+        {
+            position += channel.write( buffer, position );
+        }
+        buffer.clear();
+        return bytes;
+    }
+}
@@ -31,7 +31,8 @@ import org.neo4j.kernel.impl.util.StringLogger;
 /**
  * Implementation of the relationship store.
  */
-public class RelationshipStore extends AbstractStore implements Store, RecordStore<RelationshipRecord>
+public class RelationshipStore extends AbstractStore implements Store, RecordStore<RelationshipRecord>,
+        ScannableStore<RelationshipRecord>
 {
     public static final String TYPE_DESCRIPTOR = "RelationshipStore";
 
@@ -100,7 +101,7 @@ public class RelationshipStore extends AbstractStore implements Store, RecordSto
         PersistenceWindow window = acquireWindow( id, OperationType.READ );
         try
         {
-            return getRecord( id, window, RecordLoad.NORMAL );
+            return getRecord( id, window.getOffsettedBuffer( id ), RecordLoad.NORMAL );
         }
         finally
         {
@@ -123,7 +124,7 @@ public class RelationshipStore extends AbstractStore implements Store, RecordSto
 
         try
         {
-            return getRecord( id, window, RecordLoad.FORCE );
+            return getRecord( id, window.getOffsettedBuffer( id ), RecordLoad.FORCE );
         }
         finally
         {
@@ -151,7 +152,7 @@ public class RelationshipStore extends AbstractStore implements Store, RecordSto
         }
         try
         {
-            RelationshipRecord record = getRecord( id, window, RecordLoad.CHECK );
+            RelationshipRecord record = getRecord( id, window.getOffsettedBuffer( id ), RecordLoad.CHECK );
             return record;
         }
         finally
@@ -259,11 +260,8 @@ public class RelationshipStore extends AbstractStore implements Store, RecordSto
         }
     }
 
-    private RelationshipRecord getRecord( long id, PersistenceWindow window,
-        RecordLoad load )
+    private RelationshipRecord getRecord( long id, Buffer buffer, RecordLoad load )
     {
-        Buffer buffer = window.getOffsettedBuffer( id );
-
         // [    ,   x] in use flag
         // [    ,xxx ] first node high order bits
         // [xxxx,    ] next prop high order bits
@@ -356,7 +354,7 @@ public class RelationshipStore extends AbstractStore implements Store, RecordSto
         try
         {
 //            return getFullRecord( relId, window );
-            return getRecord( relId, window, RecordLoad.NORMAL );
+            return getRecord( relId, window.getOffsettedBuffer( relId ), RecordLoad.NORMAL );
         }
         finally
         {
@@ -364,6 +362,39 @@ public class RelationshipStore extends AbstractStore implements Store, RecordSto
         }
     }
 
+    /**
+     * Scans all relationships in use, reading the store sequentially many records at
+     * a time rather than one window acquisition per record.
+     *
+     * @return the relationships in use, in id order.
+     * @see RecordScan
+     */
+    public RecordScan<RelationshipRecord> scan()
+    {
+        return scan( 0, getHighestPossibleIdInUse() + 1 );
+    }
+
+    /**
+     * Scans the relationships in use with ids from <code>startId</code>, inclusive,
+     * to <code>endId</code>, exclusive.
+     *
+     * @param startId the first id to scan.
+     * @param endId the id to stop the scan at.
+     * @return the relationships in use in the given range, in id order.
+     * @see RecordScan
+     */
+    public RecordScan<RelationshipRecord> scan( long startId, long endId )
+    {
+        return new RecordScan<RelationshipRecord>( this, startId, endId )
+        {
+            @Override
+            protected RelationshipRecord readRecord( long id, Buffer buffer )
+            {
+                return getRecord( id, buffer, RecordLoad.CHECK );
+            }
+        };
+    }
+
     @Override
     public List<WindowPoolStats> getAllWindowPoolStats()
     {
@@ -0,0 +1,43 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+/**
+ * A store whose records can be read sequentially with a {@link RecordScan},
+ * either all of them or a range of ids at a time.
+ *
+ * @see ParallelRecordScan
+ */
+public interface ScannableStore<R extends AbstractBaseRecord>
+{
+    /**
+     * @return The highest possible id in use, -1 if no id in use.
+     */
+    public long getHighestPossibleIdInUse();
+
+    public int getRecordSize();
+
+    /**
+     * @param startId the first id to scan, inclusive.
+     * @param endId the last id to scan, exclusive.
+     * @return the records in use with ids in the given range, in id order.
+     */
+    public RecordScan<R> scan( long startId, long endId );
+}
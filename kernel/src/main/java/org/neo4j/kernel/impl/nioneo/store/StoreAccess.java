@@ -93,7 +93,7 @@ public class StoreAccess
         this( getNeoStoreFrom( graphdb ) );
     }
 
-    private static NeoStore getNeoStoreFrom( AbstractGraphDatabase graphdb )
+    static NeoStore getNeoStoreFrom( AbstractGraphDatabase graphdb )
     {
         XaDataSource nioneo = graphdb.getConfig().getTxModule().getXaDataSourceManager().getXaDataSource(
                 Config.DEFAULT_DATA_SOURCE_NAME );
@@ -442,6 +442,11 @@ public abstract class Command extends XaCommand
             return record.getSecondNode();
         }
 
+        RelationshipRecord getRecord()
+        {
+            return record;
+        }
+
         boolean isRemove()
         {
             return !record.inUse();
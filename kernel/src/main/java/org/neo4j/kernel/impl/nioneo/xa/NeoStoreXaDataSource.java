@@ -51,6 +51,8 @@ import org.neo4j.kernel.impl.nioneo.store.Store;
 import org.neo4j.kernel.impl.nioneo.store.StoreId;
 import org.neo4j.kernel.impl.nioneo.store.WindowPoolStats;
 import org.neo4j.kernel.impl.persistence.IdGenerationFailedException;
+import org.neo4j.kernel.impl.storemigration.RelationshipChainGrouper;
+import org.neo4j.kernel.impl.storemigration.monitoring.SilentMigrationProgressMonitor;
 import org.neo4j.kernel.impl.transaction.LockManager;
 import org.neo4j.kernel.impl.transaction.xaframework.LogBackedXaDataSource;
 import org.neo4j.kernel.impl.transaction.xaframework.TransactionInterceptor;
@@ -234,6 +236,12 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
             if ( !xaContainer.getResourceManager().hasRecoveredTransactions() )
             {
                 neoStore.makeStoreOk();
+                if ( !readOnly && neoStore.getRelationshipGroups() == null &&
+                        "true".equalsIgnoreCase( (String) config.get( Config.GROUP_RELATIONSHIP_CHAINS ) ) )
+                {
+                    logger.info( "Grouping relationship chains by type and direction" );
+                    new RelationshipChainGrouper( new SilentMigrationProgressMonitor() ).group( neoStore );
+                }
             }
             else
             {
@@ -22,6 +22,7 @@ package org.neo4j.kernel.impl.nioneo.xa;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -42,6 +43,8 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyIndexStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
 import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipChains;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupIndex;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
 import org.neo4j.kernel.impl.persistence.NeoStoreTransaction;
@@ -91,6 +94,18 @@ class ReadTransaction implements NeoStoreTransaction
         return getRelationshipStore().getLightRel( id );
     }
 
+    @Override
+    public Iterator<NodeRecord> nodeScan()
+    {
+        return getNodeStore().scan();
+    }
+
+    @Override
+    public Iterator<RelationshipRecord> relScan()
+    {
+        return getRelationshipStore().scan();
+    }
+
     @Override
     public long getRelationshipChainPosition( long nodeId )
     {
@@ -171,6 +186,73 @@ class ReadTransaction implements NeoStoreTransaction
         return Pair.of( result, position );
     }
 
+    @Override
+    public boolean isRelationshipChainGrouped()
+    {
+        return neoStore.getRelationshipGroups() != null;
+    }
+
+    @Override
+    public long getRelationshipChainPosition( long nodeId, int type, DirectionWrapper direction )
+    {
+        return getRelationshipChainPosition( nodeId, type, direction, neoStore );
+    }
+
+    static long getRelationshipChainPosition( long nodeId, int type, DirectionWrapper direction,
+            NeoStore neoStore )
+    {
+        RelationshipGroupIndex groups = neoStore.getRelationshipGroups();
+        if ( groups != null )
+        {
+            return groups.awaitHead( nodeId, type, direction );
+        }
+        return neoStore.getNodeStore().getRecord( nodeId ).getNextRel();
+    }
+
+    @Override
+    public Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreRelationships(
+            long nodeId, long position, int type, DirectionWrapper direction )
+    {
+        return getMoreRelationships( nodeId, position, type, direction, getRelGrabSize(),
+                getRelationshipStore(), isRelationshipChainGrouped() );
+    }
+
+    /*
+     * In a grouped chain the relationships with the type and direction are
+     * next to each other, so it is done at the first one that isn't. In other
+     * chains all of it has to be read, grabSize relationships at a time.
+     */
+    static Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreRelationships(
+            long nodeId, long position, int type, DirectionWrapper direction, int grabSize,
+            RelationshipStore relStore, boolean grouped )
+    {
+        List<RelationshipRecord> rels = new ArrayList<RelationshipRecord>();
+        Map<DirectionWrapper, Iterable<RelationshipRecord>> result =
+            new EnumMap<DirectionWrapper, Iterable<RelationshipRecord>>( DirectionWrapper.class );
+        result.put( direction, rels );
+        int key = RelationshipChains.keyOf( type, direction );
+        for ( int i = 0; i < grabSize &&
+            position != Record.NO_NEXT_RELATIONSHIP.intValue(); i++ )
+        {
+            RelationshipRecord relRecord = relStore.getChainRecord( position );
+            if ( relRecord == null )
+            {
+                // return what we got so far
+                return Pair.of( result, position );
+            }
+            if ( RelationshipChains.keyOf( relRecord, nodeId ) == key )
+            {
+                rels.add( relRecord );
+            }
+            else if ( grouped )
+            {
+                return Pair.of( result, (long) Record.NO_NEXT_RELATIONSHIP.intValue() );
+            }
+            position = RelationshipChains.nextOf( relRecord, nodeId );
+        }
+        return Pair.of( result, position );
+    }
+
     static List<PropertyRecord> getPropertyRecordChain(
             PropertyStore propertyStore, long nextProp )
     {
@@ -25,6 +25,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -55,6 +56,8 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyType;
 import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipChains;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupIndex;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
@@ -82,6 +85,8 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     private final Map<Long,NodeRecord> nodeRecords = new HashMap<Long,NodeRecord>();
     private final Map<Long,PropertyRecord> propertyRecords = new HashMap<Long,PropertyRecord>();
     private final Map<Long,RelationshipRecord> relRecords = new HashMap<Long,RelationshipRecord>();
+    // with grouped relationship chains: node id -> its groups as changed by this tx
+    private Map<Long,long[]> relGroups;
     private Map<Integer,RelationshipTypeRecord> relTypeRecords;
     private Map<Integer,PropertyIndexRecord> propIndexRecords;
     private NeoStoreRecord neoStoreRecord;
@@ -466,6 +471,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
             executeModified( propCommands, relCommands, nodeCommands );
             if ( neoStoreCommand != null ) neoStoreCommand.execute();
             executeDeleted( propCommands, relCommands, nodeCommands );
+            updateRelationshipGroups( relRecords.values() );
             updateFirstRelationships();
             lockReleaser.commitCows(); // updates the cached primitives
             neoStore.setLastCommittedTx( getCommitTxId() );
@@ -476,6 +482,22 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         }
     }
 
+    private void updateRelationshipGroups( Collection<RelationshipRecord> records )
+    {
+        RelationshipGroupIndex groups = neoStore.getRelationshipGroups();
+        if ( groups == null || records.isEmpty() )
+        {
+            return;
+        }
+        List<RelationshipRecord> deleted = new ArrayList<RelationshipRecord>();
+        List<RelationshipRecord> inUse = new ArrayList<RelationshipRecord>();
+        for ( RelationshipRecord record : records )
+        {
+            (record.inUse() ? inUse : deleted).add( record );
+        }
+        groups.update( deleted, inUse );
+    }
+
     private void updateFirstRelationships()
     {
         for ( NodeRecord record : nodeRecords.values() )
@@ -553,6 +575,23 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
             }
             // relationships
             java.util.Collections.sort( relCommands, sorter );
+            List<RelationshipRecord> relGroupUpdates = null;
+            if ( neoStore.getRelationshipGroups() != null )
+            {
+                // the log doesn't contain the nodes and types of deleted
+                // relationships either, get them before they're gone
+                relGroupUpdates = new ArrayList<RelationshipRecord>();
+                for ( Command.RelationshipCommand command : relCommands )
+                {
+                    RelationshipRecord record = command.getRecord();
+                    if ( command.isRemove() )
+                    {
+                        record = getRelationshipStore().forceGetRecord( command.getKey() );
+                        record.setInUse( false );
+                    }
+                    relGroupUpdates.add( record );
+                }
+            }
             for ( Command.RelationshipCommand command : relCommands )
             {
                 command.execute();
@@ -570,6 +609,10 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
                 command.execute();
                 removeNodeFromCache( command.getKey() );
             }
+            if ( relGroupUpdates != null )
+            {
+                updateRelationshipGroups( relGroupUpdates );
+            }
             neoStore.setRecoveredStatus( true );
             try
             {
@@ -597,6 +640,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         nodeRecords.clear();
         propertyRecords.clear();
         relRecords.clear();
+        relGroups = null;
         if ( relTypeRecords != null ) relTypeRecords.clear();
         if ( propIndexRecords != null ) propIndexRecords.clear();
         neoStoreRecord = null;
@@ -713,6 +757,10 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
                 id + "] since it is already deleted." );
         }
         ArrayMap<Integer, PropertyData> propertyMap = getAndDeletePropertyChain( record );
+        if ( neoStore.getRelationshipGroups() != null )
+        {
+            disconnectGrouped( record );
+        }
         disconnectRelationship( record );
         updateNodes( record );
         record.setInUse( false );
@@ -898,6 +946,18 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         lockReleaser.addLockToTransaction( lockableRel, LockType.WRITE );
     }
 
+    @Override
+    public Iterator<NodeRecord> nodeScan()
+    {
+        return getNodeStore().scan();
+    }
+
+    @Override
+    public Iterator<RelationshipRecord> relScan()
+    {
+        return getRelationshipStore().scan();
+    }
+
     public long getRelationshipChainPosition( long nodeId )
     {
         NodeRecord nodeRecord = getNodeRecord( nodeId );
@@ -914,6 +974,31 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         return ReadTransaction.getMoreRelationships( nodeId, position, getRelGrabSize(), getRelationshipStore() );
     }
 
+    @Override
+    public boolean isRelationshipChainGrouped()
+    {
+        return neoStore.getRelationshipGroups() != null;
+    }
+
+    @Override
+    public long getRelationshipChainPosition( long nodeId, int type, DirectionWrapper direction )
+    {
+        NodeRecord nodeRecord = getNodeRecord( nodeId );
+        if ( nodeRecord != null && nodeRecord.isCreated() )
+        {
+            return Record.NO_NEXT_RELATIONSHIP.intValue();
+        }
+        return ReadTransaction.getRelationshipChainPosition( nodeId, type, direction, neoStore );
+    }
+
+    @Override
+    public Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreRelationships( long nodeId,
+        long position, int type, DirectionWrapper direction )
+    {
+        return ReadTransaction.getMoreRelationships( nodeId, position, type, direction, getRelGrabSize(),
+                getRelationshipStore(), isRelationshipChainGrouped() );
+    }
+
     private void updateNodes( RelationshipRecord rel )
     {
         if ( rel.getFirstPrevRel() == Record.NO_PREV_RELATIONSHIP.intValue() )
@@ -1378,6 +1463,15 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     {
         assert firstNode.getNextRel() != rel.getId();
         assert secondNode.getNextRel() != rel.getId();
+        if ( neoStore.getRelationshipGroups() != null )
+        {
+            connectGrouped( firstNode, rel );
+            if ( secondNode.getId() != firstNode.getId() )
+            {
+                connectGrouped( secondNode, rel );
+            }
+            return;
+        }
         rel.setFirstNextRel( firstNode.getNextRel() );
         rel.setSecondNextRel( secondNode.getNextRel() );
         connect( firstNode, rel );
@@ -1416,6 +1510,159 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         }
     }
 
+    /**
+     * Links the relationship in after the first relationship in the chain of
+     * the node with the same type and direction, so that the chain stays
+     * grouped, or first in the chain if it is the first of its group.
+     */
+    private void connectGrouped( NodeRecord node, RelationshipRecord rel )
+    {
+        long nodeId = node.getId();
+        int key = RelationshipChains.keyOf( rel, nodeId );
+        long[] groups = getRelationshipGroups( node );
+        long head = RelationshipGroupIndex.headIn( groups, key );
+        if ( head == Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            long next = node.getNextRel();
+            RelationshipChains.setPrev( rel, nodeId, Record.NO_PREV_RELATIONSHIP.intValue() );
+            RelationshipChains.setNext( rel, nodeId, next );
+            if ( next != Record.NO_NEXT_RELATIONSHIP.intValue() )
+            {
+                RelationshipChains.setPrev( getLockedRelationshipRecord( next ), nodeId, rel.getId() );
+            }
+            node.setNextRel( rel.getId() );
+            long[] newGroups = Arrays.copyOf( groups, groups.length + 2 );
+            newGroups[groups.length] = key;
+            newGroups[groups.length + 1] = rel.getId();
+            relGroups.put( nodeId, newGroups );
+            return;
+        }
+        RelationshipRecord headRel = getLockedRelationshipRecord( head );
+        if ( !headRel.inUse() || RelationshipChains.keyOf( headRel, nodeId ) != key )
+        {
+            throw new InvalidRecordException( headRel + " isn't first in its group of Node[" +
+                nodeId + "] for " + rel );
+        }
+        long next = RelationshipChains.nextOf( headRel, nodeId );
+        RelationshipChains.setPrev( rel, nodeId, head );
+        RelationshipChains.setNext( rel, nodeId, next );
+        RelationshipChains.setNext( headRel, nodeId, rel.getId() );
+        if ( next != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipChains.setPrev( getLockedRelationshipRecord( next ), nodeId, rel.getId() );
+        }
+    }
+
+    /**
+     * Called before a relationship is disconnected, to move the start of its
+     * groups to the next relationship if it was the first of them.
+     */
+    private void disconnectGrouped( RelationshipRecord rel )
+    {
+        disconnectGrouped( rel, rel.getFirstNode() );
+        if ( rel.getSecondNode() != rel.getFirstNode() )
+        {
+            disconnectGrouped( rel, rel.getSecondNode() );
+        }
+    }
+
+    private void disconnectGrouped( RelationshipRecord rel, long nodeId )
+    {
+        NodeRecord node = getNodeRecord( nodeId );
+        if ( node == null )
+        {
+            node = getNodeStore().getRecord( nodeId );
+        }
+        long[] groups = getRelationshipGroups( node );
+        int key = RelationshipChains.keyOf( rel, nodeId );
+        for ( int i = 0; i < groups.length; i += 2 )
+        {
+            if ( groups[i] == key && groups[i + 1] == rel.getId() )
+            {
+                long next = RelationshipChains.nextOf( rel, nodeId );
+                long[] newGroups;
+                if ( next != Record.NO_NEXT_RELATIONSHIP.intValue() &&
+                        RelationshipChains.keyOf( getTxRelationshipRecord( next ), nodeId ) == key )
+                {
+                    newGroups = groups.clone();
+                    newGroups[i + 1] = next;
+                }
+                else
+                {
+                    newGroups = new long[groups.length - 2];
+                    System.arraycopy( groups, 0, newGroups, 0, i );
+                    System.arraycopy( groups, i + 2, newGroups, i, newGroups.length - i );
+                }
+                relGroups.put( nodeId, newGroups );
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the groups of the node as they are in this transaction. The
+     *         first time for a node, before this transaction has changed its
+     *         chain, that is what the relationship group index says.
+     */
+    private long[] getRelationshipGroups( NodeRecord node )
+    {
+        if ( relGroups == null )
+        {
+            relGroups = new HashMap<Long,long[]>();
+        }
+        long[] groups = relGroups.get( node.getId() );
+        if ( groups == null )
+        {
+            groups = node.isCreated() ? new long[0] :
+                    neoStore.getRelationshipGroups().getGroups( node.getId() );
+            if ( groups == null )
+            {
+                groups = readRelationshipGroups( node );
+            }
+            relGroups.put( node.getId(), groups );
+        }
+        return groups;
+    }
+
+    private long[] readRelationshipGroups( NodeRecord node )
+    {
+        long[] groups = new long[0];
+        int lastKey = -1;
+        long position = node.getNextRel();
+        while ( position != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipRecord rel = getTxRelationshipRecord( position );
+            int key = RelationshipChains.keyOf( rel, node.getId() );
+            if ( key != lastKey )
+            {
+                groups = Arrays.copyOf( groups, groups.length + 2 );
+                groups[groups.length - 2] = key;
+                groups[groups.length - 1] = position;
+                lastKey = key;
+            }
+            position = RelationshipChains.nextOf( rel, node.getId() );
+        }
+        return groups;
+    }
+
+    private RelationshipRecord getTxRelationshipRecord( long id )
+    {
+        RelationshipRecord rel = getRelationshipRecord( id );
+        return rel != null ? rel : getRelationshipStore().getRecord( id );
+    }
+
+    private RelationshipRecord getLockedRelationshipRecord( long id )
+    {
+        getWriteLock( new LockableRelationship( id ) );
+        RelationshipRecord rel = getRelationshipRecord( id );
+        if ( rel == null )
+        {
+            rel = getRelationshipStore().getRecord( id );
+            addRelationshipRecord( rel );
+        }
+        return rel;
+    }
+
     @Override
     public void nodeCreate( long nodeId )
     {
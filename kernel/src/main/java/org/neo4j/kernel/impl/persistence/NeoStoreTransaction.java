@@ -19,6 +19,7 @@
  */
 package org.neo4j.kernel.impl.persistence;
 
+import java.util.Iterator;
 import java.util.Map;
 
 import javax.transaction.xa.XAResource;
@@ -267,6 +268,24 @@ public interface NeoStoreTransaction
      */
     public RelationshipRecord relLoadLight( long id );
 
+    /**
+     * Scans the node records in use in the store, in id order, many records
+     * at a time. Only committed records are seen, not the changes made in
+     * this transaction.
+     *
+     * @return the light node records in use.
+     */
+    public Iterator<NodeRecord> nodeScan();
+
+    /**
+     * Scans the relationship records in use in the store, in id order, many
+     * records at a time. Only committed records are seen, not the changes
+     * made in this transaction.
+     *
+     * @return the light relationship records in use.
+     */
+    public Iterator<RelationshipRecord> relScan();
+
     /**
      * Loads and returns all the available RelationshipTypes that are stored.
      *
@@ -305,6 +324,30 @@ public interface NeoStoreTransaction
     public Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreRelationships(
             long nodeId, long position );
 
+    /**
+     * @return <code>true</code> if the relationships of a node can be read
+     *         per type and direction without reading the others, i.e. if
+     *         the relationship chains of the store are grouped.
+     */
+    public boolean isRelationshipChainGrouped();
+
+    /**
+     * Returns where to start reading the relationships of a node with a
+     * certain type and direction, {@link DirectionWrapper#BOTH} meaning
+     * loops. With grouped relationship chains that is the first of them,
+     * otherwise it is the start of the chain.
+     */
+    public long getRelationshipChainPosition( long nodeId, int type, DirectionWrapper direction );
+
+    /*
+     * Like getMoreRelationships( nodeId, position ), but only returns the
+     * relationships with the given type and direction, starting at a
+     * position given by getRelationshipChainPosition( nodeId, type,
+     * direction ).
+     */
+    public Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreRelationships(
+            long nodeId, long position, int type, DirectionWrapper direction );
+
     /**
      * Returns an array view of the ids of the nodes that have been created in
      * this transaction.
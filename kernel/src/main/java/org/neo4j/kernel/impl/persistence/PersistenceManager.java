@@ -19,6 +19,7 @@
  */
 package org.neo4j.kernel.impl.persistence;
 
+import java.util.Iterator;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -108,6 +109,22 @@ public class PersistenceManager
         return getReadOnlyResource().getMoreRelationships( nodeId, position );
     }
 
+    public boolean isRelationshipChainGrouped()
+    {
+        return getReadOnlyResourceIfPossible().isRelationshipChainGrouped();
+    }
+
+    public long getRelationshipChainPosition( long nodeId, int type, DirectionWrapper direction )
+    {
+        return getReadOnlyResourceIfPossible().getRelationshipChainPosition( nodeId, type, direction );
+    }
+
+    public Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreRelationships(
+            long nodeId, long position, int type, DirectionWrapper direction )
+    {
+        return getReadOnlyResource().getMoreRelationships( nodeId, position, type, direction );
+    }
+
     public ArrayMap<Integer,PropertyData> loadNodeProperties( long nodeId, boolean light )
     {
         return getReadOnlyResourceIfPossible().nodeLoadProperties( nodeId, light );
@@ -124,6 +141,25 @@ public class PersistenceManager
         return getReadOnlyResourceIfPossible().relLoadLight( id );
     }
 
+    public Iterator<NodeRecord> scanNodes()
+    {
+        return getReadOnlyResourceIfPossible().nodeScan();
+    }
+
+    public Iterator<RelationshipRecord> scanRelationships()
+    {
+        return getReadOnlyResourceIfPossible().relScan();
+    }
+
+    /**
+     * @return whether or not the transaction bound to the current thread, if
+     *         any, has made any changes to the store.
+     */
+    public boolean hasTransactionState()
+    {
+        return txConnectionMap.get( getCurrentTransaction() ) != null;
+    }
+
     public NameData[] loadAllRelationshipTypes()
     {
         return getReadOnlyResourceIfPossible().loadRelationshipTypes();
@@ -0,0 +1,241 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.storemigration;
+
+import static org.neo4j.kernel.impl.nioneo.store.RelationshipChains.keyOf;
+import static org.neo4j.kernel.impl.nioneo.store.RelationshipChains.nextOf;
+import static org.neo4j.kernel.impl.nioneo.store.RelationshipChains.setNext;
+import static org.neo4j.kernel.impl.nioneo.store.RelationshipChains.setPrev;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.neo4j.kernel.CommonFactories;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.IdGeneratorFactory;
+import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
+import org.neo4j.kernel.impl.nioneo.store.InvalidRecordException;
+import org.neo4j.kernel.impl.nioneo.store.NeoStore;
+import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
+import org.neo4j.kernel.impl.nioneo.store.NodeStore;
+import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupIndex;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
+import org.neo4j.kernel.impl.storemigration.monitoring.MigrationProgressMonitor;
+import org.neo4j.kernel.impl.storemigration.monitoring.VisibleMigrationProgressMonitor;
+
+/**
+ * Relinks the relationship chain of every node in a store so that its
+ * relationships with the same type and direction are next to each other,
+ * and then marks the store as one with grouped relationship chains, see
+ * {@link RelationshipGroupIndex}. The order of the relationships within a
+ * group is kept. Chains that already are grouped are left as they are.
+ * <p>
+ * The store must not be in use, and must have been shut down cleanly.
+ * Either run it as a tool, with the store directory as argument, or have
+ * it run on startup with {@link Config#GROUP_RELATIONSHIP_CHAINS}.
+ */
+public class RelationshipChainGrouper
+{
+    private static final int POSITION_BITS = 40;
+
+    private final MigrationProgressMonitor progressMonitor;
+
+    public RelationshipChainGrouper( MigrationProgressMonitor progressMonitor )
+    {
+        this.progressMonitor = progressMonitor;
+    }
+
+    public static void main( String[] args )
+    {
+        String storeDir = args[0];
+        Map<Object,Object> config = new HashMap<Object,Object>();
+        config.put( IdGeneratorFactory.class, CommonFactories.defaultIdGeneratorFactory() );
+        config.put( FileSystemAbstraction.class, CommonFactories.defaultFileSystemAbstraction() );
+        config.put( "neo_store", new File( storeDir, NeoStore.DEFAULT_NAME ).getPath() );
+        NeoStore neoStore = new NeoStore( config );
+        try
+        {
+            long startTime = System.currentTimeMillis();
+            new RelationshipChainGrouper( new VisibleMigrationProgressMonitor( System.out ) ).group( neoStore );
+            long duration = System.currentTimeMillis() - startTime;
+            System.out.printf( "Grouping completed in %d s%n", duration / 1000 );
+        }
+        finally
+        {
+            neoStore.close();
+        }
+    }
+
+    public void group( NeoStore neoStore )
+    {
+        if ( neoStore.getRelationshipGroups() != null )
+        {
+            return;
+        }
+        progressMonitor.started();
+        NodeStore nodeStore = neoStore.getNodeStore();
+        RelationshipStore relStore = neoStore.getRelationshipStore();
+        Map<Long,long[]> denseNodes = new HashMap<Long,long[]>();
+        int denseNodeThreshold = denseNodeThreshold( neoStore );
+        long highId = Math.max( 1, nodeStore.getHighId() );
+        int percent = 0;
+        long[] chain = new long[16];
+        Iterator<NodeRecord> nodes = nodeStore.scan();
+        while ( nodes.hasNext() )
+        {
+            NodeRecord node = nodes.next();
+            int length = 0;
+            long maxLength = relStore.getHighId();
+            long position = node.getNextRel();
+            while ( position != Record.NO_NEXT_RELATIONSHIP.intValue() )
+            {
+                RelationshipRecord record = relStore.getRecord( position );
+                if ( ++length > maxLength )
+                {
+                    throw new InvalidRecordException( "Relationship chain of " + node + " has a cycle" );
+                }
+                if ( length > chain.length )
+                {
+                    chain = Arrays.copyOf( chain, chain.length * 2 );
+                }
+                chain[length - 1] = ((long) keyOf( record, node.getId() ) << POSITION_BITS) | position;
+                position = nextOf( record, node.getId() );
+            }
+            if ( !isGrouped( chain, length ) )
+            {
+                relink( nodeStore, relStore, node, chain, length );
+            }
+            if ( length >= denseNodeThreshold )
+            {
+                denseNodes.put( node.getId(), groupsOf( chain, length ) );
+            }
+            int nodePercent = (int) (node.getId() * 100 / highId);
+            while ( percent < nodePercent )
+            {
+                progressMonitor.percentComplete( ++percent );
+            }
+        }
+        RelationshipGroupIndex groups = neoStore.enableRelationshipGroups();
+        for ( Map.Entry<Long,long[]> entry : denseNodes.entrySet() )
+        {
+            groups.setGroups( entry.getKey(), entry.getValue() );
+        }
+        while ( percent < 100 )
+        {
+            progressMonitor.percentComplete( ++percent );
+        }
+        progressMonitor.finished();
+    }
+
+    private static int denseNodeThreshold( NeoStore neoStore )
+    {
+        String threshold = (String) neoStore.getConfig().get( Config.DENSE_NODE_THRESHOLD );
+        return threshold != null ? Integer.parseInt( threshold ) :
+                RelationshipGroupIndex.DEFAULT_DENSE_NODE_THRESHOLD;
+    }
+
+    private static int keyAt( long[] chain, int i )
+    {
+        return (int) (chain[i] >>> POSITION_BITS);
+    }
+
+    private static long idAt( long[] chain, int i )
+    {
+        return chain[i] & ((1L << POSITION_BITS) - 1);
+    }
+
+    private static boolean isGrouped( long[] chain, int length )
+    {
+        for ( int i = 1; i < length; i++ )
+        {
+            if ( keyAt( chain, i ) != keyAt( chain, i - 1 ) )
+            {
+                for ( int j = 0; j < i - 1; j++ )
+                {
+                    if ( keyAt( chain, j ) == keyAt( chain, i ) )
+                    {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sorts the chain by group, keeping the order within groups since the
+     * relationship ids are in chain order only by coincidence, and links
+     * it up in that order.
+     */
+    private static void relink( NodeStore nodeStore, RelationshipStore relStore, NodeRecord node,
+            long[] chain, int length )
+    {
+        long[] order = new long[length];
+        for ( int i = 0; i < length; i++ )
+        {
+            order[i] = ((long) keyAt( chain, i ) << 32) | i;
+        }
+        Arrays.sort( order );
+        long[] grouped = new long[length];
+        for ( int i = 0; i < length; i++ )
+        {
+            grouped[i] = chain[(int) order[i]];
+        }
+        System.arraycopy( grouped, 0, chain, 0, length );
+        long nodeId = node.getId();
+        for ( int i = 0; i < length; i++ )
+        {
+            RelationshipRecord record = relStore.getRecord( idAt( chain, i ) );
+            setPrev( record, nodeId, i > 0 ? idAt( chain, i - 1 ) : Record.NO_PREV_RELATIONSHIP.intValue() );
+            setNext( record, nodeId, i < length - 1 ? idAt( chain, i + 1 ) :
+                    Record.NO_NEXT_RELATIONSHIP.intValue() );
+            relStore.updateRecord( record );
+        }
+        node.setNextRel( idAt( chain, 0 ) );
+        nodeStore.updateRecord( node );
+    }
+
+    private static long[] groupsOf( long[] chain, int length )
+    {
+        int count = 0;
+        for ( int i = 0; i < length; i++ )
+        {
+            if ( i == 0 || keyAt( chain, i ) != keyAt( chain, i - 1 ) )
+            {
+                count++;
+            }
+        }
+        long[] groups = new long[count * 2];
+        for ( int i = 0, g = 0; i < length; i++ )
+        {
+            if ( i == 0 || keyAt( chain, i ) != keyAt( chain, i - 1 ) )
+            {
+                groups[g++] = keyAt( chain, i );
+                groups[g++] = idAt( chain, i );
+            }
+        }
+        return groups;
+    }
+}
@@ -49,17 +49,37 @@ import org.neo4j.kernel.info.WaitingThread;
  * <p>
  * LockManager just maps locks to resources and they do all the hard work
  * together with a resource allocation graph.
+ * <p>
+ * The resource to lock mapping is split up in a number of stripes, each with
+ * its own monitor, so that transactions locking different resources don't
+ * serialize on one shared map.
  */
 public class LockManager
 {
-    private final Map<Object,RWLock> resourceLockMap =
-        new HashMap<Object,RWLock>();
+    private static final int STRIPE_COUNT = 128; // must be a power of two
+
+    private final Map<Object,RWLock>[] lockStripes;
 
     private final RagManager ragManager;
 
+    @SuppressWarnings( "unchecked" )
     public LockManager( TransactionManager tm )
     {
         ragManager = new RagManager( tm );
+        lockStripes = new Map[STRIPE_COUNT];
+        for ( int i = 0; i < lockStripes.length; i++ )
+        {
+            lockStripes[i] = new HashMap<Object,RWLock>();
+        }
+    }
+
+    private Map<Object,RWLock> stripeFor( Object resource )
+    {
+        int hash = resource.hashCode();
+        // spread the bits, resources often have sequential hash codes
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return lockStripes[hash & (STRIPE_COUNT - 1)];
     }
 
     public long getDetectedDeadlockCount()
@@ -88,13 +108,14 @@ public class LockManager
         }
 
         RWLock lock = null;
-        synchronized ( resourceLockMap )
+        Map<Object,RWLock> stripe = stripeFor( resource );
+        synchronized ( stripe )
         {
-            lock = resourceLockMap.get( resource );
+            lock = stripe.get( resource );
             if ( lock == null )
             {
                 lock = new RWLock( resource, ragManager );
-                resourceLockMap.put( resource, lock );
+                stripe.put( resource, lock );
             }
             lock.mark();
         }
@@ -122,13 +143,14 @@ public class LockManager
         }
 
         RWLock lock = null;
-        synchronized ( resourceLockMap )
+        Map<Object,RWLock> stripe = stripeFor( resource );
+        synchronized ( stripe )
         {
-            lock = resourceLockMap.get( resource );
+            lock = stripe.get( resource );
             if ( lock == null )
             {
                 lock = new RWLock( resource, ragManager );
-                resourceLockMap.put( resource, lock );
+                stripe.put( resource, lock );
             }
             lock.mark();
         }
@@ -154,9 +176,10 @@ public class LockManager
         }
 
         RWLock lock = null;
-        synchronized ( resourceLockMap )
+        Map<Object,RWLock> stripe = stripeFor( resource );
+        synchronized ( stripe )
         {
-            lock = resourceLockMap.get( resource );
+            lock = stripe.get( resource );
             if ( lock == null )
             {
                 throw new LockNotFoundException( "Lock not found for: "
@@ -166,7 +189,7 @@ public class LockManager
                 lock.getWriteCount() == 0 &&
                 lock.getWaitingThreadsCount() == 0 )
             {
-                resourceLockMap.remove( resource );
+                stripe.remove( resource );
             }
             lock.releaseReadLock(tx);
         }
@@ -191,9 +214,10 @@ public class LockManager
         }
 
         RWLock lock = null;
-        synchronized ( resourceLockMap )
+        Map<Object,RWLock> stripe = stripeFor( resource );
+        synchronized ( stripe )
         {
-            lock = resourceLockMap.get( resource );
+            lock = stripe.get( resource );
             if ( lock == null )
             {
                 throw new LockNotFoundException( "Lock not found for: "
@@ -203,7 +227,7 @@ public class LockManager
                 lock.getWriteCount() == 1 &&
                 lock.getWaitingThreadsCount() == 0 )
             {
-                resourceLockMap.remove( resource );
+                stripe.remove( resource );
             }
             lock.releaseWriteLock(tx);
         }
@@ -219,14 +243,15 @@ public class LockManager
     public void dumpLocksOnResource( Object resource )
     {
         RWLock lock = null;
-        synchronized ( resourceLockMap )
+        Map<Object,RWLock> stripe = stripeFor( resource );
+        synchronized ( stripe )
         {
-            if ( !resourceLockMap.containsKey( resource ) )
+            if ( !stripe.containsKey( resource ) )
             {
                 System.out.println( "No locks on " + resource );
                 return;
             }
-            lock = resourceLockMap.get( resource );
+            lock = stripe.get( resource );
         }
         lock.dumpStack();
     }
@@ -250,11 +275,14 @@ public class LockManager
      */
     private <V extends Visitor<LockInfo>> V eachLock( V visitor )
     {
-        synchronized ( resourceLockMap )
+        for ( Map<Object,RWLock> stripe : lockStripes )
         {
-            for ( RWLock lock : resourceLockMap.values() )
+            synchronized ( stripe )
             {
-                if ( visitor.visit( lock.info() ) ) break;
+                for ( RWLock lock : stripe.values() )
+                {
+                    if ( visitor.visit( lock.info() ) ) return visitor;
+                }
             }
         }
         return visitor;
@@ -274,11 +302,14 @@ public class LockManager
     private <V extends Visitor<LockInfo>> V eachAwaitedLock( V visitor, long minWaitTime )
     {
         long waitStart = System.currentTimeMillis() - minWaitTime;
-        synchronized ( resourceLockMap )
+        for ( Map<Object,RWLock> stripe : lockStripes )
         {
-            for ( RWLock lock : resourceLockMap.values() )
+            synchronized ( stripe )
             {
-                if ( lock.acceptVisitorIfWaitedSinceBefore( visitor, waitStart ) ) break;
+                for ( RWLock lock : stripe.values() )
+                {
+                    if ( lock.acceptVisitorIfWaitedSinceBefore( visitor, waitStart ) ) return visitor;
+                }
             }
         }
         return visitor;
@@ -21,17 +21,18 @@ package org.neo4j.kernel.impl.transaction;
 
 import org.neo4j.graphdb.TransactionFailureException;
 import org.neo4j.kernel.DeadlockDetectedException;
-import org.neo4j.kernel.impl.util.ArrayMap;
 
 import javax.transaction.SystemException;
 import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -55,6 +56,12 @@ import java.util.concurrent.atomic.AtomicInteger;
  * traverse node nodespace starting on the resource and see if we can get back
  * to the tx ( T1 wants to wait on R1 and R1->T2->R2->T3->R8->T1 <==>
  * deadlock!).
+ * <p>
+ * Acquiring and releasing locks only updates the concurrent resource map, so
+ * uncontended locking never touches a shared monitor. Only transactions that
+ * are about to wait synchronize on this manager while they check the edges
+ * reachable from the resource, since two transactions closing a cycle at the
+ * same time must not both miss it.
  */
 class RagManager
 {
@@ -71,12 +78,15 @@ class RagManager
     // in a DeadlockDetectedException the transaction must wait
     // o When the transaction wakes up from waiting on a resource the
     // stopWaitOn( resource ) method must be invoked
+    // o lockAcquired and lockReleased for a resource are invoked while
+    // holding the monitor of that resource (the RWLock), which is what keeps
+    // the per resource tx lists consistent without locking this manager
 
-    private final Map<Object,List<Transaction>> resourceMap =
-        new HashMap<Object,List<Transaction>>();
+    private final ConcurrentMap<Object,List<Transaction>> resourceMap =
+        new ConcurrentHashMap<Object,List<Transaction>>();
 
-    private final ArrayMap<Transaction,Object> waitingTxMap =
-        new ArrayMap<Transaction,Object>( 5, false, true );
+    private final ConcurrentMap<Transaction,Object> waitingTxMap =
+        new ConcurrentHashMap<Transaction,Object>();
 
     private final TransactionManager tm;
 
@@ -92,7 +102,7 @@ class RagManager
         return deadlockCount.longValue();
     }
 
-    synchronized void lockAcquired( Object resource, Transaction tx )
+    void lockAcquired( Object resource, Transaction tx )
     {
         List<Transaction> lockingTxList = resourceMap.get( resource );
         if ( lockingTxList != null )
@@ -102,13 +112,13 @@ class RagManager
         }
         else
         {
-            lockingTxList = new LinkedList<Transaction>();
+            lockingTxList = new CopyOnWriteArrayList<Transaction>();
             lockingTxList.add( tx );
             resourceMap.put( resource, lockingTxList );
         }
     }
 
-    synchronized void lockReleased( Object resource, Transaction tx )
+    void lockReleased( Object resource, Transaction tx )
     {
         List<Transaction> lockingTxList = resourceMap.get( resource );
         if ( lockingTxList == null )
@@ -126,7 +136,7 @@ class RagManager
         }
     }
 
-    synchronized void stopWaitOn( Object resource, Transaction tx )
+    void stopWaitOn( Object resource, Transaction tx )
     {
         if ( waitingTxMap.remove( tx ) == null )
         {
@@ -151,7 +161,7 @@ class RagManager
         }
 
         Iterator<Transaction> itr = lockingTxList.iterator();
-        List<Transaction> checkedTransactions = new LinkedList<Transaction>();
+        Set<Transaction> checkedTransactions = new HashSet<Transaction>();
         Stack<Object> graphStack = new Stack<Object>();
         // has resource,transaction interleaved
         graphStack.push( resource );
@@ -191,8 +201,8 @@ class RagManager
         waitingTxMap.put( tx, resource );
     }
 
-    private synchronized void checkWaitOnRecursive( Transaction lockingTx,
-        Transaction waitingTx, List<Transaction> checkedTransactions,
+    private void checkWaitOnRecursive( Transaction lockingTx,
+        Transaction waitingTx, Set<Transaction> checkedTransactions,
         Stack<Object> graphStack ) throws DeadlockDetectedException
     {
         if ( lockingTx.equals( waitingTx ) )
@@ -283,8 +293,14 @@ class RagManager
         while ( resources.hasNext() )
         {
             Object resource = resources.next();
+            List<Transaction> lockingTxList = resourceMap.get( resource );
+            if ( lockingTxList == null )
+            {
+                // released since we got the key
+                continue;
+            }
             System.out.print( "" + resource + "->" );
-            Iterator<Transaction> itr = resourceMap.get( resource ).iterator();
+            Iterator<Transaction> itr = lockingTxList.iterator();
             if ( !itr.hasNext() )
             {
                 System.out.println( " Error empty list found" );
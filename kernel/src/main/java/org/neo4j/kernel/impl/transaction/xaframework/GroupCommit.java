@@ -0,0 +1,168 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import java.io.IOException;
+
+/**
+ * Lets transactions committing concurrently share one force of the logical
+ * log. A committing transaction writes its commit entry and registers it with
+ * {@link #appended()} while holding the log monitor, then leaves the monitor
+ * and calls {@link #awaitForced(Forcer)}. The first thread to get there
+ * becomes the leader and forces the log once on behalf of everything appended
+ * so far; the others wait for that force and are released together. A thread
+ * whose entry was appended after the leader took its snapshot waits for the
+ * next force, which it may end up doing itself.
+ * <p>
+ * An optional batch window makes the leader wait a little before forcing,
+ * giving more committers the chance to join the batch.
+ */
+class GroupCommit
+{
+    interface Forcer
+    {
+        /**
+         * Forces everything appended so far to disk.
+         *
+         * @return the append count that is covered by the force.
+         */
+        long force() throws IOException;
+    }
+
+    private final long windowMillis;
+    private final Object lock = new Object();
+
+    // written with the log monitor held
+    private volatile long appended;
+    // written with lock held
+    private volatile long forced;
+    // guarded by lock
+    private boolean forcing;
+
+    // statistics, guarded by lock
+    private long forceCount;
+    private long committedCount;
+    private long maxBatchSize;
+    private long totalForceTimeNanos;
+    private long maxForceTimeNanos;
+
+    GroupCommit( long windowMillis )
+    {
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Registers a commit entry as written to the log, but not yet forced.
+     * Must be called with the log monitor held.
+     */
+    void appended()
+    {
+        appended++;
+    }
+
+    long appendedCount()
+    {
+        return appended;
+    }
+
+    /**
+     * Returns when everything appended before this call has been forced.
+     */
+    void awaitForced( Forcer forcer ) throws IOException
+    {
+        long target = appended;
+        if ( forced >= target )
+        {
+            return;
+        }
+        synchronized ( lock )
+        {
+            while ( forced < target && forcing )
+            {
+                try
+                {
+                    lock.wait();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.interrupted();
+                }
+            }
+            if ( forced >= target )
+            {
+                return;
+            }
+            forcing = true;
+        }
+
+        // this thread is the leader for the next batch
+        long upTo = -1;
+        long time = 0;
+        try
+        {
+            if ( windowMillis > 0 )
+            {
+                sleepThroughWindow();
+            }
+            long start = System.nanoTime();
+            upTo = forcer.force();
+            time = System.nanoTime() - start;
+        }
+        finally
+        {
+            synchronized ( lock )
+            {
+                if ( upTo > forced )
+                {
+                    long batchSize = upTo - forced;
+                    forced = upTo;
+                    forceCount++;
+                    committedCount += batchSize;
+                    maxBatchSize = Math.max( maxBatchSize, batchSize );
+                    totalForceTimeNanos += time;
+                    maxForceTimeNanos = Math.max( maxForceTimeNanos, time );
+                }
+                forcing = false;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void sleepThroughWindow()
+    {
+        try
+        {
+            Thread.sleep( windowMillis );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.interrupted();
+        }
+    }
+
+    GroupCommitStats getStats()
+    {
+        synchronized ( lock )
+        {
+            return new GroupCommitStats( forceCount, committedCount, maxBatchSize,
+                    totalForceTimeNanos, maxForceTimeNanos );
+        }
+    }
+}
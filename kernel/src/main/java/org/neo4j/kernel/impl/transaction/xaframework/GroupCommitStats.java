@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+public class GroupCommitStats
+{
+    private final long forceCount;
+    private final long committedCount;
+    private final long maxBatchSize;
+    private final long totalForceTimeNanos;
+    private final long maxForceTimeNanos;
+
+    public GroupCommitStats( long forceCount, long committedCount, long maxBatchSize,
+            long totalForceTimeNanos, long maxForceTimeNanos )
+    {
+        this.forceCount = forceCount;
+        this.committedCount = committedCount;
+        this.maxBatchSize = maxBatchSize;
+        this.totalForceTimeNanos = totalForceTimeNanos;
+        this.maxForceTimeNanos = maxForceTimeNanos;
+    }
+
+    /**
+     * @return the number of forces done on behalf of committing transactions.
+     */
+    public long getForceCount()
+    {
+        return forceCount;
+    }
+
+    /**
+     * @return the number of committed transactions made durable by those forces.
+     */
+    public long getCommittedCount()
+    {
+        return committedCount;
+    }
+
+    public double getAverageBatchSize()
+    {
+        return forceCount == 0 ? 0 : (double) committedCount / forceCount;
+    }
+
+    public long getMaxBatchSize()
+    {
+        return maxBatchSize;
+    }
+
+    public double getAverageForceTimeMillis()
+    {
+        return forceCount == 0 ? 0 : totalForceTimeNanos / 1000000d / forceCount;
+    }
+
+    public double getMaxForceTimeMillis()
+    {
+        return maxForceTimeNanos / 1000000d;
+    }
+}
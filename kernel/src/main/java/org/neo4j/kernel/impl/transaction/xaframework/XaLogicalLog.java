@@ -25,6 +25,7 @@ import static org.neo4j.kernel.impl.transaction.xaframework.LogExtractor.newLogR
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.util.HashMap;
@@ -40,6 +41,7 @@ import javax.transaction.xa.Xid;
 
 import org.neo4j.helpers.Exceptions;
 import org.neo4j.helpers.Pair;
+import org.neo4j.kernel.Config;
 import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
 import org.neo4j.kernel.impl.transaction.xaframework.LogEntry.Commit;
 import org.neo4j.kernel.impl.transaction.xaframework.LogEntry.Start;
@@ -110,6 +112,17 @@ public class XaLogicalLog implements LogLoader
 
     private final LogPositionCache positionCache = new LogPositionCache();
     private final FileSystemAbstraction fileSystem;
+    private final GroupCommit groupCommit;
+    // appended count of groupCommit when the log was last forced before its
+    // channel was closed, guarded by the monitor of this log
+    private long appendedCountForcedOnRelease = -1;
+    private final GroupCommit.Forcer groupCommitForcer = new GroupCommit.Forcer()
+    {
+        public long force() throws IOException
+        {
+            return forceForGroupCommit();
+        }
+    };
 
     XaLogicalLog( String fileName, XaResourceManager xaRm, XaCommandFactory cf,
             XaTransactionFactory xaTf, Map<Object, Object> config )
@@ -125,6 +138,7 @@ public class XaLogicalLog implements LogLoader
         sharedBuffer = ByteBuffer.allocateDirect( 9 + Xid.MAXGTRIDSIZE
             + Xid.MAXBQUALSIZE * 10 );
         msgLog = (StringLogger) config.get( StringLogger.class );
+        groupCommit = createGroupCommit( config );
 
         // We should turn keep-logs on if there are previous logs around,
         // this so that e.g. temporary shell sessions or operations don't create
@@ -132,6 +146,16 @@ public class XaLogicalLog implements LogLoader
         keepLogs = hasPreviousLogs();
     }
 
+    private static GroupCommit createGroupCommit( Map<Object, Object> config )
+    {
+        if ( !"true".equalsIgnoreCase( (String) config.get( Config.GROUP_COMMIT ) ) )
+        {
+            return null;
+        }
+        String window = (String) config.get( Config.GROUP_COMMIT_WINDOW );
+        return new GroupCommit( window != null ? Long.parseLong( window.trim() ) : 0 );
+    }
+
     synchronized void open() throws IOException
     {
         String activeFileName = fileName + ".active";
@@ -345,7 +369,7 @@ public class XaLogicalLog implements LogLoader
         {
             cacheTxStartPosition( txId, startEntry.getMasterId(), startEntry );
             LogIoUtils.writeCommit( false, writeBuffer, identifier, txId, System.currentTimeMillis() );
-            forceMode.force( writeBuffer );
+            forceCommit( forceMode );
         }
         catch ( IOException e )
         {
@@ -354,6 +378,97 @@ public class XaLogicalLog implements LogLoader
         }
     }
 
+    /*
+     * With group commit the force of a forced commit is deferred to
+     * awaitCommitsForced(), which the committer calls after it has left
+     * the monitors of this log and the resource manager.
+     */
+    private void forceCommit( ForceMode forceMode ) throws IOException
+    {
+        if ( groupCommit != null && forceMode == ForceMode.forced )
+        {
+            writeBuffer.writeOut();
+            groupCommit.appended();
+        }
+        else
+        {
+            forceMode.force( writeBuffer );
+        }
+    }
+
+    /**
+     * Returns when all commit entries written so far have been forced to
+     * disk. Must not be called with the monitor of this log held. With group
+     * commit disabled this returns right away, since commits are then forced
+     * as they are written.
+     *
+     * @throws IOException if the log couldn't be forced.
+     */
+    public void awaitCommitsForced() throws IOException
+    {
+        if ( groupCommit != null )
+        {
+            groupCommit.awaitForced( groupCommitForcer );
+        }
+    }
+
+    /**
+     * @return {@code true} if forced commits written to this log are forced
+     *         by {@link #awaitCommitsForced()} rather than when written.
+     */
+    public boolean isGroupCommitEnabled()
+    {
+        return groupCommit != null;
+    }
+
+    private long forceForGroupCommit() throws IOException
+    {
+        LogBuffer buffer;
+        long upTo;
+        synchronized ( this )
+        {
+            upTo = groupCommit.appendedCount();
+            buffer = writeBuffer;
+            buffer.writeOut();
+        }
+        // force outside of the monitor so that other transactions
+        // can keep appending to the log in the meantime
+        try
+        {
+            buffer.getFileChannel().force( false );
+        }
+        catch ( ClosedChannelException e )
+        {
+            // The log was rotated or closed after we wrote out. That's only
+            // fine if the channel was forced past upTo before it was closed.
+            synchronized ( this )
+            {
+                if ( appendedCountForcedOnRelease < upTo )
+                {
+                    throw e;
+                }
+            }
+        }
+        return upTo;
+    }
+
+    private void markForcedOnRelease()
+    {
+        if ( groupCommit != null )
+        {
+            appendedCountForcedOnRelease = groupCommit.appendedCount();
+        }
+    }
+
+    /**
+     * @return statistics about group commit forces, or {@code null} if group
+     *         commit isn't enabled for this log.
+     */
+    public GroupCommitStats getGroupCommitStats()
+    {
+        return groupCommit != null ? groupCommit.getStats() : null;
+    }
+
     private synchronized void cacheTxStartPosition( long txId, int masterId,
             LogEntry.Start startEntry )
     {
@@ -422,7 +537,7 @@ public class XaLogicalLog implements LogLoader
         {
             cacheTxStartPosition( txId, startEntry.getMasterId(), startEntry );
             LogIoUtils.writeCommit( true, writeBuffer, identifier, txId, System.currentTimeMillis() );
-            forceMode.force( writeBuffer );
+            forceCommit( forceMode );
         }
         catch ( IOException e )
         {
@@ -712,6 +827,7 @@ public class XaLogicalLog implements LogLoader
         if ( writeBuffer != null )
         {
             writeBuffer.force();
+            markForcedOnRelease();
         }
         fileChannel.close();
         fileChannel = null;
@@ -730,6 +846,7 @@ public class XaLogicalLog implements LogLoader
             log.info( "Close invoked with " + xidIdentMap.size() +
                 " running transaction(s). " );
             writeBuffer.force();
+            markForcedOnRelease();
             fileChannel.close();
             log.info( "Dirty log: " + fileName + "." + currentLog +
                 " now closed. Recovery will be started automatically next " +
@@ -37,6 +37,7 @@ import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
 import javax.transaction.xa.Xid;
 
+import org.neo4j.helpers.Exceptions;
 import org.neo4j.kernel.impl.transaction.AbstractTransactionManager;
 import org.neo4j.kernel.impl.util.ArrayMap;
 import org.neo4j.kernel.impl.util.StringLogger;
@@ -49,6 +50,8 @@ public class XaResourceManager
     private final ArrayMap<Xid,XidStatus> xidMap =
         new ArrayMap<Xid,XidStatus>();
     private int recoveredTxCount = 0;
+    // committed transactions waiting for the group commit force, in commit order
+    private final LinkedList<XaTransaction> awaitingForce = new LinkedList<XaTransaction>();
     private Set<TransactionInfo> recoveredDoneRecords = new HashSet<TransactionInfo>();
 
     private XaLogicalLog log = null;
@@ -410,7 +413,89 @@ public class XaResourceManager
         return xaTransaction;
     }
 
-    synchronized XaTransaction commit( Xid xid, boolean onePhase )
+    XaTransaction commit( Xid xid, boolean onePhase ) throws XAException
+    {
+        XaTransaction xaTransaction = writeCommit( xid, onePhase );
+        if ( isAppliedAfterForce( xaTransaction ) )
+        {
+            // With group commit the force happens here, outside of the
+            // monitor, so that concurrent commits can share it. The
+            // transaction is applied only once its commit entry is on disk.
+            try
+            {
+                log.awaitCommitsForced();
+            }
+            catch ( IOException e )
+            {
+                synchronized ( this )
+                {
+                    awaitingForce.remove( xaTransaction );
+                    notifyAll();
+                }
+                throw Exceptions.withCause( new XAException(
+                        "Logical log unable to force commit of " + xid ), e );
+            }
+            applyInCommitOrder( xid, xaTransaction );
+        }
+        return xaTransaction;
+    }
+
+    private boolean isAppliedAfterForce( XaTransaction xaTransaction )
+    {
+        return log.isGroupCommitEnabled() && getForceMode() == ForceMode.forced
+                && !xaTransaction.isReadOnly() && !xaTransaction.isRecovered();
+    }
+
+    /*
+     * Transaction ids are derived from the last applied transaction, so
+     * transactions waiting for the group force are applied in the order
+     * their commit entries were written. Each is applied by its own thread
+     * since applying uses the state bound to the committing thread.
+     */
+    private synchronized void applyInCommitOrder( Xid xid, XaTransaction xaTransaction )
+            throws XAException
+    {
+        boolean interrupted = false;
+        try
+        {
+            while ( awaitingForce.getFirst() != xaTransaction )
+            {
+                try
+                {
+                    wait();
+                }
+                catch ( InterruptedException e )
+                {
+                    interrupted = true;
+                }
+            }
+            xaTransaction.commit();
+            log.done( xaTransaction.getIdentifier() );
+            xidMap.remove( xid );
+        }
+        finally
+        {
+            awaitingForce.remove( xaTransaction );
+            notifyAll();
+            if ( interrupted )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private long generateTxId( XaTransaction xaTransaction )
+    {
+        long txId = txIdGenerator.generate( dataSource, xaTransaction.getIdentifier() );
+        if ( !awaitingForce.isEmpty() )
+        {
+            // transactions awaiting the force haven't been applied yet
+            txId = Math.max( txId, awaitingForce.getLast().getCommitTxId() + 1 );
+        }
+        return txId;
+    }
+
+    private synchronized XaTransaction writeCommit( Xid xid, boolean onePhase )
         throws XAException
     {
         XidStatus status = xidMap.get( xid );
@@ -430,9 +515,7 @@ public class XaResourceManager
                 {
                     xaTransaction.prepare();
 
-                    long txId = txIdGenerator.generate( dataSource,
-                            xaTransaction.getIdentifier() );
-                    xaTransaction.setCommitTxId( txId );
+                    xaTransaction.setCommitTxId( generateTxId( xaTransaction ) );
                     log.commitOnePhase( xaTransaction.getIdentifier(),
                             xaTransaction.getCommitTxId(), getForceMode() );
                 }
@@ -449,14 +532,17 @@ public class XaResourceManager
             {
                 if ( !onePhase )
                 {
-                    long txId = txIdGenerator.generate( dataSource,
-                            xaTransaction.getIdentifier() );
-                    xaTransaction.setCommitTxId( txId );
+                    xaTransaction.setCommitTxId( generateTxId( xaTransaction ) );
                     log.commitTwoPhase( xaTransaction.getIdentifier(),
                             xaTransaction.getCommitTxId(), getForceMode() );
                 }
             }
             txStatus.markCommitStarted();
+            if ( isAppliedAfterForce( xaTransaction ) )
+            {
+                awaitingForce.addLast( xaTransaction );
+                return xaTransaction;
+            }
             if ( xaTransaction.isRecovered() && xaTransaction.getCommitTxId() == -1 )
             {
                 boolean previousRecoveredValue = dataSource.setRecovered( true );
@@ -687,6 +773,7 @@ public class XaResourceManager
                     log.doneInternal( recoveredTx.getIdentifier() );
                 }
                 recoveredDoneRecords.clear();
+                log.awaitCommitsForced();
             }
             catch ( IOException e )
             {
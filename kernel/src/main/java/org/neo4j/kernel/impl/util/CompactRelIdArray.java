@@ -0,0 +1,380 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable {@link RelIdArray} for keeping in the node cache once all
+ * relationships of a type have been loaded. The ids of each direction are
+ * stored as the difference to the previous id, zig-zag and variable length
+ * encoded, so that ids close to each other, which is the common case for
+ * relationships in the same chain, take one to three bytes each instead
+ * of the four or more bytes of an {@link RelIdArray.IdBlock} slot plus the
+ * objects around it.
+ *
+ * Arrays whose encoded ids fit in a long are kept in a field instead of in a
+ * separate byte array, which is what most nodes in a typical graph, those with
+ * a low degree, end up using.
+ *
+ * Iteration order is the same as for the array it was created from, so that
+ * a {@link RelIdIterator} over a {@link RelIdArray} that gets compacted while
+ * iterating can continue from where it was, see {@link RelIdIterator#updateSource(RelIdArray)}.
+ * Adding to a compact array is done by {@link #addAll(RelIdArray)}, which
+ * returns a new, regular, array.
+ */
+public abstract class CompactRelIdArray extends RelIdArray
+{
+    private static final DirectionWrapper[] DIRECTIONS = DirectionWrapper.values();
+    private static final int MAX_INLINED_BYTES = 8;
+
+    private CompactRelIdArray( String type )
+    {
+        super( type );
+    }
+
+    /**
+     * @return a compact copy of the ids in {@code source}.
+     */
+    public static RelIdArray from( RelIdArray source )
+    {
+        if ( source instanceof CompactRelIdArray )
+        {
+            return source;
+        }
+        byte[] buffer = new byte[16];
+        int length = 0;
+        int[] ends = new int[DIRECTIONS.length];
+        for ( DirectionWrapper direction : DIRECTIONS )
+        {
+            long previous = 0;
+            for ( RelIdIterator iterator = source.iteratorForAddedDirection( direction ); iterator.hasNext(); )
+            {
+                if ( length + 10 > buffer.length )
+                {
+                    byte[] newBuffer = new byte[buffer.length * 2];
+                    System.arraycopy( buffer, 0, newBuffer, 0, length );
+                    buffer = newBuffer;
+                }
+                long id = iterator.next();
+                length = encode( id - previous, buffer, length );
+                previous = id;
+            }
+            ends[direction.ordinal()] = length;
+        }
+        if ( length <= MAX_INLINED_BYTES )
+        {
+            long inlined = 0;
+            for ( int i = 0; i < length; i++ )
+            {
+                inlined |= ( buffer[i] & 0xFFL ) << ( i * 8 );
+            }
+            return new InlinedRelIdArray( source.getType(), inlined, ends );
+        }
+        byte[] data = new byte[length];
+        System.arraycopy( buffer, 0, data, 0, length );
+        return new PackedRelIdArray( source.getType(), data, ends );
+    }
+
+    private static int encode( long delta, byte[] target, int position )
+    {
+        long value = ( delta << 1 ) ^ ( delta >> 63 );
+        while ( ( value & ~0x7FL ) != 0 )
+        {
+            target[position++] = (byte) ( ( value & 0x7F ) | 0x80 );
+            value >>>= 7;
+        }
+        target[position++] = (byte) value;
+        return position;
+    }
+
+    abstract int byteAt( int index );
+
+    abstract int start( DirectionWrapper direction );
+
+    abstract int end( DirectionWrapper direction );
+
+    @Override
+    public void add( long id, DirectionWrapper direction )
+    {
+        throw new UnsupportedOperationException( "Compact relationship id arrays can't be modified" );
+    }
+
+    @Override
+    public RelIdArray addAll( RelIdArray source )
+    {
+        RelIdArray result = newSimilarInstance();
+        result.addAll( this );
+        return result.addAll( source );
+    }
+
+    @Override
+    public RelIdArray upgradeIfNeeded( RelIdArray capabilitiesToMatch )
+    {
+        if ( capabilitiesToMatch.hasLoops() && !hasLoops() )
+        {
+            RelIdArray result = new RelIdArrayWithLoops( getType() );
+            result.addAll( this );
+            return result;
+        }
+        return this;
+    }
+
+    @Override
+    public RelIdArray newSimilarInstance()
+    {
+        return hasLoops() ? new RelIdArrayWithLoops( getType() ) : new RelIdArray( getType() );
+    }
+
+    @Override
+    public RelIdArray shrink()
+    {
+        return this;
+    }
+
+    @Override
+    public RelIdArray compact()
+    {
+        return this;
+    }
+
+    @Override
+    public boolean hasLoops()
+    {
+        return start( DirectionWrapper.BOTH ) < end( DirectionWrapper.BOTH );
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return end( DirectionWrapper.BOTH ) == 0;
+    }
+
+    @Override
+    public boolean couldBeNeedingUpdate()
+    {
+        return false;
+    }
+
+    @Override
+    public RelIdIterator iterator( DirectionWrapper direction )
+    {
+        return new CompactRelIdIterator( this, directionsFor( direction ), null );
+    }
+
+    @Override
+    public RelIdIterator iteratorForAddedDirection( DirectionWrapper direction )
+    {
+        return new CompactRelIdIterator( this, new DirectionWrapper[] { direction }, null );
+    }
+
+    @Override
+    RelIdIterator iterator( DirectionWrapper[] directions, int[] positions )
+    {
+        return new CompactRelIdIterator( this, directions, positions );
+    }
+
+    private static class PackedRelIdArray extends CompactRelIdArray
+    {
+        private final byte[] data;
+        private final int inStart;
+        private final int loopStart;
+
+        PackedRelIdArray( String type, byte[] data, int[] ends )
+        {
+            super( type );
+            this.data = data;
+            this.inStart = ends[DirectionWrapper.OUTGOING.ordinal()];
+            this.loopStart = ends[DirectionWrapper.INCOMING.ordinal()];
+        }
+
+        @Override
+        int byteAt( int index )
+        {
+            return data[index];
+        }
+
+        @Override
+        int start( DirectionWrapper direction )
+        {
+            switch ( direction )
+            {
+            case OUTGOING: return 0;
+            case INCOMING: return inStart;
+            default: return loopStart;
+            }
+        }
+
+        @Override
+        int end( DirectionWrapper direction )
+        {
+            switch ( direction )
+            {
+            case OUTGOING: return inStart;
+            case INCOMING: return loopStart;
+            default: return data.length;
+            }
+        }
+    }
+
+    private static class InlinedRelIdArray extends CompactRelIdArray
+    {
+        private final long data;
+        private final byte inStart;
+        private final byte loopStart;
+        private final byte length;
+
+        InlinedRelIdArray( String type, long data, int[] ends )
+        {
+            super( type );
+            this.data = data;
+            this.inStart = (byte) ends[DirectionWrapper.OUTGOING.ordinal()];
+            this.loopStart = (byte) ends[DirectionWrapper.INCOMING.ordinal()];
+            this.length = (byte) ends[DirectionWrapper.BOTH.ordinal()];
+        }
+
+        @Override
+        int byteAt( int index )
+        {
+            return (byte) ( data >>> ( index * 8 ) );
+        }
+
+        @Override
+        int start( DirectionWrapper direction )
+        {
+            switch ( direction )
+            {
+            case OUTGOING: return 0;
+            case INCOMING: return inStart;
+            default: return loopStart;
+            }
+        }
+
+        @Override
+        int end( DirectionWrapper direction )
+        {
+            switch ( direction )
+            {
+            case OUTGOING: return inStart;
+            case INCOMING: return loopStart;
+            default: return length;
+            }
+        }
+    }
+
+    private static class CompactRelIdIterator implements RelIdIterator
+    {
+        private final CompactRelIdArray ids;
+        private final DirectionWrapper[] directions;
+        private final int[] offsets;
+        private final int[] positions;
+        private final long[] previous;
+        private int directionIndex;
+
+        CompactRelIdIterator( CompactRelIdArray ids, DirectionWrapper[] directions, int[] positions )
+        {
+            this.ids = ids;
+            this.directions = directions;
+            this.offsets = new int[directions.length];
+            this.positions = new int[directions.length];
+            this.previous = new long[directions.length];
+            for ( int i = 0; i < directions.length; i++ )
+            {
+                offsets[i] = ids.start( directions[i] );
+                for ( int skip = positions != null ? positions[i] : 0; skip > 0 && hasNext( i ); skip-- )
+                {
+                    next( i );
+                }
+            }
+        }
+
+        @Override
+        public String getType()
+        {
+            return ids.getType();
+        }
+
+        @Override
+        public RelIdArray getIds()
+        {
+            return ids;
+        }
+
+        @Override
+        public RelIdIterator updateSource( RelIdArray newSource )
+        {
+            return newSource == ids ? this : newSource.iterator( directions, positions );
+        }
+
+        private boolean hasNext( int index )
+        {
+            return offsets[index] < ids.end( directions[index] );
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while ( directionIndex < directions.length )
+            {
+                if ( hasNext( directionIndex ) )
+                {
+                    return true;
+                }
+                directionIndex++;
+            }
+            return false;
+        }
+
+        private long next( int index )
+        {
+            long value = 0;
+            int offset = offsets[index];
+            int shift = 0;
+            int b;
+            do
+            {
+                b = ids.byteAt( offset++ );
+                value |= (long) ( b & 0x7F ) << shift;
+                shift += 7;
+            }
+            while ( ( b & 0x80 ) != 0 );
+            offsets[index] = offset;
+            positions[index]++;
+            long delta = ( value >>> 1 ) ^ -( value & 1 );
+            return previous[index] += delta;
+        }
+
+        @Override
+        public long next()
+        {
+            if ( !hasNext() )
+            {
+                throw new NoSuchElementException();
+            }
+            return next( directionIndex );
+        }
+
+        @Override
+        public void doAnotherRound()
+        {
+            directionIndex = 0;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of non-negative longs kept as one bit per possible value, meant for
+ * store ids, where the values are dense: most ids up to the highest one are
+ * in use. The bits are kept in pages which are allocated when the first
+ * value in their range is added, so a set of values from a part of the id
+ * space doesn't pay for the rest of it.
+ *
+ * Each page covers {@value #IDS_PER_PAGE} ids in 32kB, so this uses less
+ * memory than a {@link LongHashSet} once more than about one in every 128
+ * ids in the pages in use are in the set.
+ */
+public class LongBitmapSet
+{
+    private static final int PAGE_BITS = 18;
+    static final int IDS_PER_PAGE = 1 << PAGE_BITS;
+    private static final int WORDS_PER_PAGE = IDS_PER_PAGE >>> 6;
+
+    private long[][] pages = new long[16][];
+    private int size;
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return {@code true} if the value wasn't in the set already.
+     */
+    public boolean add( long value )
+    {
+        if ( value < 0 )
+        {
+            throw new IllegalArgumentException( "Only non-negative values, not " + value );
+        }
+        int pageIndex = (int) (value >>> PAGE_BITS);
+        if ( pageIndex >= pages.length )
+        {
+            pages = Arrays.copyOf( pages, Math.max( pageIndex + 1, pages.length * 2 ) );
+        }
+        long[] page = pages[pageIndex];
+        if ( page == null )
+        {
+            page = pages[pageIndex] = new long[WORDS_PER_PAGE];
+        }
+        int word = ((int) value & (IDS_PER_PAGE - 1)) >>> 6;
+        long bit = 1L << value;
+        if ( (page[word] & bit) != 0 )
+        {
+            return false;
+        }
+        page[word] |= bit;
+        size++;
+        return true;
+    }
+
+    public boolean contains( long value )
+    {
+        if ( value < 0 )
+        {
+            return false;
+        }
+        int pageIndex = (int) (value >>> PAGE_BITS);
+        if ( pageIndex >= pages.length || pages[pageIndex] == null )
+        {
+            return false;
+        }
+        int word = ((int) value & (IDS_PER_PAGE - 1)) >>> 6;
+        return (pages[pageIndex][word] & (1L << value)) != 0;
+    }
+}
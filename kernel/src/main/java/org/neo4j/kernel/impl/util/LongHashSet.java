@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of non-negative longs, like node and relationship ids, which stores
+ * them in a single array using open addressing (linear probing), so that
+ * nothing is boxed and there is no object per entry.
+ */
+public class LongHashSet
+{
+    private static final long FREE = -1;
+
+    private long[] table;
+    private int shift;
+    private int size;
+
+    public LongHashSet()
+    {
+        this( 16 );
+    }
+
+    public LongHashSet( int expectedSize )
+    {
+        int bits = 4;
+        while ( (1 << bits) < expectedSize * 2 )
+        {
+            bits++;
+        }
+        allocate( bits );
+    }
+
+    private void allocate( int bits )
+    {
+        table = new long[1 << bits];
+        Arrays.fill( table, FREE );
+        shift = 64 - bits;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * @return {@code true} if the value wasn't in the set already.
+     */
+    public boolean add( long value )
+    {
+        if ( value < 0 )
+        {
+            throw new IllegalArgumentException( "Only non-negative values, not " + value );
+        }
+        int mask = table.length - 1;
+        int slot = slotFor( value );
+        for ( long existing = table[slot]; existing != FREE; existing = table[slot] )
+        {
+            if ( existing == value )
+            {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = value;
+        if ( ++size * 2 > table.length )
+        {
+            rehash();
+        }
+        return true;
+    }
+
+    public boolean contains( long value )
+    {
+        int mask = table.length - 1;
+        for ( int slot = slotFor( value );; slot = (slot + 1) & mask )
+        {
+            long existing = table[slot];
+            if ( existing == value )
+            {
+                return value != FREE;
+            }
+            if ( existing == FREE )
+            {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if the value was in the set.
+     */
+    public boolean remove( long value )
+    {
+        if ( value < 0 )
+        {
+            return false;
+        }
+        int mask = table.length - 1;
+        int slot = slotFor( value );
+        while ( table[slot] != value )
+        {
+            if ( table[slot] == FREE )
+            {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // move later values of the same run back, so that no lookup stops
+        // at the freed slot before reaching them
+        int free = slot;
+        for ( slot = (slot + 1) & mask; table[slot] != FREE; slot = (slot + 1) & mask )
+        {
+            int home = slotFor( table[slot] );
+            boolean reachableFromFree = free <= slot ? home <= free || home > slot
+                    : home <= free && home > slot;
+            if ( reachableFromFree )
+            {
+                table[free] = table[slot];
+                free = slot;
+            }
+        }
+        table[free] = FREE;
+        size--;
+        return true;
+    }
+
+    public void clear()
+    {
+        Arrays.fill( table, FREE );
+        size = 0;
+    }
+
+    /**
+     * @return The values in the set, in no particular order.
+     */
+    public long[] toArray()
+    {
+        long[] result = new long[size];
+        int i = 0;
+        for ( long value : table )
+        {
+            if ( value != FREE )
+            {
+                result[i++] = value;
+            }
+        }
+        return result;
+    }
+
+    private void rehash()
+    {
+        long[] oldTable = table;
+        allocate( 64 - shift + 1 );
+        int mask = table.length - 1;
+        for ( long value : oldTable )
+        {
+            if ( value != FREE )
+            {
+                int slot = slotFor( value );
+                while ( table[slot] != FREE )
+                {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = value;
+            }
+        }
+    }
+
+    private int slotFor( long value )
+    {
+        // the high bits of the product, which depend on all bits of the value
+        return (int) ((value * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of at most {@code maxSize} non-negative longs, which forgets the
+ * least recently used one when a new one is added to a full set. Looking up
+ * a value with {@link #add(long)} counts as using it, like a get from an
+ * access ordered {@link java.util.LinkedHashMap}.
+ *
+ * The values are kept in arrays, linked in order of use through their
+ * indexes, with an open addressing index from value to entry. The arrays
+ * start small and are doubled as the set grows, up to {@code maxSize}; after
+ * that nothing more is allocated. A {@code maxSize} above {@link #MAX_SIZE}
+ * is treated as {@link #MAX_SIZE}.
+ */
+public class LongLruSet
+{
+    /**
+     * The largest size the set can grow to, which keeps the index at no
+     * more than 2^30 slots.
+     */
+    public static final int MAX_SIZE = 1 << 29;
+
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int maxSize;
+    private long[] values;
+    // entries linked from the least to the most recently used
+    private int[] newer;
+    private int[] older;
+    // entry index + 1 for each slot, 0 for a free slot, at most half full
+    private int[] index;
+    private int shift;
+    private int size;
+    private int oldest = NONE;
+    private int newest = NONE;
+
+    public LongLruSet( int maxSize )
+    {
+        if ( maxSize < 1 )
+        {
+            throw new IllegalArgumentException( "maxSize=" + maxSize );
+        }
+        this.maxSize = Math.min( maxSize, MAX_SIZE );
+        allocate( Math.min( this.maxSize, INITIAL_CAPACITY ) );
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean contains( long value )
+    {
+        return find( value ) >= 0;
+    }
+
+    /**
+     * Adds the value, or marks it as the most recently used one if it is in
+     * the set already.
+     *
+     * @return {@code true} if the value wasn't in the set already.
+     */
+    public boolean add( long value )
+    {
+        int slot = find( value );
+        if ( slot >= 0 )
+        {
+            int entry = index[slot] - 1;
+            unlink( entry );
+            linkNewest( entry );
+            return false;
+        }
+
+        int entry;
+        if ( size == values.length && size < maxSize )
+        {
+            grow();
+        }
+        if ( size == values.length )
+        {
+            entry = oldest;
+            unlink( entry );
+            removeFromIndex( find( values[entry] ) );
+        }
+        else
+        {
+            entry = size++;
+        }
+        values[entry] = value;
+        linkNewest( entry );
+        // the slot from the lookup may have moved if an entry was removed
+        slot = find( value );
+        index[-slot - 1] = entry + 1;
+        return true;
+    }
+
+    public void clear()
+    {
+        Arrays.fill( index, 0 );
+        size = 0;
+        oldest = newest = NONE;
+    }
+
+    private void allocate( int capacity )
+    {
+        values = new long[capacity];
+        newer = new int[capacity];
+        older = new int[capacity];
+        int bits = 2;
+        while ( (1 << bits) < capacity * 2 )
+        {
+            bits++;
+        }
+        index = new int[1 << bits];
+        shift = 64 - bits;
+    }
+
+    private void grow()
+    {
+        long[] oldValues = values;
+        int[] oldNewer = newer;
+        int[] oldOlder = older;
+        allocate( (int) Math.min( (long) values.length * 2, maxSize ) );
+        System.arraycopy( oldValues, 0, values, 0, size );
+        System.arraycopy( oldNewer, 0, newer, 0, size );
+        System.arraycopy( oldOlder, 0, older, 0, size );
+        for ( int entry = 0; entry < size; entry++ )
+        {
+            index[-find( values[entry] ) - 1] = entry + 1;
+        }
+    }
+
+    /**
+     * @return The slot of the value in the index, or -(free slot) - 1 where
+     *         it would be if it isn't in the set.
+     */
+    private int find( long value )
+    {
+        int mask = index.length - 1;
+        for ( int slot = slotFor( value );; slot = (slot + 1) & mask )
+        {
+            int entry = index[slot];
+            if ( entry == 0 )
+            {
+                return -slot - 1;
+            }
+            if ( values[entry - 1] == value )
+            {
+                return slot;
+            }
+        }
+    }
+
+    private void removeFromIndex( int slot )
+    {
+        // move later entries of the same run back, see LongHashSet.remove
+        int mask = index.length - 1;
+        int free = slot;
+        for ( slot = (slot + 1) & mask; index[slot] != 0; slot = (slot + 1) & mask )
+        {
+            int home = slotFor( values[index[slot] - 1] );
+            boolean reachableFromFree = free <= slot ? home <= free || home > slot
+                    : home <= free && home > slot;
+            if ( reachableFromFree )
+            {
+                index[free] = index[slot];
+                free = slot;
+            }
+        }
+        index[free] = 0;
+    }
+
+    private void unlink( int entry )
+    {
+        int before = older[entry];
+        int after = newer[entry];
+        if ( before == NONE )
+        {
+            oldest = after;
+        }
+        else
+        {
+            newer[before] = after;
+        }
+        if ( after == NONE )
+        {
+            newest = before;
+        }
+        else
+        {
+            older[after] = before;
+        }
+    }
+
+    private void linkNewest( int entry )
+    {
+        older[entry] = newest;
+        newer[entry] = NONE;
+        if ( newest == NONE )
+        {
+            oldest = entry;
+        }
+        else
+        {
+            newer[newest] = entry;
+        }
+        newest = entry;
+    }
+
+    private int slotFor( long value )
+    {
+        return (int) ((value * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+}
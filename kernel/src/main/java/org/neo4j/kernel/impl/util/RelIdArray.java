@@ -65,7 +65,7 @@ public class RelIdArray
                 
                 public RelIdIterator updateSource( RelIdArray newSource )
                 {
-                    return direction.iterator( newSource );
+                    return newSource.iterator( direction );
                 }
             };
         }
@@ -144,7 +144,7 @@ public class RelIdArray
             return this;
         }
         
-        if ( source.getLastLoopBlock() != null )
+        if ( source.hasLoops() )
         {
             return upgradeIfNeeded( source ).addAll( source );
         }
@@ -160,6 +160,15 @@ public class RelIdArray
         return null;
     }
     
+    /**
+     * @return whether or not any ids have been added with direction
+     * {@link DirectionWrapper#BOTH}, i.e. as loops.
+     */
+    public boolean hasLoops()
+    {
+        return getLastLoopBlock() != null;
+    }
+    
     public RelIdArray shrink()
     {
         IdBlock shrunkOut = lastOutBlock != null ? lastOutBlock.shrink() : null;
@@ -175,7 +184,7 @@ public class RelIdArray
     
     public RelIdArray upgradeIfNeeded( RelIdArray capabilitiesToMatch )
     {
-        return capabilitiesToMatch.getLastLoopBlock() != null ? new RelIdArrayWithLoops( this ) : this;
+        return capabilitiesToMatch.hasLoops() ? new RelIdArrayWithLoops( this ) : this;
     }
     
     public RelIdArray downgradeIfPossible()
@@ -185,6 +194,14 @@ public class RelIdArray
     
     protected void append( RelIdArray source, DirectionWrapper direction )
     {
+        if ( source instanceof CompactRelIdArray )
+        {
+            for ( RelIdIterator iterator = source.iteratorForAddedDirection( direction ); iterator.hasNext(); )
+            {
+                add( iterator.next(), direction );
+            }
+            return;
+        }
         IdBlock toBlock = direction.getLastBlock( this );
         IdBlock fromBlock = direction.getLastBlock( source );
         if ( fromBlock != null )
@@ -253,10 +270,50 @@ public class RelIdArray
         return direction.iterator( this );
     }
     
+    /*
+     * An iterator over directions which has already gone through
+     * positions[i] ids of directions[i], used when switching to a new source.
+     */
+    RelIdIterator iterator( DirectionWrapper[] directions, int[] positions )
+    {
+        return new RelIdIteratorImpl( this, directions, positions );
+    }
+    
+    /**
+     * @return an immutable copy of this array in a more compact form, for
+     * keeping in the cache when no more ids are going to be added to it.
+     * @see CompactRelIdArray
+     */
+    public RelIdArray compact()
+    {
+        return CompactRelIdArray.from( this );
+    }
+    
+    static DirectionWrapper[] directionsFor( DirectionWrapper direction )
+    {
+        switch ( direction )
+        {
+        case OUTGOING: return DIRECTIONS_FOR_OUTGOING;
+        case INCOMING: return DIRECTIONS_FOR_INCOMING;
+        default: return DIRECTIONS_FOR_BOTH;
+        }
+    }
+    
     public RelIdArray newSimilarInstance()
     {
         return new RelIdArray( type );
     }
+
+    /**
+     * Iterates over the ids added with exactly {@code direction}, where
+     * {@link DirectionWrapper#BOTH} gives the loops only. This differs from
+     * {@link #iterator(DirectionWrapper)} which includes the loops in every
+     * direction and is what's needed to write out and later rebuild an array.
+     */
+    public RelIdIterator iteratorForAddedDirection( DirectionWrapper direction )
+    {
+        return new RelIdIteratorImpl( this, new DirectionWrapper[] { direction } );
+    }
     
     public static final IdBlock EMPTY_BLOCK = new LowIdBlock();
     
@@ -587,6 +644,21 @@ public class RelIdArray
             absolutePosition++;
             return block.get( relativePosition++ );
         }
+        
+        void skip( int count )
+        {
+            while ( count > 0 )
+            {
+                int step = Math.min( count, block.length() - relativePosition );
+                relativePosition += step;
+                absolutePosition += step;
+                count -= step;
+                if ( count > 0 && !nextBlock() )
+                {
+                    return;
+                }
+            }
+        }
 
         public void update( IdBlock lastBlock )
         {
@@ -633,6 +705,23 @@ public class RelIdArray
             }
         }
         
+        RelIdIteratorImpl( RelIdArray ids, DirectionWrapper[] directions, int[] positions )
+        {
+            this.ids = ids;
+            this.directions = directions;
+            this.states = new IteratorState[directions.length];
+            for ( int i = 0; i < directions.length; i++ )
+            {
+                IdBlock block = directions[i].getLastBlock( ids );
+                if ( block != null && positions[i] > 0 )
+                {
+                    states[i] = new IteratorState( block, 0 );
+                    states[i].skip( positions[i] );
+                }
+            }
+            findNextBlock();
+        }
+        
         /* (non-Javadoc)
          * @see org.neo4j.kernel.impl.util.RelIdIterator#getType()
          */
@@ -657,6 +746,16 @@ public class RelIdArray
         @Override
         public RelIdIterator updateSource( RelIdArray newSource )
         {
+            if ( newSource instanceof CompactRelIdArray && ids != newSource )
+            {
+                // Got compacted when the last relationships were loaded
+                int[] positions = new int[states.length];
+                for ( int i = 0; i < states.length; i++ )
+                {
+                    positions[i] = states[i] != null ? states[i].absolutePosition : 0;
+                }
+                return newSource.iterator( directions, positions );
+            }
             if ( ids != newSource || newSource.couldBeNeedingUpdate() )
             {
                 ids = newSource;
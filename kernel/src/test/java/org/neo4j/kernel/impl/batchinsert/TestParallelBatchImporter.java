@@ -0,0 +1,297 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.batchinsert;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.neo4j.helpers.collection.MapUtil.map;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+
+public class TestParallelBatchImporter
+{
+    private static final RelationshipType KNOWS = DynamicRelationshipType.withName( "KNOWS" );
+    private static final RelationshipType LIKES = DynamicRelationshipType.withName( "LIKES" );
+
+    private final String storePath = AbstractNeo4jTestCase.getStorePath( "parallel-batch-import" );
+    private BatchInserterImpl inserter;
+
+    @Before
+    public void createInserter()
+    {
+        AbstractNeo4jTestCase.deleteFileOrDirectory( new File( storePath ) );
+        inserter = new BatchInserterImpl( storePath );
+    }
+
+    @After
+    public void shutdownInserter()
+    {
+        if ( inserter != null )
+        {
+            inserter.shutdown();
+        }
+    }
+
+    @Test
+    public void importsNodesWithTheirPropertiesInInputOrder()
+    {
+        List<Map<String,Object>> input = new ArrayList<Map<String,Object>>();
+        for ( int i = 0; i < 2500; i++ )
+        {
+            input.add( i % 10 == 0 ? null : nodeProperties( i ) );
+        }
+        long first = new ParallelBatchImporter( inserter, 3, 100 ).importNodes( input.iterator() );
+
+        for ( int i = 0; i < input.size(); i++ )
+        {
+            Map<String,Object> properties = inserter.getNodeProperties( first + i );
+            if ( i % 10 == 0 )
+            {
+                assertTrue( properties.isEmpty() );
+            }
+            else
+            {
+                assertNodeProperties( i, properties );
+            }
+        }
+        assertEquals( first + input.size(), inserter.createNode( null ) );
+    }
+
+    @Test
+    public void linksImportedRelationshipsWithTheOnesTheNodesAlreadyHad()
+    {
+        long a = inserter.createNode( null );
+        long b = inserter.createNode( null );
+        long existing = inserter.createRelationship( a, b, KNOWS, null );
+        ParallelBatchImporter importer = new ParallelBatchImporter( inserter, 2, 7 );
+        long first = importer.importNodes( Collections.<Map<String,Object>>nCopies( 50, null ).iterator() );
+
+        List<InputRelationship> input = new ArrayList<InputRelationship>();
+        for ( int i = 0; i < 50; i++ )
+        {
+            input.add( new InputRelationship( first + i, first + ( i * 7 ) % 50, i % 2 == 0 ? KNOWS : LIKES,
+                    map( "index", i ) ) );
+            input.add( new InputRelationship( a, first + i, LIKES, null ) );
+        }
+        input.add( new InputRelationship( b, b, KNOWS, null ) );
+        long firstRelationship = importer.importRelationships( input.iterator() );
+        inserter.shutdown();
+        inserter = null;
+
+        EmbeddedGraphDatabase db = new EmbeddedGraphDatabase( storePath );
+        try
+        {
+            for ( int i = 0; i < input.size(); i++ )
+            {
+                InputRelationship expected = input.get( i );
+                Relationship relationship = db.getRelationshipById( firstRelationship + i );
+                assertEquals( expected.getStartNode(), relationship.getStartNode().getId() );
+                assertEquals( expected.getEndNode(), relationship.getEndNode().getId() );
+                assertEquals( expected.getType().name(), relationship.getType().name() );
+                if ( expected.getProperties() != null )
+                {
+                    assertEquals( expected.getProperties().get( "index" ), relationship.getProperty( "index" ) );
+                }
+            }
+            for ( Node node : db.getAllNodes() )
+            {
+                Set<Long> fromNodes = new HashSet<Long>();
+                for ( Relationship relationship : node.getRelationships() )
+                {
+                    assertTrue( fromNodes.add( relationship.getId() ) || isLoop( relationship ) );
+                }
+                Set<Long> fromInput = new HashSet<Long>();
+                for ( int i = 0; i < input.size(); i++ )
+                {
+                    InputRelationship relationship = input.get( i );
+                    if ( relationship.getStartNode() == node.getId() || relationship.getEndNode() == node.getId() )
+                    {
+                        fromInput.add( firstRelationship + i );
+                    }
+                }
+                if ( node.getId() == a || node.getId() == b )
+                {
+                    fromInput.add( existing );
+                }
+                assertEquals( "relationships of " + node, fromInput, fromNodes );
+            }
+            // the chains must be consistent both ways for deletes to work
+            Node nodeA = db.getNodeById( a );
+            org.neo4j.graphdb.Transaction tx = db.beginTx();
+            try
+            {
+                for ( Relationship relationship : nodeA.getRelationships( Direction.OUTGOING, LIKES ) )
+                {
+                    if ( relationship.getEndNode().getId() % 2 == 0 )
+                    {
+                        relationship.delete();
+                    }
+                }
+                db.getRelationshipById( existing ).delete();
+                tx.success();
+            }
+            finally
+            {
+                tx.finish();
+            }
+            assertEquals( 25, count( db.getNodeById( a ).getRelationships() ) );
+            assertEquals( 1, count( db.getNodeById( b ).getRelationships() ) );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    @Test
+    public void failsTheImportForRelationshipsToMissingNodes()
+    {
+        long a = inserter.createNode( null );
+        List<InputRelationship> input = new ArrayList<InputRelationship>();
+        for ( int i = 0; i < 100; i++ )
+        {
+            input.add( new InputRelationship( a, i == 77 ? 1000 : a, KNOWS, null ) );
+        }
+        try
+        {
+            new ParallelBatchImporter( inserter, 2, 10 ).importRelationships( input.iterator() );
+            fail( "Should not import relationships to missing nodes" );
+        }
+        catch ( IllegalArgumentException e )
+        {   // good
+        }
+    }
+
+    @Test
+    public void failsTheImportForRelationshipsToNodesNotInUse()
+    {
+        long a = inserter.createNode( null );
+        // leaves the ids between a and a + 10 unused
+        inserter.createNode( a + 10, null );
+        List<InputRelationship> input = new ArrayList<InputRelationship>();
+        for ( int i = 0; i < 100; i++ )
+        {
+            input.add( new InputRelationship( a, i == 77 ? a + 5 : a + 10, KNOWS, null ) );
+        }
+        try
+        {
+            new ParallelBatchImporter( inserter, 2, 10 ).importRelationships( input.iterator() );
+            fail( "Should not import relationships to nodes not in use" );
+        }
+        catch ( IllegalArgumentException e )
+        {   // good
+        }
+    }
+
+    @Test
+    public void failsTheImportWhenTheInputFails()
+    {
+        Iterator<Map<String,Object>> input = new Iterator<Map<String,Object>>()
+        {
+            private int count;
+
+            public boolean hasNext()
+            {
+                return true;
+            }
+
+            public Map<String,Object> next()
+            {
+                if ( count++ == 1234 )
+                {
+                    throw new IllegalStateException( "broken input" );
+                }
+                return nodeProperties( count );
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+        try
+        {
+            new ParallelBatchImporter( inserter, 2, 10 ).importNodes( input );
+            fail( "Should fail with the input" );
+        }
+        catch ( IllegalStateException e )
+        {
+            assertEquals( "broken input", e.getMessage() );
+        }
+    }
+
+    private static Map<String,Object> nodeProperties( int i )
+    {
+        Map<String,Object> properties = new HashMap<String,Object>();
+        properties.put( "id", i );
+        properties.put( "name", "node " + i );
+        properties.put( "description", "a string long enough to need the dynamic string store, for node " + i );
+        properties.put( "values", new long[] { i, i * 1000000000000L, -i } );
+        properties.put( "weight", i / 2.0 );
+        return properties;
+    }
+
+    private static void assertNodeProperties( int i, Map<String,Object> properties )
+    {
+        Map<String,Object> expected = nodeProperties( i );
+        assertEquals( expected.keySet(), properties.keySet() );
+        assertEquals( expected.get( "id" ), properties.get( "id" ) );
+        assertEquals( expected.get( "name" ), properties.get( "name" ) );
+        assertEquals( expected.get( "description" ), properties.get( "description" ) );
+        assertArrayEquals( (long[]) expected.get( "values" ), (long[]) properties.get( "values" ) );
+        assertEquals( expected.get( "weight" ), properties.get( "weight" ) );
+    }
+
+    private static boolean isLoop( Relationship relationship )
+    {
+        return relationship.getStartNode().equals( relationship.getEndNode() );
+    }
+
+    private static int count( Iterable<?> iterable )
+    {
+        int count = 0;
+        for ( Iterator<?> iterator = iterable.iterator(); iterator.hasNext(); iterator.next() )
+        {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class TestOffHeapCache
+{
+    private static final OffHeapCache.Serializer<String> STRINGS = new OffHeapCache.Serializer<String>()
+    {
+        public void write( String value, ByteBuffer target )
+        {
+            target.putInt( value.length() );
+            for ( int i = 0; i < value.length(); i++ )
+            {
+                target.putChar( value.charAt( i ) );
+            }
+        }
+
+        public String read( long key, ByteBuffer source )
+        {
+            char[] chars = new char[source.getInt()];
+            for ( int i = 0; i < chars.length; i++ )
+            {
+                chars[i] = source.getChar();
+            }
+            return new String( chars );
+        }
+    };
+
+    @Test
+    public void shouldHandOutCopiesOfWhatWasPut()
+    {
+        OffHeapCache<String> cache = new OffHeapCache<String>( "TestCache", 1024 * 1024, STRINGS );
+        String value = "a value";
+        assertNull( cache.get( 1L ) );
+        cache.put( 1L, value );
+        cache.put( 2L, "another value" );
+        String first = cache.get( 1L );
+        assertEquals( value, first );
+        assertTrue( value != first );
+        assertTrue( first != cache.get( 1L ) );
+        assertEquals( "another value", cache.get( 2L ) );
+        assertEquals( 2, cache.size() );
+        assertEquals( 3, cache.hitCount() );
+        assertEquals( 1, cache.missCount() );
+
+        cache.put( 1L, "a much longer value than the first one" );
+        assertEquals( "a much longer value than the first one", cache.get( 1L ) );
+        cache.remove( 2L );
+        assertNull( cache.get( 2L ) );
+        assertEquals( 1, cache.size() );
+        cache.clear();
+        assertNull( cache.get( 1L ) );
+        assertEquals( 0, cache.size() );
+    }
+
+    @Test
+    public void shouldEvictToStayWithinItsMemory()
+    {
+        OffHeapCache<String> cache = new OffHeapCache<String>( "TestCache", 64 * 1024, STRINGS );
+        for ( long key = 0; key < 10000; key++ )
+        {
+            cache.put( key, "value number " + key );
+        }
+        assertTrue( cache.evictionCount() > 0 );
+        assertTrue( cache.memoryUsed() <= cache.maxMemory() );
+        assertTrue( cache.size() < 10000 );
+        assertEquals( "value number 9999", cache.get( 9999L ) );
+    }
+
+    @Test
+    public void shouldKeepDifferentSizesApart()
+    {
+        OffHeapCache<String> cache = new OffHeapCache<String>( "TestCache", 256 * 1024, STRINGS );
+        StringBuilder builder = new StringBuilder();
+        for ( long key = 0; key < 2000; key++ )
+        {
+            builder.append( (char) ('a' + key % 26) );
+            cache.put( key, builder.substring( 0, (int) (key % 500) ) );
+        }
+        for ( long key = 0; key < 2000; key++ )
+        {
+            String value = cache.get( key );
+            if ( value != null )
+            {
+                assertEquals( builder.substring( 0, (int) (key % 500) ), value );
+            }
+        }
+        assertTrue( cache.memoryUsed() <= cache.maxMemory() );
+    }
+
+    @Test
+    public void shouldNotCacheValuesLargerThanAPage()
+    {
+        OffHeapCache<String> cache = new OffHeapCache<String>( "TestCache", 4 * 1024, STRINGS );
+        cache.put( 1L, new String( new char[4 * 1024] ) );
+        assertNull( cache.get( 1L ) );
+        cache.put( 1L, "small" );
+        assertEquals( "small", cache.get( 1L ) );
+    }
+
+    @Test
+    public void shouldIgnorePutOfValueLoadedBeforeRemove()
+    {
+        OffHeapCache<String> cache = new OffHeapCache<String>( "TestCache", 1024 * 1024, STRINGS );
+        assertNull( cache.get( 1L ) );
+        // the value is loaded here, meanwhile a commit invalidates the key
+        cache.remove( 1L );
+        cache.put( 1L, "stale" );
+        assertNull( cache.get( 1L ) );
+
+        // a put that doesn't follow a miss of its own isn't affected
+        cache.put( 1L, "fresh" );
+        assertEquals( "fresh", cache.get( 1L ) );
+    }
+
+    @Test
+    public void shouldIgnoreStalePutAfterMissingOtherKeysWhileLoading()
+    {
+        OffHeapCache<String> cache = new OffHeapCache<String>( "TestCache", 1024 * 1024, STRINGS );
+        assertNull( cache.get( 1L ) );
+        // loading the value of 1 needs the values of other keys
+        for ( long key = 2; key < OffHeapCache.TRACKED_MISSES; key++ )
+        {
+            assertNull( cache.get( key ) );
+        }
+        cache.remove( 1L );
+        for ( long key = 2; key < OffHeapCache.TRACKED_MISSES; key++ )
+        {
+            cache.put( key, "value" + key );
+        }
+        cache.put( 1L, "stale" );
+        assertNull( cache.get( 1L ) );
+        assertEquals( "value2", cache.get( 2L ) );
+    }
+}
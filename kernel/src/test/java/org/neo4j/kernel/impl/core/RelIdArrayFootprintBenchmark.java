@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import java.util.Random;
+
+import org.neo4j.kernel.impl.util.RelIdArray;
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+
+/**
+ * Heap footprint of cached relationship ids, as {@link NodeImpl} keeps them
+ * once a node is fully loaded: regular (shrunk) {@link RelIdArray}s compared
+ * to their {@link RelIdArray#compact() compact} form. Builds one array per
+ * node with degrees drawn from a few distributions and prints the retained
+ * bytes per node and per relationship for each representation.
+ *
+ * Relationship ids are taken either close to each other, like relationships
+ * created together, or spread over the whole id range, which is the worst
+ * case for the delta encoding.
+ *
+ * Usage: RelIdArrayFootprintBenchmark [nodes]
+ *
+ * Run with a fixed heap size (e.g. -Xms1g -Xmx1g) for stable numbers.
+ */
+public class RelIdArrayFootprintBenchmark
+{
+    private interface DegreeDistribution
+    {
+        int degree( Random random );
+    }
+
+    public static void main( String[] args )
+    {
+        int nodes = args.length > 0 ? Integer.parseInt( args[0] ) : 500000;
+        final long relationships = nodes * 5L;
+        DegreeDistribution powerLaw = new DegreeDistribution()
+        {
+            public int degree( Random random )
+            {
+                // pareto with alpha 2 and minimum 1, mean degree 2, capped
+                return (int) Math.min( 10000, Math.floor( 1 / Math.sqrt( 1 - random.nextDouble() ) ) );
+            }
+        };
+        DegreeDistribution low = new DegreeDistribution()
+        {
+            public int degree( Random random )
+            {
+                return 1 + random.nextInt( 9 );
+            }
+        };
+        DegreeDistribution high = new DegreeDistribution()
+        {
+            public int degree( Random random )
+            {
+                return 50 + random.nextInt( 200 );
+            }
+        };
+
+        System.out.println( "distribution\tids\trels/node\tregular b/node\tcompact b/node\t" +
+                "regular b/rel\tcompact b/rel" );
+        run( "power law", powerLaw, nodes, relationships, false );
+        run( "power law", powerLaw, nodes, relationships, true );
+        run( "degree 1-9", low, nodes, relationships, false );
+        run( "degree 1-9", low, nodes, relationships, true );
+        run( "degree 50-249", high, nodes / 50, relationships, false );
+        run( "degree 50-249", high, nodes / 50, relationships, true );
+    }
+
+    private static void run( String name, DegreeDistribution distribution, int nodes,
+            long relationships, boolean spread )
+    {
+        long regular = footprint( distribution, nodes, relationships, spread, false );
+        long compact = footprint( distribution, nodes, relationships, spread, true );
+        long rels = count( distribution, nodes );
+        System.out.println( name + "\t" + ( spread ? "spread" : "close" ) + "\t" +
+                format( (double) rels / nodes ) + "\t" + format( (double) regular / nodes ) + "\t" +
+                format( (double) compact / nodes ) + "\t" + format( (double) regular / rels ) + "\t" +
+                format( (double) compact / rels ) );
+    }
+
+    private static long count( DegreeDistribution distribution, int nodes )
+    {
+        Random random = new Random( 0 );
+        long count = 0;
+        for ( int i = 0; i < nodes; i++ )
+        {
+            count += distribution.degree( random );
+        }
+        return count;
+    }
+
+    private static long footprint( DegreeDistribution distribution, int nodes, long relationships,
+            boolean spread, boolean compact )
+    {
+        Random random = new Random( 0 );
+        Random ids = new Random( 1 );
+        RelIdArray[] arrays = new RelIdArray[nodes];
+        long before = usedMemory();
+        for ( int i = 0; i < nodes; i++ )
+        {
+            int degree = distribution.degree( random );
+            long first = (long) ( ids.nextDouble() * relationships );
+            RelIdArray array = new RelIdArray( "TYPE" );
+            for ( int j = 0; j < degree; j++ )
+            {
+                long id = spread ? (long) ( ids.nextDouble() * relationships ) : first + ids.nextInt( 100 );
+                array.add( id, ids.nextBoolean() ? DirectionWrapper.OUTGOING : DirectionWrapper.INCOMING );
+            }
+            arrays[i] = compact ? array.compact() : array.shrink();
+        }
+        long used = usedMemory() - before;
+        if ( arrays[nodes - 1] == null )
+        {
+            throw new AssertionError();
+        }
+        return used;
+    }
+
+    private static long usedMemory()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for ( int i = 0; i < 5; i++ )
+        {
+            System.gc();
+            try
+            {
+                Thread.sleep( 50 );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static String format( double value )
+    {
+        return String.format( "%.1f", value );
+    }
+}
@@ -20,13 +20,22 @@
 package org.neo4j.kernel.impl.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.neo4j.graphdb.DynamicRelationshipType.withName;
+import static org.neo4j.helpers.collection.IteratorUtil.count;
 
 import java.io.File;
+import java.util.Arrays;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
 import org.neo4j.helpers.collection.MapUtil;
 import org.neo4j.kernel.Config;
 import org.neo4j.kernel.EmbeddedGraphDatabase;
@@ -96,6 +105,44 @@ public class TestCacheTypes extends AbstractNeo4jTestCase
         db.shutdown();
     }
 
+    @Test
+    public void testOffHeapCache()
+    {
+        GraphDatabaseService db = newDb( "offheap" );
+        assertEquals( CacheType.offheap, ((EmbeddedGraphDatabase) db).getConfig().getGraphDbModule().getNodeManager().getCacheType() );
+        Transaction tx = db.beginTx();
+        Node node = db.createNode();
+        node.setProperty( "name", "first" );
+        node.setProperty( "numbers", new int[] { 1, 2, 3 } );
+        Relationship relationship = node.createRelationshipTo( db.createNode(), withName( "KNOWS" ) );
+        relationship.setProperty( "since", 2012L );
+        node.createRelationshipTo( node, withName( "LIKES" ) );
+        tx.success();
+        tx.finish();
+
+        // read twice, the second time from the cache
+        for ( int i = 0; i < 2; i++ )
+        {
+            Node readNode = db.getNodeById( node.getId() );
+            assertEquals( "first", readNode.getProperty( "name" ) );
+            assertTrue( Arrays.equals( new int[] { 1, 2, 3 }, (int[]) readNode.getProperty( "numbers" ) ) );
+            assertEquals( relationship, readNode.getSingleRelationship( withName( "KNOWS" ), Direction.OUTGOING ) );
+            assertEquals( 2012L, db.getRelationshipById( relationship.getId() ).getProperty( "since" ) );
+            assertEquals( 2, count( readNode.getRelationships() ) );
+        }
+
+        // committed changes replace what's in the cache
+        tx = db.beginTx();
+        node.setProperty( "name", "second" );
+        relationship.delete();
+        tx.success();
+        tx.finish();
+        assertEquals( "second", db.getNodeById( node.getId() ).getProperty( "name" ) );
+        assertNull( db.getNodeById( node.getId() ).getSingleRelationship( withName( "KNOWS" ), Direction.OUTGOING ) );
+        assertEquals( 1, count( db.getNodeById( node.getId() ).getRelationships() ) );
+        db.shutdown();
+    }
+
     @Test
     public void testInvalidCache()
     {
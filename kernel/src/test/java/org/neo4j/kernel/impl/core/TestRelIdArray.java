@@ -32,10 +32,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
+import org.neo4j.kernel.impl.util.CompactRelIdArray;
 import org.neo4j.kernel.impl.util.RelIdArray;
 import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+import org.neo4j.kernel.impl.util.RelIdArrayWithLoops;
 import org.neo4j.kernel.impl.util.RelIdIterator;
 
 // TODO Add some tests for loops, i.e. add with direction BOTH.
@@ -143,6 +146,75 @@ public class TestRelIdArray
                 0L, 1L, justOverIntMax, justOverIntMax+1 ) ), new HashSet<Long>( asList( all ) ) );
     }
     
+    @Test
+    public void compactArrayHasTheSameIdsInTheSameOrder() throws Exception
+    {
+        Random random = new Random( 7 );
+        for ( int size : new int[] { 0, 1, 2, 5, 50, 1000 } )
+        {
+            RelIdArray array = new RelIdArrayWithLoops( null );
+            long base = random.nextInt( 1000000 );
+            for ( int i = 0; i < size; i++ )
+            {
+                long id = random.nextInt( 10 ) == 0 ? (long) Math.pow( 2, 32 ) + random.nextInt( 100 ) :
+                        base + random.nextInt( 1000 );
+                array.add( id, DirectionWrapper.values()[random.nextInt( 3 )] );
+            }
+            RelIdArray compact = array.compact();
+            assertTrue( compact instanceof CompactRelIdArray );
+            assertEquals( array.hasLoops(), compact.hasLoops() );
+            assertEquals( array.isEmpty(), compact.isEmpty() );
+            for ( DirectionWrapper direction : DirectionWrapper.values() )
+            {
+                assertEquals( asList( array.iterator( direction ) ), asList( compact.iterator( direction ) ) );
+                assertEquals( asList( array.iteratorForAddedDirection( direction ) ),
+                        asList( compact.iteratorForAddedDirection( direction ) ) );
+            }
+        }
+    }
+    
+    @Test
+    public void iteratorContinuesWhereItWasWhenSourceIsCompacted() throws Exception
+    {
+        RelIdArray array = new RelIdArrayWithLoops( null );
+        array.add( 10, OUTGOING );
+        array.add( 5, OUTGOING );
+        array.add( 7, INCOMING );
+        array.add( 3, BOTH );
+        RelIdIterator iterator = array.iterator( OUTGOING );
+        assertEquals( 10L, iterator.next() );
+        
+        array.add( 12, OUTGOING );
+        array.add( 4, BOTH );
+        iterator = iterator.updateSource( array.compact() );
+        iterator.doAnotherRound();
+        assertEquals( Arrays.asList( 5L, 12L, 3L, 4L ), asList( iterator ) );
+        
+        // and back again, when more is added to it
+        iterator = iterator.updateSource( iterator.getIds().addAll( new RelIdArray( null ) ) );
+        iterator.doAnotherRound();
+        assertFalse( iterator.hasNext() );
+    }
+    
+    @Test
+    public void addingToCompactArrayGivesNewArray() throws Exception
+    {
+        RelIdArray array = new RelIdArray( null );
+        array.add( 1, OUTGOING );
+        array.add( 2, INCOMING );
+        RelIdArray compact = array.compact();
+        RelIdArray loops = new RelIdArrayWithLoops( null );
+        loops.add( 3, BOTH );
+        
+        RelIdArray all = compact.addAll( loops );
+        assertFalse( all instanceof CompactRelIdArray );
+        assertEquals( Arrays.asList( 1L, 2L, 3L ), asList( all ) );
+        assertEquals( Arrays.asList( 1L, 2L ), asList( compact ) );
+        
+        Collection<Long> remove = new HashSet<Long>( Arrays.asList( 2L ) );
+        assertEquals( Arrays.asList( 1L, 3L ), asList( RelIdArray.from( compact, loops, remove ) ) );
+    }
+    
     private List<Long> asList( RelIdArray ids )
     {
         List<Long> result = new ArrayList<Long>();
@@ -152,4 +224,14 @@ public class TestRelIdArray
         }
         return result;
     }
+    
+    private List<Long> asList( RelIdIterator iterator )
+    {
+        List<Long> result = new ArrayList<Long>();
+        while ( iterator.hasNext() )
+        {
+            result.add( iterator.next() );
+        }
+        return result;
+    }
 }
@@ -0,0 +1,239 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.neo4j.graphdb.Direction.BOTH;
+import static org.neo4j.graphdb.Direction.INCOMING;
+import static org.neo4j.graphdb.Direction.OUTGOING;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.Config;
+import org.neo4j.test.ImpermanentGraphDatabase;
+
+public class TestRelationshipLoadingByType
+{
+    private static final RelationshipType A = DynamicRelationshipType.withName( "A" );
+    private static final RelationshipType B = DynamicRelationshipType.withName( "B" );
+
+    private ImpermanentGraphDatabase db;
+    private Node node;
+    private Node other;
+
+    @Before
+    public void startDb()
+    {
+        db = new ImpermanentGraphDatabase( stringMap( Config.GROUP_RELATIONSHIP_CHAINS, "true",
+                Config.DENSE_NODE_THRESHOLD, "20", "relationship_grab_size", "10" ) );
+        Transaction tx = db.beginTx();
+        try
+        {
+            node = db.createNode();
+            other = db.createNode();
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+
+    @After
+    public void shutDownDb()
+    {
+        db.shutdown();
+    }
+
+    @Test
+    public void loadsOnlyTheRequestedTypeAndDirection()
+    {
+        List<Relationship> outA = createRelationships( node, other, A, 30 );
+        List<Relationship> inA = createRelationships( other, node, A, 25 );
+        List<Relationship> outB = createRelationships( node, other, B, 30 );
+        clearCache();
+
+        assertEquals( ids( outA ), ids( node.getRelationships( A, OUTGOING ) ) );
+        NodeImpl nodeImpl = nodeManager().getNodeIfCached( node.getId() );
+        assertNull( "whole chain was loaded", nodeImpl.getRelationshipIds() );
+        assertNotInCache( inA );
+        assertNotInCache( outB );
+
+        assertEquals( ids( inA ), ids( node.getRelationships( A, INCOMING ) ) );
+        assertEquals( 55, ids( node.getRelationships( A ) ).size() );
+        assertNotInCache( outB );
+        assertEquals( 85, ids( node.getRelationships() ).size() );
+        assertEquals( ids( outB ), ids( node.getRelationships( OUTGOING, B ) ) );
+    }
+
+    @Test
+    public void loadsTheRequestedGroupsInBatches()
+    {
+        List<Relationship> outA = createRelationships( node, other, A, 30 );
+        List<Relationship> loops = createRelationships( node, node, A, 25 );
+        clearCache();
+
+        Iterator<Relationship> rels = node.getRelationships( A, OUTGOING ).iterator();
+        rels.next();
+        assertNotAllInCache( outA );
+        assertNotAllInCache( loops );
+
+        Set<Long> expected = ids( outA );
+        expected.addAll( ids( loops ) );
+        assertEquals( expected, ids( node.getRelationships( A, OUTGOING ) ) );
+        int count = 1;
+        while ( rels.hasNext() )
+        {
+            rels.next();
+            count++;
+        }
+        assertEquals( 55, count );
+    }
+
+    @Test
+    public void partiallyLoadedNodeDoesNotMixInLoadedRelationships()
+    {
+        createRelationships( node, other, A, 30 );
+        createRelationships( node, other, B, 30 );
+        clearCache();
+
+        // loads the first batch of the whole chain
+        node.getRelationships().iterator().next();
+        assertEquals( 30, ids( node.getRelationships( A ) ).size() );
+        assertEquals( 30, ids( node.getRelationships( B, OUTGOING ) ).size() );
+        assertEquals( 60, ids( node.getRelationships() ).size() );
+        assertEquals( 30, ids( node.getRelationships( B ) ).size() );
+    }
+
+    @Test
+    public void loopsAreSeenInEveryDirection()
+    {
+        List<Relationship> loops = createRelationships( node, node, A, 25 );
+        List<Relationship> outA = createRelationships( node, other, A, 5 );
+        clearCache();
+
+        assertEquals( 25, ids( node.getRelationships( A, INCOMING ) ).size() );
+        Set<Long> expected = ids( loops );
+        expected.addAll( ids( outA ) );
+        assertEquals( expected, ids( node.getRelationships( A, OUTGOING ) ) );
+        assertEquals( expected, ids( node.getRelationships( A, BOTH ) ) );
+    }
+
+    @Test
+    public void seesChangesToLoadedTypes()
+    {
+        List<Relationship> outA = createRelationships( node, other, A, 30 );
+        createRelationships( node, other, B, 30 );
+        clearCache();
+        assertEquals( 30, ids( node.getRelationships( A, OUTGOING ) ).size() );
+
+        Transaction tx = db.beginTx();
+        try
+        {
+            outA.remove( 0 ).delete();
+            outA.remove( 0 ).delete();
+            outA.add( node.createRelationshipTo( other, A ) );
+            assertEquals( ids( outA ), ids( node.getRelationships( A, OUTGOING ) ) );
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        assertEquals( ids( outA ), ids( node.getRelationships( A, OUTGOING ) ) );
+        assertEquals( 30, ids( node.getRelationships( B ) ).size() );
+        assertEquals( ids( outA ), ids( other.getRelationships( A, INCOMING ) ) );
+    }
+
+    private List<Relationship> createRelationships( Node from, Node to, RelationshipType type, int count )
+    {
+        List<Relationship> rels = new ArrayList<Relationship>();
+        Transaction tx = db.beginTx();
+        try
+        {
+            for ( int i = 0; i < count; i++ )
+            {
+                rels.add( from.createRelationshipTo( to, type ) );
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        return rels;
+    }
+
+    private Set<Long> ids( Iterable<Relationship> rels )
+    {
+        Set<Long> ids = new HashSet<Long>();
+        for ( Relationship rel : rels )
+        {
+            assertTrue( rel + " seen twice", ids.add( rel.getId() ) );
+        }
+        return ids;
+    }
+
+    private void assertNotInCache( List<Relationship> rels )
+    {
+        for ( Relationship rel : rels )
+        {
+            assertNull( rel + " was loaded", nodeManager().getRelIfCached( rel.getId() ) );
+        }
+    }
+
+    private void assertNotAllInCache( List<Relationship> rels )
+    {
+        for ( Relationship rel : rels )
+        {
+            if ( nodeManager().getRelIfCached( rel.getId() ) == null )
+            {
+                return;
+            }
+        }
+        fail( "the whole group was loaded" );
+    }
+
+    private NodeManager nodeManager()
+    {
+        return db.getConfig().getGraphDbModule().getNodeManager();
+    }
+
+    private void clearCache()
+    {
+        nodeManager().clearCache();
+    }
+}
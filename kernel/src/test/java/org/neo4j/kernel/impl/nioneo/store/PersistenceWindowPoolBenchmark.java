@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.neo4j.kernel.impl.util.FileUtils.deleteRecursively;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.CommonFactories;
+import org.neo4j.kernel.IdGeneratorFactory;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+/**
+ * Multi threaded read benchmark for {@link PersistenceWindowPool}, run through
+ * {@link NodeStore} and {@link RelationshipStore}. Reads random records with
+ * an increasing number of threads and prints the throughput for each, so that
+ * the scaling of mapped reads with core count can be compared between
+ * versions of the pool.
+ *
+ * Usage: PersistenceWindowPoolBenchmark [records] [seconds per round] [mapped memory]
+ *
+ * Give a mapped memory smaller than the store files (e.g. "10M") to include
+ * brick misses and window swaps in the measurement.
+ */
+public class PersistenceWindowPoolBenchmark
+{
+    private static final String PATH = "target/test-data/window-pool-benchmark";
+
+    public static void main( String[] args ) throws Exception
+    {
+        int records = args.length > 0 ? Integer.parseInt( args[0] ) : 2000000;
+        int seconds = args.length > 1 ? Integer.parseInt( args[1] ) : 5;
+        String mappedMemory = args.length > 2 ? args[2] : "200M";
+        int maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+
+        deleteRecursively( new File( PATH ) );
+        new File( PATH ).mkdirs();
+        String nodeFile = new File( PATH, "nodestore.db" ).getPath();
+        String relFile = new File( PATH, "relationshipstore.db" ).getPath();
+        Map<Object,Object> config = MapUtil.genericMap(
+                IdGeneratorFactory.class, CommonFactories.defaultIdGeneratorFactory(),
+                FileSystemAbstraction.class, CommonFactories.defaultFileSystemAbstraction(),
+                StringLogger.class, StringLogger.DEV_NULL,
+                "nodestore.db.mapped_memory", mappedMemory,
+                "relationshipstore.db.mapped_memory", mappedMemory );
+
+        NodeStore.createStore( nodeFile, config );
+        RelationshipStore.createStore( relFile,
+                (IdGeneratorFactory) config.get( IdGeneratorFactory.class ),
+                (FileSystemAbstraction) config.get( FileSystemAbstraction.class ) );
+        final NodeStore nodeStore = new NodeStore( nodeFile, config );
+        final RelationshipStore relStore = new RelationshipStore( relFile, config );
+        try
+        {
+            populate( nodeStore, relStore, records );
+            System.out.println( "threads\tnode reads/s\trel reads/s" );
+            for ( int threads = 1; threads <= maxThreads; threads *= 2 )
+            {
+                long nodeRate = run( threads, seconds, records, new Reader()
+                {
+                    public void read( long id )
+                    {
+                        nodeStore.getRecord( id );
+                    }
+                } );
+                long relRate = run( threads, seconds, records, new Reader()
+                {
+                    public void read( long id )
+                    {
+                        relStore.getRecord( id );
+                    }
+                } );
+                System.out.println( threads + "\t" + nodeRate + "\t" + relRate );
+            }
+            printStats( nodeStore.getWindowPoolStats() );
+            printStats( relStore.getWindowPoolStats() );
+        }
+        finally
+        {
+            nodeStore.close();
+            relStore.close();
+            deleteRecursively( new File( PATH ) );
+        }
+    }
+
+    private static void populate( NodeStore nodeStore, RelationshipStore relStore, int records )
+    {
+        // the node store already holds the reference node
+        for ( int i = 1; i < records; i++ )
+        {
+            NodeRecord node = new NodeRecord( nodeStore.nextId(), i,
+                    Record.NO_NEXT_PROPERTY.intValue() );
+            node.setInUse( true );
+            nodeStore.updateRecord( node );
+        }
+        for ( int i = 0; i < records; i++ )
+        {
+            RelationshipRecord rel = new RelationshipRecord( relStore.nextId(),
+                    i, (i + 1) % records, 0 );
+            rel.setInUse( true );
+            relStore.updateRecord( rel );
+        }
+    }
+
+    private static void printStats( WindowPoolStats stats )
+    {
+        System.out.println( stats.getName() + ": hit=" + stats.getHitCount() + " miss="
+                + stats.getMissCount() + " windows=" + stats.getWindowCount() + " memUsed="
+                + stats.getMemUsed() );
+    }
+
+    private interface Reader
+    {
+        void read( long id );
+    }
+
+    private static long run( int threadCount, int seconds, final int records,
+            final Reader reader ) throws InterruptedException
+    {
+        final AtomicLong reads = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final long[] deadline = new long[1];
+        Thread[] threads = new Thread[threadCount];
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            final long seed = i;
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    Random random = new Random( seed );
+                    long count = 0;
+                    try
+                    {
+                        start.await();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        return;
+                    }
+                    while ( System.currentTimeMillis() < deadline[0] )
+                    {
+                        for ( int batch = 0; batch < 1000; batch++ )
+                        {
+                            reader.read( random.nextInt( records ) );
+                        }
+                        count += 1000;
+                    }
+                    reads.addAndGet( count );
+                }
+            };
+            threads[i].start();
+        }
+        deadline[0] = System.currentTimeMillis() + seconds * 1000L;
+        start.countDown();
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        return reads.get() / seconds;
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.kernel.impl.util.FileUtils.deleteRecursively;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.CommonFactories;
+import org.neo4j.kernel.IdGeneratorFactory;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+public class TestConcurrentWindowPool
+{
+    private static final int THREADS = 8;
+    private static final int RECORDS_PER_THREAD = 20000;
+    private static final int ROUNDS = 5;
+
+    private final String path = AbstractNeo4jTestCase.getStorePath( "concurrent-window-pool" );
+    private NodeStore store;
+
+    @Before
+    public void createStore() throws IOException
+    {
+        deleteRecursively( new File( path ) );
+        new File( path ).mkdirs();
+        String fileName = new File( path, "nodestore.db" ).getPath();
+        // much less mapped memory than the store needs, so that bricks
+        // get swapped in and out while the threads are running
+        Map<Object,Object> config = MapUtil.genericMap(
+                IdGeneratorFactory.class, CommonFactories.defaultIdGeneratorFactory(),
+                FileSystemAbstraction.class, CommonFactories.defaultFileSystemAbstraction(),
+                StringLogger.class, StringLogger.DEV_NULL,
+                "nodestore.db.mapped_memory", "100k" );
+        NodeStore.createStore( fileName, config );
+        store = new NodeStore( fileName, config );
+        for ( int i = 1; i < THREADS * RECORDS_PER_THREAD; i++ )
+        {
+            NodeRecord record = new NodeRecord( store.nextId(), -1, -1 );
+            record.setInUse( true );
+            store.updateRecord( record );
+        }
+    }
+
+    @After
+    public void closeStore() throws IOException
+    {
+        store.close();
+        deleteRecursively( new File( path ) );
+    }
+
+    @Test
+    public void concurrentReadersAndWritersSeeTheirOwnWrites() throws Exception
+    {
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[THREADS];
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            final int first = i * RECORDS_PER_THREAD;
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        Random random = new Random( first );
+                        for ( int round = 1; round <= ROUNDS; round++ )
+                        {
+                            for ( int id = first; id < first + RECORDS_PER_THREAD; id++ )
+                            {
+                                NodeRecord record = new NodeRecord( id, round, -1 );
+                                record.setInUse( true );
+                                store.updateRecord( record );
+                            }
+                            for ( int r = 0; r < RECORDS_PER_THREAD; r++ )
+                            {
+                                long id = first + random.nextInt( RECORDS_PER_THREAD );
+                                assertEquals( round, store.getRecord( id ).getNextRel() );
+                            }
+                        }
+                    }
+                    catch ( Throwable t )
+                    {
+                        failure.compareAndSet( null, t );
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        if ( failure.get() != null )
+        {
+            throw new AssertionError( failure.get() );
+        }
+        WindowPoolStats stats = store.getWindowPoolStats();
+        assertTrue( stats.getHitCount() > 0 );
+        assertTrue( stats.getMissCount() > 0 );
+    }
+}
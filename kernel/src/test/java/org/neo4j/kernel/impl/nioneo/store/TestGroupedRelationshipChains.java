@@ -0,0 +1,467 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.kernel.impl.nioneo.store.RelationshipChains.directionOf;
+import static org.neo4j.kernel.impl.nioneo.store.RelationshipChains.keyOf;
+import static org.neo4j.kernel.impl.nioneo.store.RelationshipChains.nextOf;
+import static org.neo4j.kernel.impl.util.FileUtils.deleteRecursively;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.Pair;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.persistence.PersistenceManager;
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+
+public class TestGroupedRelationshipChains
+{
+    private static final RelationshipType[] TYPES = {
+            DynamicRelationshipType.withName( "A" ), DynamicRelationshipType.withName( "B" ),
+            DynamicRelationshipType.withName( "C" ) };
+
+    private final String path = AbstractNeo4jTestCase.getStorePath( "grouped-chains" );
+    private AbstractGraphDatabase db;
+
+    @Before
+    public void cleanUp() throws IOException
+    {
+        deleteRecursively( new File( path ) );
+    }
+
+    @After
+    public void shutDown() throws IOException
+    {
+        if ( db != null )
+        {
+            db.shutdown();
+        }
+        deleteRecursively( new File( path ) );
+    }
+
+    @Test
+    public void storeIsNotGroupedByDefault()
+    {
+        startDb( false );
+        assertNull( neoStore().getRelationshipGroups() );
+        assertFalse( persistenceManager().isRelationshipChainGrouped() );
+    }
+
+    @Test
+    public void groupsExistingChainsOnStartup()
+    {
+        startDb( false );
+        Node[] nodes = createNodes( 10 );
+        createRelationships( new Random( 1 ), nodes, 300 );
+        restartDb( true );
+        nodes = reload( nodes );
+        assertNotNull( neoStore().getRelationshipGroups() );
+        for ( Node node : nodes )
+        {
+            assertGrouped( node );
+            assertTypedReads( node );
+        }
+        // the dense nodes were put in the index while grouping
+        assertTrue( neoStore().getRelationshipGroups().getNodeCount() > 0 );
+    }
+
+    @Test
+    public void createdAndDeletedRelationshipsKeepChainsGrouped()
+    {
+        startDb( true );
+        Node[] nodes = createNodes( 10 );
+        Random random = new Random( 2 );
+        List<Relationship> rels = createRelationships( random, nodes, 300 );
+        for ( int round = 0; round < 10; round++ )
+        {
+            Transaction tx = db.beginTx();
+            try
+            {
+                for ( int i = 0; i < 20 && !rels.isEmpty(); i++ )
+                {
+                    rels.remove( random.nextInt( rels.size() ) ).delete();
+                }
+                rels.addAll( createRelationshipsInTx( random, nodes, 20 ) );
+                tx.success();
+            }
+            finally
+            {
+                tx.finish();
+            }
+            for ( Node node : nodes )
+            {
+                assertGrouped( node );
+                assertTypedReads( node );
+            }
+        }
+    }
+
+    @Test
+    public void deletingFirstOfEveryGroupKeepsChainsGrouped()
+    {
+        startDb( true );
+        Node[] nodes = createNodes( 5 );
+        createRelationships( new Random( 3 ), nodes, 200 );
+        Node node = nodes[0];
+        for ( int round = 0; round < 5; round++ )
+        {
+            Transaction tx = db.beginTx();
+            try
+            {
+                long[] groups = groupsOf( node );
+                for ( int i = 1; i < groups.length; i += 2 )
+                {
+                    db.getRelationshipById( groups[i] ).delete();
+                }
+                createRelationshipsInTx( new Random( round ), nodes, 10 );
+                tx.success();
+            }
+            finally
+            {
+                tx.finish();
+            }
+            assertGrouped( node );
+            assertTypedReads( node );
+        }
+    }
+
+    @Test
+    public void groupsAreKeptOverRestart()
+    {
+        startDb( true );
+        Node[] nodes = createNodes( 5 );
+        createRelationships( new Random( 4 ), nodes, 300 );
+        for ( Node node : nodes )
+        {
+            assertTypedReads( node );
+        }
+        int indexed = neoStore().getRelationshipGroups().getNodeCount();
+        assertTrue( indexed > 0 );
+        restartDb( false );
+        nodes = reload( nodes );
+        assertNotNull( neoStore().getRelationshipGroups() );
+        assertEquals( indexed, neoStore().getRelationshipGroups().getNodeCount() );
+        createRelationships( new Random( 5 ), nodes, 50 );
+        for ( Node node : nodes )
+        {
+            assertGrouped( node );
+            assertTypedReads( node );
+        }
+    }
+
+    @Test
+    public void partiallyLoadedNodesSeeChangesInTheirUnloadedGroups()
+    {
+        startDb( true );
+        Node[] nodes = createNodes( 2 );
+        Transaction tx = db.beginTx();
+        try
+        {
+            for ( int i = 0; i < 12; i++ )
+            {
+                nodes[0].createRelationshipTo( nodes[1], TYPES[0] );
+            }
+            for ( int i = 0; i < 11; i++ )
+            {
+                nodes[0].createRelationshipTo( nodes[1], TYPES[1] );
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        for ( int round = 0; round < 4; round++ )
+        {
+            tx = db.beginTx();
+            try
+            {
+                db.getConfig().getGraphDbModule().getNodeManager().clearCache();
+                // create in the group read first, delete from the one read later
+                nodes[0].createRelationshipTo( nodes[1], TYPES[round % 2] );
+                nodes[0].getRelationships( TYPES[(round + 1) % 2] ).iterator().next().delete();
+                assertEquals( 23, count( nodes[0].getRelationships() ) );
+                assertEquals( 23, count( nodes[1].getRelationships() ) );
+                tx.success();
+            }
+            finally
+            {
+                tx.finish();
+            }
+            assertEquals( 23, count( nodes[0].getRelationships() ) );
+            assertEquals( 23, count( nodes[1].getRelationships() ) );
+            assertGrouped( nodes[1] );
+        }
+    }
+
+    @Test
+    public void headsAreFoundWhileTransactionsChangeTheChain() throws Exception
+    {
+        startDb( true );
+        final Node[] nodes = createNodes( 5 );
+        createRelationships( new Random( 3 ), nodes, 100 );
+        final int type = neoStore().getRelationshipStore().getRecord(
+                nodes[0].getRelationships().iterator().next().getId() ).getType();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread reader = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    PersistenceManager persistenceManager = persistenceManager();
+                    while ( !done.get() )
+                    {
+                        for ( DirectionWrapper direction : DirectionWrapper.values() )
+                        {
+                            persistenceManager.getRelationshipChainPosition( nodes[0].getId(), type, direction );
+                        }
+                    }
+                }
+                catch ( Throwable t )
+                {
+                    failure.set( t );
+                }
+            }
+        };
+        reader.start();
+        try
+        {
+            Random random = new Random( 4 );
+            for ( int i = 0; i < 50; i++ )
+            {
+                createRelationships( random, nodes, 10 );
+            }
+        }
+        finally
+        {
+            done.set( true );
+            reader.join();
+        }
+        assertNull( failure.get() );
+        assertGrouped( nodes[0] );
+        assertTypedReads( nodes[0] );
+    }
+
+    private static int count( Iterable<Relationship> rels )
+    {
+        Set<Long> ids = new HashSet<Long>();
+        int count = 0;
+        for ( Relationship rel : rels )
+        {
+            assertTrue( rel + " seen twice", ids.add( rel.getId() ) );
+            count++;
+        }
+        return count;
+    }
+
+    private void startDb( boolean group )
+    {
+        db = new EmbeddedGraphDatabase( path, MapUtil.stringMap(
+                Config.GROUP_RELATIONSHIP_CHAINS, String.valueOf( group ),
+                Config.DENSE_NODE_THRESHOLD, "20", "relationship_grab_size", "10" ) );
+    }
+
+    private void restartDb( boolean group )
+    {
+        db.shutdown();
+        startDb( group );
+    }
+
+    private NeoStore neoStore()
+    {
+        return StoreAccess.getNeoStoreFrom( db );
+    }
+
+    private PersistenceManager persistenceManager()
+    {
+        return db.getConfig().getPersistenceModule().getPersistenceManager();
+    }
+
+    private Node[] createNodes( int count )
+    {
+        Transaction tx = db.beginTx();
+        try
+        {
+            Node[] nodes = new Node[count];
+            for ( int i = 0; i < count; i++ )
+            {
+                nodes[i] = db.createNode();
+            }
+            tx.success();
+            return nodes;
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+
+    private Node[] reload( Node[] nodes )
+    {
+        Node[] result = new Node[nodes.length];
+        for ( int i = 0; i < nodes.length; i++ )
+        {
+            result[i] = db.getNodeById( nodes[i].getId() );
+        }
+        return result;
+    }
+
+    private List<Relationship> createRelationships( Random random, Node[] nodes, int count )
+    {
+        Transaction tx = db.beginTx();
+        try
+        {
+            List<Relationship> rels = createRelationshipsInTx( random, nodes, count );
+            tx.success();
+            return rels;
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+
+    /*
+     * Most relationships are connected to the first node, with types and
+     * directions mixed, and some are loops.
+     */
+    private List<Relationship> createRelationshipsInTx( Random random, Node[] nodes, int count )
+    {
+        List<Relationship> rels = new ArrayList<Relationship>();
+        for ( int i = 0; i < count; i++ )
+        {
+            Node start = random.nextInt( 4 ) == 0 ? nodes[random.nextInt( nodes.length )] : nodes[0];
+            Node end = random.nextInt( 10 ) == 0 ? start : nodes[random.nextInt( nodes.length )];
+            if ( random.nextBoolean() )
+            {
+                Node other = start;
+                start = end;
+                end = other;
+            }
+            rels.add( start.createRelationshipTo( end, TYPES[random.nextInt( TYPES.length )] ) );
+        }
+        return rels;
+    }
+
+    private long[] groupsOf( Node node )
+    {
+        long[] groups = neoStore().getRelationshipGroups().getGroups( node.getId() );
+        assertNotNull( groups );
+        return groups;
+    }
+
+    private void assertGrouped( Node node )
+    {
+        RelationshipStore relStore = neoStore().getRelationshipStore();
+        Set<Integer> seen = new HashSet<Integer>();
+        int lastKey = -1;
+        int length = 0;
+        long position = neoStore().getNodeStore().getRecord( node.getId() ).getNextRel();
+        while ( position != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipRecord record = relStore.getRecord( position );
+            int key = keyOf( record, node.getId() );
+            if ( key != lastKey )
+            {
+                assertTrue( "group " + key + " of " + node + " isn't contiguous", seen.add( key ) );
+                lastKey = key;
+            }
+            length++;
+            position = nextOf( record, node.getId() );
+        }
+        int expected = 0;
+        for ( @SuppressWarnings( "unused" ) Relationship rel : node.getRelationships() )
+        {
+            expected++;
+        }
+        assertEquals( expected, length );
+    }
+
+    private void assertTypedReads( Node node )
+    {
+        RelationshipStore relStore = neoStore().getRelationshipStore();
+        Map<Integer,Set<Long>> expected = new HashMap<Integer,Set<Long>>();
+        Set<Integer> types = new HashSet<Integer>();
+        for ( Relationship rel : node.getRelationships() )
+        {
+            RelationshipRecord record = relStore.getRecord( rel.getId() );
+            types.add( record.getType() );
+            int key = keyOf( record, node.getId() );
+            if ( !expected.containsKey( key ) )
+            {
+                expected.put( key, new HashSet<Long>() );
+            }
+            expected.get( key ).add( rel.getId() );
+        }
+        PersistenceManager persistenceManager = persistenceManager();
+        for ( int type : types )
+        {
+            for ( DirectionWrapper direction : DirectionWrapper.values() )
+            {
+                Set<Long> found = new HashSet<Long>();
+                long position = persistenceManager.getRelationshipChainPosition( node.getId(), type, direction );
+                while ( position != Record.NO_NEXT_RELATIONSHIP.intValue() )
+                {
+                    Pair<Map<DirectionWrapper,Iterable<RelationshipRecord>>,Long> more =
+                            persistenceManager.getMoreRelationships( node.getId(), position, type, direction );
+                    for ( RelationshipRecord record : more.first().get( direction ) )
+                    {
+                        assertEquals( type, record.getType() );
+                        assertEquals( direction, directionOf( record, node.getId() ) );
+                        found.add( record.getId() );
+                    }
+                    position = more.other();
+                }
+                Set<Long> expectedIds = expected.get( keyOf( type, direction ) );
+                assertEquals( expectedIds != null ? expectedIds : new HashSet<Long>(), found );
+            }
+        }
+    }
+}
@@ -37,7 +37,10 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -596,6 +599,100 @@ public class TestIdGenerator
         closeIdGenerator( idGenerator );
     }
 
+    @Test
+    public void idBatchRangeSkipsMagicMinusOne() throws Exception
+    {
+        IdGeneratorImpl.createGenerator( idGeneratorFile() );
+        IdGenerator idGenerator = new IdGeneratorImpl( idGeneratorFile(), 10, IdType.NODE.getMaxValue(), false );
+        long magicMinusOne = (long) Math.pow( 2, 32 )-1;
+        idGenerator.setHighId( magicMinusOne-2 );
+        IdRange range = idGenerator.nextIdBatch( 5 );
+        assertEquals( 0, range.getDefragIds().length );
+        assertEquals( magicMinusOne+1, range.getRangeStart() );
+        assertEquals( 5, range.getRangeLength() );
+        assertEquals( magicMinusOne+6, idGenerator.getHighId() );
+        // the two ids before it are reused later
+        closeIdGenerator( idGenerator );
+        idGenerator = new IdGeneratorImpl( idGeneratorFile(), 10, IdType.NODE.getMaxValue(), false );
+        assertEquals( magicMinusOne-2, idGenerator.nextId() );
+        assertEquals( magicMinusOne-1, idGenerator.nextId() );
+        assertEquals( magicMinusOne+6, idGenerator.nextId() );
+        closeIdGenerator( idGenerator );
+    }
+
+    @Test
+    public void concurrentAllocationsAndFreesNeverHandOutAnIdTwice() throws Exception
+    {
+        IdGeneratorImpl.createGenerator( idGeneratorFile() );
+        final IdGenerator idGenerator = new IdGeneratorImpl( idGeneratorFile(), 100,
+                IdType.PROPERTY.getMaxValue(), true );
+        final Map<Long,Thread> inUse = new ConcurrentHashMap<Long,Thread>();
+        final List<Throwable> failures = new CopyOnWriteArrayList<Throwable>();
+        Thread[] threads = new Thread[8];
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            final Random random = new Random( i );
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    List<Long> mine = new ArrayList<Long>();
+                    try
+                    {
+                        for ( int round = 0; round < 20000; round++ )
+                        {
+                            if ( random.nextInt( 10 ) == 0 )
+                            {
+                                IdRange range = idGenerator.nextIdBatch( 1 + random.nextInt( 20 ) );
+                                for ( long id : range.getDefragIds() )
+                                {
+                                    take( id, mine );
+                                }
+                                for ( int j = 0; j < range.getRangeLength(); j++ )
+                                {
+                                    take( range.getRangeStart() + j, mine );
+                                }
+                            }
+                            else
+                            {
+                                take( idGenerator.nextId(), mine );
+                            }
+                            while ( mine.size() > 50 )
+                            {
+                                long id = mine.remove( random.nextInt( mine.size() ) );
+                                assertEquals( this, inUse.remove( id ) );
+                                idGenerator.freeId( id );
+                            }
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        failures.add( e );
+                    }
+                }
+
+                private void take( long id, List<Long> mine )
+                {
+                    Thread owner = inUse.put( id, this );
+                    assertTrue( "id " + id + " handed out to " + owner + " too", owner == null );
+                    mine.add( id );
+                }
+            };
+        }
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        assertEquals( new ArrayList<Throwable>(), failures );
+        assertEquals( inUse.size(), idGenerator.getNumberOfIdsInUse() );
+        closeIdGenerator( idGenerator );
+    }
+
     @Test
     public void commandsGetWrittenOnceSoThatFreedIdsGetsAddedOnlyOnce() throws Exception
     {
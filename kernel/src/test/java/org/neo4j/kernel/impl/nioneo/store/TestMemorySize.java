@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.neo4j.kernel.impl.nioneo.store.CommonAbstractStore.parseMemorySize;
+
+import org.junit.Test;
+
+public class TestMemorySize
+{
+    @Test
+    public void shouldParseUnitsInEitherCase()
+    {
+        assertEquals( 3 * 1024, parseMemorySize( "3k" ) );
+        assertEquals( 3 * 1024, parseMemorySize( "3K" ) );
+        assertEquals( 3 * 1024 * 1024, parseMemorySize( "3M" ) );
+        assertEquals( 3 * 1024 * 1024, parseMemorySize( "3m" ) );
+        assertEquals( 3L * 1024 * 1024 * 1024, parseMemorySize( "3G" ) );
+        assertEquals( 3L * 1024 * 1024 * 1024, parseMemorySize( "3g" ) );
+    }
+
+    @Test
+    public void shouldParsePlainBytes()
+    {
+        assertEquals( 12345, parseMemorySize( "12345" ) );
+        assertEquals( 12345, parseMemorySize( " 12345 " ) );
+    }
+
+    @Test( expected = NumberFormatException.class )
+    public void shouldRejectUnknownUnits()
+    {
+        parseMemorySize( "3T" );
+    }
+}
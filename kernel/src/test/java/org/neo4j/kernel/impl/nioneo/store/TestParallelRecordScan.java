@@ -0,0 +1,239 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.neo4j.kernel.impl.util.FileUtils.deleteRecursively;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.CommonFactories;
+import org.neo4j.kernel.IdGeneratorFactory;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+public class TestParallelRecordScan
+{
+    private static final int RECORDS = 200000;
+
+    private final String path = AbstractNeo4jTestCase.getStorePath( "parallel-record-scan" );
+    private NodeStore store;
+    private ExecutorService executor;
+
+    @Before
+    public void createStore() throws IOException
+    {
+        deleteRecursively( new File( path ) );
+        new File( path ).mkdirs();
+        String fileName = new File( path, "nodestore.db" ).getPath();
+        Map<Object,Object> config = MapUtil.genericMap(
+                IdGeneratorFactory.class, CommonFactories.defaultIdGeneratorFactory(),
+                FileSystemAbstraction.class, CommonFactories.defaultFileSystemAbstraction(),
+                StringLogger.class, StringLogger.DEV_NULL,
+                "nodestore.db.mapped_memory", "500k" );
+        NodeStore.createStore( fileName, config );
+        store = new NodeStore( fileName, config );
+        for ( int i = 1; i < RECORDS; i++ )
+        {
+            NodeRecord record = new NodeRecord( store.nextId(), i, -1 );
+            record.setInUse( i % 5 != 0 );
+            store.updateRecord( record );
+        }
+        executor = Executors.newFixedThreadPool( 4 );
+    }
+
+    @After
+    public void closeStore() throws IOException
+    {
+        executor.shutdown();
+        store.close();
+        deleteRecursively( new File( path ) );
+    }
+
+    @Test
+    public void partitionsCoverAllIdsWithoutOverlapping()
+    {
+        ParallelRecordScan<NodeRecord> scan = new ParallelRecordScan<NodeRecord>( store, 7 );
+        assertTrue( scan.getPartitionCount() > 1 );
+        assertTrue( scan.getPartitionCount() <= 7 );
+        long expectedStart = 0;
+        for ( int i = 0; i < scan.getPartitionCount(); i++ )
+        {
+            assertEquals( expectedStart, scan.getStartId( i ) );
+            assertTrue( scan.getEndId( i ) > scan.getStartId( i ) );
+            expectedStart = scan.getEndId( i );
+        }
+        assertEquals( RECORDS, expectedStart );
+    }
+
+    @Test
+    public void smallStoreGetsFewerPartitions()
+    {
+        ParallelRecordScan<NodeRecord> scan = new ParallelRecordScan<NodeRecord>( store, RECORDS );
+        int recordsPerRead = RecordScan.recordsPerBuffer( store.getRecordSize() );
+        assertEquals( (RECORDS + recordsPerRead - 1) / recordsPerRead, scan.getPartitionCount() );
+    }
+
+    @Test
+    public void processesEveryRecordInUseOnce()
+    {
+        List<long[]> results = new ParallelRecordScan<NodeRecord>( store, 16 ).run( executor,
+                new ParallelRecordScan.Processor<NodeRecord, long[]>()
+                {
+                    @Override
+                    public long[] process( Iterator<NodeRecord> records )
+                    {
+                        long[] countAndSum = new long[2];
+                        while ( records.hasNext() )
+                        {
+                            NodeRecord record = records.next();
+                            countAndSum[0]++;
+                            countAndSum[1] += record.getId();
+                        }
+                        return countAndSum;
+                    }
+                } );
+        long count = 0, sum = 0, expectedCount = 0, expectedSum = 0;
+        for ( long[] result : results )
+        {
+            count += result[0];
+            sum += result[1];
+        }
+        for ( long id = 0; id < RECORDS; id++ )
+        {
+            if ( id == 0 || id % 5 != 0 )
+            {
+                expectedCount++;
+                expectedSum += id;
+            }
+        }
+        assertEquals( expectedCount, count );
+        assertEquals( expectedSum, sum );
+    }
+
+    @Test
+    public void failureInAPartitionIsRethrown()
+    {
+        try
+        {
+            new ParallelRecordScan<NodeRecord>( store, 8 ).run( executor,
+                    new ParallelRecordScan.Processor<NodeRecord, Void>()
+                    {
+                        @Override
+                        public Void process( Iterator<NodeRecord> records )
+                        {
+                            throw new IllegalStateException( "expected" );
+                        }
+                    } );
+            fail( "Should have failed" );
+        }
+        catch ( IllegalStateException e )
+        {
+            assertEquals( "expected", e.getMessage() );
+        }
+    }
+
+    @Test
+    public void scanWhileRecordsAreBeingUpdated() throws Exception
+    {
+        // records with an odd id are flipped back and forth while scanning,
+        // the rest must be seen by every scan
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                boolean inUse = false;
+                while ( !done.get() )
+                {
+                    for ( long id = 1; id < RECORDS && !done.get(); id += 2 )
+                    {
+                        NodeRecord record = new NodeRecord( id, id, -1 );
+                        record.setInUse( inUse );
+                        store.updateRecord( record );
+                    }
+                    inUse = !inUse;
+                }
+            }
+        };
+        writer.start();
+        try
+        {
+            for ( int round = 0; round < 5; round++ )
+            {
+                List<Long> results = new ParallelRecordScan<NodeRecord>( store, 16 ).run( executor,
+                        new ParallelRecordScan.Processor<NodeRecord, Long>()
+                        {
+                            @Override
+                            public Long process( Iterator<NodeRecord> records )
+                            {
+                                long evenCount = 0;
+                                while ( records.hasNext() )
+                                {
+                                    NodeRecord record = records.next();
+                                    if ( record.getId() % 2 == 0 )
+                                    {
+                                        evenCount++;
+                                    }
+                                    else
+                                    {
+                                        assertEquals( record.getId(), record.getNextRel() );
+                                    }
+                                }
+                                return evenCount;
+                            }
+                        } );
+                long evenCount = 0;
+                for ( Long count : results )
+                {
+                    evenCount += count;
+                }
+                long expected = 0;
+                for ( long id = 0; id < RECORDS; id += 2 )
+                {
+                    if ( id == 0 || id % 5 != 0 )
+                    {
+                        expected++;
+                    }
+                }
+                assertEquals( expected, evenCount );
+            }
+        }
+        finally
+        {
+            done.set( true );
+            writer.join();
+        }
+    }
+}
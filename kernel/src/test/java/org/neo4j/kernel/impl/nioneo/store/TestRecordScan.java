@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.neo4j.kernel.impl.util.FileUtils.deleteRecursively;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.CommonFactories;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.IdGeneratorFactory;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+public class TestRecordScan
+{
+    private static final int RECORDS = 100000;
+
+    private final String path = AbstractNeo4jTestCase.getStorePath( "record-scan" );
+    private NodeStore nodeStore;
+    private RelationshipStore relStore;
+
+    @Before
+    public void cleanUp() throws IOException
+    {
+        deleteRecursively( new File( path ) );
+        new File( path ).mkdirs();
+    }
+
+    @After
+    public void closeStores() throws IOException
+    {
+        if ( nodeStore != null ) nodeStore.close();
+        if ( relStore != null ) relStore.close();
+        deleteRecursively( new File( path ) );
+    }
+
+    @Test
+    public void scanSeesOnlyRecordsInUseWithMappedWindows()
+    {
+        createStores( "20M", true );
+        populate();
+        assertNodesInUse( nodeStore.scan(), 0, RECORDS );
+        assertRelationshipsInUse( relStore.scan(), 0, RECORDS );
+    }
+
+    @Test
+    public void scanSeesOnlyRecordsInUseWithLessMemoryThanTheStore()
+    {
+        createStores( "100k", true );
+        populate();
+        assertNodesInUse( nodeStore.scan(), 0, RECORDS );
+        assertRelationshipsInUse( relStore.scan(), 0, RECORDS );
+    }
+
+    @Test
+    public void scanSeesUnflushedWritesInPlainWindows()
+    {
+        createStores( "100k", false );
+        populate();
+        assertNodesInUse( nodeStore.scan(), 0, RECORDS );
+        assertRelationshipsInUse( relStore.scan(), 0, RECORDS );
+    }
+
+    @Test
+    public void scanWithoutAnyMappedMemory()
+    {
+        createStores( "0M", true );
+        populate();
+        assertNodesInUse( nodeStore.scan(), 0, RECORDS );
+        assertRelationshipsInUse( relStore.scan(), 0, RECORDS );
+    }
+
+    @Test
+    public void scanRangeOfIds()
+    {
+        createStores( "100k", true );
+        populate();
+        assertNodesInUse( nodeStore.scan( 12345, 54321 ), 12345, 54321 );
+        assertRelationshipsInUse( relStore.scan( 99990, RECORDS + 10 ), 99990, RECORDS );
+        assertFalse( nodeStore.scan( 10, 10 ).hasNext() );
+    }
+
+    @Test
+    public void scanSeesRecordsDeletedAfterItWasCreated()
+    {
+        createStores( "20M", true );
+        populate();
+        Iterator<NodeRecord> scan = nodeStore.scan();
+        NodeRecord record = new NodeRecord( RECORDS - 1, -1, -1 );
+        record.setInUse( false );
+        nodeStore.updateRecord( record );
+        assertNodesInUse( scan, 0, RECORDS - 1 );
+    }
+
+    private void createStores( String mappedMemory, boolean useMemoryMapped )
+    {
+        String nodeFile = new File( path, "nodestore.db" ).getPath();
+        String relFile = new File( path, "relationshipstore.db" ).getPath();
+        Map<Object,Object> config = MapUtil.genericMap(
+                IdGeneratorFactory.class, CommonFactories.defaultIdGeneratorFactory(),
+                FileSystemAbstraction.class, CommonFactories.defaultFileSystemAbstraction(),
+                StringLogger.class, StringLogger.DEV_NULL,
+                Config.USE_MEMORY_MAPPED_BUFFERS, String.valueOf( useMemoryMapped ),
+                "nodestore.db.mapped_memory", mappedMemory,
+                "relationshipstore.db.mapped_memory", mappedMemory );
+        NodeStore.createStore( nodeFile, config );
+        RelationshipStore.createStore( relFile,
+                (IdGeneratorFactory) config.get( IdGeneratorFactory.class ),
+                (FileSystemAbstraction) config.get( FileSystemAbstraction.class ) );
+        nodeStore = new NodeStore( nodeFile, config );
+        relStore = new RelationshipStore( relFile, config );
+    }
+
+    /**
+     * Every third record is left unused, except the reference node which
+     * {@link NodeStore#createStore(String, Map)} already put there.
+     */
+    private void populate()
+    {
+        for ( int i = 1; i < RECORDS; i++ )
+        {
+            NodeRecord node = new NodeRecord( nodeStore.nextId(), i, i * 2 );
+            node.setInUse( !unused( i ) );
+            nodeStore.updateRecord( node );
+        }
+        for ( int i = 0; i < RECORDS; i++ )
+        {
+            RelationshipRecord rel = new RelationshipRecord( relStore.nextId(), i, i + 1, i % 10 );
+            rel.setInUse( !unused( i ) );
+            relStore.updateRecord( rel );
+        }
+    }
+
+    private static boolean unused( long id )
+    {
+        return id > 0 && id % 3 == 0;
+    }
+
+    private void assertNodesInUse( Iterator<NodeRecord> scan, long startId, long endId )
+    {
+        for ( long id = startId; id < endId; id++ )
+        {
+            if ( unused( id ) ) continue;
+            NodeRecord record = scan.next();
+            assertEquals( id, record.getId() );
+            if ( id > 0 )
+            {
+                assertEquals( id, record.getNextRel() );
+                assertEquals( id * 2, record.getNextProp() );
+            }
+        }
+        assertFalse( scan.hasNext() );
+    }
+
+    private void assertRelationshipsInUse( Iterator<RelationshipRecord> scan, long startId, long endId )
+    {
+        for ( long id = startId; id < endId; id++ )
+        {
+            if ( unused( id ) ) continue;
+            RelationshipRecord record = scan.next();
+            assertEquals( id, record.getId() );
+            assertEquals( id, record.getFirstNode() );
+            assertEquals( id + 1, record.getSecondNode() );
+            assertEquals( id % 10, record.getType() );
+        }
+        assertFalse( scan.hasNext() );
+    }
+}
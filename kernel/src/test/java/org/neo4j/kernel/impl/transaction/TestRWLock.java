@@ -19,6 +19,7 @@
  */
 package org.neo4j.kernel.impl.transaction;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -29,6 +30,37 @@ public class TestRWLock
 {
     private LockManager lm = new LockManager( new PlaceboTm() );
 
+    @Test
+    public void allLocksAreVisibleAndRemovedWhenReleased() throws Exception
+    {
+        Object[] resources = new Object[1000];
+        for ( int i = 0; i < resources.length; i++ )
+        {
+            resources[i] = new Object();
+            if ( i % 2 == 0 )
+            {
+                lm.getReadLock( resources[i] );
+            }
+            else
+            {
+                lm.getWriteLock( resources[i] );
+            }
+        }
+        assertEquals( resources.length, lm.getAllLocks().size() );
+        for ( int i = 0; i < resources.length; i++ )
+        {
+            if ( i % 2 == 0 )
+            {
+                lm.releaseReadLock( resources[i], null );
+            }
+            else
+            {
+                lm.releaseWriteLock( resources[i], null );
+            }
+        }
+        assertEquals( 0, lm.getAllLocks().size() );
+    }
+
     @Test
     public void testSingleThread() throws Exception
     {
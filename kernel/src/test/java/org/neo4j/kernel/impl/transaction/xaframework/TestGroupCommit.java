@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.IteratorUtil;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
+import org.neo4j.kernel.impl.util.FileUtils;
+
+public class TestGroupCommit
+{
+    private static final int THREADS = 8;
+    private static final int TRANSACTIONS_PER_THREAD = 50;
+
+    private final File storeDir = new File( "target/test-data/group-commit" );
+
+    @Test
+    public void concurrentCommitsAreDurableAndShareForces() throws Exception
+    {
+        FileUtils.deleteRecursively( storeDir );
+        final EmbeddedGraphDatabase db = new EmbeddedGraphDatabase( storeDir.getAbsolutePath(),
+                stringMap( Config.GROUP_COMMIT, "true", Config.GROUP_COMMIT_WINDOW, "1" ) );
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        try
+        {
+            long lastTxBefore = dataSource( db ).getLastCommittedTxId();
+            Thread[] threads = new Thread[THREADS];
+            for ( int i = 0; i < threads.length; i++ )
+            {
+                threads[i] = new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            for ( int i = 0; i < TRANSACTIONS_PER_THREAD; i++ )
+                            {
+                                Transaction tx = db.beginTx();
+                                try
+                                {
+                                    db.createNode().setProperty( "tx", i );
+                                    tx.success();
+                                }
+                                finally
+                                {
+                                    tx.finish();
+                                }
+                            }
+                        }
+                        catch ( Throwable t )
+                        {
+                            failure.compareAndSet( null, t );
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            for ( Thread thread : threads )
+            {
+                thread.join();
+            }
+            assertNull( failure.get() );
+            // every transaction got its own id and was applied after the force
+            assertEquals( lastTxBefore + THREADS * TRANSACTIONS_PER_THREAD,
+                    dataSource( db ).getLastCommittedTxId() );
+
+            GroupCommitStats stats = logicalLog( db ).getGroupCommitStats();
+            assertNotNull( stats );
+            assertEquals( THREADS * TRANSACTIONS_PER_THREAD, stats.getCommittedCount() );
+            assertTrue( stats.getForceCount() <= stats.getCommittedCount() );
+            assertTrue( stats.getAverageBatchSize() >= 1 );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+
+        EmbeddedGraphDatabase restarted = new EmbeddedGraphDatabase( storeDir.getAbsolutePath() );
+        try
+        {
+            // all nodes plus the reference node
+            assertEquals( THREADS * TRANSACTIONS_PER_THREAD + 1,
+                    IteratorUtil.count( restarted.getAllNodes() ) );
+        }
+        finally
+        {
+            restarted.shutdown();
+        }
+    }
+
+    @Test
+    public void noStatsWhenGroupCommitIsDisabled() throws Exception
+    {
+        FileUtils.deleteRecursively( storeDir );
+        EmbeddedGraphDatabase db = new EmbeddedGraphDatabase( storeDir.getAbsolutePath() );
+        try
+        {
+            Transaction tx = db.beginTx();
+            Node node = db.createNode();
+            node.setProperty( "name", "value" );
+            tx.success();
+            tx.finish();
+            assertNull( logicalLog( db ).getGroupCommitStats() );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    private static NeoStoreXaDataSource dataSource( EmbeddedGraphDatabase db )
+    {
+        return (NeoStoreXaDataSource) db.getConfig().getTxModule()
+                .getXaDataSourceManager().getXaDataSource( Config.DEFAULT_DATA_SOURCE_NAME );
+    }
+
+    private static XaLogicalLog logicalLog( EmbeddedGraphDatabase db )
+    {
+        return dataSource( db ).getXaContainer().getLogicalLog();
+    }
+}
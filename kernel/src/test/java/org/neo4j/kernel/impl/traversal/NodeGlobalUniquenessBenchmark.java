@@ -0,0 +1,232 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.traversal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.traversal.TraversalBranch;
+import org.neo4j.graphdb.traversal.TraversalDescription;
+import org.neo4j.graphdb.traversal.UniquenessFactory;
+import org.neo4j.graphdb.traversal.UniquenessFilter;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.Traversal;
+import org.neo4j.kernel.Uniqueness;
+import org.neo4j.kernel.impl.util.FileUtils;
+import org.neo4j.kernel.impl.util.LongBitmapSet;
+import org.neo4j.kernel.impl.util.LongHashSet;
+
+/**
+ * Cost of {@link Uniqueness#NODE_GLOBAL} in a {@link TraversalDescriptionImpl}
+ * traversal which visits every node of a random graph, compared to the same
+ * traversal with a filter which keeps the visited ids in a
+ * {@code HashSet<Long>}, like {@link Uniqueness#NODE_GLOBAL} used to. Prints
+ * the time per traversal for each, over a number of rounds after warming up.
+ *
+ * Also prints the retained bytes per visited id of the sets themselves:
+ * {@code HashSet<Long>}, {@link LongHashSet} and {@link LongBitmapSet}, for
+ * ids which are dense (all ids up to the number of nodes) and sparse (one
+ * in every 1000 ids).
+ *
+ * The graph is created in {@value #STORE_DIR}, which is deleted afterwards.
+ *
+ * Usage: NodeGlobalUniquenessBenchmark [nodes] [rounds]
+ *
+ * Run with a fixed heap size (e.g. -Xms2g -Xmx2g) for stable numbers.
+ */
+public class NodeGlobalUniquenessBenchmark
+{
+    private static final String STORE_DIR = "target/node-global-uniqueness-benchmark";
+    private static final RelationshipType KNOWS = DynamicRelationshipType.withName( "KNOWS" );
+
+    private static final UniquenessFactory BOXED_NODE_GLOBAL = new UniquenessFactory()
+    {
+        public UniquenessFilter create( Object optionalParameter )
+        {
+            return new UniquenessFilter()
+            {
+                private final Set<Long> visited = new HashSet<Long>();
+
+                public boolean checkFirst( TraversalBranch branch )
+                {
+                    return check( branch );
+                }
+
+                public boolean check( TraversalBranch branch )
+                {
+                    return visited.add( branch.node().getId() );
+                }
+            };
+        }
+    };
+
+    public static void main( String[] args ) throws IOException
+    {
+        int nodes = args.length > 0 ? Integer.parseInt( args[0] ) : 300000;
+        int rounds = args.length > 1 ? Integer.parseInt( args[1] ) : 5;
+
+        footprints( nodes );
+
+        FileUtils.deleteRecursively( new File( STORE_DIR ) );
+        GraphDatabaseService graphDb = new EmbeddedGraphDatabase( STORE_DIR );
+        try
+        {
+            Node start = createGraph( graphDb, nodes, 3 );
+            TraversalDescription primitive = Traversal.description().breadthFirst().uniqueness(
+                    Uniqueness.NODE_GLOBAL );
+            TraversalDescription boxed = Traversal.description().breadthFirst().uniqueness(
+                    BOXED_NODE_GLOBAL );
+            // warm up, which also loads the whole graph into the cache
+            traverse( primitive, start );
+            traverse( boxed, start );
+
+            long primitiveTime = 0;
+            long boxedTime = 0;
+            int visited = 0;
+            for ( int i = 0; i < rounds; i++ )
+            {
+                long time = System.nanoTime();
+                visited = traverse( primitive, start );
+                primitiveTime += System.nanoTime() - time;
+                time = System.nanoTime();
+                traverse( boxed, start );
+                boxedTime += System.nanoTime() - time;
+            }
+            System.out.println( "visited " + visited + " nodes per traversal" );
+            System.out.println( "NODE_GLOBAL\t" + format( primitiveTime / 1000000d / rounds ) + " ms" );
+            System.out.println( "HashSet<Long>\t" + format( boxedTime / 1000000d / rounds ) + " ms" );
+        }
+        finally
+        {
+            graphDb.shutdown();
+            FileUtils.deleteRecursively( new File( STORE_DIR ) );
+        }
+    }
+
+    private static int traverse( TraversalDescription description, Node start )
+    {
+        int count = 0;
+        for ( @SuppressWarnings( "unused" ) Node node : description.traverse( start ).nodes() )
+        {
+            count++;
+        }
+        return count;
+    }
+
+    private static Node createGraph( GraphDatabaseService graphDb, int nodes, int degree )
+    {
+        Random random = new Random( 0 );
+        Node[] created = new Node[nodes];
+        Transaction tx = graphDb.beginTx();
+        try
+        {
+            for ( int i = 0; i < nodes; i++ )
+            {
+                created[i] = graphDb.createNode();
+                // connect to earlier nodes only, so that all are reachable
+                for ( int j = 0; j < degree && i > 0; j++ )
+                {
+                    created[i].createRelationshipTo( created[random.nextInt( i )], KNOWS );
+                }
+                if ( i % 50000 == 49999 )
+                {
+                    tx.success();
+                    tx.finish();
+                    tx = graphDb.beginTx();
+                }
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        return created[0];
+    }
+
+    private static void footprints( int count )
+    {
+        System.out.println( "set\tids\tbytes/id" );
+        for ( int step : new int[] { 1, 1000 } )
+        {
+            String ids = step == 1 ? "dense" : "sparse";
+            long before = usedMemory();
+            Set<Long> boxed = new HashSet<Long>();
+            for ( long id = 0; id < (long) count * step; id += step )
+            {
+                boxed.add( id );
+            }
+            long used = usedMemory() - before;
+            System.out.println( "HashSet<Long>\t" + ids + "\t" + format( (double) used / boxed.size() ) );
+            boxed = null;
+
+            before = usedMemory();
+            LongHashSet hashSet = new LongHashSet();
+            for ( long id = 0; id < (long) count * step; id += step )
+            {
+                hashSet.add( id );
+            }
+            used = usedMemory() - before;
+            System.out.println( "LongHashSet\t" + ids + "\t" + format( (double) used / hashSet.size() ) );
+            hashSet = null;
+
+            before = usedMemory();
+            LongBitmapSet bitmap = new LongBitmapSet();
+            for ( long id = 0; id < (long) count * step; id += step )
+            {
+                bitmap.add( id );
+            }
+            used = usedMemory() - before;
+            System.out.println( "LongBitmapSet\t" + ids + "\t" + format( (double) used / bitmap.size() ) );
+            bitmap = null;
+        }
+    }
+
+    private static long usedMemory()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for ( int i = 0; i < 5; i++ )
+        {
+            System.gc();
+            try
+            {
+                Thread.sleep( 50 );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static String format( double value )
+    {
+        return String.format( "%.1f", value );
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.traversal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.kernel.Traversal;
+import org.neo4j.kernel.Uniqueness;
+
+public class TestUniqueness extends AbstractTestBase
+{
+    // more nodes than the visited sets check density for, so that
+    // NODE_GLOBAL switches to a bitmap on the way
+    private static final int NODE_COUNT = 10000;
+
+    @BeforeClass
+    public static void createTheGraph()
+    {
+        // a ring, where each node also knows the node seven steps away
+        String[] description = new String[NODE_COUNT * 2];
+        for ( int i = 0; i < NODE_COUNT; i++ )
+        {
+            description[i * 2] = i + " KNOWS " + ((i + 1) % NODE_COUNT);
+            description[i * 2 + 1] = i + " KNOWS " + ((i + 7) % NODE_COUNT);
+        }
+        createGraph( description );
+    }
+
+    @Test
+    public void nodeGlobalVisitsEachNodeOnce()
+    {
+        Set<Node> nodes = new HashSet<Node>();
+        for ( Node node : Traversal.description().breadthFirst().uniqueness(
+                Uniqueness.NODE_GLOBAL ).traverse( getNodeWithName( "0" ) ).nodes() )
+        {
+            assertTrue( "Visited " + node + " twice", nodes.add( node ) );
+        }
+        assertEquals( NODE_COUNT, nodes.size() );
+    }
+
+    @Test
+    public void relationshipGlobalTraversesEachRelationshipOnce()
+    {
+        Set<Relationship> relationships = new HashSet<Relationship>();
+        for ( Path path : Traversal.description().depthFirst().uniqueness(
+                Uniqueness.RELATIONSHIP_GLOBAL ).traverse( getNodeWithName( "0" ) ) )
+        {
+            if ( path.length() > 0 )
+            {
+                assertTrue( relationships.add( path.lastRelationship() ) );
+            }
+        }
+        assertEquals( NODE_COUNT * 2, relationships.size() );
+    }
+
+    @Test
+    public void nodeRecentVisitsEachNodeOnceWhenAllFit()
+    {
+        int count = 0;
+        for ( Node node : Traversal.description().breadthFirst().uniqueness(
+                Uniqueness.NODE_RECENT, NODE_COUNT ).traverse( getNodeWithName( "0" ) ).nodes() )
+        {
+            count++;
+        }
+        assertEquals( NODE_COUNT, count );
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestLongHashSet
+{
+    @Test
+    public void testAddContainsRemove()
+    {
+        LongHashSet set = new LongHashSet();
+        assertTrue( set.add( 0 ) );
+        assertTrue( set.add( 5 ) );
+        assertTrue( set.add( Long.MAX_VALUE ) );
+        assertFalse( set.add( 5 ) );
+        assertEquals( 3, set.size() );
+        assertTrue( set.contains( 0 ) );
+        assertTrue( set.contains( Long.MAX_VALUE ) );
+        assertFalse( set.contains( 6 ) );
+        assertFalse( set.contains( -1 ) );
+
+        assertTrue( set.remove( 5 ) );
+        assertFalse( set.remove( 5 ) );
+        assertFalse( set.contains( 5 ) );
+        assertEquals( 2, set.size() );
+
+        long[] values = set.toArray();
+        Arrays.sort( values );
+        assertEquals( 0, values[0] );
+        assertEquals( Long.MAX_VALUE, values[1] );
+
+        set.clear();
+        assertTrue( set.isEmpty() );
+        assertFalse( set.contains( 0 ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testNegativeValuesNotAllowed()
+    {
+        new LongHashSet().add( -1 );
+    }
+
+    @Test
+    public void testSameAsHashSet()
+    {
+        Random random = new Random( 3 );
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<Long>();
+        for ( int i = 0; i < 100000; i++ )
+        {
+            // a small range, so that there are many collisions and removals
+            long value = random.nextInt( 5000 );
+            if ( random.nextInt( 3 ) == 0 )
+            {
+                assertEquals( expected.remove( value ), set.remove( value ) );
+            }
+            else
+            {
+                assertEquals( expected.add( value ), set.add( value ) );
+            }
+        }
+        assertEquals( expected.size(), set.size() );
+        for ( long value = 0; value < 5000; value++ )
+        {
+            assertEquals( expected.contains( value ), set.contains( value ) );
+        }
+    }
+
+    @Test
+    public void testBitmapSet()
+    {
+        LongBitmapSet set = new LongBitmapSet();
+        Random random = new Random( 4 );
+        Set<Long> expected = new HashSet<Long>();
+        for ( int i = 0; i < 50000; i++ )
+        {
+            long value = random.nextBoolean() ? random.nextInt( 100000 ) :
+                    10L * LongBitmapSet.IDS_PER_PAGE + random.nextInt( 1000 );
+            assertEquals( expected.add( value ), set.add( value ) );
+        }
+        assertEquals( expected.size(), set.size() );
+        for ( long value : expected )
+        {
+            assertTrue( set.contains( value ) );
+        }
+        assertFalse( set.contains( 11L * LongBitmapSet.IDS_PER_PAGE ) );
+        assertFalse( set.contains( 1000L * LongBitmapSet.IDS_PER_PAGE ) );
+    }
+}
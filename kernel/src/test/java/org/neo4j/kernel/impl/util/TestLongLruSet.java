@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestLongLruSet
+{
+    @Test
+    public void testForgetsLeastRecentlyUsed()
+    {
+        LongLruSet set = new LongLruSet( 3 );
+        assertTrue( set.add( 1 ) );
+        assertTrue( set.add( 2 ) );
+        assertTrue( set.add( 3 ) );
+        // uses 1, so that 2 is the least recently used one
+        assertFalse( set.add( 1 ) );
+        assertTrue( set.add( 4 ) );
+        assertEquals( 3, set.size() );
+        assertTrue( set.contains( 1 ) );
+        assertFalse( set.contains( 2 ) );
+        assertTrue( set.contains( 3 ) );
+        assertTrue( set.contains( 4 ) );
+
+        set.clear();
+        assertEquals( 0, set.size() );
+        assertTrue( set.add( 3 ) );
+    }
+
+    @Test
+    public void testHugeMaxSizeOnlyAllocatesWhatIsUsed()
+    {
+        LongLruSet set = new LongLruSet( Integer.MAX_VALUE );
+        for ( long value = 0; value < 1000; value++ )
+        {
+            assertTrue( set.add( value ) );
+        }
+        assertEquals( 1000, set.size() );
+        for ( long value = 0; value < 1000; value++ )
+        {
+            assertTrue( set.contains( value ) );
+        }
+    }
+
+    @Test
+    public void testSameAsAccessOrderedLinkedHashMap()
+    {
+        final int maxSize = 100;
+        Map<Long, Object> expected = new LinkedHashMap<Long, Object>( 16, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<Long, Object> eldest )
+            {
+                return size() > maxSize;
+            }
+        };
+        LongLruSet set = new LongLruSet( maxSize );
+        Random random = new Random( 5 );
+        for ( int i = 0; i < 100000; i++ )
+        {
+            long value = random.nextInt( 300 );
+            assertEquals( expected.put( value, value ) == null, set.add( value ) );
+        }
+        assertEquals( expected.size(), set.size() );
+        for ( long value = 0; value < 300; value++ )
+        {
+            assertEquals( expected.containsKey( value ), set.contains( value ) );
+        }
+    }
+}
@@ -22,9 +22,12 @@ package org.neo4j.server.rest;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.net.URI;
 import java.util.List;
 import java.util.Map;
 
+import javax.ws.rs.core.MediaType;
+
 import org.json.JSONException;
 import org.junit.Test;
 import org.neo4j.graphdb.Node;
@@ -34,7 +37,10 @@ import org.neo4j.server.rest.domain.JsonParseException;
 import org.neo4j.server.rest.web.PropertyValueException;
 import org.neo4j.test.GraphDescription.Graph;
 
+import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.UniformInterfaceException;
 
 public class BatchOperationFunctionalTest extends AbstractRestFunctionalTestBase
@@ -470,6 +476,161 @@ public class BatchOperationFunctionalTest extends AbstractRestFunctionalTestBase
 
     }
     
+    /**
+     * Stream the results of a batch.
+     * 
+     * Sending the +X-Stream: true+ header writes the result of each job as
+     * soon as it has been performed, instead of collecting all of them
+     * before responding. This keeps the memory used by very large batches
+     * low. Creating nodes and relationships, setting properties and adding
+     * to indexes are performed without going through the HTTP layer.
+     * 
+     * The status of a streamed batch is sent before any job is performed.
+     * If a job fails, its result will be the last one, with a +status+ and a
+     * +message+ attribute, and all changes will be rolled back.
+     */
+    @Documented
+    @Test
+    @SuppressWarnings( "unchecked" )
+    public void shouldStreamResultsWhenAsked() throws Exception {
+        String jsonString = new PrettyJSON()
+            .array()
+                .object()
+                    .key("method")  .value("POST")
+                    .key("to")      .value("/node")
+                    .key("id")      .value(0)
+                    .key("body")
+                        .object()
+                            .key("name").value("bob")
+                        .endObject()
+                .endObject()
+                .object()
+                    .key("method")  .value("POST")
+                    .key("to")      .value("/node")
+                    .key("id")      .value(1)
+                .endObject()
+                .object()
+                    .key("method")  .value("PUT")
+                    .key("to")      .value("{1}/properties/age")
+                    .key("id")      .value(2)
+                    .key("body")    .value(12)
+                .endObject()
+                .object()
+                    .key("method")  .value("POST")
+                    .key("to")      .value("{0}/relationships")
+                    .key("id")      .value(3)
+                    .key("body")
+                        .object()
+                            .key("to").value("{1}")
+                            .key("type").value("KNOWS")
+                        .endObject()
+                .endObject()
+                .object()
+                    .key("method")  .value("POST")
+                    .key("to")      .value("/index/relationship/my_rels")
+                    .key("id")      .value(4)
+                    .key("body")
+                        .object()
+                            .key("key").value("since")
+                            .key("value").value("2010")
+                            .key("uri").value("{3}")
+                        .endObject()
+                .endObject()
+                .object()
+                    .key("method")  .value("GET")
+                    .key("to")      .value("{1}")
+                    .key("id")      .value(5)
+                .endObject()
+            .endArray().toString();
+
+        ClientRequest request = ClientRequest.create()
+                .type( MediaType.APPLICATION_JSON_TYPE )
+                .accept( MediaType.APPLICATION_JSON_TYPE )
+                .header( "X-Stream", "true" )
+                .entity( jsonString )
+                .build( new URI( batchUri() ), "POST" );
+        String entity = gen.get()
+        .expectedStatus( 200 )
+        .request( request )
+        .entity();
+
+        List<Map<String, Object>> results = JsonHelper.jsonToList(entity);
+
+        assertEquals(6, results.size());
+        assertTrue(((String) results.get(0).get("location")).length() > 0);
+        assertEquals("bob", ((Map<String, Object>) ((Map<String, Object>) results.get(0).get("body")).get("data")).get("name"));
+        assertTrue(((String) results.get(3).get("location")).length() > 0);
+        assertEquals(results.get(1).get("location") + "/properties/age", results.get(2).get("from"));
+        Map<String, Object> body = (Map<String, Object>) results.get(5).get("body");
+        assertEquals(12, ((Map<String, Object>) body.get("data")).get("age"));
+    }
+
+    @Test
+    public void shouldRollbackStreamedBatchOnFailure() throws Exception {
+        String jsonString = new PrettyJSON()
+            .array()
+                .object()
+                    .key("method")  .value("POST")
+                    .key("to")      .value("/node")
+                    .key("body")
+                        .object()
+                            .key("age").value(1)
+                        .endObject()
+                .endObject()
+                .object()
+                    .key("method")  .value("POST")
+                    .key("to")      .value("/node/" + Integer.MAX_VALUE + "/relationships")
+                    .key("body")
+                        .object()
+                            .key("to").value("/node/0")
+                            .key("type").value("KNOWS")
+                        .endObject()
+                .endObject()
+                .object()
+                    .key("method")  .value("POST")
+                    .key("to")      .value("/node")
+                .endObject()
+            .endArray().toString();
+
+        int originalNodeCount = countNodes();
+
+        ClientResponse response = Client.create().resource( batchUri() )
+                .type( MediaType.APPLICATION_JSON_TYPE )
+                .accept( MediaType.APPLICATION_JSON_TYPE )
+                .header( "X-Stream", "true" )
+                .post( ClientResponse.class, jsonString );
+
+        assertEquals(200, response.getStatus());
+        List<Map<String, Object>> results = JsonHelper.jsonToList(response.getEntity( String.class ));
+        assertEquals(2, results.size());
+        assertEquals(404, results.get(1).get("status"));
+        assertEquals(originalNodeCount, countNodes());
+    }
+
+    @Test
+    public void shouldReportTheSameStatusesAsTheRestApiWhenStreaming() throws Exception {
+        assertEquals(404, streamedFailureStatus("PUT", "/node/not-a-number/properties/age", "12"));
+        assertEquals(404, streamedFailureStatus("PUT", "/node/" + Integer.MAX_VALUE + "/properties/age", "12"));
+        assertEquals(400, streamedFailureStatus("POST", "/node/0/relationships", "{\"to\":\"/node/not-a-number\",\"type\":\"KNOWS\"}"));
+        assertEquals(400, streamedFailureStatus("POST", "/node", "{\"key\":{\"nested\":\"map\"}}"));
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private Object streamedFailureStatus( String method, String to, String body ) throws Exception
+    {
+        String jsonString = "[{\"method\":\"" + method + "\",\"to\":\"" + to + "\",\"body\":" + body + "}]";
+        ClientResponse response = Client.create().resource( batchUri() )
+                .type( MediaType.APPLICATION_JSON_TYPE )
+                .accept( MediaType.APPLICATION_JSON_TYPE )
+                .header( "X-Stream", "true" )
+                .post( ClientResponse.class, jsonString );
+
+        assertEquals(200, response.getStatus());
+        List<Map<String, Object>> results = JsonHelper.jsonToList(response.getEntity( String.class ));
+        assertEquals(1, results.size());
+        return results.get(0).get("status");
+    }
+
     private int countNodes()
     {
         int count = 0;
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.kernel.impl.annotations.Documented;
+import org.neo4j.server.rest.domain.JsonHelper;
+import org.neo4j.test.TestData.Title;
+
+public class BulkCreateFunctionalTest extends AbstractRestFunctionalTestBase
+{
+    /**
+     * Create nodes, relationships and index entries in bulk.
+     * 
+     * The bulk service expects one JSON object per line, each describing a
+     * node, a relationship or an index entry to create. Nodes and
+     * relationships created by the same request are referred to as +{n}+,
+     * where +n+ counts the nodes, or relationships, created so far from zero.
+     * Other entities are referred to by their id.
+     * 
+     * The lines are committed in transactions of +chunk+ lines. The response
+     * only contains the ranges of ids created and the number of index
+     * entries added.
+     */
+    @Documented
+    @Test
+    @Title( "Create entities in bulk" )
+    @SuppressWarnings( "unchecked" )
+    public void shouldCreateEntitiesInBulk() throws Exception
+    {
+        String payload = "{\"node\":{\"name\":\"Bob\"}}\n"
+                         + "{\"node\":{\"name\":\"Alice\",\"age\":30}}\n"
+                         + "{\"relationship\":{\"start\":\"{0}\",\"end\":\"{1}\",\"type\":\"KNOWS\",\"data\":{\"since\":2010}}}\n"
+                         + "{\"index\":{\"type\":\"node\",\"name\":\"people\",\"key\":\"name\",\"value\":\"Bob\",\"entity\":\"{0}\"}}\n"
+                         + "{\"index\":{\"type\":\"relationship\",\"name\":\"friendships\",\"key\":\"since\",\"value\":\"2010\",\"entity\":\"{0}\"}}\n";
+
+        String entity = gen.get()
+                .expectedStatus( 200 )
+                .payload( payload )
+                .post( bulkUri() + "?chunk=2" )
+                .entity();
+
+        Map<String, Object> result = JsonHelper.jsonToMap( entity );
+        List<List<Integer>> nodes = (List<List<Integer>>) result.get( "nodes" );
+        List<List<Integer>> relationships = (List<List<Integer>>) result.get( "relationships" );
+        assertEquals( 2, count( nodes ) );
+        assertEquals( 1, count( relationships ) );
+        assertEquals( 2, result.get( "index_entries" ) );
+
+        Node bob = graphdb().getNodeById( nodes.get( 0 ).get( 0 ) );
+        assertEquals( "Bob", bob.getProperty( "name" ) );
+        Relationship knows = graphdb().getRelationshipById( relationships.get( 0 ).get( 0 ) );
+        assertEquals( 2010, knows.getProperty( "since" ) );
+        assertEquals( "Alice", knows.getEndNode().getProperty( "name" ) );
+        assertEquals( bob, graphdb().index().forNodes( "people" ).get( "name", "Bob" ).getSingle() );
+        assertEquals( knows, graphdb().index().forRelationships( "friendships" ).get( "since", "2010" ).getSingle() );
+    }
+
+    @Test
+    @SuppressWarnings( "unchecked" )
+    public void shouldKeepCommittedChunksAndReportTheFailingLine() throws Exception
+    {
+        String payload = "{\"node\":{\"name\":\"Bob\"}}\n"
+                         + "{\"node\":{\"name\":\"Alice\"}}\n"
+                         + "{\"node\":{\"name\":\"Carl\"}}\n"
+                         + "{\"relationship\":{\"start\":\"{0}\",\"end\":\"{7}\",\"type\":\"KNOWS\"}}\n";
+
+        JaxRsResponse response = RestRequest.req().post( bulkUri() + "?chunk=2", payload );
+
+        assertEquals( 400, response.getStatus() );
+        Map<String, Object> result = JsonHelper.jsonToMap( response.getEntity() );
+        assertEquals( 4, result.get( "line" ) );
+        List<List<Integer>> nodes = (List<List<Integer>>) result.get( "nodes" );
+        assertEquals( 2, count( nodes ) );
+        assertTrue( ( (List<?>) result.get( "relationships" ) ).isEmpty() );
+        for ( Node node : graphdb().getAllNodes() )
+        {
+            assertFalse( "Carl".equals( node.getProperty( "name", null ) ) );
+        }
+    }
+
+    @Test
+    public void shouldReportMalformedLinesAsBadRequests() throws Exception
+    {
+        assertBadLine( "{\"node\":{\"name\":\"Bob\"}}\n{\"node\":{\"name\":\n" );
+        assertBadLine( "{\"node\":{\"name\":\"Bob\"}}\n[1, 2]\n" );
+    }
+
+    private void assertBadLine( String payload ) throws Exception
+    {
+        JaxRsResponse response = RestRequest.req().post( bulkUri(), payload );
+
+        assertEquals( 400, response.getStatus() );
+        assertEquals( 2, JsonHelper.jsonToMap( response.getEntity() ).get( "line" ) );
+    }
+
+    private static long count( List<List<Integer>> ranges )
+    {
+        long count = 0;
+        for ( List<Integer> range : ranges )
+        {
+            count += range.get( 1 ) - range.get( 0 ) + 1;
+        }
+        return count;
+    }
+
+    private String bulkUri()
+    {
+        return getDataUri() + "bulk";
+    }
+}
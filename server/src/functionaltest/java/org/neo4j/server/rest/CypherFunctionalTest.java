@@ -19,9 +19,16 @@
  */
 package org.neo4j.server.rest;
 
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
 import org.neo4j.helpers.Pair;
+import org.neo4j.kernel.AbstractGraphDatabase;
 import org.neo4j.kernel.impl.annotations.Documented;
 import org.neo4j.server.rest.domain.JsonHelper;
 import org.neo4j.test.GraphDescription;
@@ -31,8 +38,13 @@ import org.neo4j.test.GraphDescription.PROP;
 import org.neo4j.test.GraphDescription.REL;
 import org.neo4j.test.TestData.Title;
 
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response.Status;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.util.List;
 import java.util.Map;
 
 import static org.hamcrest.CoreMatchers.not;
@@ -154,6 +166,84 @@ public class CypherFunctionalTest extends AbstractRestFunctionalTestBase {
         assertTrue( response.contains( "[ [ [ \"I\"" ) );
     }
 
+    /**
+     * Sending the +X-Stream: true+ header makes the server write the
+     * rows of the result as they are produced, instead of building the
+     * whole result before responding. The response has the same format
+     * as the non-streamed one.
+     */
+    @Test
+    @Documented
+    @Title( "Stream the results of a query" )
+    @Graph( "I know you" )
+    @SuppressWarnings( "unchecked" )
+    public void streamed_results() throws Exception {
+        data.get();
+        String payload = "{\"query\": \"" + createScript( "start x = node(%I%) match x-[r]->friend return type(r), friend.name, friend" ) + "\"}";
+        ClientRequest request = ClientRequest.create()
+                .type( MediaType.APPLICATION_JSON_TYPE )
+                .accept( MediaType.APPLICATION_JSON_TYPE )
+                .header( "X-Stream", "true" )
+                .entity( payload )
+                .build( new URI( cypherUri() ), "POST" );
+        String response = gen.get().expectedStatus( Status.OK.getStatusCode() ).request( request ).entity();
+
+        Map<String, Object> resultMap = JsonHelper.jsonToMap( response );
+        assertEquals( 3, ( (List<Object>) resultMap.get( "columns" ) ).size() );
+        List<List<Object>> rows = (List<List<Object>>) resultMap.get( "data" );
+        assertEquals( 1, rows.size() );
+        assertEquals( "know", rows.get( 0 ).get( 0 ) );
+        assertEquals( "you", rows.get( 0 ).get( 1 ) );
+        assertTrue( ( (Map<String, Object>) rows.get( 0 ).get( 2 ) ).containsKey( "self" ) );
+    }
+
+    @Test
+    @SuppressWarnings( "unchecked" )
+    public void streamed_response_can_be_drained_and_finishes_its_transaction() throws Exception {
+        AbstractGraphDatabase graph = server().getDatabase().graph;
+        long hub;
+        Transaction tx = graph.beginTx();
+        try {
+            Node node = graph.createNode();
+            for ( int i = 0; i < 500; i++ ) {
+                node.createRelationshipTo( graph.createNode(), DynamicRelationshipType.withName( "LINKS" ) );
+            }
+            hub = node.getId();
+            tx.success();
+        } finally {
+            tx.finish();
+        }
+        int activeTransactions = graph.getConfig().getTxModule().getActiveTxCount();
+
+        ClientResponse response = Client.create().resource( cypherUri() )
+                .type( MediaType.APPLICATION_JSON_TYPE )
+                .accept( MediaType.APPLICATION_JSON_TYPE )
+                .header( "X-Stream", "true" )
+                .post( ClientResponse.class, "{\"query\": \"start n = node(" + hub + ") match n-->m return m\"}" );
+        assertEquals( Status.OK.getStatusCode(), response.getStatus() );
+        ByteArrayOutputStream drained = new ByteArrayOutputStream();
+        InputStream in = response.getEntityInputStream();
+        byte[] buffer = new byte[1024];
+        for ( int read; ( read = in.read( buffer ) ) != -1; ) {
+            drained.write( buffer, 0, read );
+        }
+        in.close();
+
+        Map<String, Object> resultMap = JsonHelper.jsonToMap( drained.toString( "UTF-8" ) );
+        assertEquals( 500, ( (List<Object>) resultMap.get( "data" ) ).size() );
+        assertEquals( activeTransactions, graph.getConfig().getTxModule().getActiveTxCount() );
+    }
+
+    @Test
+    public void streamed_query_with_syntax_error_is_a_bad_request() throws Exception {
+        ClientResponse response = Client.create().resource( cypherUri() )
+                .type( MediaType.APPLICATION_JSON_TYPE )
+                .accept( MediaType.APPLICATION_JSON_TYPE )
+                .header( "X-Stream", "true" )
+                .post( ClientResponse.class, "{\"query\": \"start x = node(0) retur x\"}" );
+        assertEquals( Status.BAD_REQUEST.getStatusCode(), response.getStatus() );
+    }
+
     @Test
     @Documented
     @Ignore
@@ -51,6 +51,9 @@ public interface Configurator
     String REST_API_PACKAGE = "org.neo4j.server.rest.web";
     String DEFAULT_DATA_API_PATH = "/db/data";
 
+    String BULK_CHUNK_SIZE_PROPERTY_KEY = "org.neo4j.server.rest.bulk.chunk_size";
+    int DEFAULT_BULK_CHUNK_SIZE = 10000;
+
     String DISCOVERY_API_PACKAGE = "org.neo4j.server.rest.discovery";
 
     String MANAGEMENT_API_PACKAGE = "org.neo4j.server.webadmin.rest";
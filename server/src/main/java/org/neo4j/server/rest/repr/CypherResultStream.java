@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.repr;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.neo4j.cypher.javacompat.ExecutionResult;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+
+/**
+ * Writes a cypher result as JSON while the rows are being pulled from the
+ * result, instead of building the whole result in memory before sending it.
+ * The JSON written has the same shape as {@link CypherResultRepresentation},
+ * each value is formatted by the {@link OutputFormat} of the request.
+ *
+ * The rows are pulled in a transaction which is begun when writing starts and
+ * finished when it ends, whether writing succeeds or not. Since the response
+ * status has already been sent once rows are written, a failure midway
+ * through can only be reported by aborting the response.
+ */
+public class CypherResultStream implements StreamingOutput
+{
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final ExecutionResult result;
+    private final OutputFormat format;
+    private final GraphDatabaseService graph;
+    private final CypherResultRepresentation values;
+
+    public CypherResultStream( ExecutionResult result, OutputFormat format, GraphDatabaseService graph )
+    {
+        this.result = result;
+        this.format = format;
+        this.graph = graph;
+        this.values = new CypherResultRepresentation( result );
+    }
+
+    @Override
+    public void write( OutputStream output ) throws IOException, WebApplicationException
+    {
+        Transaction tx = graph.beginTx();
+        try
+        {
+            JsonGenerator generator = jsonFactory.createJsonGenerator( output, JsonEncoding.UTF8 );
+            List<String> columns = result.columns();
+            generator.writeStartObject();
+            generator.writeArrayFieldStart( "columns" );
+            for ( String column : columns )
+            {
+                generator.writeString( column );
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart( "data" );
+            for ( Map<String, Object> row : result )
+            {
+                generator.writeStartArray();
+                for ( String column : columns )
+                {
+                    generator.writeRawValue( format.format( values.getRepresentation( row.get( column ) ) ) );
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.flush();
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+}
@@ -27,6 +27,7 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
 public class OutputFormat
 {
@@ -48,6 +49,14 @@ public class OutputFormat
         return response( Response.ok(), representation );
     }
 
+    public final Response ok( StreamingOutput stream )
+    {
+        return Response.ok( stream )
+                .header( HttpHeaders.CONTENT_ENCODING, UTF8 )
+                .type( getMediaType() )
+                .build();
+    }
+
     public final <REPR extends Representation & EntityRepresentation> Response created( REPR representation )
             throws BadInputException
     {
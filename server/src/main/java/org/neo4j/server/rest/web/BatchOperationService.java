@@ -21,32 +21,45 @@ package org.neo4j.server.rest.web;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
 import java.net.URI;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import javax.servlet.ServletException;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
+import org.codehaus.jackson.JsonEncoding;
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.impl.transaction.xaframework.ForceMode;
 import org.neo4j.server.database.Database;
 import org.neo4j.server.rest.domain.BatchOperationFailedException;
+import org.neo4j.server.rest.paging.LeaseManager;
 import org.neo4j.server.rest.repr.BadInputException;
 import org.neo4j.server.rest.repr.BatchOperationResults;
+import org.neo4j.server.rest.repr.ExceptionRepresentation;
+import org.neo4j.server.rest.repr.InputFormat;
 import org.neo4j.server.rest.repr.OutputFormat;
 import org.neo4j.server.web.WebServer;
 
@@ -59,24 +72,39 @@ public class BatchOperationService
     private static final String BODY_KEY = "body";
     private static final String TO_KEY = "to";
     private static final String[] HEADERS_TO_PASSOVER = { "Authorization" };
+    private static final String HEADER_STREAM = "X-Stream";
 
     private static final JsonFactory jsonFactory = new JsonFactory();
     
     private final OutputFormat output;
+    private final InputFormat input;
     private final WebServer webServer;
     private final Database database;
+    private final LeaseManager leaseManager;
 
-    public BatchOperationService(@Context Database database, @Context WebServer webServer, @Context OutputFormat output)
+    public BatchOperationService( @Context Database database, @Context WebServer webServer,
+            @Context InputFormat input, @Context OutputFormat output, @Context LeaseManager leaseManager )
     {
         this.output = output;
+        this.input = input;
         this.webServer = webServer;
         this.database = database;
+        this.leaseManager = leaseManager;
     }
 
     @POST
-    public Response performBatchOperations( @Context UriInfo uriInfo, @Context HttpHeaders httpHeaders, 
+    public Response performBatchOperations( @Context UriInfo uriInfo, @Context HttpHeaders httpHeaders,
+                                            @HeaderParam( HEADER_STREAM ) @DefaultValue( "false" ) boolean stream,
                                             InputStream body ) throws BadInputException
     {
+        if ( stream )
+        {
+            return Response.ok( new StreamedBatch( uriInfo, httpHeaders, body ) )
+                    .header( HttpHeaders.CONTENT_ENCODING, "UTF-8" )
+                    .type( MediaType.APPLICATION_JSON )
+                    .build();
+        }
+
         AbstractGraphDatabase db = database.graph;
 
         Transaction tx = db.beginTx();
@@ -87,40 +115,10 @@ public class BatchOperationService
             
             BatchOperationResults results = new BatchOperationResults();
             
-            JsonToken token;
-            String field;
-            String jobMethod, jobPath, jobBody;
-            Integer jobId;
-
-            // TODO: Perhaps introduce a simple DSL for 
-            // deserializing streamed JSON?
-            while( (token = jp.nextToken()) != null) {
-                 if(token == JsonToken.START_OBJECT) {
-                     jobMethod = jobPath = jobBody = "";
-                     jobId = null;
-                     while( (token = jp.nextToken()) != JsonToken.END_OBJECT && token != null) {
-                         field = jp.getText();
-                         token = jp.nextToken();
-                         if(field.equals(METHOD_KEY)) {
-                             jobMethod = jp.getText().toUpperCase();
-                         } else if(field.equals(TO_KEY)) {
-                             jobPath = jp.getText();
-                         } else if(field.equals(ID_KEY)) {
-                             jobId = jp.getIntValue();
-                         } else if(field.equals(BODY_KEY)) {
-                            JsonNode node = mapper.readTree(jp);
-                            StringWriter out = new StringWriter();
-                            JsonGenerator gen = jsonFactory.createJsonGenerator(out);
-                            mapper.writeTree(gen, node);
-                            gen.flush();
-                            gen.close();
-                            jobBody = out.toString();
-                         }
-                     }
-
-                     // Read one job description. Execute it.
-                     performJob(results, uriInfo, jobMethod, jobPath, jobBody, jobId, httpHeaders);
-                 }
+            Job job;
+            while ( ( job = readJob( jp, mapper ) ) != null )
+            {
+                performJob( results, uriInfo, job.method, job.path, job.body, job.id, httpHeaders );
             }
 
             Response res = Response.ok()
@@ -143,6 +141,51 @@ public class BatchOperationService
         }
     }
 
+    private static class Job
+    {
+        String method = "";
+        String path = "";
+        String body = "";
+        Integer id;
+    }
+
+    /**
+     * Reads the next job description from the parser, or returns
+     * <code>null</code> when there are no more jobs.
+     */
+    private Job readJob( JsonParser jp, ObjectMapper mapper ) throws IOException
+    {
+        JsonToken token;
+        String field;
+
+        while( (token = jp.nextToken()) != null) {
+             if(token == JsonToken.START_OBJECT) {
+                 Job job = new Job();
+                 while( (token = jp.nextToken()) != JsonToken.END_OBJECT && token != null) {
+                     field = jp.getText();
+                     token = jp.nextToken();
+                     if(field.equals(METHOD_KEY)) {
+                         job.method = jp.getText().toUpperCase();
+                     } else if(field.equals(TO_KEY)) {
+                         job.path = jp.getText();
+                     } else if(field.equals(ID_KEY)) {
+                         job.id = jp.getIntValue();
+                     } else if(field.equals(BODY_KEY)) {
+                        JsonNode node = mapper.readTree(jp);
+                        StringWriter out = new StringWriter();
+                        JsonGenerator gen = jsonFactory.createJsonGenerator(out);
+                        mapper.writeTree(gen, node);
+                        gen.flush();
+                        gen.close();
+                        job.body = out.toString();
+                     }
+                 }
+                 return job;
+             }
+        }
+        return null;
+    }
+
     private void performJob( BatchOperationResults results, UriInfo uriInfo, String method, String path, String body, 
                              Integer id, HttpHeaders httpHeaders )
             throws IOException, ServletException
@@ -152,6 +195,21 @@ public class BatchOperationService
         path = replaceLocationPlaceholders( path, locations );
         body = replaceLocationPlaceholders( body, locations );
 
+        JobResult result = invokeThroughServer( uriInfo, method, path, body, httpHeaders );
+
+        if ( is2XXStatusCode( result.status ) )
+        {
+            results.addOperationResult( path, id, result.body, result.location );
+        }
+        else
+        {
+            throw new BatchOperationFailedException( result.status, result.body );
+        }
+    }
+
+    private JobResult invokeThroughServer( UriInfo uriInfo, String method, String path, String body,
+            HttpHeaders httpHeaders ) throws IOException, ServletException
+    {
         URI targetUri = calculateTargetUri( uriInfo, path );
 
         InternalJettyServletRequest req = new InternalJettyServletRequest(method, targetUri.toString(), body );
@@ -160,18 +218,235 @@ public class BatchOperationService
 
         webServer.invokeDirectly( targetUri.getPath(), req, res );
 
-        if ( is2XXStatusCode( res.getStatus() ) )
+        return new JobResult( res.getStatus(), res.getOutputStream()
+                .toString(), res.getHeader( "Location" ) );
+    }
+
+    private static class JobResult
+    {
+        final int status;
+        final String body;
+        final String location;
+
+        JobResult( int status, String body, String location )
         {
-            results.addOperationResult( path, id, res.getOutputStream()
-                    .toString(), res.getHeader( "Location" ) );
+            this.status = status;
+            this.body = body;
+            this.location = location;
         }
-        else
+    }
+
+    /**
+     * Writes the result of each job as soon as it has been performed, rather
+     * than collecting all results before responding. The jobs are still
+     * performed in one transaction, which is finished once the response has
+     * been written. Since the response status is sent before the first job is
+     * performed, a failing job is reported by a last result carrying its
+     * +status+ and +message+, after which the transaction is rolled back.
+     */
+    private class StreamedBatch implements StreamingOutput
+    {
+        private final UriInfo uriInfo;
+        private final HttpHeaders httpHeaders;
+        private final InputStream body;
+        private final RestfulGraphDatabase graphDatabase;
+
+        StreamedBatch( UriInfo uriInfo, HttpHeaders httpHeaders, InputStream body )
+        {
+            this.uriInfo = uriInfo;
+            this.httpHeaders = httpHeaders;
+            this.body = body;
+            this.graphDatabase = new RestfulGraphDatabase( uriInfo, database, input, output, leaseManager );
+        }
+
+        @Override
+        public void write( OutputStream out ) throws IOException, WebApplicationException
         {
-            throw new BatchOperationFailedException( res.getStatus(), res.getOutputStream()
-                    .toString() );
+            Transaction tx = database.graph.beginTx();
+            try
+            {
+                JsonParser jp = jsonFactory.createJsonParser( body );
+                JsonGenerator gen = jsonFactory.createJsonGenerator( out, JsonEncoding.UTF8 );
+                ObjectMapper mapper = new ObjectMapper();
+                Map<Integer, String> locations = new HashMap<Integer, String>();
+                boolean failed = false;
+
+                gen.writeStartArray();
+                Job job;
+                while ( !failed && ( job = readJob( jp, mapper ) ) != null )
+                {
+                    String path = replaceLocationPlaceholders( job.path, locations );
+                    String jobBody = replaceLocationPlaceholders( job.body, locations );
+                    JobResult result = perform( job.method, path, jobBody );
+
+                    failed = !is2XXStatusCode( result.status );
+                    if ( result.location != null )
+                    {
+                        locations.put( job.id, result.location );
+                    }
+                    writeResult( gen, path, job.id, result, failed );
+                    gen.flush();
+                }
+                gen.writeEndArray();
+                gen.flush();
+
+                if ( failed )
+                {
+                    tx.failure();
+                }
+                else
+                {
+                    tx.success();
+                }
+            }
+            catch ( ServletException e )
+            {
+                tx.failure();
+                throw new WebApplicationException( e );
+            }
+            finally
+            {
+                tx.finish();
+            }
+        }
+
+        private JobResult perform( String method, String path, String body ) throws IOException,
+                ServletException
+        {
+            URI targetUri = calculateTargetUri( uriInfo, path );
+            JobResult result = performDirectly( graphDatabase, method, uriInfo.getBaseUri()
+                    .relativize( targetUri ), body );
+            return result != null ? result : invokeThroughServer( uriInfo, method, path, body, httpHeaders );
+        }
+
+        private void writeResult( JsonGenerator gen, String from, Integer id, JobResult result, boolean failed )
+                throws IOException
+        {
+            gen.writeStartObject();
+            if ( id != null )
+            {
+                gen.writeNumberField( ID_KEY, id );
+            }
+            if ( result.location != null )
+            {
+                gen.writeStringField( "location", result.location );
+            }
+            if ( failed )
+            {
+                gen.writeNumberField( "status", result.status );
+                gen.writeStringField( "message", result.body );
+            }
+            else if ( result.body != null && result.body.length() != 0 )
+            {
+                gen.writeFieldName( BODY_KEY );
+                gen.writeRawValue( result.body );
+            }
+            gen.writeStringField( "from", from );
+            gen.writeEndObject();
         }
     }
-    
+
+    /**
+     * Performs the most common batch operations by calling the
+     * {@link RestfulGraphDatabase} resource methods directly, without the
+     * round-trip through the server, so they answer with the same statuses.
+     * Returns <code>null</code> if the job is not one of those operations, or
+     * has an id in its path that isn't a number, which the server answers
+     * with 404 Not Found.
+     */
+    private JobResult performDirectly( RestfulGraphDatabase graphDatabase, String method, URI relativeTarget,
+            String body )
+    {
+        if ( relativeTarget.isAbsolute() || relativeTarget.getQuery() != null )
+        {
+            return null;
+        }
+        String[] segments = relativeTarget.getPath()
+                .split( "/" );
+        try
+        {
+            Response response = null;
+            if ( "POST".equals( method ) )
+            {
+                if ( segments.length == 1 && "node".equals( segments[0] ) )
+                {
+                    response = graphDatabase.createNode( ForceMode.forced, body );
+                }
+                else if ( segments.length == 3 && "node".equals( segments[0] ) && "relationships".equals( segments[2] )
+                          && isId( segments[1] ) )
+                {
+                    response = graphDatabase.createRelationship( ForceMode.forced, Long.parseLong( segments[1] ), body );
+                }
+                else if ( segments.length == 3 && "index".equals( segments[0] ) && "node".equals( segments[1] ) )
+                {
+                    response = graphDatabase.addToNodeIndex( ForceMode.forced, segments[2], null, body );
+                }
+                else if ( segments.length == 3 && "index".equals( segments[0] ) && "relationship".equals( segments[1] ) )
+                {
+                    response = graphDatabase.addToRelationshipIndex( ForceMode.forced, segments[2], null, body );
+                }
+            }
+            else if ( "PUT".equals( method ) && segments.length == 4 && "properties".equals( segments[2] )
+                      && isId( segments[1] ) )
+            {
+                if ( "node".equals( segments[0] ) )
+                {
+                    response = graphDatabase.setNodeProperty( ForceMode.forced, Long.parseLong( segments[1] ),
+                            segments[3], body );
+                }
+                else if ( "relationship".equals( segments[0] ) )
+                {
+                    response = graphDatabase.setRelationshipProperty( ForceMode.forced, Long.parseLong( segments[1] ),
+                            segments[3], body );
+                }
+            }
+            return response != null ? toJobResult( response ) : null;
+        }
+        catch ( NotFoundException e )
+        {
+            return failed( Response.Status.NOT_FOUND, e );
+        }
+        catch ( RuntimeException e )
+        {
+            return failed( Response.Status.INTERNAL_SERVER_ERROR, e );
+        }
+    }
+
+    private static boolean isId( String segment )
+    {
+        try
+        {
+            Long.parseLong( segment );
+            return true;
+        }
+        catch ( NumberFormatException e )
+        {
+            return false;
+        }
+    }
+
+    private static JobResult toJobResult( Response response )
+    {
+        Object entity = response.getEntity();
+        String body;
+        try
+        {
+            body = entity instanceof byte[] ? new String( (byte[]) entity, "UTF-8" ) : (String) entity;
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new RuntimeException( "Could not decode response as UTF-8", e );
+        }
+        Object location = response.getMetadata()
+                .getFirst( "Location" );
+        return new JobResult( response.getStatus(), body, location != null ? location.toString() : null );
+    }
+
+    private JobResult failed( Response.Status status, Exception e )
+    {
+        return new JobResult( status.getStatusCode(), output.format( new ExceptionRepresentation( e ) ), null );
+    }
+
     private void addHeaders(final InternalJettyServletRequest res, final HttpHeaders httpHeaders)
     {
         for ( String header : HEADERS_TO_PASSOVER)
@@ -0,0 +1,407 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.web;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.apache.commons.configuration.Configuration;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.impl.transaction.xaframework.ForceMode;
+import org.neo4j.server.configuration.Configurator;
+import org.neo4j.server.database.Database;
+import org.neo4j.server.rest.domain.JsonHelper;
+import org.neo4j.server.rest.paging.LeaseManager;
+import org.neo4j.server.rest.repr.BadInputException;
+
+/**
+ * Creates nodes, relationships and index entries in bulk, without building a
+ * representation of each created entity.
+ * 
+ * The payload has one JSON object per line, each one of:
+ * 
+ * <pre>
+ * {"node":{"name":"Bob"}}
+ * {"relationship":{"start":"{0}","end":12,"type":"KNOWS","data":{"since":2010}}}
+ * {"index":{"type":"node","name":"people","key":"name","value":"Bob","entity":"{0}"}}
+ * </pre>
+ * 
+ * An entity is referred to either by its id, or as <code>"{n}"</code> for
+ * the n:th node or relationship (counting from zero) created by the same
+ * request. The lines are committed in transactions of
+ * {@link Configurator#BULK_CHUNK_SIZE_PROPERTY_KEY} lines, or of the size
+ * given by the <code>chunk</code> query parameter. The response contains
+ * only the ranges of the created ids and the number of index entries added.
+ * 
+ * If a line fails, the transaction of its chunk is rolled back and the
+ * response describes the failing line and what was committed before it.
+ */
+@Path( "/bulk" )
+public class BulkCreateService
+{
+    private static final String NODE_KEY = "node";
+    private static final String RELATIONSHIP_KEY = "relationship";
+    private static final String INDEX_KEY = "index";
+
+    private final AbstractGraphDatabase graphDb;
+    private final DatabaseActions actions;
+    private final int defaultChunkSize;
+
+    public BulkCreateService( @Context Database database, @Context Configuration configuration,
+            @Context LeaseManager leaseManager )
+    {
+        this.graphDb = database.graph;
+        this.actions = new DatabaseActions( database, leaseManager, ForceMode.forced );
+        this.defaultChunkSize = configuration == null ? Configurator.DEFAULT_BULK_CHUNK_SIZE
+                : configuration.getInt( Configurator.BULK_CHUNK_SIZE_PROPERTY_KEY,
+                        Configurator.DEFAULT_BULK_CHUNK_SIZE );
+    }
+
+    @POST
+    public Response create( @QueryParam( "chunk" ) Integer chunk, InputStream body ) throws IOException
+    {
+        int chunkSize = chunk != null && chunk > 0 ? chunk : defaultChunkSize;
+        Bulk bulk = new Bulk();
+        BufferedReader reader = new BufferedReader( new InputStreamReader( body, "UTF-8" ) );
+        Transaction tx = null;
+        int lineNumber = 0;
+        int linesInChunk = 0;
+        try
+        {
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                lineNumber++;
+                if ( line.trim()
+                        .length() == 0 ) continue;
+                if ( tx == null )
+                {
+                    tx = graphDb.beginTx();
+                }
+                bulk.perform( parse( line ) );
+                if ( ++linesInChunk == chunkSize )
+                {
+                    Transaction committing = tx;
+                    tx = null;
+                    commit( committing );
+                    bulk.committed();
+                    linesInChunk = 0;
+                }
+            }
+            if ( tx != null )
+            {
+                Transaction committing = tx;
+                tx = null;
+                commit( committing );
+                bulk.committed();
+            }
+            return json( Status.OK, bulk.result() );
+        }
+        catch ( Exception e )
+        {
+            if ( tx != null )
+            {
+                tx.failure();
+                tx.finish();
+            }
+            Map<String, Object> result = bulk.result();
+            result.put( "line", lineNumber );
+            result.put( "message", e.getMessage() );
+            result.put( "exception", e.toString() );
+            // malformed JSON is reported as a JsonParseException, which is bad input as well
+            boolean badInput = e instanceof BadInputException || e instanceof NotFoundException;
+            return json( badInput ? Status.BAD_REQUEST : Status.INTERNAL_SERVER_ERROR, result );
+        }
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private static Map<String, Object> parse( String line ) throws BadInputException
+    {
+        Object json = JsonHelper.readJson( line );
+        if ( !( json instanceof Map ) )
+        {
+            throw new BadInputException( "Expected a JSON object on each line, got: " + line );
+        }
+        return (Map<String, Object>) json;
+    }
+
+    private static void commit( Transaction tx )
+    {
+        try
+        {
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+
+    private static Response json( Status status, Map<String, Object> result )
+    {
+        return Response.status( status )
+                .entity( JsonHelper.createJsonFrom( result ) )
+                .type( MediaType.APPLICATION_JSON )
+                .build();
+    }
+
+    private class Bulk
+    {
+        private final IdRanges nodes = new IdRanges();
+        private final IdRanges relationships = new IdRanges();
+        private final Map<String, Index<Node>> nodeIndexes = new HashMap<String, Index<Node>>();
+        private final Map<String, Index<Relationship>> relationshipIndexes = new HashMap<String, Index<Relationship>>();
+        private int indexEntries;
+        private int committedNodes;
+        private int committedRelationships;
+        private int committedIndexEntries;
+
+        @SuppressWarnings( "unchecked" )
+        void perform( Map<String, Object> line ) throws BadInputException
+        {
+            if ( line.containsKey( NODE_KEY ) )
+            {
+                nodes.add( actions.set( graphDb.createNode(), map( line, NODE_KEY ) )
+                        .getId() );
+            }
+            else if ( line.containsKey( RELATIONSHIP_KEY ) )
+            {
+                Map<String, Object> relationship = map( line, RELATIONSHIP_KEY );
+                Node start = graphDb.getNodeById( nodes.resolve( relationship.get( "start" ) ) );
+                Node end = graphDb.getNodeById( nodes.resolve( relationship.get( "end" ) ) );
+                Object type = relationship.get( "type" );
+                if ( !( type instanceof String ) )
+                {
+                    throw new BadInputException( "A relationship needs a \"type\"" );
+                }
+                relationships.add( actions.set(
+                        start.createRelationshipTo( end, DynamicRelationshipType.withName( (String) type ) ),
+                        (Map<String, Object>) relationship.get( "data" ) )
+                        .getId() );
+            }
+            else if ( line.containsKey( INDEX_KEY ) )
+            {
+                Map<String, Object> entry = map( line, INDEX_KEY );
+                String name = String.valueOf( entry.get( "name" ) );
+                String key = String.valueOf( entry.get( "key" ) );
+                String value = String.valueOf( entry.get( "value" ) );
+                if ( RELATIONSHIP_KEY.equals( entry.get( "type" ) ) )
+                {
+                    add( relationshipIndex( name ),
+                            graphDb.getRelationshipById( relationships.resolve( entry.get( "entity" ) ) ), key, value );
+                }
+                else
+                {
+                    add( nodeIndex( name ), graphDb.getNodeById( nodes.resolve( entry.get( "entity" ) ) ), key,
+                            value );
+                }
+            }
+            else
+            {
+                throw new BadInputException( "Expected one of \"" + NODE_KEY + "\", \"" + RELATIONSHIP_KEY
+                                             + "\" or \"" + INDEX_KEY + "\", got " + line.keySet() );
+            }
+        }
+
+        private <T extends PropertyContainer> void add( Index<T> index, T entity, String key, String value )
+        {
+            index.add( entity, key, value );
+            indexEntries++;
+        }
+
+        private Index<Node> nodeIndex( String name )
+        {
+            Index<Node> index = nodeIndexes.get( name );
+            if ( index == null )
+            {
+                index = graphDb.index()
+                        .forNodes( name );
+                nodeIndexes.put( name, index );
+            }
+            return index;
+        }
+
+        private Index<Relationship> relationshipIndex( String name )
+        {
+            Index<Relationship> index = relationshipIndexes.get( name );
+            if ( index == null )
+            {
+                index = graphDb.index()
+                        .forRelationships( name );
+                relationshipIndexes.put( name, index );
+            }
+            return index;
+        }
+
+        void committed()
+        {
+            committedNodes = nodes.size();
+            committedRelationships = relationships.size();
+            committedIndexEntries = indexEntries;
+        }
+
+        Map<String, Object> result()
+        {
+            Map<String, Object> result = new HashMap<String, Object>();
+            result.put( "nodes", nodes.toList( committedNodes ) );
+            result.put( "relationships", relationships.toList( committedRelationships ) );
+            result.put( "index_entries", committedIndexEntries );
+            return result;
+        }
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private static Map<String, Object> map( Map<String, Object> line, String key ) throws BadInputException
+    {
+        Object value = line.get( key );
+        if ( value == null )
+        {
+            return null;
+        }
+        if ( !( value instanceof Map ) )
+        {
+            throw new BadInputException( "\"" + key + "\" should be a map" );
+        }
+        return (Map<String, Object>) value;
+    }
+
+    /**
+     * The ids created by a bulk request, kept as ranges of consecutive ids
+     * since that is how they are mostly handed out.
+     */
+    static class IdRanges
+    {
+        private long[] first = new long[4];
+        private long[] last = new long[4];
+        private int[] ordinals = new int[4];
+        private int ranges;
+        private int size;
+
+        void add( long id )
+        {
+            if ( ranges > 0 && last[ranges - 1] + 1 == id )
+            {
+                last[ranges - 1] = id;
+            }
+            else
+            {
+                if ( ranges == first.length )
+                {
+                    first = Arrays.copyOf( first, ranges * 2 );
+                    last = Arrays.copyOf( last, ranges * 2 );
+                    ordinals = Arrays.copyOf( ordinals, ranges * 2 );
+                }
+                first[ranges] = id;
+                last[ranges] = id;
+                ordinals[ranges] = size;
+                ranges++;
+            }
+            size++;
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        long get( int ordinal )
+        {
+            if ( ordinal < 0 || ordinal >= size )
+            {
+                throw new IndexOutOfBoundsException( ordinal + " not in [0," + size + ")" );
+            }
+            int range = Arrays.binarySearch( ordinals, 0, ranges, ordinal );
+            if ( range < 0 )
+            {
+                range = -range - 2;
+            }
+            return first[range] + ( ordinal - ordinals[range] );
+        }
+
+        /**
+         * Resolves a reference to an entity, either an id or
+         * <code>"{n}"</code> for the n:th id in these ranges.
+         */
+        long resolve( Object reference ) throws BadInputException
+        {
+            if ( reference instanceof Number )
+            {
+                return ( (Number) reference ).longValue();
+            }
+            if ( reference instanceof String )
+            {
+                String string = (String) reference;
+                if ( string.length() > 2 && string.startsWith( "{" ) && string.endsWith( "}" ) )
+                {
+                    try
+                    {
+                        int ordinal = Integer.parseInt( string.substring( 1, string.length() - 1 ) );
+                        if ( ordinal >= 0 && ordinal < size )
+                        {
+                            return get( ordinal );
+                        }
+                    }
+                    catch ( NumberFormatException e )
+                    {
+                        throw new BadInputException( e );
+                    }
+                }
+            }
+            throw new BadInputException( "Not a valid reference to an entity: " + reference );
+        }
+
+        /**
+         * @return the first <code>count</code> ids as a list of inclusive
+         *         <code>[first, last]</code> pairs.
+         */
+        List<long[]> toList( int count )
+        {
+            List<long[]> result = new ArrayList<long[]>();
+            for ( int range = 0; range < ranges && ordinals[range] < count; range++ )
+            {
+                long end = Math.min( last[range], first[range] + ( count - ordinals[range] ) - 1 );
+                result.add( new long[] { first[range], end } );
+            }
+            return result;
+        }
+    }
+}
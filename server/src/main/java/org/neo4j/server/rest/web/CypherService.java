@@ -22,16 +22,21 @@ package org.neo4j.server.rest.web;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import org.neo4j.cypher.javacompat.ExecutionEngine;
 import org.neo4j.cypher.javacompat.ExecutionResult;
+import org.neo4j.kernel.AbstractGraphDatabase;
 import org.neo4j.server.database.Database;
 import org.neo4j.server.rest.repr.BadInputException;
 import org.neo4j.server.rest.repr.CypherResultRepresentation;
+import org.neo4j.server.rest.repr.CypherResultStream;
 import org.neo4j.server.rest.repr.InputFormat;
 import org.neo4j.server.rest.repr.OutputFormat;
 
@@ -40,13 +45,16 @@ public class CypherService {
 
     private static final String PARAMS_KEY = "params";
     private static final String QUERY_KEY = "query";
+    private static final String HEADER_STREAM = "X-Stream";
 
+    private AbstractGraphDatabase graph;
     private ExecutionEngine executionEngine;
     private OutputFormat output;
     private InputFormat input;
 
     public CypherService(@Context Database database, @Context InputFormat input,
             @Context OutputFormat output) {
+        this.graph = database.graph;
         this.executionEngine = new ExecutionEngine(database.graph);
         this.input = input;
         this.output = output;
@@ -54,7 +62,7 @@ public class CypherService {
     
     @POST
     @SuppressWarnings({ "unchecked" })
-    public Response cypher(String body) throws BadInputException {
+    public Response cypher(@HeaderParam(HEADER_STREAM) @DefaultValue("false") boolean stream, String body) throws BadInputException {
         Map<String,Object> command = input.readMap( body );
         
         if( !command.containsKey(QUERY_KEY) ) {
@@ -63,6 +71,9 @@ public class CypherService {
         
         String query =  (String) command.get(QUERY_KEY);
         Map<String,Object> params = (Map<String, Object>) (command.containsKey(PARAMS_KEY) ? command.get(PARAMS_KEY) : new HashMap<String, Object>());
+        if( stream && MediaType.APPLICATION_JSON_TYPE.isCompatible(output.getMediaType()) ) {
+            return streamed(query, params);
+        }
         try {
             ExecutionResult result = executionEngine.execute(  query, params );
             return output.ok(new CypherResultRepresentation( result ));
@@ -70,5 +81,20 @@ public class CypherService {
             return output.badRequest(e);
         }
     }
+
+    /**
+     * Rows are written as they are pulled from the result. Cypher only reads,
+     * so the query is executed here without a transaction, which reports
+     * errors in it as 400 Bad Request. The stream opens and finishes the
+     * transaction the rows are pulled in while the response is written.
+     */
+    private Response streamed(String query, Map<String,Object> params) {
+        try {
+            ExecutionResult result = executionEngine.execute(  query, params );
+            return output.ok(new CypherResultStream( result, output, graph ));
+        } catch(Exception e) {
+            return output.badRequest(e);
+        }
+    }
     
 }
@@ -131,7 +131,7 @@ public class DatabaseActions
         }
     }
 
-    private <T extends PropertyContainer> T set( T entity,
+    <T extends PropertyContainer> T set( T entity,
             Map<String, Object> properties ) throws PropertyValueException
     {
         if ( properties != null )
@@ -19,11 +19,21 @@
  */
 package org.neo4j.server.statistic;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.neo4j.server.logging.Logger;
 
 /**
  * statistics-collector will keep n-statistic records
  *
+ * Requests are recorded per category, e.g. the context path they were made
+ * to, into histograms which are updated without locking. Taking a snapshot
+ * does not block recording.
+ *
  * @author tbaum
  * @since 31.05.11 20:23
  */
@@ -32,51 +42,115 @@ public class StatisticCollector
 
     private static final Logger LOG = Logger.getLogger( StatisticCollector.class );
 
+    public static final String DEFAULT_CATEGORY = "/";
+    private static final double MICROSECONDS_PER_MILLISECOND = 1000;
+    private static final double BYTES = 1;
+
+    private final ConcurrentMap<String, Category> categories = new ConcurrentHashMap<String, Category>();
     private volatile long start = System.currentTimeMillis();
-    private volatile long count = 0;
-    private volatile StatisticData currentSize = new StatisticData();
-    private volatile StatisticData currentDuration = new StatisticData();
-    private StatisticRecord snapshot = createSnapshot();
+    private volatile StatisticRecord snapshot;
+    private volatile Map<String, StatisticRecord> categorySnapshots;
+
+    public StatisticCollector()
+    {
+        createSnapshot();
+    }
 
     public StatisticRecord currentSnapshot()
     {
         return snapshot;
     }
 
+    /**
+     * @return the latest snapshot of each category requests have been made
+     *         in.
+     */
+    public Map<String, StatisticRecord> currentCategorySnapshots()
+    {
+        return categorySnapshots;
+    }
+
+    /**
+     * Only one snapshot is taken at a time, requests keep being recorded
+     * while it is taken.
+     */
     public synchronized StatisticRecord createSnapshot()
     {
-        final StatisticData previousDuration, previousSize;
-        final long timeStamp, period, previousCount, previousStart;
+        final long previousStart = start;
+        final long timeStamp = start = System.currentTimeMillis();
+        final long period = ( timeStamp - previousStart );
 
-        synchronized (this)
+        StatisticData duration = new StatisticData();
+        StatisticData size = new StatisticData();
+        Map<String, StatisticRecord> snapshots = new HashMap<String, StatisticRecord>();
+        for ( Map.Entry<String, Category> category : categories.entrySet() )
         {
-            previousDuration = currentDuration.copy();
-            previousSize = currentSize.copy();
-            previousCount = count;
-            previousStart = start;
-
-            currentDuration = new StatisticData();
-            currentSize = new StatisticData();
-            start = System.currentTimeMillis();
-            count = 0;
-
-            timeStamp = start;
-            period = ( start - previousStart );
+            StatisticRecord record = category.getValue()
+                    .snapshot( timeStamp, period );
+            snapshots.put( category.getKey(), record );
+            duration = duration.merge( record.getDuration() );
+            size = size.merge( record.getSize() );
         }
 
-        return snapshot = new StatisticRecord( timeStamp, period, previousCount, previousDuration, previousSize );
+        categorySnapshots = Collections.unmodifiableMap( snapshots );
+        return snapshot = new StatisticRecord( timeStamp, period, duration.getCount(), duration, size );
+    }
+
+    /**
+     * add one datapoint for statistics
+     *
+     * @param time duration of the request
+     * @param size size in bytes of the request
+     */
+    public void update( final double time, final long size )
+    {
+        update( DEFAULT_CATEGORY, time, size );
     }
 
     /**
      * add one datapoint for statistics
      *
+     * @param category the kind of request, kept apart from the others
      * @param time duration of the request
      * @param size size in bytes of the request
      */
-    public synchronized void update( final double time, final long size )
+    public void update( final String category, final double time, final long size )
+    {
+        category( category ).update( time, size );
+    }
+
+    private Category category( String name )
+    {
+        Category category = categories.get( name );
+        if ( category == null )
+        {
+            Category created = new Category();
+            category = categories.putIfAbsent( name, created );
+            if ( category == null )
+            {
+                LOG.debug( "collecting statistics for %s", name );
+                category = created;
+            }
+        }
+        return category;
+    }
+
+    private static class Category
     {
-        currentDuration.addValue( time );
-        currentSize.addValue( size );
-        count++;
+        private final StatisticHistogram duration = new StatisticHistogram( MICROSECONDS_PER_MILLISECOND );
+        private final StatisticHistogram size = new StatisticHistogram( BYTES );
+
+        void update( double time, long bytes )
+        {
+            duration.record( time );
+            size.record( bytes );
+        }
+
+        StatisticRecord snapshot( long timeStamp, long period )
+        {
+            StatisticData durationData = duration.intervalData();
+            return new StatisticRecord( timeStamp, period, durationData.getCount(), durationData,
+                    size.intervalData() );
+        }
     }
 }
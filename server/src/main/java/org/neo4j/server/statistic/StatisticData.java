@@ -22,45 +22,77 @@ package org.neo4j.server.statistic;
 import java.io.Serializable;
 
 /**
- * storage-class to collect general statistic-data.
+ * storage-class to collect general statistic-data, the values recorded in an
+ * interval of a {@link StatisticHistogram}.
  *
  * @author tbaum
  * @since 19.05.11 18:07
  */
 public class StatisticData implements Serializable
 {
-    private static final long serialVersionUID = 1006656694124740870L;
-    
-    private static final int MEDIAN_MAX = 3000;
-    private int[] requests = new int[MEDIAN_MAX];
-    private int count = 0;
-    private double sum = 0;
-    private double sumSq = 0;
-    private double min = 0;
-    private double max = 0;
+    private static final long serialVersionUID = -2795338937325284374L;
+
+    private final double unit;
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long min;
+    private final long max;
 
     public StatisticData()
     {
+        this( 1, new long[0], 0, Long.MAX_VALUE, Long.MIN_VALUE );
     }
 
-    private StatisticData( int count, double sum, double sumSq, double min,
-                           double max, int[] requests )
+    StatisticData( double unit, long[] counts, long sum, long min, long max )
     {
-        this.count = count;
+        this.unit = unit;
+        this.counts = counts;
         this.sum = sum;
-        this.sumSq = sumSq;
-        this.min = min;
-        this.max = max;
-        System.arraycopy( requests, 0, this.requests, 0, MEDIAN_MAX );
+        long count = 0;
+        int lowest = -1, highest = -1;
+        for ( int i = 0; i < counts.length; i++ )
+        {
+            if ( counts[i] == 0 ) continue;
+            count += counts[i];
+            lowest = lowest == -1 ? i : lowest;
+            highest = i;
+        }
+        this.count = count;
+        // a value being recorded during the snapshot may have been counted
+        // in this interval but had its min and max recorded in the next one
+        this.min = count > 0 && min == Long.MAX_VALUE ? StatisticHistogram.lowestValueOf( lowest ) : min;
+        this.max = count > 0 && max == Long.MIN_VALUE ? StatisticHistogram.highestValueOf( highest ) : max;
+    }
+
+    /**
+     * @return the data of both this and <code>other</code>, which must
+     *         have been recorded in the same unit.
+     */
+    public StatisticData merge( StatisticData other )
+    {
+        if ( other.count == 0 ) return this;
+        if ( count == 0 ) return other;
+        long[] merged = new long[Math.max( counts.length, other.counts.length )];
+        for ( int i = 0; i < merged.length; i++ )
+        {
+            merged[i] = ( i < counts.length ? counts[i] : 0 ) + ( i < other.counts.length ? other.counts[i] : 0 );
+        }
+        return new StatisticData( unit, merged, sum + other.sum, Math.min( min, other.min ),
+                Math.max( max, other.max ) );
     }
 
+    public long getCount()
+    {
+        return count;
+    }
 
     public double getAvg()
     {
         double avg = 0;
-        if ( count > 1 )
+        if ( count > 0 )
         {
-            avg = sum / count;
+            avg = sum / unit / count;
         }
         return avg;
     }
@@ -70,24 +102,50 @@ public class StatisticData implements Serializable
         double var = 0;
         if ( count > 2 )
         {
-            var = Math.sqrt( ( sumSq - sum * sum / count ) / ( count - 1 ) );
+            double sumSq = 0;
+            for ( int i = 0; i < counts.length; i++ )
+            {
+                double value = valueOf( i );
+                sumSq += counts[i] * value * value;
+            }
+            double sum = getSum();
+            var = Math.sqrt( Math.max( 0, sumSq - sum * sum / count ) / ( count - 1 ) );
         }
         return var;
     }
 
     public int getMedian()
     {
-        int c = 0;
-        int medianPoint = count / 2;
-        for ( int i = 0; i < MEDIAN_MAX; i++ )
+        return (int) Math.round( getPercentile( 50 ) );
+    }
+
+    /**
+     * @param percentile between 0 and 100.
+     * @return the value that <code>percentile</code> percent of the values
+     *         are less than or equal to, within the precision of the
+     *         histogram.
+     */
+    public double getPercentile( double percentile )
+    {
+        if ( count == 0 ) return 0;
+        long rank = Math.max( 1, (long) Math.ceil( count * Math.min( 100, Math.max( 0, percentile ) ) / 100 ) );
+        long seen = 0;
+        for ( int i = 0; i < counts.length; i++ )
         {
-            c += requests[i];
-            if ( c >= medianPoint )
+            seen += counts[i];
+            if ( seen >= rank )
             {
-                return i;
+                return Math.min( getMax(), Math.max( getMin(), valueOf( i ) ) );
             }
         }
-        return MEDIAN_MAX;
+        return getMax();
+    }
+
+    private double valueOf( int bucket )
+    {
+        long lowest = StatisticHistogram.lowestValueOf( bucket );
+        long highest = StatisticHistogram.highestValueOf( bucket );
+        return ( lowest + ( highest - lowest ) / 2 ) / unit;
     }
 
     @Override
@@ -95,51 +153,28 @@ public class StatisticData implements Serializable
     {
         return "StatisticData{" +
                 "count=" + count +
-                ", sum=" + sum +
-                ", min=" + min +
-                ", max=" + max +
+                ", sum=" + getSum() +
+                ", min=" + getMin() +
+                ", max=" + getMax() +
                 ", avg=" + getAvg() +
                 ", var=" + getVar() +
                 ", median=" + getMedian() +
+                ", 99%=" + getPercentile( 99 ) +
                 '}';
     }
 
-
-    public StatisticData copy()
-    {
-        return new StatisticData( count, sum, sumSq, min, max, requests );
-    }
-
-    public void addValue( double value )
-    {
-        min = count > 0 && min < value ? min : value;
-        max = count > 0 && max > value ? max : value;
-
-        count += 1;
-        sum += value;
-        sumSq += value * value;
-
-        int v = value >= MEDIAN_MAX ? MEDIAN_MAX - 1 :
-                value < 0 ? 0 :
-                        (int) value;
-
-        requests[v]++;
-    }
-
     public double getMin()
     {
-        return min;
+        return count > 0 ? min / unit : 0;
     }
 
     public double getMax()
     {
-        return max;
+        return count > 0 ? max / unit : 0;
     }
 
     public double getSum()
     {
-        return sum;
+        return sum / unit;
     }
 }
-
-
@@ -30,6 +30,7 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.ServletResponseWrapper;
+import javax.servlet.http.HttpServletRequest;
 
 import org.mortbay.jetty.Response;
 
@@ -62,10 +63,27 @@ public class StatisticFilter implements Filter
             chain.doFilter( request, response );
         } finally
         {
-            collector.update( ( nanoTime() - start ) / 1000000.0, getResponseSize( response ) );
+            collector.update( getCategory( request ), ( nanoTime() - start ) / 1000000.0, getResponseSize( response ) );
         }
     }
 
+    /**
+     * Requests are kept apart by the context they are made to, of which
+     * there are only a few, e.g. the REST API and the management API.
+     */
+    private String getCategory( final ServletRequest request )
+    {
+        if ( request instanceof HttpServletRequest )
+        {
+            String contextPath = ( (HttpServletRequest) request ).getContextPath();
+            if ( contextPath != null && contextPath.length() > 0 )
+            {
+                return contextPath;
+            }
+        }
+        return StatisticCollector.DEFAULT_CATEGORY;
+    }
+
     private long getResponseSize( final ServletResponse response )
     {
         if ( response instanceof ServletResponseWrapper )
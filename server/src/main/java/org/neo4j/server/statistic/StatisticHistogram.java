@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.statistic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram which can be updated concurrently without locking, with
+ * buckets of logarithmically increasing width so that every recorded value
+ * is kept with a relative precision of 1/64, using a fixed amount of memory.
+ * The bucket counts and the sum are striped by recording thread, so that
+ * threads recording at the same time rarely update the same cache line.
+ * Values are recorded as <code>long</code>s of some unit, e.g. microseconds,
+ * and are reported as <code>double</code>s of a coarser unit, e.g.
+ * milliseconds, <code>unit</code> recorded values to each reported one.
+ *
+ * Each call to {@link #intervalData()} returns what has been recorded since
+ * the previous call. Only one thread at a time may call it, while any number
+ * of threads may be recording.
+ */
+public class StatisticHistogram
+{
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int HALF_SUB_BUCKETS = 1 << ( SUB_BUCKET_BITS - 1 );
+    private static final int MAX_MAGNITUDE = 40;
+    private static final long MAX_VALUE = ( 1L << MAX_MAGNITUDE ) - 1;
+    static final int BUCKETS = bucketOf( MAX_VALUE ) + 1;
+    // each stripe has the bucket counts, then the sum, then padding so that
+    // the end of one stripe doesn't share a cache line with the next
+    private static final int SUM = BUCKETS;
+    private static final int PADDING = 8;
+
+    private final double unit;
+    private final int mask;
+    private final AtomicLongArray[] stripes;
+    private final AtomicLong min = new AtomicLong( Long.MAX_VALUE );
+    private final AtomicLong max = new AtomicLong( Long.MIN_VALUE );
+    private long[] previous = new long[SUM + 1];
+
+    public StatisticHistogram( double unit )
+    {
+        this.unit = unit;
+        int stripeCount = Integer.highestOneBit( Runtime.getRuntime()
+                .availableProcessors() * 2 - 1 );
+        this.mask = stripeCount - 1;
+        this.stripes = new AtomicLongArray[stripeCount];
+        for ( int i = 0; i < stripes.length; i++ )
+        {
+            stripes[i] = new AtomicLongArray( SUM + 1 + PADDING );
+        }
+    }
+
+    public void record( double value )
+    {
+        long recorded = Math.round( value * unit );
+        recorded = recorded < 0 ? 0 : recorded > MAX_VALUE ? MAX_VALUE : recorded;
+        AtomicLongArray stripe = stripes[stripe()];
+        stripe.incrementAndGet( bucketOf( recorded ) );
+        stripe.addAndGet( SUM, recorded );
+        lowerTo( min, recorded );
+        raiseTo( max, recorded );
+    }
+
+    private int stripe()
+    {
+        long id = Thread.currentThread()
+                .getId();
+        return (int) ( id ^ ( id >>> 16 ) ) & mask;
+    }
+
+    private static void lowerTo( AtomicLong cell, long value )
+    {
+        long current;
+        while ( value < ( current = cell.get() ) && !cell.compareAndSet( current, value ) )
+        {
+            // retry with the new current value
+        }
+    }
+
+    private static void raiseTo( AtomicLong cell, long value )
+    {
+        long current;
+        while ( value > ( current = cell.get() ) && !cell.compareAndSet( current, value ) )
+        {
+            // retry with the new current value
+        }
+    }
+
+    /**
+     * @return the values recorded since the last call to this method. A value
+     *         recorded concurrently with this call ends up in either this or
+     *         the next interval.
+     */
+    public StatisticData intervalData()
+    {
+        long[] current = new long[SUM + 1];
+        for ( AtomicLongArray stripe : stripes )
+        {
+            for ( int i = 0; i < current.length; i++ )
+            {
+                current[i] += stripe.get( i );
+            }
+        }
+        long[] interval = new long[BUCKETS];
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            interval[i] = current[i] - previous[i];
+        }
+        long intervalSum = current[SUM] - previous[SUM];
+        long intervalMin = min.getAndSet( Long.MAX_VALUE );
+        long intervalMax = max.getAndSet( Long.MIN_VALUE );
+        previous = current;
+        return new StatisticData( unit, interval, intervalSum, intervalMin, intervalMax );
+    }
+
+    static int bucketOf( long value )
+    {
+        if ( value < 2 * HALF_SUB_BUCKETS )
+        {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros( value ) - ( SUB_BUCKET_BITS - 1 );
+        return shift * HALF_SUB_BUCKETS + (int) ( value >>> shift );
+    }
+
+    static long lowestValueOf( int bucket )
+    {
+        if ( bucket < 2 * HALF_SUB_BUCKETS )
+        {
+            return bucket;
+        }
+        int shift = bucket / HALF_SUB_BUCKETS - 1;
+        return (long) ( bucket - shift * HALF_SUB_BUCKETS ) << shift;
+    }
+
+    static long highestValueOf( int bucket )
+    {
+        return lowestValueOf( bucket + 1 ) - 1;
+    }
+}
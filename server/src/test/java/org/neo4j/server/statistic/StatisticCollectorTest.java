@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.statistic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class StatisticCollectorTest
+{
+    @Test
+    public void shouldSummarizeTheRequestsOfAnInterval()
+    {
+        StatisticCollector collector = new StatisticCollector();
+        for ( int i = 1; i <= 100; i++ )
+        {
+            collector.update( i, i * 10 );
+        }
+
+        StatisticRecord record = collector.createSnapshot();
+
+        assertEquals( 100, record.getRequests() );
+        assertEquals( 1.0, record.getDuration().getMin(), 0.0 );
+        assertEquals( 100.0, record.getDuration().getMax(), 0.0 );
+        assertEquals( 50.5, record.getDuration().getAvg(), 0.001 );
+        assertEquals( 50, record.getDuration().getMedian() );
+        assertEquals( 99.0, record.getDuration().getPercentile( 99 ), 99.0 / 64 );
+        assertEquals( 50500.0, record.getSize().getSum(), 0.0 );
+        assertEquals( record, collector.currentSnapshot() );
+    }
+
+    @Test
+    public void shouldStartANewIntervalWithEachSnapshot()
+    {
+        StatisticCollector collector = new StatisticCollector();
+        collector.update( 5, 100 );
+        collector.createSnapshot();
+        collector.update( 7, 200 );
+        collector.update( 9, 300 );
+
+        StatisticRecord record = collector.createSnapshot();
+
+        assertEquals( 2, record.getRequests() );
+        assertEquals( 7.0, record.getDuration().getMin(), 0.0 );
+        assertEquals( 500.0, record.getSize().getSum(), 0.0 );
+        assertEquals( 0, collector.createSnapshot().getRequests() );
+    }
+
+    @Test
+    public void shouldKeepCategoriesApartAndMergeThemInTheTotal()
+    {
+        StatisticCollector collector = new StatisticCollector();
+        collector.update( "/db/data", 10, 100 );
+        collector.update( "/db/data", 20, 100 );
+        collector.update( "/db/manage", 1000, 5 );
+
+        StatisticRecord total = collector.createSnapshot();
+
+        assertEquals( 3, total.getRequests() );
+        assertEquals( 10.0, total.getDuration().getMin(), 0.0 );
+        assertEquals( 1000.0, total.getDuration().getMax(), 0.0 );
+        assertEquals( 2, collector.currentCategorySnapshots().get( "/db/data" ).getRequests() );
+        assertEquals( 1, collector.currentCategorySnapshots().get( "/db/manage" ).getRequests() );
+        assertEquals( 15.0, collector.currentCategorySnapshots().get( "/db/data" ).getDuration().getAvg(), 0.0 );
+    }
+
+    @Test
+    public void shouldKeepValuesWithinTheHistogramPrecision()
+    {
+        for ( long value = 0; value < 1L << 32; value = value * 3 / 2 + 1 )
+        {
+            int bucket = StatisticHistogram.bucketOf( value );
+            long lowest = StatisticHistogram.lowestValueOf( bucket );
+            long highest = StatisticHistogram.highestValueOf( bucket );
+            assertTrue( value + " in [" + lowest + "," + highest + "]", lowest <= value && value <= highest );
+            assertTrue( highest - lowest <= Math.max( 0, value / 64 ) );
+        }
+    }
+
+    @Test
+    public void shouldNotLoseRequestsRecordedConcurrently() throws Exception
+    {
+        final StatisticCollector collector = new StatisticCollector();
+        final int threads = 4, requests = 10000;
+        final CountDownLatch start = new CountDownLatch( 1 );
+        List<Thread> workers = new ArrayList<Thread>();
+        for ( int i = 0; i < threads; i++ )
+        {
+            Thread worker = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        throw new RuntimeException( e );
+                    }
+                    for ( int request = 0; request < requests; request++ )
+                    {
+                        collector.update( request % 3 == 0 ? "/db/data" : "/db/manage", request % 100, 1 );
+                    }
+                }
+            };
+            worker.start();
+            workers.add( worker );
+        }
+
+        start.countDown();
+        long seen = 0;
+        for ( Thread worker : workers )
+        {
+            while ( worker.isAlive() )
+            {
+                seen += collector.createSnapshot().getRequests();
+                worker.join( 1 );
+            }
+        }
+        StatisticRecord last = collector.createSnapshot();
+        seen += last.getRequests();
+
+        assertEquals( threads * requests, seen );
+    }
+}